@@ -0,0 +1,157 @@
+package bench;
+
+import structure.opengl.BatchMath;
+import structure.opengl.Matrix4;
+import structure.opengl.Matrix4Batch;
+import structure.opengl.Quaternion;
+import structure.opengl.QuaternionBatch;
+import structure.opengl.Vector3;
+import structure.opengl.Vector3Batch;
+
+import java.util.Random;
+
+/**
+ * Compares BatchMath against doing the same thing one object at a time with Matrix4 and Quaternion:
+ * transforming a pile of positions by one matrix, putting a pile of model matrices under one parent, and
+ * rotating a pile of vectors by their own quaternions. Also checks the two ways agree before timing anything.
+ */
+public class BatchMathBenchmark {
+    private static final int COUNT = 10000;
+    private static final int WARMUP = 200;
+    private static final int ROUNDS = 1000;
+    private static final float EPSILON = 0.0001f;
+
+    private static float sink = 0;
+
+    public static void main(String[] args) {
+        Random random = new Random(425);
+        Matrix4 mat = Matrix4.rotate(new Matrix4(), 15, 30, 45, new Matrix4()).translate(1, 2, 3).scale(2, 2, 2);
+
+        Vector3[] vectors = new Vector3[COUNT];
+        Vector3[] vectorsOut = new Vector3[COUNT];
+        Matrix4[] models = new Matrix4[COUNT];
+        Matrix4[] modelsOut = new Matrix4[COUNT];
+        Quaternion[] quats = new Quaternion[COUNT];
+        Vector3Batch vectorBatch = new Vector3Batch(COUNT);
+        Vector3Batch vectorBatchOut = new Vector3Batch(COUNT);
+        Matrix4Batch modelBatch = new Matrix4Batch(COUNT);
+        Matrix4Batch modelBatchOut = new Matrix4Batch(COUNT);
+        QuaternionBatch quatBatch = new QuaternionBatch(COUNT);
+        for(int i = 0; i < COUNT; i++) {
+            vectors[i] = new Vector3(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            vectorsOut[i] = new Vector3();
+            models[i] = Matrix4.rotate(new Matrix4(), random.nextFloat() * 360, 0, 0, new Matrix4())
+                    .translate(random.nextFloat(), random.nextFloat(), random.nextFloat());
+            modelsOut[i] = new Matrix4();
+            quats[i] = Quaternion.fromEulerAngles(new Quaternion(), random.nextFloat(), random.nextFloat(), random.nextFloat());
+            vectorBatch.add(vectors[i]);
+            modelBatch.add(models[i]);
+            quatBatch.add(quats[i]);
+        }
+
+        verify(mat, vectors, vectorsOut, models, modelsOut, quats,
+                vectorBatch, vectorBatchOut, modelBatch, modelBatchOut, quatBatch);
+
+        for(int pass = 0; pass < 2; pass++) {
+            boolean print = pass == 1;
+            int rounds = print ? ROUNDS : WARMUP;
+
+            long start = System.nanoTime();
+            for(int r = 0; r < rounds; r++) {
+                for(int i = 0; i < COUNT; i++) {
+                    Matrix4.mult(mat, vectors[i], vectorsOut[i]);
+                }
+                sink += vectorsOut[r % COUNT].x;
+            }
+            long objects = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int r = 0; r < rounds; r++) {
+                BatchMath.transformPositions(mat, vectorBatch, vectorBatchOut, COUNT);
+                sink += vectorBatchOut.x[r % COUNT];
+            }
+            long batch = System.nanoTime() - start;
+            report(print, "transform positions", objects, batch, rounds);
+
+            start = System.nanoTime();
+            for(int r = 0; r < rounds; r++) {
+                for(int i = 0; i < COUNT; i++) {
+                    Matrix4.mult(mat, models[i], modelsOut[i]);
+                }
+                sink += modelsOut[r % COUNT].m03;
+            }
+            objects = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int r = 0; r < rounds; r++) {
+                BatchMath.mult(mat, modelBatch, modelBatchOut, COUNT);
+                sink += modelBatchOut.m[(r % COUNT) * 16 + 12];
+            }
+            batch = System.nanoTime() - start;
+            report(print, "concatenate matrices", objects, batch, rounds);
+
+            start = System.nanoTime();
+            for(int r = 0; r < rounds; r++) {
+                for(int i = 0; i < COUNT; i++) {
+                    Quaternion.transform(vectors[i], quats[i], vectorsOut[i]);
+                }
+                sink += vectorsOut[r % COUNT].y;
+            }
+            objects = System.nanoTime() - start;
+            start = System.nanoTime();
+            for(int r = 0; r < rounds; r++) {
+                BatchMath.rotate(quatBatch, vectorBatch, vectorBatchOut, COUNT);
+                sink += vectorBatchOut.y[r % COUNT];
+            }
+            batch = System.nanoTime() - start;
+            report(print, "rotate by quaternions", objects, batch, rounds);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void verify(Matrix4 mat, Vector3[] vectors, Vector3[] vectorsOut, Matrix4[] models, Matrix4[] modelsOut,
+                               Quaternion[] quats, Vector3Batch vectorBatch, Vector3Batch vectorBatchOut,
+                               Matrix4Batch modelBatch, Matrix4Batch modelBatchOut, QuaternionBatch quatBatch) {
+        Vector3 check = new Vector3();
+        Matrix4 checkMat = new Matrix4();
+
+        BatchMath.transformPositions(mat, vectorBatch, vectorBatchOut, COUNT);
+        for(int i = 0; i < COUNT; i++) {
+            Matrix4.mult(mat, vectors[i], vectorsOut[i]);
+            expect("transform positions", i, vectorsOut[i], vectorBatchOut.get(i, check));
+        }
+
+        BatchMath.mult(mat, modelBatch, modelBatchOut, COUNT);
+        for(int i = 0; i < COUNT; i++) {
+            Matrix4.mult(mat, models[i], modelsOut[i]);
+            modelBatchOut.get(i, checkMat);
+            float diff = Math.abs(modelsOut[i].m00 - checkMat.m00) + Math.abs(modelsOut[i].m03 - checkMat.m03) +
+                    Math.abs(modelsOut[i].m12 - checkMat.m12) + Math.abs(modelsOut[i].m30 - checkMat.m30) +
+                    Math.abs(modelsOut[i].m31 - checkMat.m31) + Math.abs(modelsOut[i].m33 - checkMat.m33);
+            if(diff > EPSILON) {
+                throw new AssertionError("concatenate matrices disagrees at " + i + ": " + modelsOut[i] + " vs " + checkMat);
+            }
+        }
+
+        BatchMath.rotate(quatBatch, vectorBatch, vectorBatchOut, COUNT);
+        for(int i = 0; i < COUNT; i++) {
+            Quaternion.transform(vectors[i], quats[i], vectorsOut[i]);
+            expect("rotate by quaternions", i, vectorsOut[i], vectorBatchOut.get(i, check));
+        }
+    }
+
+    private static void expect(String name, int i, Vector3 expected, Vector3 actual) {
+        if(Math.abs(expected.x - actual.x) > EPSILON || Math.abs(expected.y - actual.y) > EPSILON ||
+                Math.abs(expected.z - actual.z) > EPSILON) {
+            throw new AssertionError(name + " disagrees at " + i + ": " + expected + " vs " + actual);
+        }
+    }
+
+    private static void report(boolean print, String name, long objectNanos, long batchNanos, int rounds) {
+        if(!print) {
+            return;
+        }
+        double perObject = objectNanos / (double)rounds / COUNT;
+        double perBatch = batchNanos / (double)rounds / COUNT;
+        System.out.println(String.format("%-22s per object: %6.2f ns/item, batch: %6.2f ns/item, %.2fx",
+                name, perObject, perBatch, perObject / perBatch));
+    }
+}
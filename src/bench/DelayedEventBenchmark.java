@@ -0,0 +1,137 @@
+package bench;
+
+import structure.event.EventQueue;
+import structure.event.SubscriptionToken;
+import structure.tuple.Quad;
+import stuff.UIDGenerator;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.Random;
+
+/**
+ * Compares the old LinkedList of countdown Quads that used to back EventQueue.pushLater against the timing
+ * wheel that backs it now. Schedules a big pile of delayed events spread over ten seconds worth of ticks and
+ * reports how long scheduling took and how long the average and worst tick took while draining them.
+ */
+public class DelayedEventBenchmark {
+    private static final String STREAM = "delayed";
+    private static final int EVENTS = 100000;
+    private static final int MAX_DELAY = 600;
+    private static final int ROUNDS = 5;
+
+    private static long sink = 0;
+
+    /*
+    Copy of the way EventQueue used to handle delayed events, so there's still something to compare against.
+     */
+    private static class LegacyQueue {
+        private final Queue<Quad<Integer, Object[], Object, Long>> queuedItems = new LinkedList<>();
+        private final EventQueue q;
+
+        LegacyQueue(EventQueue q) {
+            this.q = q;
+        }
+
+        void pushLater(Object item, int updates, Object... descriptors) {
+            synchronized (queuedItems) {
+                queuedItems.add(new Quad<>(updates, descriptors, item, UIDGenerator.NULL_ID));
+            }
+        }
+
+        void update() {
+            synchronized (queuedItems) {
+                for(Iterator<Quad<Integer, Object[], Object, Long>> it = queuedItems.iterator(); it.hasNext();) {
+                    Quad<Integer, Object[], Object, Long> queuedItem = it.next();
+                    queuedItem.unus--;
+                    if(queuedItem.unus == 0) {
+                        q.pushImmediateTo(queuedItem.quattuor, queuedItem.tres, queuedItem.duo);
+                        it.remove();
+                    }
+                }
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        int[] delays = new int[EVENTS];
+        Random random = new Random(425);
+        for(int i = 0; i < EVENTS; i++) {
+            delays[i] = 1 + random.nextInt(MAX_DELAY);
+        }
+
+        for(int round = 0; round < ROUNDS; round++) {
+            boolean last = round == ROUNDS - 1;
+            runLegacy(delays, last);
+            runWheel(delays, last);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static SubscriptionToken subscribe(EventQueue q) {
+        q.createStream(STREAM);
+        return q.subscribe(UIDGenerator.getUid(), (e) -> {
+            sink++;
+            return false;
+        }, STREAM);
+    }
+
+    private static void runLegacy(int[] delays, boolean print) {
+        EventQueue q = new EventQueue();
+        SubscriptionToken token = subscribe(q);
+        LegacyQueue legacy = new LegacyQueue(q);
+        Object[] descriptors = new Object[] {STREAM};
+        Object item = new Object();
+
+        long start = System.nanoTime();
+        for(int delay : delays) {
+            legacy.pushLater(item, delay, descriptors);
+        }
+        long scheduleNanos = System.nanoTime() - start;
+
+        long total = 0, worst = 0;
+        for(int tick = 0; tick < MAX_DELAY; tick++) {
+            long tickStart = System.nanoTime();
+            legacy.update();
+            long elapsed = System.nanoTime() - tickStart;
+            total += elapsed;
+            worst = Math.max(worst, elapsed);
+        }
+        if(print) {
+            report("LinkedList", scheduleNanos, total, worst);
+        }
+        token.unsubscribe();
+    }
+
+    private static void runWheel(int[] delays, boolean print) {
+        EventQueue q = new EventQueue();
+        SubscriptionToken token = subscribe(q);
+        Object[] descriptors = new Object[] {STREAM};
+        Object item = new Object();
+
+        long start = System.nanoTime();
+        for(int delay : delays) {
+            q.pushLater(item, delay, descriptors);
+        }
+        long scheduleNanos = System.nanoTime() - start;
+
+        long total = 0, worst = 0;
+        for(int tick = 0; tick < MAX_DELAY; tick++) {
+            long tickStart = System.nanoTime();
+            q.update();
+            long elapsed = System.nanoTime() - tickStart;
+            total += elapsed;
+            worst = Math.max(worst, elapsed);
+        }
+        if(print) {
+            report("Timing wheel", scheduleNanos, total, worst);
+        }
+        token.unsubscribe();
+    }
+
+    private static void report(String name, long scheduleNanos, long totalTickNanos, long worstTickNanos) {
+        System.out.println(String.format("%-12s schedule %,d events: %8.3f ms, avg tick: %8.3f ms, worst tick: %8.3f ms",
+                name, EVENTS, scheduleNanos / 1000000.0, totalTickNanos / 1000000.0 / MAX_DELAY, worstTickNanos / 1000000.0));
+    }
+}
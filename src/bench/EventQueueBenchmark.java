@@ -0,0 +1,82 @@
+package bench;
+
+import structure.event.EventQueue;
+import structure.event.SubscriptionToken;
+import stuff.UIDGenerator;
+
+import java.util.ArrayList;
+
+/**
+ * Measures how many pushes per second EventQueue can dispatch to a single stream with 1, 10 and 1000
+ * subscribers. Run it as a normal main class, no GL context needed.
+ */
+public class EventQueueBenchmark {
+    private static final String STREAM = "bench";
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final long ROUND_NANOS = 200L * 1000L * 1000L;
+
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        int[] subscriberCounts = new int[] {1, 10, 1000};
+        for(int count : subscriberCounts) {
+            run(count, false);
+            run(count, true);
+        }
+        // Keeps the JIT from deciding none of the work mattered.
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void run(int subscribers, boolean byId) {
+        EventQueue q = new EventQueue();
+        q.createStream(STREAM);
+        int streamId = q.getStreamId(STREAM);
+        Object event = new Object();
+
+        // Tokens have to stay reachable, otherwise the subscribers get garbage collected out from under us.
+        ArrayList<SubscriptionToken> tokens = new ArrayList<>(subscribers);
+        for(int i = 0; i < subscribers; i++) {
+            tokens.add(q.subscribe(UIDGenerator.getUid(), (e) -> {
+                sink++;
+                return false;
+            }, STREAM));
+        }
+
+        for(int i = 0; i < WARMUP_ROUNDS; i++) {
+            round(q, streamId, event, byId);
+        }
+        double best = 0, total = 0;
+        for(int i = 0; i < MEASURED_ROUNDS; i++) {
+            double rate = round(q, streamId, event, byId);
+            best = Math.max(best, rate);
+            total += rate;
+        }
+        System.out.println(String.format("%5d subscribers, %-10s avg %,15.0f pushes/sec, best %,15.0f pushes/sec",
+                subscribers, byId ? "by id" : "by object", total / MEASURED_ROUNDS, best));
+
+        for(SubscriptionToken token : tokens) {
+            token.unsubscribe();
+        }
+    }
+
+    private static double round(EventQueue q, int streamId, Object event, boolean byId) {
+        long pushes = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            // Batch the pushes so that reading the clock doesn't dominate the 1 subscriber case.
+            for(int i = 0; i < 1000; i++) {
+                if(byId) {
+                    q.pushImmediateStream(streamId, event);
+                }
+                else {
+                    q.pushImmediate(event, STREAM);
+                }
+            }
+            pushes += 1000;
+            elapsed = System.nanoTime() - start;
+        } while(elapsed < ROUND_NANOS);
+        return pushes / (elapsed / 1000000000.0);
+    }
+}
@@ -0,0 +1,222 @@
+package bench;
+
+import structure.tree.Collidable;
+import structure.tree.CollidableDivisor;
+import structure.tree.NTree;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Throws a long random run of adds, removes and queries at an NTree and checks every query against a scan over a
+ * plain list of whatever is supposed to be in it, with a few different seeds and leaf sizes. Any difference (a
+ * missing hit, an extra one, or the same one twice) stops it with the seed and step that went wrong. Once it all
+ * agrees, times the same kind of churn against the scan.
+ */
+public class NTreeBenchmark {
+    private static final long[] SEEDS = {425, 1, 2013, 8675309};
+    private static final int[] LIMITS = {2, 4, 16};
+    private static final int STEPS = 20000;
+    private static final float WORLD = 1000.0f;
+
+    private static final int TIMED_COUNT = 20000;
+    private static final int TIMED_QUERIES = 10000;
+    private static final int ROUNDS = 5;
+
+    private static long sink = 0;
+
+    private static final class Rect implements Collidable<Rect> {
+        float minX, minY, maxX, maxY;
+
+        Rect(float minX, float minY, float maxX, float maxY) {
+            this.minX = minX;
+            this.minY = minY;
+            this.maxX = maxX;
+            this.maxY = maxY;
+        }
+
+        @Override
+        public boolean collidesWith(Collidable<Rect> c) {
+            Rect r = c.get();
+            return minX <= r.maxX && maxX >= r.minX && minY <= r.maxY && maxY >= r.minY;
+        }
+
+        @Override
+        public Rect get() {
+            return this;
+        }
+    }
+
+    private static final CollidableDivisor<Rect> QUARTERS = new CollidableDivisor<Rect>() {
+        @Override
+        public void divide(Collidable<Rect> start, List<Collidable<Rect>> l) {
+            while(l.size() < 4) {
+                l.add(new Rect(0, 0, 0, 0));
+            }
+            Rect s = start.get();
+            float midX = (s.minX + s.maxX) * 0.5f, midY = (s.minY + s.maxY) * 0.5f;
+            set(l.get(0).get(), s.minX, midY, midX, s.maxY);
+            set(l.get(1).get(), midX, midY, s.maxX, s.maxY);
+            set(l.get(2).get(), s.minX, s.minY, midX, midY);
+            set(l.get(3).get(), midX, s.minY, s.maxX, midY);
+        }
+
+        private void set(Rect r, float minX, float minY, float maxX, float maxY) {
+            r.minX = minX;
+            r.minY = minY;
+            r.maxX = maxX;
+            r.maxY = maxY;
+        }
+    };
+
+    public static void main(String[] args) {
+        int checks = 0;
+        for(long seed : SEEDS) {
+            for(int limit : LIMITS) {
+                checks += check(seed, limit);
+            }
+        }
+        System.out.println(String.format("%,d queries matched the linear scan", checks));
+        time();
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static NTree<Rect> newTree(int limit) {
+        return new NTree<Rect>(4, limit, new Rect(0, 0, WORLD, WORLD), QUARTERS);
+    }
+
+    private static Rect randomRect(Random random, float maxSize) {
+        float x = random.nextFloat() * WORLD, y = random.nextFloat() * WORLD;
+        return new Rect(x, y, x + random.nextFloat() * maxSize, y + random.nextFloat() * maxSize);
+    }
+
+    private static int check(long seed, int limit) {
+        Random random = new Random(seed);
+        NTree<Rect> tree = newTree(limit);
+        List<Rect> live = new ArrayList<Rect>();
+        List<Collidable<Rect>> out = new ArrayList<Collidable<Rect>>();
+        IdentityHashMap<Collidable<Rect>, Boolean> found = new IdentityHashMap<Collidable<Rect>, Boolean>();
+        int queries = 0;
+        for(int step = 0; step < STEPS; step++) {
+            int op = random.nextInt(10);
+            if(op < 4 || live.isEmpty()) {
+                // Some big ones so plenty of things straddle splits and sit in more than one leaf.
+                Rect r = randomRect(random, random.nextInt(8) == 0 ? 50.0f : 10.0f);
+                tree.add(r);
+                live.add(r);
+            }
+            else if(op < 7) {
+                Rect r = live.remove(random.nextInt(live.size()));
+                tree.remove(r);
+                // A second remove of the same thing, and removing something never added, shouldn't touch size.
+                if(op == 6) {
+                    tree.remove(r);
+                    tree.remove(randomRect(random, 10.0f));
+                }
+            }
+            else {
+                Rect q = randomRect(random, 100.0f);
+                out.clear();
+                int n = tree.getIntersecting(q, out);
+                found.clear();
+                for(Collidable<Rect> c : out) {
+                    if(found.put(c, Boolean.TRUE) != null) {
+                        fail(seed, limit, step, "reported the same thing twice");
+                    }
+                }
+                int expected = 0;
+                for(Rect r : live) {
+                    if(q.collidesWith(r)) {
+                        expected++;
+                        if(!found.containsKey(r)) {
+                            fail(seed, limit, step, "missed something");
+                        }
+                    }
+                }
+                if(n != expected || out.size() != expected) {
+                    fail(seed, limit, step, "found " + n + " but expected " + expected);
+                }
+                queries++;
+            }
+            if(tree.size() != live.size()) {
+                fail(seed, limit, step, "size is " + tree.size() + " but should be " + live.size());
+            }
+        }
+
+        // Emptying it out again should fold everything back into the root.
+        while(!live.isEmpty()) {
+            tree.remove(live.remove(live.size() - 1));
+        }
+        out.clear();
+        if(tree.getIntersecting(new Rect(0, 0, WORLD, WORLD), out) != 0) {
+            fail(seed, limit, STEPS, "still found things after removing everything");
+        }
+        return queries;
+    }
+
+    private static void fail(long seed, int limit, int step, String what) {
+        throw new IllegalStateException("Seed " + seed + ", limit " + limit + ", step " + step + ": " + what);
+    }
+
+    private static void time() {
+        Random random = new Random(425);
+        Rect[] rects = new Rect[TIMED_COUNT];
+        for(int i = 0; i < rects.length; i++) {
+            rects[i] = randomRect(random, 10.0f);
+        }
+        Rect[] queries = new Rect[TIMED_QUERIES];
+        for(int i = 0; i < queries.length; i++) {
+            queries[i] = randomRect(random, 20.0f);
+        }
+
+        NTree<Rect> tree = newTree(8);
+        List<Collidable<Rect>> out = new ArrayList<Collidable<Rect>>();
+        long build = 0, linear = 0, queried = 0, churn = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for(Rect r : rects) {
+                tree.add(r);
+            }
+            build += System.nanoTime() - start;
+
+            long linearHits = 0, treeHits = 0;
+            start = System.nanoTime();
+            for(Rect q : queries) {
+                for(Rect r : rects) {
+                    if(q.collidesWith(r)) {
+                        linearHits++;
+                    }
+                }
+            }
+            linear += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(Rect q : queries) {
+                out.clear();
+                treeHits += tree.getIntersecting(q, out);
+            }
+            queried += System.nanoTime() - start;
+            if(linearHits != treeHits) {
+                throw new IllegalStateException("Linear scan found " + linearHits + " but the NTree found " + treeHits);
+            }
+
+            // Take half out and put it back, which is where the merging and the node caches earn their keep.
+            start = System.nanoTime();
+            for(int i = 0; i < rects.length; i += 2) {
+                tree.remove(rects[i]);
+            }
+            for(int i = 0; i < rects.length; i += 2) {
+                tree.add(rects[i]);
+            }
+            churn += System.nanoTime() - start;
+            sink += tree.size();
+            tree.clear();
+        }
+        System.out.println(String.format("%,d rects  build: %8.3f ms | %d queries  linear: %9.3f ms, " +
+                        "ntree: %8.3f ms (%.1fx) | remove/re-add half: %8.3f ms",
+                TIMED_COUNT, build / 1000000.0 / ROUNDS, TIMED_QUERIES, linear / 1000000.0 / ROUNDS,
+                queried / 1000000.0 / ROUNDS, (double)linear / queried, churn / 1000000.0 / ROUNDS));
+    }
+}
@@ -0,0 +1,316 @@
+package bench;
+
+import scene.Bounds;
+import structure.opengl.Matrix4;
+import structure.opengl.Vector3;
+import structure.tree.Collidable;
+import structure.tree.OcTree;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares the linear scan Player used to do over every piece of geometry against asking an OcTree for what's
+ * nearby. Scatters static boxes around a world, then runs the same pile of player sized queries through both and
+ * checks that they agree before reporting how long each took. Also times a batch of ray casts against scanning
+ * every box with the same ray, checking each ray stops at the same distance.
+ *
+ * Before any of that, a smaller world gets boxes moved, removed and put back round after round, and after every
+ * round box, ray and frustum queries are checked against brute force over the boxes that should be left.
+ */
+public class OcTreeBenchmark {
+    private static final int[] COUNTS = {100, 10000, 100000};
+    private static final int QUERIES = 10000;
+    private static final int RAYS = 1000;
+    private static final int ROUNDS = 5;
+    private static final float WORLD_HALF = 500.0f;
+    private static final int CHECK_BOXES = 5000;
+    private static final int CHECK_ROUNDS = 50;
+
+    private static long sink = 0;
+
+    private static final class Box implements Collidable<Bounds> {
+        final Bounds bounds;
+        float minX, minY, minZ, maxX, maxY, maxZ;
+
+        Box(float x, float y, float z, float w, float h, float d) {
+            bounds = new Bounds(new Vector3(x, y, z), w, h, d);
+            readBounds();
+        }
+
+        void moveBy(float x, float y, float z) {
+            bounds.moveLocal(x, y, z);
+            readBounds();
+        }
+
+        private void readBounds() {
+            minX = Math.min(bounds.getLeft(), bounds.getRight());
+            maxX = Math.max(bounds.getLeft(), bounds.getRight());
+            minY = Math.min(bounds.getBottom(), bounds.getTop());
+            maxY = Math.max(bounds.getBottom(), bounds.getTop());
+            minZ = Math.min(bounds.getFront(), bounds.getBack());
+            maxZ = Math.max(bounds.getFront(), bounds.getBack());
+        }
+
+        @Override
+        public boolean collidesWith(Collidable<Bounds> c) {
+            return false;
+        }
+
+        @Override
+        public Bounds get() {
+            return bounds;
+        }
+    }
+
+    public static void main(String[] args) {
+        check();
+        for(int count : COUNTS) {
+            run(count);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void check() {
+        Random random = new Random(425);
+        List<Box> live = new ArrayList<>(), removed = new ArrayList<>();
+        OcTree octree = new OcTree(0, 0, 0, WORLD_HALF);
+        for(int i = 0; i < CHECK_BOXES; i++) {
+            Box box = new Box(coord(random), coord(random), coord(random),
+                    1 + random.nextFloat() * 4, 1 + random.nextFloat() * 4, 1 + random.nextFloat() * 4);
+            live.add(box);
+            octree.add(box);
+        }
+
+        List<Collidable<Bounds>> out = new ArrayList<>();
+        float[] distance = new float[1];
+        float[] rays = new float[6];
+        float[] planes = new float[24];
+        Matrix4 projection = Matrix4.perspective(new Matrix4(), 60, 1, 400);
+        Matrix4 view = new Matrix4(), viewProjection = new Matrix4();
+        int checked = 0, frustumHits = 0;
+        for(int round = 0; round < CHECK_ROUNDS; round++) {
+            // Mostly small nudges that stay in the same node, with some jumps across the world.
+            for(Box box : live) {
+                if(random.nextInt(10) == 0) {
+                    float reach = random.nextInt(4) == 0 ? WORLD_HALF / 2 : 2;
+                    box.moveBy(nudge(random, box.bounds.getCenter().x, reach),
+                            nudge(random, box.bounds.getCenter().y, reach),
+                            nudge(random, box.bounds.getCenter().z, reach));
+                    octree.move(box);
+                }
+            }
+            for(int i = 0; i < live.size() / 50; i++) {
+                Box box = live.remove(random.nextInt(live.size()));
+                octree.remove(box);
+                removed.add(box);
+            }
+            for(int i = 0; i < removed.size() / 2; i++) {
+                Box box = removed.remove(random.nextInt(removed.size()));
+                octree.add(box);
+                live.add(box);
+            }
+            // Removing something that's already gone shouldn't change anything.
+            if(!removed.isEmpty()) {
+                octree.remove(removed.get(0));
+            }
+            if(octree.size() != live.size()) {
+                fail(round, "octree has " + octree.size() + " boxes but should have " + live.size());
+            }
+            Box[] boxes = live.toArray(new Box[live.size()]);
+
+            for(int q = 0; q < 100; q++) {
+                float x = coord(random), y = coord(random), z = coord(random);
+                float w = random.nextFloat() * 50, h = random.nextFloat() * 50, d = random.nextFloat() * 50;
+                List<Box> want = new ArrayList<>();
+                for(Box b : boxes) {
+                    if(b.minX <= x + w && b.maxX >= x && b.minY <= y + h && b.maxY >= y &&
+                            b.minZ <= z + d && b.maxZ >= z) {
+                        want.add(b);
+                    }
+                }
+                out.clear();
+                octree.query(x, y, z, x + w, y + h, z + d, out);
+                checkSame(round, "box query", want, out);
+
+                for(int i = 0; i < 6; i++) {
+                    rays[i] = i < 3 ? coord(random) : random.nextFloat() - 0.5f;
+                }
+                float scanned = scanRay(boxes, rays, 0);
+                octree.raycast(rays[0], rays[1], rays[2], rays[3], rays[4], rays[5], Float.MAX_VALUE, distance);
+                if(distance[0] != scanned) {
+                    fail(round, "ray hit at " + distance[0] + " but the scan hit at " + scanned);
+                }
+
+                Matrix4.lookAt(view, new Vector3(coord(random), coord(random), coord(random)),
+                        new Vector3(coord(random), coord(random), coord(random)), new Vector3(0, 1, 0));
+                OcTree.frustumPlanes(Matrix4.mult(projection, view, viewProjection), planes);
+                want.clear();
+                for(Box b : boxes) {
+                    if(inFrustum(planes, b)) {
+                        want.add(b);
+                    }
+                }
+                out.clear();
+                octree.queryFrustum(planes, out);
+                checkSame(round, "frustum query", want, out);
+                frustumHits += want.size();
+                checked += 3;
+            }
+        }
+        System.out.println(String.format("%,d queries matched brute force after moves and removes " +
+                "(%,d boxes found in frustums)", checked, frustumHits));
+    }
+
+    private static float nudge(Random random, float at, float reach) {
+        float by = (random.nextFloat() * 2 - 1) * reach;
+        // Stay inside the world so nothing has to go in the root's overflow.
+        return Math.max(-WORLD_HALF + 5, Math.min(WORLD_HALF - 5, at + by)) - at;
+    }
+
+    private static void checkSame(int round, String what, List<Box> want, List<Collidable<Bounds>> got) {
+        if(got.size() != want.size() || !new HashSet<Collidable<Bounds>>(got).containsAll(want)) {
+            fail(round, what + " found " + got.size() + " boxes but should have found " + want.size());
+        }
+    }
+
+    // Same test as the octree's, every plane has to have some of the box in front of it.
+    private static boolean inFrustum(float[] planes, Box b) {
+        for(int p = 0; p < 24; p += 4) {
+            float x = planes[p] >= 0 ? b.maxX : b.minX;
+            float y = planes[p + 1] >= 0 ? b.maxY : b.minY;
+            float z = planes[p + 2] >= 0 ? b.maxZ : b.minZ;
+            if(planes[p] * x + planes[p + 1] * y + planes[p + 2] * z + planes[p + 3] < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static void fail(int round, String what) {
+        throw new IllegalStateException("Round " + round + ": " + what);
+    }
+
+    private static void run(int count) {
+        Random random = new Random(425);
+        Box[] boxes = new Box[count];
+        for(int i = 0; i < count; i++) {
+            boxes[i] = new Box(coord(random), coord(random), coord(random),
+                    1 + random.nextFloat() * 4, 1 + random.nextFloat() * 4, 1 + random.nextFloat() * 4);
+        }
+        float[] queries = new float[QUERIES * 3];
+        for(int i = 0; i < queries.length; i++) {
+            queries[i] = coord(random);
+        }
+        float[] rays = new float[RAYS * 6];
+        for(int i = 0; i < RAYS; i++) {
+            rays[i * 6] = coord(random);
+            rays[i * 6 + 1] = coord(random);
+            rays[i * 6 + 2] = coord(random);
+            rays[i * 6 + 3] = random.nextFloat() - 0.5f;
+            rays[i * 6 + 4] = random.nextFloat() - 0.5f;
+            rays[i * 6 + 5] = random.nextFloat() - 0.5f;
+        }
+
+        List<Collidable<Bounds>> out = new ArrayList<>();
+        float[] distance = new float[1];
+        float[] linearDistances = new float[RAYS], treeDistances = new float[RAYS];
+        long build = 0, linear = 0, tree = 0, linearRays = 0, treeRays = 0;
+        for(int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            OcTree octree = new OcTree(0, 0, 0, WORLD_HALF);
+            for(Box box : boxes) {
+                octree.add(box);
+            }
+            build += System.nanoTime() - start;
+
+            long linearHits = 0, treeHits = 0;
+            start = System.nanoTime();
+            for(int q = 0; q < queries.length; q += 3) {
+                linearHits += scan(boxes, queries[q], queries[q + 1], queries[q + 2]);
+            }
+            linear += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int q = 0; q < queries.length; q += 3) {
+                out.clear();
+                treeHits += octree.query(queries[q] - 0.75f, queries[q + 1] - 2.0f, queries[q + 2] - 0.75f,
+                        queries[q] + 0.75f, queries[q + 1] + 2.0f, queries[q + 2] + 0.75f, out);
+            }
+            tree += System.nanoTime() - start;
+            if(linearHits != treeHits) {
+                throw new IllegalStateException("Linear scan found " + linearHits + " but the OcTree found " + treeHits);
+            }
+
+            start = System.nanoTime();
+            for(int r = 0; r < rays.length; r += 6) {
+                linearDistances[r / 6] = scanRay(boxes, rays, r);
+            }
+            linearRays += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for(int r = 0; r < rays.length; r += 6) {
+                octree.raycast(rays[r], rays[r + 1], rays[r + 2], rays[r + 3], rays[r + 4], rays[r + 5],
+                        Float.MAX_VALUE, distance);
+                treeDistances[r / 6] = distance[0];
+            }
+            treeRays += System.nanoTime() - start;
+            for(int i = 0; i < RAYS; i++) {
+                if(linearDistances[i] != treeDistances[i]) {
+                    throw new IllegalStateException("Ray " + i + " hit at " + treeDistances[i] +
+                            " in the OcTree but at " + linearDistances[i] + " in the linear scan");
+                }
+                if(treeDistances[i] != Float.POSITIVE_INFINITY) {
+                    sink += (long)treeDistances[i];
+                }
+            }
+            sink += octree.getNodeCount();
+            octree.clear();
+        }
+        System.out.println(String.format("%,7d boxes  build: %8.3f ms | %d box queries  linear: %9.3f ms, " +
+                        "octree: %8.3f ms (%.1fx) | %d rays  linear: %9.3f ms, octree: %8.3f ms (%.1fx)",
+                count, build / 1000000.0 / ROUNDS,
+                QUERIES, linear / 1000000.0 / ROUNDS, tree / 1000000.0 / ROUNDS, (double)linear / tree,
+                RAYS, linearRays / 1000000.0 / ROUNDS, treeRays / 1000000.0 / ROUNDS, (double)linearRays / treeRays));
+    }
+
+    private static float coord(Random random) {
+        return (random.nextFloat() * 2 - 1) * WORLD_HALF;
+    }
+
+    // Same player sized box the OcTree gets asked about.
+    private static int scan(Box[] boxes, float x, float y, float z) {
+        float minX = x - 0.75f, maxX = x + 0.75f, minY = y - 2.0f, maxY = y + 2.0f, minZ = z - 0.75f, maxZ = z + 0.75f;
+        int hits = 0;
+        for(Box b : boxes) {
+            if(b.minX <= maxX && b.maxX >= minX && b.minY <= maxY && b.maxY >= minY && b.minZ <= maxZ && b.maxZ >= minZ) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+
+    private static float scanRay(Box[] boxes, float[] rays, int r) {
+        float ox = rays[r], oy = rays[r + 1], oz = rays[r + 2];
+        float ix = 1.0f / rays[r + 3], iy = 1.0f / rays[r + 4], iz = 1.0f / rays[r + 5];
+        float best = Float.MAX_VALUE;
+        for(Box b : boxes) {
+            float t1 = (b.minX - ox) * ix, t2 = (b.maxX - ox) * ix;
+            float near = Math.min(t1, t2), far = Math.max(t1, t2);
+            t1 = (b.minY - oy) * iy;
+            t2 = (b.maxY - oy) * iy;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            t1 = (b.minZ - oz) * iz;
+            t2 = (b.maxZ - oz) * iz;
+            near = Math.max(near, Math.min(t1, t2));
+            far = Math.min(far, Math.max(t1, t2));
+            if(far >= Math.max(near, 0.0f)) {
+                best = Math.min(best, Math.max(near, 0.0f));
+            }
+        }
+        return best == Float.MAX_VALUE ? Float.POSITIVE_INFINITY : best;
+    }
+}
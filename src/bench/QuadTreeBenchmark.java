@@ -0,0 +1,199 @@
+package bench;
+
+import structure.tree.QuadTree;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A frame's worth of work for a big 2D scene: every sprite moves, then the screen gets culled and a handful of
+ * points get picked (think mouse and a few cursors). Runs it through a QuadTree, which refits once per frame
+ * and does a full build every so often, and through a plain scan over the sprite arrays, checks they agree, and
+ * reports the time per frame for each. Before that, a random run of adds, moves and removes is checked against the scan so the ids stay honest.
+ */
+public class QuadTreeBenchmark {
+    private static final int[] COUNTS = {1000, 10000, 100000};
+    private static final int FRAMES = 60;
+    private static final int PICKS = 16;
+    private static final float WORLD = 20000.0f;
+    private static final float VIEW_WIDTH = 1280.0f, VIEW_HEIGHT = 720.0f;
+    private static final float SPRITE = 32.0f, SPEED = 4.0f;
+
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        check();
+        for(int count : COUNTS) {
+            run(count);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void check() {
+        Random random = new Random(425);
+        QuadTree tree = new QuadTree(4, 12);
+        float[] boxes = new float[4096 * 4];
+        boolean[] live = new boolean[4096];
+        int[] out = new int[16];
+        int checked = 0;
+        for(int step = 0; step < 50000; step++) {
+            int op = random.nextInt(10);
+            int id = random.nextInt(live.length);
+            if(op < 4) {
+                float x = random.nextFloat() * 1000, y = random.nextFloat() * 1000;
+                float w = random.nextInt(10) == 0 ? 200 : random.nextFloat() * 20;
+                if(live[id]) {
+                    tree.set(id, x, y, x + w, y + w);
+                }
+                else {
+                    int given = tree.add(x, y, x + w, y + w);
+                    if(live[given]) {
+                        throw new IllegalStateException("Step " + step + ": handed out live id " + given);
+                    }
+                    id = given;
+                    live[id] = true;
+                }
+                boxes[id * 4] = x;
+                boxes[id * 4 + 1] = y;
+                boxes[id * 4 + 2] = x + w;
+                boxes[id * 4 + 3] = y + w;
+            }
+            else if(op < 6) {
+                if(live[id]) {
+                    tree.remove(id);
+                    live[id] = false;
+                }
+            }
+            else {
+                float x = random.nextFloat() * 1000, y = random.nextFloat() * 1000;
+                float w = op == 9 ? 0 : random.nextFloat() * 150;
+                int found = tree.query(x, y, x + w, y + w, out);
+                if(found > out.length) {
+                    out = new int[found * 2];
+                    found = tree.query(x, y, x + w, y + w, out);
+                }
+                int[] expected = scan(boxes, live, x, y, x + w, y + w);
+                int[] got = Arrays.copyOf(out, found);
+                Arrays.sort(got);
+                if(!Arrays.equals(got, expected)) {
+                    throw new IllegalStateException("Step " + step + ": QuadTree found " + Arrays.toString(got) +
+                            " but should have found " + Arrays.toString(expected));
+                }
+                if(op == 9) {
+                    int picked = tree.pick(x, y);
+                    int top = expected.length == 0 ? QuadTree.NONE : expected[expected.length - 1];
+                    if(picked != top) {
+                        throw new IllegalStateException("Step " + step + ": picked " + picked + " instead of " + top);
+                    }
+                }
+                checked++;
+            }
+        }
+        System.out.println(String.format("%,d queries matched the linear scan", checked));
+    }
+
+    private static int[] scan(float[] boxes, boolean[] live, float minX, float minY, float maxX, float maxY) {
+        int[] ret = new int[live.length];
+        int n = 0;
+        for(int id = 0; id < live.length; id++) {
+            int b = id * 4;
+            if(live[id] && boxes[b] <= maxX && boxes[b + 2] >= minX && boxes[b + 1] <= maxY && boxes[b + 3] >= minY) {
+                ret[n++] = id;
+            }
+        }
+        return Arrays.copyOf(ret, n);
+    }
+
+    private static void run(int count) {
+        Random random = new Random(425);
+        float[] boxes = new float[count * 4];
+        float[] vel = new float[count * 2];
+        for(int i = 0; i < count; i++) {
+            float x = random.nextFloat() * WORLD, y = random.nextFloat() * WORLD;
+            boxes[i * 4] = x;
+            boxes[i * 4 + 1] = y;
+            boxes[i * 4 + 2] = x + SPRITE;
+            boxes[i * 4 + 3] = y + SPRITE;
+            vel[i * 2] = (random.nextFloat() * 2 - 1) * SPEED;
+            vel[i * 2 + 1] = (random.nextFloat() * 2 - 1) * SPEED;
+        }
+        float[] picks = new float[PICKS * 2];
+
+        QuadTree tree = new QuadTree();
+        tree.load(boxes, count);
+        int[] out = new int[1024];
+        long moveTime = 0, treeTime = 0, linearTime = 0;
+        // First few frames are just for the JIT.
+        int warmup = 10;
+        for(int frame = 0; frame < FRAMES + warmup; frame++) {
+            float viewX = random.nextFloat() * (WORLD - VIEW_WIDTH), viewY = random.nextFloat() * (WORLD - VIEW_HEIGHT);
+            for(int p = 0; p < picks.length; p += 2) {
+                picks[p] = viewX + random.nextFloat() * VIEW_WIDTH;
+                picks[p + 1] = viewY + random.nextFloat() * VIEW_HEIGHT;
+            }
+
+            long start = System.nanoTime();
+            for(int i = 0; i < count; i++) {
+                tree.translate(i, vel[i * 2], vel[i * 2 + 1]);
+            }
+            long moved = System.nanoTime();
+            int visible = tree.query(viewX, viewY, viewX + VIEW_WIDTH, viewY + VIEW_HEIGHT, out);
+            if(visible > out.length) {
+                out = new int[visible * 2];
+                visible = tree.query(viewX, viewY, viewX + VIEW_WIDTH, viewY + VIEW_HEIGHT, out);
+            }
+            long picked = 0;
+            for(int p = 0; p < picks.length; p += 2) {
+                picked += tree.pick(picks[p], picks[p + 1]);
+            }
+            long done = System.nanoTime();
+
+            // The scan has to move the sprites too, it just does it in its own array.
+            long linearStart = System.nanoTime();
+            for(int i = 0; i < count; i++) {
+                float dx = vel[i * 2], dy = vel[i * 2 + 1];
+                boxes[i * 4] += dx;
+                boxes[i * 4 + 1] += dy;
+                boxes[i * 4 + 2] += dx;
+                boxes[i * 4 + 3] += dy;
+            }
+            int linearVisible = 0;
+            for(int i = 0; i < count; i++) {
+                int b = i * 4;
+                if(boxes[b] <= viewX + VIEW_WIDTH && boxes[b + 2] >= viewX &&
+                        boxes[b + 1] <= viewY + VIEW_HEIGHT && boxes[b + 3] >= viewY) {
+                    linearVisible++;
+                }
+            }
+            long linearPicked = 0;
+            for(int p = 0; p < picks.length; p += 2) {
+                int best = QuadTree.NONE;
+                for(int i = 0; i < count; i++) {
+                    int b = i * 4;
+                    if(boxes[b] <= picks[p] && boxes[b + 2] >= picks[p] &&
+                            boxes[b + 1] <= picks[p + 1] && boxes[b + 3] >= picks[p + 1]) {
+                        best = i;
+                    }
+                }
+                linearPicked += best;
+            }
+            long linearDone = System.nanoTime();
+
+            if(visible != linearVisible || picked != linearPicked) {
+                throw new IllegalStateException("Frame " + frame + ": QuadTree saw " + visible + " and picked " +
+                        picked + ", the scan saw " + linearVisible + " and picked " + linearPicked);
+            }
+            sink += visible;
+            if(frame >= warmup) {
+                moveTime += moved - start;
+                treeTime += done - moved;
+                linearTime += linearDone - linearStart;
+            }
+        }
+        System.out.println(String.format("%,7d sprites  per frame: move %6.3f ms, update + cull + %d picks " +
+                        "%7.3f ms | linear %7.3f ms (%.1fx) | %d nodes, %d builds, %d refits",
+                count, moveTime / 1000000.0 / FRAMES, PICKS, treeTime / 1000000.0 / FRAMES,
+                linearTime / 1000000.0 / FRAMES, (double)linearTime / (moveTime + treeTime),
+                tree.getNodeCount(), tree.getBuildCount(), tree.getRefitCount()));
+    }
+}
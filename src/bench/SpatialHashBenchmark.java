@@ -0,0 +1,143 @@
+package bench;
+
+import structure.tree.SpatialHashGrid;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * NPCs wandering around a level: every tick each one takes a step, the grid gets told, and then every pair that
+ * might be touching is pulled out for the narrowphase. Checks the pairs against testing every NPC against every
+ * other (plus a few big static things like walls and platforms that end up checked directly), then times both.
+ */
+public class SpatialHashBenchmark {
+    private static final int[] COUNTS = {100, 500, 2000, 5000};
+    private static final int TICKS = 200;
+    private static final int WARMUP = 50;
+    private static final int BIG = 4;
+    private static final float WORLD = 400.0f;
+    private static final float NPC = 1.0f, NPC_HEIGHT = 2.0f, SPEED = 0.1f;
+    private static final float CELL = 2.0f;
+
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        for(int count : COUNTS) {
+            run(count);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void run(int count) {
+        Random random = new Random(425);
+        // The world gets bigger with the crowd so it stays about as dense.
+        float world = WORLD * (float)Math.sqrt(count / 500.0);
+        int total = count + BIG;
+        float[] boxes = new float[total * 6];
+        float[] vel = new float[count * 2];
+        SpatialHashGrid grid = new SpatialHashGrid(CELL);
+        for(int i = 0; i < count; i++) {
+            float x = random.nextFloat() * world, z = random.nextFloat() * world;
+            set(boxes, i, x, 0, z, x + NPC, NPC_HEIGHT, z + NPC);
+            vel[i * 2] = (random.nextFloat() * 2 - 1) * SPEED;
+            vel[i * 2 + 1] = (random.nextFloat() * 2 - 1) * SPEED;
+            int id = grid.add(x, 0, z, x + NPC, NPC_HEIGHT, z + NPC);
+            if(id != i) {
+                throw new IllegalStateException("Expected id " + i + " but got " + id);
+            }
+        }
+        for(int i = count; i < total; i++) {
+            float x = random.nextFloat() * world, z = random.nextFloat() * world;
+            set(boxes, i, x, -1, z, x + world / 8, 3, z + 2);
+            grid.add(x, -1, z, x + world / 8, 3, z + 2);
+        }
+
+        int[] pairs = new int[total * 8];
+        long gridTime = 0, linearTime = 0, gridPairs = 0;
+        for(int tick = 0; tick < TICKS + WARMUP; tick++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < count; i++) {
+                int b = i * 6;
+                float dx = vel[i * 2], dz = vel[i * 2 + 1];
+                // Turn around at the edges of the world.
+                if(boxes[b] + dx < 0 || boxes[b + 3] + dx > world) {
+                    dx = vel[i * 2] = -dx;
+                }
+                if(boxes[b + 2] + dz < 0 || boxes[b + 5] + dz > world) {
+                    dz = vel[i * 2 + 1] = -dz;
+                }
+                boxes[b] += dx;
+                boxes[b + 3] += dx;
+                boxes[b + 2] += dz;
+                boxes[b + 5] += dz;
+                grid.update(i, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+            }
+            int found = grid.findPairs(pairs);
+            if(found * 2 > pairs.length) {
+                pairs = new int[found * 4];
+                found = grid.findPairs(pairs);
+            }
+            long done = System.nanoTime();
+
+            long linearStart = System.nanoTime();
+            long[] expected = linearPairs(boxes, total);
+            long linearDone = System.nanoTime();
+
+            // Every tick for the first few, then now and then, since sorting them for the check isn't cheap.
+            if(tick < 20 || tick % 25 == 0) {
+                long[] got = new long[found];
+                for(int i = 0; i < found; i++) {
+                    got[i] = pairKey(pairs[i * 2], pairs[i * 2 + 1]);
+                }
+                Arrays.sort(got);
+                if(!Arrays.equals(got, expected)) {
+                    throw new IllegalStateException(String.format("Tick %d: grid found %d pairs, should be %d",
+                            tick, found, expected.length));
+                }
+            }
+            sink += found + expected.length;
+            if(tick >= WARMUP) {
+                gridTime += done - start;
+                linearTime += linearDone - linearStart;
+                gridPairs += found;
+            }
+        }
+        System.out.println(String.format("%,6d NPCs  per tick: grid (update + pairs) %7.3f ms, all pairs %8.3f ms " +
+                        "(%.1fx) | %.1f pairs, %d cells, %.1f rebins/tick",
+                count, gridTime / 1000000.0 / TICKS, linearTime / 1000000.0 / TICKS, (double)linearTime / gridTime,
+                (double)gridPairs / TICKS, grid.getCellCount(), (double)grid.getRebinCount() / (TICKS + WARMUP)));
+    }
+
+    private static void set(float[] boxes, int i, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = i * 6;
+        boxes[b] = minX;
+        boxes[b + 1] = minY;
+        boxes[b + 2] = minZ;
+        boxes[b + 3] = maxX;
+        boxes[b + 4] = maxY;
+        boxes[b + 5] = maxZ;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long)Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private static long[] linearPairs(float[] boxes, int total) {
+        long[] ret = new long[64];
+        int n = 0;
+        for(int i = 0; i < total; i++) {
+            int a = i * 6;
+            for(int j = i + 1; j < total; j++) {
+                int b = j * 6;
+                if(boxes[a] <= boxes[b + 3] && boxes[a + 3] >= boxes[b] && boxes[a + 1] <= boxes[b + 4] &&
+                        boxes[a + 4] >= boxes[b + 1] && boxes[a + 2] <= boxes[b + 5] && boxes[a + 5] >= boxes[b + 2]) {
+                    if(n == ret.length) {
+                        ret = Arrays.copyOf(ret, n * 2);
+                    }
+                    ret[n++] = pairKey(i, j);
+                }
+            }
+        }
+        return Arrays.copyOf(ret, n);
+    }
+}
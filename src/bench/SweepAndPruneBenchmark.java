@@ -0,0 +1,238 @@
+package bench;
+
+import structure.event.EventQueue;
+import structure.event.SubscriptionToken;
+import structure.tree.SweepAndPrune;
+import stuff.UIDGenerator;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * First a random run of adds, moves, removes and ticks where nothing happens, keeping a set of pairs going off
+ * nothing but the BEGIN_CONTACT and END_CONTACT events, and checking both it and the pair set against testing
+ * everything against everything. Then a crowd where a quarter of the bodies move every tick and the rest sit still,
+ * timed against the same brute force, and then the same crowd with nobody moving at all.
+ */
+public class SweepAndPruneBenchmark {
+    private static final int[] COUNTS = {500, 2000, 5000};
+    private static final int TICKS = 200;
+    private static final int WARMUP = 50;
+    private static final float WORLD = 400.0f;
+    private static final float BODY = 1.0f, SPEED = 0.1f;
+    // How many of the crowd move each tick.
+    private static final float MOVING = 0.25f;
+
+    private static long sink = 0;
+
+    public static void main(String[] args) {
+        check();
+        for(int count : COUNTS) {
+            run(count);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void check() {
+        Random random = new Random(425);
+        EventQueue queue = new EventQueue();
+        SweepAndPrune sap = new SweepAndPrune(queue);
+        Set<Long> contacts = new HashSet<>();
+        int[] events = new int[2];
+        // Has to be held on to, the queue only keeps weak references to subscribers.
+        SubscriptionToken begin = queue.subscribe(UIDGenerator.NULL_ID, (o) -> {
+            SweepAndPrune.Contact c = (SweepAndPrune.Contact)o;
+            if(!contacts.add(pairKey(c.getA(), c.getB()))) {
+                throw new IllegalStateException("Began " + c + " twice");
+            }
+            events[0]++;
+            return false;
+        }, SweepAndPrune.BEGIN_CONTACT);
+        SubscriptionToken end = queue.subscribe(UIDGenerator.NULL_ID, (o) -> {
+            SweepAndPrune.Contact c = (SweepAndPrune.Contact)o;
+            if(!contacts.remove(pairKey(c.getA(), c.getB()))) {
+                throw new IllegalStateException("Ended " + c + " without it beginning");
+            }
+            events[1]++;
+            return false;
+        }, SweepAndPrune.END_CONTACT);
+
+        float[] boxes = new float[512 * 6];
+        boolean[] live = new boolean[512];
+        int ticks = 0;
+        for(int step = 0; step < 20000; step++) {
+            int op = random.nextInt(20);
+            int id = random.nextInt(live.length);
+            if(op < 6) {
+                // Coarse values so plenty of ends land exactly on each other.
+                float x = random.nextInt(100), y = random.nextInt(100), z = random.nextInt(20);
+                float w = random.nextInt(10) == 0 ? 40 : random.nextInt(8);
+                if(live[id]) {
+                    sap.update(id, x, y, z, x + w, y + w, z + w);
+                }
+                else {
+                    id = sap.add(x, y, z, x + w, y + w, z + w);
+                    if(live[id]) {
+                        throw new IllegalStateException("Step " + step + ": handed out live id " + id);
+                    }
+                    live[id] = true;
+                }
+                set(boxes, id, x, y, z, x + w, y + w, z + w);
+            }
+            else if(op < 8) {
+                if(live[id]) {
+                    sap.remove(id);
+                    live[id] = false;
+                }
+            }
+            else if(op < 16) {
+                if(live[id]) {
+                    float dx = random.nextInt(5) - 2, dy = random.nextInt(5) - 2;
+                    int b = id * 6;
+                    set(boxes, id, boxes[b] + dx, boxes[b + 1] + dy, boxes[b + 2], boxes[b + 3] + dx,
+                            boxes[b + 4] + dy, boxes[b + 5]);
+                    sap.update(id, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+                }
+            }
+            else {
+                // Sometimes twice in a row, so there are ticks where nothing moved.
+                int times = op == 19 ? 2 : 1;
+                for(int t = 0; t < times; t++) {
+                    sap.update();
+                    ticks++;
+                }
+                long[] expected = linearPairs(boxes, live, live.length);
+                long[] got = new long[sap.getPairCount()];
+                int[] n = {0};
+                sap.forEachPair((a, b) -> got[n[0]++] = pairKey(a, b));
+                Arrays.sort(got);
+                long[] heard = new long[contacts.size()];
+                int h = 0;
+                for(long key : contacts) {
+                    heard[h++] = key;
+                }
+                Arrays.sort(heard);
+                if(!Arrays.equals(got, expected) || !Arrays.equals(heard, expected)) {
+                    throw new IllegalStateException(String.format("Step %d: %d pairs in the set, %d from events, " +
+                            "should be %d", step, got.length, heard.length, expected.length));
+                }
+            }
+        }
+        System.out.println(String.format("%,d ticks matched all pairs (%,d begins, %,d ends, %,d swaps)",
+                ticks, events[0], events[1], sap.getSwapCount()));
+        sink += begin.hashCode() + end.hashCode();
+    }
+
+    private static void run(int count) {
+        Random random = new Random(425);
+        // The world gets bigger with the crowd so it stays about as dense.
+        float world = WORLD * (float)Math.sqrt(count / 500.0);
+        float[] boxes = new float[count * 6];
+        float[] vel = new float[count * 2];
+        boolean[] live = new boolean[count];
+        SweepAndPrune sap = new SweepAndPrune();
+        for(int i = 0; i < count; i++) {
+            float x = random.nextFloat() * world, z = random.nextFloat() * world;
+            set(boxes, i, x, 0, z, x + BODY, BODY * 2, z + BODY);
+            vel[i * 2] = (random.nextFloat() * 2 - 1) * SPEED;
+            vel[i * 2 + 1] = (random.nextFloat() * 2 - 1) * SPEED;
+            live[i] = true;
+            sap.add(x, 0, z, x + BODY, BODY * 2, z + BODY);
+        }
+        sap.update();
+        int moving = (int)(count * MOVING);
+
+        long sapTime = 0, linearTime = 0, sapPairs = 0, swapsBefore = 0;
+        for(int tick = 0; tick < TICKS + WARMUP; tick++) {
+            if(tick == WARMUP) {
+                swapsBefore = sap.getSwapCount();
+            }
+            long start = System.nanoTime();
+            for(int i = 0; i < moving; i++) {
+                int b = i * 6;
+                float dx = vel[i * 2], dz = vel[i * 2 + 1];
+                // Turn around at the edges of the world.
+                if(boxes[b] + dx < 0 || boxes[b + 3] + dx > world) {
+                    dx = vel[i * 2] = -dx;
+                }
+                if(boxes[b + 2] + dz < 0 || boxes[b + 5] + dz > world) {
+                    dz = vel[i * 2 + 1] = -dz;
+                }
+                boxes[b] += dx;
+                boxes[b + 3] += dx;
+                boxes[b + 2] += dz;
+                boxes[b + 5] += dz;
+                sap.update(i, boxes[b], boxes[b + 1], boxes[b + 2], boxes[b + 3], boxes[b + 4], boxes[b + 5]);
+            }
+            sap.update();
+            long done = System.nanoTime();
+
+            long linearStart = System.nanoTime();
+            long[] expected = linearPairs(boxes, live, count);
+            long linearDone = System.nanoTime();
+
+            if(sap.getPairCount() != expected.length) {
+                throw new IllegalStateException(String.format("Tick %d: %d pairs, should be %d",
+                        tick, sap.getPairCount(), expected.length));
+            }
+            sink += sap.getPairCount();
+            if(tick >= WARMUP) {
+                sapTime += done - start;
+                linearTime += linearDone - linearStart;
+                sapPairs += sap.getPairCount();
+            }
+        }
+        long swaps = sap.getSwapCount() - swapsBefore;
+
+        // Nobody moves: the whole tick should be a call that finds nothing to do.
+        long stillStart = System.nanoTime();
+        for(int tick = 0; tick < TICKS; tick++) {
+            sap.update();
+        }
+        long stillTime = System.nanoTime() - stillStart;
+
+        System.out.println(String.format("%,6d bodies (%,d moving)  per tick: sweep and prune %7.3f ms, all pairs " +
+                        "%8.3f ms (%.1fx) | %.1f pairs, %.1f swaps/tick | nobody moving %.5f ms",
+                count, moving, sapTime / 1000000.0 / TICKS, linearTime / 1000000.0 / TICKS,
+                (double)linearTime / sapTime, (double)sapPairs / TICKS, (double)swaps / TICKS,
+                stillTime / 1000000.0 / TICKS));
+    }
+
+    private static void set(float[] boxes, int i, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = i * 6;
+        boxes[b] = minX;
+        boxes[b + 1] = minY;
+        boxes[b + 2] = minZ;
+        boxes[b + 3] = maxX;
+        boxes[b + 4] = maxY;
+        boxes[b + 5] = maxZ;
+    }
+
+    private static long pairKey(int a, int b) {
+        return ((long)Math.min(a, b) << 32) | Math.max(a, b);
+    }
+
+    private static long[] linearPairs(float[] boxes, boolean[] live, int total) {
+        long[] ret = new long[64];
+        int n = 0;
+        for(int i = 0; i < total; i++) {
+            if(!live[i]) {
+                continue;
+            }
+            int a = i * 6;
+            for(int j = i + 1; j < total; j++) {
+                int b = j * 6;
+                if(live[j] && boxes[a] <= boxes[b + 3] && boxes[a + 3] >= boxes[b] && boxes[a + 1] <= boxes[b + 4] &&
+                        boxes[a + 4] >= boxes[b + 1] && boxes[a + 2] <= boxes[b + 5] && boxes[a + 5] >= boxes[b + 2]) {
+                    if(n == ret.length) {
+                        ret = Arrays.copyOf(ret, n * 2);
+                    }
+                    ret[n++] = pairKey(i, j);
+                }
+            }
+        }
+        return Arrays.copyOf(ret, n);
+    }
+}
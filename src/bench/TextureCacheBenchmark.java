@@ -0,0 +1,91 @@
+package bench;
+
+import texture.DiskTextureCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Compares a cold start, where every image in res/ goes through ImageIO and gets swizzled (and its cache file
+ * written), against a warm start, where DiskTextureCache just maps the files it wrote last time. The images are
+ * copied to a temporary directory first so the real res/ never ends up with cache files in it. Only the CPU side
+ * is measured, both paths end in the same glTexImage2D.
+ */
+public class TextureCacheBenchmark {
+    private static final int ROUNDS = 10;
+
+    private static long sink = 0;
+
+    public static void main(String[] args) throws IOException {
+        File res = new File(args.length > 0 ? args[0] : "res");
+        File[] images = res.listFiles((dir, name) -> name.endsWith(".png") || name.endsWith(".jpg"));
+        if(images == null || images.length == 0) {
+            System.out.println("No images found in " + res.getAbsolutePath());
+            return;
+        }
+
+        File temp = Files.createTempDirectory("texcache").toFile();
+        String[] copies = new String[images.length];
+        long sourceBytes = 0;
+        for(int i = 0; i < images.length; i++) {
+            File copy = new File(temp, images[i].getName());
+            Files.copy(images[i].toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            copies[i] = copy.getPath();
+            sourceBytes += copy.length();
+        }
+        System.out.println(String.format("%d images, %,d bytes on disk", images.length, sourceBytes));
+
+        try {
+            // One untimed pass of each, so ImageIO's plugins and the JIT are warmed up before anything counts.
+            for(boolean mipmaps : new boolean[] {false, true}) {
+                deleteCaches(copies);
+                loadAll(copies, mipmaps, false);
+                loadAll(copies, mipmaps, true);
+            }
+            for(boolean mipmaps : new boolean[] {false, true}) {
+                long cold = 0, warm = 0;
+                for(int round = 0; round < ROUNDS; round++) {
+                    deleteCaches(copies);
+                    cold += loadAll(copies, mipmaps, false);
+                    warm += loadAll(copies, mipmaps, true);
+                }
+                System.out.println(String.format("mipmaps %-5b cold: %8.3f ms, warm: %8.3f ms, speedup: %5.1fx",
+                        mipmaps, cold / 1000000.0 / ROUNDS, warm / 1000000.0 / ROUNDS, (double)cold / warm));
+            }
+        }
+        finally {
+            deleteCaches(copies);
+            for(String copy : copies) {
+                new File(copy).delete();
+            }
+            temp.delete();
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static long loadAll(String[] files, boolean mipmaps, boolean expectCached) throws IOException {
+        long start = System.nanoTime();
+        for(String file : files) {
+            DiskTextureCache.Pixels pixels = DiskTextureCache.read(file, mipmaps);
+            if(pixels.fromCache != expectCached) {
+                throw new IllegalStateException(file + " came from the cache: " + pixels.fromCache);
+            }
+            // Touch every page of every level so a lazy mapping actually gets read in, like the upload would.
+            for(ByteBuffer level : pixels.levels) {
+                for(int i = 0; i < level.limit(); i += 4096) {
+                    sink += level.get(i);
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void deleteCaches(String[] files) {
+        for(String file : files) {
+            DiskTextureCache.cacheFileFor(new File(file)).delete();
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package bench;
+
+import org.lwjgl.BufferUtils;
+import structure.opengl.Matrix4;
+import structure.opengl.Matrix4Batch;
+import structure.opengl.UniformMatrixBlock;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+/**
+ * Stages frames of matrices into a UniformMatrixBlock, one at a time and in batches, with getSlot() and
+ * getRange() called in between stages, and checks every view handed out holds exactly what Matrix4.store()
+ * would have written. Then times staging and flushing a frame against storing each matrix into its own buffer
+ * the old way.
+ */
+public class UniformMatrixBlockBenchmark {
+    private static final int CAPACITY = 1024;
+    private static final int CHECK_FRAMES = 500;
+    private static final int WARMUP = 200;
+    private static final int ROUNDS = 2000;
+
+    private static float sink = 0;
+
+    public static void main(String[] args) {
+        check();
+        time();
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static Matrix4 randomMatrix(Random random) {
+        return Matrix4.rotate(new Matrix4(), random.nextFloat() * 360, random.nextFloat() * 360,
+                random.nextFloat() * 360, new Matrix4()).translate(random.nextFloat(), random.nextFloat(),
+                random.nextFloat());
+    }
+
+    private static void check() {
+        Random random = new Random(425);
+        UniformMatrixBlock block = new UniformMatrixBlock(CAPACITY);
+        Matrix4[] staged = new Matrix4[CAPACITY];
+        FloatBuffer expected = BufferUtils.createFloatBuffer(16);
+        int views = 0;
+        for(int frame = 0; frame < CHECK_FRAMES; frame++) {
+            block.reset();
+            while(block.size() < CAPACITY) {
+                int op = random.nextInt(4);
+                if(op == 0) {
+                    Matrix4 m = randomMatrix(random);
+                    int slot = block.stage(m);
+                    if(slot != block.size() - 1) {
+                        fail(frame, "stage() gave slot " + slot + " with size " + block.size());
+                    }
+                    staged[slot] = m;
+                }
+                else if(op == 1) {
+                    int count = Math.min(1 + random.nextInt(16), CAPACITY - block.size());
+                    Matrix4Batch batch = new Matrix4Batch(count);
+                    int first = block.size();
+                    for(int i = 0; i < count; i++) {
+                        staged[first + i] = randomMatrix(random);
+                        batch.add(staged[first + i]);
+                    }
+                    if(block.stage(batch) != first) {
+                        fail(frame, "batch didn't start at slot " + first);
+                    }
+                }
+                else if(block.size() > 0) {
+                    // Views taken between stages mustn't stop the next flush from reaching later slots.
+                    int first = random.nextInt(block.size());
+                    int count = op == 2 ? 1 : 1 + random.nextInt(block.size() - first);
+                    FloatBuffer view = op == 2 ? block.getSlot(first) : block.getRange(first, count);
+                    if(view.remaining() != count * 16) {
+                        fail(frame, "view of " + count + " slots had " + view.remaining() + " floats");
+                    }
+                    for(int i = 0; i < count; i++) {
+                        staged[first + i].store(expected, 0);
+                        for(int f = 0; f < 16; f++) {
+                            if(view.get(view.position() + i * 16 + f) != expected.get(f)) {
+                                fail(frame, "slot " + (first + i) + " float " + f + " didn't match");
+                            }
+                        }
+                    }
+                    views++;
+                }
+            }
+        }
+        System.out.println(String.format("%,d views matched Matrix4.store()", views));
+    }
+
+    private static void fail(int frame, String what) {
+        throw new IllegalStateException("Frame " + frame + ": " + what);
+    }
+
+    private static void time() {
+        Random random = new Random(425);
+        Matrix4[] matrices = new Matrix4[CAPACITY];
+        FloatBuffer[] buffers = new FloatBuffer[CAPACITY];
+        for(int i = 0; i < CAPACITY; i++) {
+            matrices[i] = randomMatrix(random);
+            buffers[i] = BufferUtils.createFloatBuffer(16);
+        }
+        UniformMatrixBlock block = new UniformMatrixBlock(CAPACITY);
+
+        long blockNanos = 0, bufferNanos = 0;
+        for(int r = 0; r < WARMUP + ROUNDS; r++) {
+            long start = System.nanoTime();
+            block.reset();
+            for(Matrix4 m : matrices) {
+                block.stage(m);
+            }
+            block.flush();
+            sink += block.getRange(0, CAPACITY).get(r % (CAPACITY * 16));
+            long staged = System.nanoTime();
+            for(int i = 0; i < CAPACITY; i++) {
+                buffers[i].clear();
+                matrices[i].store(buffers[i]);
+                buffers[i].flip();
+            }
+            sink += buffers[r % CAPACITY].get(0);
+            long stored = System.nanoTime();
+            if(r >= WARMUP) {
+                blockNanos += staged - start;
+                bufferNanos += stored - staged;
+            }
+        }
+        System.out.println(String.format("%,d matrices per frame  block stage + flush: %8.4f ms | " +
+                "one buffer each: %8.4f ms (%.1fx)", CAPACITY, blockNanos / 1e6 / ROUNDS,
+                bufferNanos / 1e6 / ROUNDS, (double)bufferNanos / blockNanos));
+    }
+}
@@ -0,0 +1,6 @@
+package function;
+
+@FunctionalInterface
+public interface FloatPredicate {
+    public boolean test(float value);
+}
@@ -0,0 +1,6 @@
+package function;
+
+@FunctionalInterface
+public interface IntBinaryPredicate {
+    public boolean test(int left, int right);
+}
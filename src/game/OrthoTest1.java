@@ -10,8 +10,6 @@ import structure.geometries.Cube;
 import structure.mem.CleanupManager;
 import structure.opengl.OrthoCamera;
 import structure.opengl.ShaderProgram;
-import structure.tuple.Pair;
-import stuff.UIDGenerator;
 
 import static org.lwjgl.opengl.GL11.*;
 
@@ -33,13 +31,11 @@ public class OrthoTest1 extends GameApplicationDisplay {
 
     private Cube test;
 
-    @SuppressWarnings("unchecked")
-    private boolean onResize(Object o) {
-        Pair<Integer, Integer> newSize = (Pair<Integer, Integer>)o;
-        System.out.println("Resized to: " + newSize.unus + ", " + newSize.duo);
+    private boolean onResize(int width, int height) {
+        System.out.println("Resized to: " + width + ", " + height);
 
-        glViewport(0, 0, newSize.unus, newSize.duo);
-        camera = new OrthoCamera((float)newSize.unus, (float)newSize.duo, "");
+        glViewport(0, 0, width, height);
+        camera = new OrthoCamera((float)width, (float)height, "");
 
         return true;
     }
@@ -63,11 +59,7 @@ public class OrthoTest1 extends GameApplicationDisplay {
         test = new Cube(initialShader, "model", "vertNormal");
 
         stopToken = keyboardManager.listenFor((e) -> stop(), true, Keyboard.KEY_Q, Keyboard.KEY_ESCAPE);
-        resizeToken = Q.subscribe(
-                UIDGenerator.getUid(),
-                this::onResize,
-                GameApplicationDisplay.RESIZE_STREAM
-        );
+        resizeToken = GameApplicationDisplay.RESIZE_STREAM.subscribe(this::onResize);
     }
 
     @Override
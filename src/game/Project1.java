@@ -5,10 +5,10 @@ import main.GameApplicationDisplay;
 import org.lwjgl.input.Keyboard;
 import org.lwjgl.input.Mouse;
 import org.lwjgl.opengl.Display;
-import structure.event.SubscriptionToken;
 import structure.geometries.Cube;
 import structure.geometries.SceneNode;
 import structure.opengl.*;
+import structure.tree.OcTree;
 import stuff.TempVars;
 import stuff.Utils;
 import texture.Texture;
@@ -37,10 +37,15 @@ public class Project1 extends GameApplicationDisplay {
     final static float CAM_SPEED = 5.75f;
 
     public static ArrayList<SceneNode> meshes = new ArrayList<SceneNode>(100);
+    // Same geometry as meshes, indexed by where it is so things only have to look at what's near them.
+    public static OcTree world = new OcTree(0, 0, 0, 128);
 
     Player player;
 
     public static ShaderProgram colorProg;
+    int timeUniform, cameraUniform, preModelUniform, modelUniform;
+    final Matrix4 identity = new Matrix4();
+    final RenderQueue renderQueue = new RenderQueue();
     Mesh mesh, cubeMesh;
     Matrix4 projection;
     Matrix4 model;
@@ -52,7 +57,6 @@ public class Project1 extends GameApplicationDisplay {
     SceneNode tree1, tree2, tree3, tree4, treeRot;
     SceneNode light;
     Texture floorTex;
-    SubscriptionToken resizeToken;
 
     public static boolean mouseRotationEnabled = false;
 
@@ -143,6 +147,10 @@ public class Project1 extends GameApplicationDisplay {
         colorProg.addFragmentShader("fragcolor.glsl");
         colorProg.addVertexShader("vertexcolor.glsl");
         colorProg.link();
+        timeUniform = colorProg.getUniform("time");
+        cameraUniform = colorProg.getUniform("camera");
+        preModelUniform = colorProg.getUniform("preModel");
+        modelUniform = colorProg.getUniform("model");
         colorProg.use();
         colorProg.setUniform("cameraToClipMatrix", cameraToClipMatrix);
         colorProg.setUniform("loopDuration", 5.0f);
@@ -259,36 +267,11 @@ public class Project1 extends GameApplicationDisplay {
         meshes.add(tree2);
         meshes.add(tree3);
         meshes.add(tree4);
+        for(SceneNode geom : meshes) {
+            world.add(geom);
+        }
 
         System.out.println("ROUND TEST: " + Utils.roundTo(4.15968912342f, 3));
-//        resizeToken = GameApplicationDisplay.Q.subscribe(
-//                UIDGenerator.getUid(),
-//                (e) -> {
-//                    Pair<Integer, Integer> p = (Pair<Integer, Integer>)e;
-//                    int height = p.unus;
-//                    int width = p.duo;
-//                    cameraToClipMatrix.m00 = frustumScale * (height / (float)width);
-//                    cameraToClipMatrix.m11 = frustumScale;
-//
-//                    colorProg.use();
-//                    colorProg.setUniform("cameraToClipMatrix", cameraToClipMatrix);
-//                    colorProg.stopUsing();
-//
-//                    glViewport(0, 0, width, height);
-//                    return true;
-//                },
-//                GameApplicationDisplay.RESIZE_STREAM
-//        );
-//        addWindowSizeListener((int width, int height) -> {
-//            cameraToClipMatrix.m00 = frustumScale * (height / (float)width);
-//            cameraToClipMatrix.m11 = frustumScale;
-//
-//            colorProg.use();
-//            colorProg.setUniform("cameraToClipMatrix", cameraToClipMatrix);
-//            colorProg.stopUsing();
-//
-//            glViewport(0, 0, width, height);
-//        });
     }
 
     @Override
@@ -380,13 +363,13 @@ public class Project1 extends GameApplicationDisplay {
         player.tick(dt);
 
         colorProg.use();
-        colorProg.setUniform("time", dt);
-        colorProg.setUniform("preModel", new Matrix4());
+        colorProg.setUniform(timeUniform, dt);
+        colorProg.setUniform(preModelUniform, identity);
 //        model.setIdentity();
 //        camera.moveRotated(0.2f * dt, 0.0f * dt, 0.0f * dt);
-        colorProg.setUniform("camera", camera.getMatrix());
+        colorProg.setUniform(cameraUniform, camera.getMatrix());
 //        colorProg.setUniform("model", model.rotate(1.0f * dt, new Vector3f(0, 1, 0)));
-        colorProg.setUniform("model", model);
+        colorProg.setUniform(modelUniform, model);
 //        cubeMesh.draw();
 //        test.draw();
 //        test2.draw();
@@ -398,8 +381,9 @@ public class Project1 extends GameApplicationDisplay {
 //        tree3.draw();
 //        tree4.draw();
         for(SceneNode geom : meshes) {
-            geom.draw();
+            geom.submit(renderQueue);
         }
+        renderQueue.execute(GLRenderBackend.INSTANCE);
         player.draw(dt);
         colorProg.stopUsing();
 
@@ -10,9 +10,13 @@ import structure.geometries.Cube;
 import structure.geometries.SceneNode;
 import structure.opengl.Matrix4;
 import structure.opengl.Vector3;
+import structure.tree.Collidable;
 import stuff.TempVars;
 import texture.TextureManager;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Created with IntelliJ IDEA.
  * User: freezerburn
@@ -38,6 +42,8 @@ public class Player extends Entity {
 //    protected float rotateFullTerp = 0;
     protected boolean thirdPerson = false;
     protected boolean falling = true;
+    // Reused every tick for whatever the world says is close enough to bump into.
+    protected final List<Collidable<Bounds>> nearby = new ArrayList<>();
 
     public Player() {
         bounds = new Bounds(Project1.camera.getPosition(), new Vector3(1.5f, 4, 1.5f));
@@ -274,8 +280,10 @@ public class Player extends Entity {
 //        System.out.println("VEL JUST BEFORE: " + transformed);
         bounds.moveLocal(transformed.x, transformed.y, transformed.z);
 //        System.out.println("DELTA: " + bounds.getCenter().sub(before));
-        for(SceneNode geom : Project1.meshes) {
-            if(Bounds.getAABBIntersection(bounds, geom.getBounds(), var.vect1)) {
+        nearby.clear();
+        Project1.world.query(bounds, nearby);
+        for(int i = 0; i < nearby.size(); i++) {
+            if(Bounds.getAABBIntersection(bounds, nearby.get(i).get(), var.vect1)) {
                 Vector3.transform(var.vect3.set(var.vect1.x, 0, var.vect1.z), Project1.camera.getOrientation(), var.vect2);
                 var.vect2.y = var.vect1.y;
 //                bounds.moveLocal(var.vect2.x, var.vect2.y, var.vect2.z);
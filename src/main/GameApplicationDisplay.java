@@ -12,11 +12,12 @@ import org.zeromq.ZMQ;
 import structure.control.KeyboardManager;
 import structure.control.MouseManager;
 import structure.event.EventQueue;
+import structure.event.IntPairEventStream;
 import structure.mem.CleanupManager;
 import structure.opengl.ShaderProgram;
-import structure.tuple.Pair;
 import stuff.NativeLoader;
 import stuff.Preferences;
+import stuff.TempVars;
 import texture.TextureManager;
 
 import java.util.ArrayList;
@@ -34,7 +35,7 @@ import static org.lwjgl.opengl.GL30.*;
  * Time: 11:49 AM
  */
 public abstract class GameApplicationDisplay implements GameApplicationRunnable {
-    public static final String RESIZE_STREAM = "windowResize";
+    public static final IntPairEventStream RESIZE_STREAM = new IntPairEventStream();
 
     protected static final String WINDOW_NAME = "CMSC425 - GameDev";
     protected static final String CMDLINE_WINDOW_NAME = "cmsc425.window.name";
@@ -47,6 +48,12 @@ public abstract class GameApplicationDisplay implements GameApplicationRunnable
     protected static final int FPS = 60;
     protected static final String CMDLINE_FPS = "cmsc425.window.fps";
 
+    /*
+    When set, background threads (network, asset loading, etc) can push onto Q. Their events get delivered
+    on the main loop thread during Q.update(), rather than on the thread that pushed them.
+     */
+    protected static final String CMDLINE_CONCURRENT_EVENTS = "cmsc425.events.concurrent";
+
     public static int windowWidth;
     public static int windowHeight;
     public static int fps;
@@ -63,7 +70,9 @@ public abstract class GameApplicationDisplay implements GameApplicationRunnable
     private boolean running = true;
 
     public GameApplicationDisplay() {
-        Q.createStream(GameApplicationDisplay.RESIZE_STREAM);
+        if(System.getProperties().containsKey(CMDLINE_CONCURRENT_EVENTS)) {
+            Q.enableConcurrentMode();
+        }
         tickRate = 1.0f / 60.0f;
         keyboardManager = new KeyboardManager();
         mouseManager = new MouseManager();
@@ -91,7 +100,7 @@ public abstract class GameApplicationDisplay implements GameApplicationRunnable
              */
             initGL();
             initData();
-            Q.pushImmediate(new Pair<>(windowWidth, windowHeight), RESIZE_STREAM);
+            RESIZE_STREAM.push(windowWidth, windowHeight);
 
             mainLoop();
         }
@@ -125,12 +134,13 @@ public abstract class GameApplicationDisplay implements GameApplicationRunnable
                 TextureManager.doMaintenance();
                 CleanupManager.update();
             }
+            TextureManager.uploadPending();
 
             if(Display.getWidth() != windowWidth ||
                     Display.getHeight() != windowHeight) {
                 windowWidth = Display.getWidth();
                 windowHeight = Display.getHeight();
-                Q.pushImmediate(new Pair<>(windowWidth, windowHeight), RESIZE_STREAM);
+                RESIZE_STREAM.push(windowWidth, windowHeight);
             }
 
             Q.update();
@@ -159,6 +169,8 @@ public abstract class GameApplicationDisplay implements GameApplicationRunnable
                 run(tickRate);
                 delta -= tickRate;
             }
+            // Doesn't do anything unless TempVars.DEBUG is on.
+            TempVars.checkLeaks();
 
             /*
             Actually draw the frame to the screen, and use the high-accuracy timing function LWJGL
@@ -1,11 +1,10 @@
 package scene;
 
 import structure.geometries.Cube;
+import structure.mem.Pool;
 import structure.opengl.Vector3;
 import stuff.TempVars;
-import stuff.Utils;
 
-import java.util.LinkedList;
 import java.util.List;
 
 /**
@@ -15,14 +14,10 @@ import java.util.List;
  * Time: 7:45 PM
  */
 public class Bounds {
+    private static final int LOCAL_CACHED = 32;
     private static final int INITIAL_CACHED = 1000;
-    private static final LinkedList<Bounds> recycled = new LinkedList<Bounds>();
-
-    static {
-        for(int i = 0; i < INITIAL_CACHED; i++) {
-            recycled.push(new Bounds(Vector3.ZERO, 1.0f, 1.0f, 0.0f));
-        }
-    }
+    public static final Pool<Bounds> POOL = new Pool<>(() -> new Bounds(Vector3.ZERO, 1.0f, 1.0f, 0.0f), LOCAL_CACHED, INITIAL_CACHED)
+            .prefill(INITIAL_CACHED);
 
     public static Bounds get() {
         return get(Vector3.ZERO, 0.0f, 0.0f, 0.0f);
@@ -41,24 +36,11 @@ public class Bounds {
     }
 
     public static Bounds get(Vector3 center, float width, float height, float depth) {
-        if(!recycled.isEmpty()) {
-            final Bounds ret = recycled.pop();
-            ret.set(center, width, height, depth);
-            return ret;
-        }
-        return new Bounds(center, width, height, depth);
+        return POOL.obtain().set(center, width, height, depth);
     }
 
     public static void recycle(Bounds b) {
-        if(recycled.size() > INITIAL_CACHED) {
-            double result = Math.abs(Utils.random.nextGaussian());
-            if(result < 0.1) {
-                recycled.push(b);
-            }
-        }
-        else {
-            recycled.push(b);
-        }
+        POOL.free(b);
     }
 
     /* ====== STATIC METHODS END ====== */
@@ -83,12 +65,21 @@ public class Bounds {
         float back = depth == 0.0f ? center.z : center.z + depth / 2.0f;
         float top = height == 0.0f ? center.y : center.y + height / 2.0f;
         float bottom = height == 0.0f ? center.y : center.y - height / 2.0f;
-        this.leftTopBackCorner = Vector3.get(left, top, back);
-        this.rightBottomFrontCorner = Vector3.get(right, bottom, front);
+        // Bounds that come back out of the pool already have their own vectors, no need to grab new ones.
+        if(this.leftTopBackCorner == null) {
+            this.leftTopBackCorner = Vector3.get(left, top, back);
+            this.rightBottomFrontCorner = Vector3.get(right, bottom, front);
+            this.size = Vector3.get(width, depth, height);
+            this.vel = new Vector3();
+        }
+        else {
+            this.leftTopBackCorner.set(left, top, back);
+            this.rightBottomFrontCorner.set(right, bottom, front);
+            this.size.set(width, depth, height);
+            this.vel.set(0, 0, 0);
+        }
 //        System.out.println("LTB: " + leftTopBackCorner + ", RBF: " + rightBottomFrontCorner);
         this.center = center;
-        this.size = Vector3.get(width, depth, height);
-        this.vel = new Vector3();
         return this;
     }
 
@@ -253,6 +244,7 @@ public class Bounds {
         System.out.println("CENTERS: " + getCenter() + " == " + other.getCenter());
         System.out.println("ABS: " + absDistance + ", " + xAdd + ", " + yAdd + ", " + zAdd);
         if(!(absDistance.x < xAdd && absDistance.y < yAdd && absDistance.z < zAdd)) {
+            vars.release();
             return false;
         }
 
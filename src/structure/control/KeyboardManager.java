@@ -3,13 +3,12 @@ package structure.control;
 import main.GameApplicationDisplay;
 import org.lwjgl.LWJGLUtil;
 import org.lwjgl.input.Keyboard;
+import structure.event.EventStream;
 import structure.event.SubscriptionToken;
 import stuff.UIDGenerator;
 
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.LinkedList;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Created with IntelliJ IDEA.
@@ -40,8 +39,8 @@ public class KeyboardManager {
         }
     }
 
-    public static final String PRESS_STREAM = "keyPress";
-    public static final String RELEASE_STREAM = "keyRelease";
+    public static final EventStream<KeyboardEvent> PRESS_STREAM = new EventStream<>();
+    public static final EventStream<KeyboardEvent> RELEASE_STREAM = new EventStream<>();
 
     protected KeyboardEvent tmpEvent = new KeyboardEvent(0, false, false, false, false, false);
     protected boolean leftShiftPressed = false;
@@ -54,8 +53,6 @@ public class KeyboardManager {
     protected boolean rightMetaPressed = false;
 
     public KeyboardManager() {
-        GameApplicationDisplay.Q.createStream(PRESS_STREAM);
-        GameApplicationDisplay.Q.createStream(RELEASE_STREAM);
         GameApplicationDisplay.Q.subscribeToUpdates(this::update);
     }
 
@@ -134,86 +131,67 @@ public class KeyboardManager {
     public void pushEvent(KeyboardEvent event) {
         checkPressedModifiers(event.key, event.pushed);
         if(event.pushed) {
-            GameApplicationDisplay.Q.pushImmediate(event, PRESS_STREAM);
+            PRESS_STREAM.push(event);
         }
         else {
-            GameApplicationDisplay.Q.pushImmediate(event, RELEASE_STREAM);
+            RELEASE_STREAM.push(event);
         }
     }
 
     public SubscriptionToken listen(Consumer<KeyboardEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                UIDGenerator.getUid(),
-                (e) -> {
-                    listener.accept((KeyboardEvent)e);
-                    return ((KeyboardEvent)e).isConsumed();
-                },
-                KeyboardManager.PRESS_STREAM, KeyboardManager.RELEASE_STREAM
-        );
+        return listen(UIDGenerator.getUid(), listener);
     }
 
     public SubscriptionToken listen(long uid, Consumer<KeyboardEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                uid,
-                (e) -> {
-                    listener.accept((KeyboardEvent)e);
-                    return ((KeyboardEvent)e).isConsumed();
-                },
-                KeyboardManager.PRESS_STREAM, KeyboardManager.RELEASE_STREAM
+        Predicate<KeyboardEvent> subscriber = (e) -> {
+            listener.accept(e);
+            return e.isConsumed();
+        };
+        return SubscriptionToken.combine(
+                PRESS_STREAM.subscribe(uid, subscriber),
+                RELEASE_STREAM.subscribe(uid, subscriber)
         );
     }
 
     public SubscriptionToken listenFor(Consumer<KeyboardEvent> listener, int key) {
-        return GameApplicationDisplay.Q.subscribe(
-                UIDGenerator.getUid(),
-                (e) -> ((KeyboardEvent)e).key == key,
-                (e) -> {
-                    listener.accept((KeyboardEvent)e);
-                    return ((KeyboardEvent)e).isConsumed();
-                },
-                KeyboardManager.PRESS_STREAM, KeyboardManager.RELEASE_STREAM
-        );
+        return listenFor(UIDGenerator.getUid(), listener, key);
     }
 
     public SubscriptionToken listenFor(long uid, Consumer<KeyboardEvent> listener, int key) {
-        return GameApplicationDisplay.Q.subscribe(
-                uid,
-                (e) -> ((KeyboardEvent)e).key == key,
-                (e) -> {
-                    listener.accept((KeyboardEvent)e);
-                    return ((KeyboardEvent)e).isConsumed();
-                },
-                KeyboardManager.PRESS_STREAM, KeyboardManager.RELEASE_STREAM
+        Predicate<KeyboardEvent> subscriber = (e) -> {
+            if(e.key != key) {
+                return false;
+            }
+            listener.accept(e);
+            return e.isConsumed();
+        };
+        return SubscriptionToken.combine(
+                PRESS_STREAM.subscribe(uid, subscriber),
+                RELEASE_STREAM.subscribe(uid, subscriber)
         );
     }
 
     public SubscriptionToken listenFor(Consumer<KeyboardEvent> listener, boolean pressed, int... keys) {
-        return GameApplicationDisplay.Q.subscribe(
-                UIDGenerator.getUid(),
-                /*
-                TODO: Refactor later to not do all this crazy stream stuff?
-                 */
-                (e) -> Arrays.stream(keys).anyMatch((key) -> ((KeyboardEvent)e).key == key),
-                (e) -> {
-                    listener.accept((KeyboardEvent)e);
-                    return ((KeyboardEvent)e).isConsumed();
-                },
-                pressed ? KeyboardManager.PRESS_STREAM : KeyboardManager.RELEASE_STREAM
-        );
+        Predicate<KeyboardEvent> subscriber = (e) -> {
+            for(int key : keys) {
+                if(e.key == key) {
+                    listener.accept(e);
+                    return e.isConsumed();
+                }
+            }
+            return false;
+        };
+        return (pressed ? PRESS_STREAM : RELEASE_STREAM).subscribe(UIDGenerator.getUid(), subscriber);
     }
 
     public SubscriptionToken listenFor(long uid, Consumer<KeyboardEvent> listener, int key, boolean pressed) {
-        return GameApplicationDisplay.Q.subscribe(
-                uid,
-                (e) -> {
-                    KeyboardEvent ke = (KeyboardEvent)e;
-                    return ke.key == key;
-                },
-                (e) -> {
-                    listener.accept((KeyboardEvent)e);
-                    return ((KeyboardEvent)e).isConsumed();
-                },
-                pressed ? KeyboardManager.PRESS_STREAM : KeyboardManager.RELEASE_STREAM
-        );
+        Predicate<KeyboardEvent> subscriber = (e) -> {
+            if(e.key != key) {
+                return false;
+            }
+            listener.accept(e);
+            return e.isConsumed();
+        };
+        return (pressed ? PRESS_STREAM : RELEASE_STREAM).subscribe(uid, subscriber);
     }
 }
@@ -2,13 +2,12 @@ package structure.control;
 
 import main.GameApplicationDisplay;
 import org.lwjgl.input.Mouse;
+import structure.event.EventStream;
 import structure.event.SubscriptionToken;
 import stuff.UIDGenerator;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 /**
  * Created with IntelliJ IDEA.
@@ -18,17 +17,14 @@ import java.util.function.Consumer;
  * License: MIT
  */
 public class MouseManager {
-    public static final String PRESS_STREAM = "mousePress";
-    public static final String RELEASE_STREAM = "mouseRelease";
-    public static final String MOVE_STREAM = "mouseMove";
+    public static final EventStream<MouseEvent> PRESS_STREAM = new EventStream<>();
+    public static final EventStream<MouseEvent> RELEASE_STREAM = new EventStream<>();
+    public static final EventStream<MouseEvent> MOVE_STREAM = new EventStream<>();
 
     private MouseEvent tmpEvent;
 
     public MouseManager() {
         GameApplicationDisplay.Q.subscribeToUpdates(this::update);
-        GameApplicationDisplay.Q.createStream(MouseManager.PRESS_STREAM);
-        GameApplicationDisplay.Q.createStream(MouseManager.RELEASE_STREAM);
-        GameApplicationDisplay.Q.createStream(MouseManager.MOVE_STREAM);
 
         tmpEvent = new MouseEvent();
     }
@@ -51,85 +47,53 @@ public class MouseManager {
 
     public void pushEvent(MouseEvent event) {
         if(event.dx != 0 || event.dy != 0) {
-            GameApplicationDisplay.Q.pushImmediate(event, MouseManager.MOVE_STREAM);
+            MouseManager.MOVE_STREAM.push(event);
         }
         else if(event.rightPressed || event.leftPressed || event.middlePressed) {
-            GameApplicationDisplay.Q.pushImmediate(event, MouseManager.PRESS_STREAM);
+            MouseManager.PRESS_STREAM.push(event);
         }
         else {
-            GameApplicationDisplay.Q.pushImmediate(event, MouseManager.RELEASE_STREAM);
+            MouseManager.RELEASE_STREAM.push(event);
         }
     }
 
+    private static Predicate<MouseEvent> wrap(Consumer<MouseEvent> listener) {
+        return (me) -> {
+            listener.accept(me);
+            return me.isConsumed();
+        };
+    }
+
     public SubscriptionToken listen(Consumer<MouseEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                UIDGenerator.getUid(),
-                (e) -> {
-                    MouseEvent me = (MouseEvent)e;
-                    listener.accept(me);
-                    return me.isConsumed();
-                },
-                MouseManager.PRESS_STREAM, MouseManager.RELEASE_STREAM, MouseManager.MOVE_STREAM
-        );
+        return listen(UIDGenerator.getUid(), listener);
     }
 
     public SubscriptionToken listen(long uid, Consumer<MouseEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                uid,
-                (e) -> {
-                    MouseEvent me = (MouseEvent)e;
-                    listener.accept(me);
-                    return me.isConsumed();
-                },
-                MouseManager.PRESS_STREAM, MouseManager.RELEASE_STREAM, MouseManager.MOVE_STREAM
+        Predicate<MouseEvent> subscriber = wrap(listener);
+        return SubscriptionToken.combine(
+                MouseManager.PRESS_STREAM.subscribe(uid, subscriber),
+                MouseManager.RELEASE_STREAM.subscribe(uid, subscriber),
+                MouseManager.MOVE_STREAM.subscribe(uid, subscriber)
         );
     }
 
     public SubscriptionToken listenForMovement(Consumer<MouseEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                UIDGenerator.getUid(),
-                (e) -> {
-                    MouseEvent me = (MouseEvent)e;
-                    listener.accept(me);
-                    return me.isConsumed();
-                },
-                MouseManager.MOVE_STREAM
-        );
+        return listenForMovement(UIDGenerator.getUid(), listener);
     }
 
     public SubscriptionToken listenForMovement(long uid, Consumer<MouseEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                uid,
-                (e) -> {
-                    MouseEvent me = (MouseEvent)e;
-                    listener.accept(me);
-                    return me.isConsumed();
-                },
-                MouseManager.MOVE_STREAM
-        );
+        return MouseManager.MOVE_STREAM.subscribe(uid, wrap(listener));
     }
 
     public SubscriptionToken listenForButton(Consumer<MouseEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                UIDGenerator.getUid(),
-                (e) -> {
-                    MouseEvent me = (MouseEvent)e;
-                    listener.accept(me);
-                    return me.isConsumed();
-                },
-                MouseManager.PRESS_STREAM, MouseManager.RELEASE_STREAM
-        );
+        return listenForButton(UIDGenerator.getUid(), listener);
     }
 
     public SubscriptionToken listenForButton(long uid, Consumer<MouseEvent> listener) {
-        return GameApplicationDisplay.Q.subscribe(
-                uid,
-                (e) -> {
-                    MouseEvent me = (MouseEvent)e;
-                    listener.accept(me);
-                    return me.isConsumed();
-                },
-                MouseManager.PRESS_STREAM, MouseManager.RELEASE_STREAM
+        Predicate<MouseEvent> subscriber = wrap(listener);
+        return SubscriptionToken.combine(
+                MouseManager.PRESS_STREAM.subscribe(uid, subscriber),
+                MouseManager.RELEASE_STREAM.subscribe(uid, subscriber)
         );
     }
 }
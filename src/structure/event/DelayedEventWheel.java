@@ -0,0 +1,143 @@
+package structure.event;
+
+/**
+ * Hashed timing wheel that backs EventQueue.pushLater. Events get hashed into a slot by the tick they're due
+ * on, so advancing a tick only has to look at the one slot for that tick instead of every event that's
+ * queued up. Events that are due more than a full rotation away just sit in their slot until their tick
+ * actually comes around.
+ */
+class DelayedEventWheel {
+    static final class DelayedEvent {
+        long dueTick;
+        long uid;
+        Object item;
+        Object[] descriptors;
+        DelayedEvent next;
+    }
+
+    private static final int DEFAULT_SLOTS = 512;
+    private static final int MAX_POOLED = 1 << 16;
+
+    private final DelayedEvent[] heads, tails;
+    private final int mask;
+    private long currentTick = 0;
+    private int scheduled = 0;
+
+    private DelayedEvent pool = null;
+    private int pooled = 0;
+
+    DelayedEventWheel() {
+        this(DEFAULT_SLOTS);
+    }
+
+    DelayedEventWheel(int slots) {
+        if(slots <= 0 || (slots & (slots - 1)) != 0) {
+            throw new IllegalArgumentException("Number of slots must be a positive power of two, got: " + slots);
+        }
+        heads = new DelayedEvent[slots];
+        tails = new DelayedEvent[slots];
+        mask = slots - 1;
+    }
+
+    void schedule(int updates, long uid, Object item, Object[] descriptors) {
+        /*
+        The old list-based queue never fired anything pushed with 0 (or fewer) updates, since the counter
+        was decremented before it got checked. Firing on the next update is what anyone doing that
+        actually wanted.
+         */
+        long due = currentTick + Math.max(updates, 1);
+        DelayedEvent e = obtain();
+        e.dueTick = due;
+        e.uid = uid;
+        e.item = item;
+        e.descriptors = descriptors;
+        e.next = null;
+
+        // Append rather than prepend, so that events due on the same tick fire in the order they were pushed.
+        int slot = (int)(due & mask);
+        if(tails[slot] == null) {
+            heads[slot] = e;
+        }
+        else {
+            tails[slot].next = e;
+        }
+        tails[slot] = e;
+        scheduled++;
+    }
+
+    /**
+     * Moves the wheel forward one tick, unlinking everything that's due on the new tick.
+     * @return A chain (linked through next) of the events that are now due, in the order they were
+     * scheduled. Hand it back to {@link #recycle(DelayedEvent)} once the events have been fired.
+     */
+    DelayedEvent advance() {
+        currentTick++;
+        int slot = (int)(currentTick & mask);
+        DelayedEvent dueHead = null, dueTail = null;
+        DelayedEvent prev = null;
+        DelayedEvent e = heads[slot];
+        while(e != null) {
+            DelayedEvent next = e.next;
+            if(e.dueTick == currentTick) {
+                if(prev == null) {
+                    heads[slot] = next;
+                }
+                else {
+                    prev.next = next;
+                }
+                if(tails[slot] == e) {
+                    tails[slot] = prev;
+                }
+                e.next = null;
+                if(dueTail == null) {
+                    dueHead = e;
+                }
+                else {
+                    dueTail.next = e;
+                }
+                dueTail = e;
+                scheduled--;
+            }
+            else {
+                prev = e;
+            }
+            e = next;
+        }
+        return dueHead;
+    }
+
+    void recycle(DelayedEvent chain) {
+        while(chain != null) {
+            DelayedEvent next = chain.next;
+            chain.item = null;
+            chain.descriptors = null;
+            if(pooled < MAX_POOLED) {
+                chain.next = pool;
+                pool = chain;
+                pooled++;
+            }
+            else {
+                chain.next = null;
+            }
+            chain = next;
+        }
+    }
+
+    int size() {
+        return scheduled;
+    }
+
+    long getCurrentTick() {
+        return currentTick;
+    }
+
+    private DelayedEvent obtain() {
+        if(pool != null) {
+            DelayedEvent ret = pool;
+            pool = ret.next;
+            pooled--;
+            return ret;
+        }
+        return new DelayedEvent();
+    }
+}
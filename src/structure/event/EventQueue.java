@@ -1,7 +1,5 @@
 package structure.event;
 
-import structure.tuple.Quad;
-import structure.tuple.Triple;
 import stuff.UIDGenerator;
 
 import java.lang.ref.WeakReference;
@@ -16,6 +14,9 @@ import java.util.function.Predicate;
  * License: MIT
  */
 public class EventQueue {
+    public static final int NO_STREAM = -1;
+    public static final int DEFAULT_LANE_CAPACITY = 1024;
+
     @SuppressWarnings("unchecked")
     protected static class Subscriber {
         long uid;
@@ -37,16 +38,71 @@ public class EventQueue {
         }
     }
 
-    private final HashMap<Object, LinkedList<WeakReference<Subscriber>>> subscriptions = new HashMap<>();
-    private final Queue<Quad<Integer, Object[], Object, Long>> queuedItems = new LinkedList<>();
+    /*
+    Every descriptor gets interned into one of these when the stream is created. The subscriber array is
+    copy-on-write: pushing only ever reads whatever array is currently published, and anything that changes
+    the subscribers (subscribe, unsubscribe, pruning dead references) builds a new array under the write lock
+    and swaps it in. That way the push path never locks and never allocates.
+     */
+    protected static final class Stream {
+        final Object descriptor;
+        final int id;
+        volatile WeakReference<Subscriber>[] subscribers = emptySubscribers();
+        volatile boolean stale = false;
+
+        Stream(Object descriptor, int id) {
+            this.descriptor = descriptor;
+            this.id = id;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WeakReference<Subscriber>[] emptySubscribers() {
+        return (WeakReference<Subscriber>[])new WeakReference<?>[0];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static WeakReference<Subscriber>[] newSubscribers(int size) {
+        return (WeakReference<Subscriber>[])new WeakReference<?>[size];
+    }
+
+    private final Object streamsLock = new Object();
+    /*
+    Both of these are only ever replaced (under streamsLock), never modified in place, so readers can grab
+    whatever is currently published without taking any locks.
+     */
+    private volatile HashMap<Object, Stream> descriptorToStream = new HashMap<>();
+    private volatile Stream[] streams = new Stream[0];
+    private volatile boolean anyStale = false;
+
+    private final DelayedEventWheel queuedItems = new DelayedEventWheel();
     private final LinkedList<Runnable> updaters = new LinkedList<>();
 
+    /*
+    Concurrent mode. While owner is null everything gets dispatched right away on whatever thread pushed it,
+    same as always. Once it's set, only the owner dispatches directly and every other thread gets its own
+    ProducerLane that the owner drains during update().
+     */
+    private volatile Thread owner = null;
+    private volatile int laneCapacity = DEFAULT_LANE_CAPACITY;
+    private final Object lanesLock = new Object();
+    private volatile ProducerLane[] lanes = new ProducerLane[0];
+    private final ThreadLocal<ProducerLane> localLane = ThreadLocal.withInitial(this::registerLane);
+
     public EventQueue() { }
 
     public void createStream(Object descriptor) {
-        synchronized (subscriptions) {
-            if(!subscriptions.containsKey(descriptor)) {
-                subscriptions.put(descriptor, new LinkedList<>());
+        synchronized (streamsLock) {
+            if(!descriptorToStream.containsKey(descriptor)) {
+                Stream[] oldStreams = streams;
+                Stream stream = new Stream(descriptor, oldStreams.length);
+                Stream[] newStreams = Arrays.copyOf(oldStreams, oldStreams.length + 1);
+                newStreams[stream.id] = stream;
+                HashMap<Object, Stream> newMap = new HashMap<>(descriptorToStream);
+                newMap.put(descriptor, stream);
+
+                streams = newStreams;
+                descriptorToStream = newMap;
             }
             else {
             /*
@@ -59,18 +115,178 @@ public class EventQueue {
     }
 
     public void removeStream(Object descriptor) {
-        synchronized (subscriptions) {
-            if(subscriptions.containsKey(descriptor)) {
-                subscriptions.remove(descriptor);
+        synchronized (streamsLock) {
+            Stream stream = descriptorToStream.get(descriptor);
+            if(stream != null) {
+                /*
+                Stream ids are never handed out twice, so anything still holding on to the id of a
+                removed stream just ends up pushing into nothing, same as pushing to a descriptor that
+                doesn't exist.
+                 */
+                Stream[] newStreams = Arrays.copyOf(streams, streams.length);
+                newStreams[stream.id] = null;
+                HashMap<Object, Stream> newMap = new HashMap<>(descriptorToStream);
+                newMap.remove(descriptor);
+
+                streams = newStreams;
+                descriptorToStream = newMap;
+            }
+        }
+    }
+
+    /**
+     * Turns on concurrent mode, with the calling thread as the owner of the queue (the one that calls
+     * {@link #update()}). After this, pushes from any other thread don't dispatch right away. They get put in
+     * a queue specific to the pushing thread, and are dispatched on the owner thread during the next update,
+     * lane by lane in the order the threads first pushed something, and in push order within each lane.
+     */
+    public void enableConcurrentMode() {
+        enableConcurrentMode(DEFAULT_LANE_CAPACITY);
+    }
+
+    public void enableConcurrentMode(int laneCapacity) {
+        this.laneCapacity = laneCapacity;
+        owner = Thread.currentThread();
+    }
+
+    /**
+     * Goes back to dispatching on whatever thread pushes. Anything still sitting in a lane gets delivered
+     * before this returns, so it needs to be called from the owner thread.
+     */
+    public void disableConcurrentMode() {
+        if(owner != null && owner != Thread.currentThread()) {
+            throw new IllegalStateException("Concurrent mode can only be disabled from the thread that owns the queue");
+        }
+        drainLanes();
+        owner = null;
+    }
+
+    public boolean isConcurrent() {
+        return owner != null;
+    }
+
+    private boolean isForeignThread() {
+        Thread o = owner;
+        return o != null && o != Thread.currentThread();
+    }
+
+    private ProducerLane registerLane() {
+        ProducerLane lane = new ProducerLane(Thread.currentThread(), laneCapacity);
+        synchronized (lanesLock) {
+            ProducerLane[] updated = Arrays.copyOf(lanes, lanes.length + 1);
+            updated[lanes.length] = lane;
+            lanes = updated;
+        }
+        return lane;
+    }
+
+    private void drainLanes() {
+        ProducerLane[] current = lanes;
+        boolean anyAbandoned = false;
+        for(ProducerLane lane : current) {
+            lane.drain(this);
+            anyAbandoned |= lane.isAbandoned();
+        }
+        if(anyAbandoned) {
+            synchronized (lanesLock) {
+                ProducerLane[] updated = new ProducerLane[lanes.length];
+                int kept = 0;
+                for(ProducerLane lane : lanes) {
+                    if(!lane.isAbandoned()) {
+                        updated[kept++] = lane;
+                    }
+                }
+                lanes = Arrays.copyOf(updated, kept);
+            }
+        }
+    }
+
+    void deliverFromLane(byte kind, int streamId, Object target, long uid, Object item, int delay) {
+        if(kind == ProducerLane.KIND_STREAM) {
+            Stream[] current = streams;
+            if(streamId >= 0 && streamId < current.length && current[streamId] != null) {
+                dispatch(current[streamId], uid, item);
+            }
+        }
+        else if(kind == ProducerLane.KIND_DESCRIPTOR) {
+            Stream stream = descriptorToStream.get(target);
+            if(stream != null) {
+                dispatch(stream, uid, item);
             }
         }
+        else if(delay > 0) {
+            synchronized (queuedItems) {
+                queuedItems.schedule(delay, uid, item, (Object[])target);
+            }
+        }
+        else {
+            HashMap<Object, Stream> lookup = descriptorToStream;
+            for(Object descriptor : (Object[])target) {
+                Stream stream = lookup.get(descriptor);
+                if(stream != null) {
+                    dispatch(stream, uid, item);
+                }
+            }
+        }
+    }
+
+    /**
+     * Resolves a stream descriptor to the integer id it was interned as when the stream was created. Pushing
+     * by id skips the descriptor lookup entirely, so anything that pushes a lot should look the id up once and
+     * hang on to it.
+     * @return The id of the stream, or {@link #NO_STREAM} if no stream exists for the descriptor.
+     */
+    public int getStreamId(Object descriptor) {
+        Stream stream = descriptorToStream.get(descriptor);
+        return stream == null ? NO_STREAM : stream.id;
     }
 
     private void addSubscriber(Subscriber s, Object[] descriptors) {
-        for(Object descriptor : descriptors) {
-            synchronized (subscriptions) {
-                if(subscriptions.containsKey(descriptor)) {
-                    subscriptions.get(descriptor).add(new WeakReference<>(s));
+        synchronized (streamsLock) {
+            for(Object descriptor : descriptors) {
+                Stream stream = descriptorToStream.get(descriptor);
+                if(stream != null) {
+                    WeakReference<Subscriber>[] old = stream.subscribers;
+                    WeakReference<Subscriber>[] updated = Arrays.copyOf(old, old.length + 1);
+                    updated[old.length] = new WeakReference<>(s);
+                    stream.subscribers = updated;
+                }
+            }
+        }
+    }
+
+    private void removeSubscriber(Subscriber s, Object descriptor) {
+        synchronized (streamsLock) {
+            Stream stream = descriptorToStream.get(descriptor);
+            if(stream != null) {
+                stream.subscribers = copyWithout(stream.subscribers, s);
+            }
+        }
+    }
+
+    /*
+    Copies the array without the given subscriber, and without any subscribers that have already been
+    garbage collected. Passing null for the subscriber just prunes. Must be called with streamsLock held.
+     */
+    private static WeakReference<Subscriber>[] copyWithout(WeakReference<Subscriber>[] old, Subscriber s) {
+        int kept = 0;
+        WeakReference<Subscriber>[] updated = newSubscribers(old.length);
+        for(WeakReference<Subscriber> wref : old) {
+            Subscriber sref = wref.get();
+            if(sref != null && sref != s) {
+                updated[kept++] = wref;
+            }
+        }
+        return kept == old.length ? old : Arrays.copyOf(updated, kept);
+    }
+
+    private void pruneStale() {
+        synchronized (streamsLock) {
+            anyStale = false;
+            for(Stream stream : streams) {
+                if(stream != null && stream.stale) {
+                    stream.stale = false;
+                    stream.subscribers = copyWithout(stream.subscribers, null);
                 }
             }
         }
@@ -84,25 +300,7 @@ public class EventQueue {
         SubscriptionToken ret = new SubscriptionToken(
                 streams,
                 s,
-                (stream) -> {
-                    synchronized (subscriptions) {
-                        if(subscriptions.containsKey(stream)) {
-                            for(Iterator<WeakReference<Subscriber>> it = subscriptions.get(stream).iterator(); it.hasNext();) {
-                                WeakReference<Subscriber> wref = it.next();
-                                Subscriber sref = wref.get();
-                                if(sref != null) {
-                                    if(sref.equals(s)) {
-                                        it.remove();
-                                        break;
-                                    }
-                                }
-                                else {
-                                    it.remove();
-                                }
-                            }
-                        }
-                    }
-                }
+                (stream) -> removeSubscriber(s, stream)
         );
         return ret;
     }
@@ -131,16 +329,32 @@ public class EventQueue {
                 r.run();
             }
         }
+        if(lanes.length > 0) {
+            drainLanes();
+        }
+        /*
+        Only the events actually due this update get touched. They're unlinked while holding the lock, but
+        fired after letting go of it, so subscribers are free to pushLater from inside their callbacks.
+         */
+        DelayedEventWheel.DelayedEvent due;
         synchronized (queuedItems) {
-            for(Iterator<Quad<Integer, Object[], Object, Long>> it = queuedItems.iterator(); it.hasNext();) {
-                Quad<Integer, Object[], Object, Long> queuedItem = it.next();
-                queuedItem.unus--;
-                if(queuedItem.unus == 0) {
-                    pushImmediate(queuedItem.quattuor, queuedItem.tres, queuedItem.duo);
-                    it.remove();
-                }
+            due = queuedItems.advance();
+        }
+        if(due != null) {
+            for(DelayedEventWheel.DelayedEvent e = due; e != null; e = e.next) {
+                pushImmediateTo(e.uid, e.item, e.descriptors);
+            }
+            synchronized (queuedItems) {
+                queuedItems.recycle(due);
             }
         }
+        /*
+        Pushing can't clean up subscribers that got garbage collected (that would mean writing to the
+        subscriber arrays), so it just flags them and we do the actual cleanup once per update.
+         */
+        if(anyStale) {
+            pruneStale();
+        }
     }
 
     public void subscribeToUpdates(Runnable r) {
@@ -155,80 +369,125 @@ public class EventQueue {
         }
     }
 
+    public void pushImmediate(Object item, Object descriptor) {
+        pushImmediateTo(UIDGenerator.NULL_ID, item, descriptor);
+    }
+
     public void pushImmediate(Object item, Object... descriptors) {
         pushImmediateTo(UIDGenerator.NULL_ID, item, descriptors);
     }
 
+    public void pushImmediateTo(long uid, Object item, Object descriptor) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_DESCRIPTOR, NO_STREAM, descriptor, uid, item, 0);
+            return;
+        }
+        Stream stream = descriptorToStream.get(descriptor);
+        if(stream != null) {
+            dispatch(stream, uid, item);
+        }
+    }
+
     public void pushImmediateTo(long uid, Object item, Object... descriptors) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_DESCRIPTORS, NO_STREAM, descriptors, uid, item, 0);
+            return;
+        }
+        HashMap<Object, Stream> lookup = descriptorToStream;
         for(Object descriptor : descriptors) {
-            synchronized (subscriptions) {
-                if(subscriptions.containsKey(descriptor)) {
-                    for(Iterator<WeakReference<Subscriber>> it = subscriptions.get(descriptor).iterator(); it.hasNext();) {
-                        WeakReference<Subscriber> wref = it.next();
-                        /*
-                        Note that the sref (if it exists) CANNOT be garbage collected while
-                        the (hard) reference is held here. It's best to do it this way, so that
-                        we don't check for wref.get() != null, then it gets gced before it gets
-                        used.
-                         */
-                        Subscriber sref = wref.get();
-                        if(sref != null) {
-                            if(sref.filter != null) {
-                                if(item == null) {
-                                    if(uid == UIDGenerator.NULL_ID || uid == sref.uid) {
-                                        if(sref.subscriber.test(item)) {
-                                            break;
-                                        }
-                                    }
-                                }
-                                else {
-                                    if(uid == UIDGenerator.NULL_ID || uid == sref.uid) {
-                                        if(sref.filter.test(item)) {
-                                            if(sref.subscriber.test(item)) {
-                                                break;
-                                            }
-                                        }
-                                    }
-                                }
-                            }
-                            else {
-                                if(uid == UIDGenerator.NULL_ID || uid == sref.uid) {
-                                    if(sref.subscriber.test(item)) {
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        else {
-                            it.remove();
-                        }
-                    }
-                }
+            Stream stream = lookup.get(descriptor);
+            if(stream != null) {
+                dispatch(stream, uid, item);
+            }
+        }
+    }
+
+    /**
+     * Same as {@link #pushImmediate(Object, Object)}, but pushes to a stream id previously resolved
+     * with {@link #getStreamId(Object)}.
+     */
+    public void pushImmediateStream(int streamId, Object item) {
+        pushImmediateStreamTo(streamId, UIDGenerator.NULL_ID, item);
+    }
+
+    public void pushImmediateStreamTo(int streamId, long uid, Object item) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_STREAM, streamId, null, uid, item, 0);
+            return;
+        }
+        Stream[] current = streams;
+        if(streamId >= 0 && streamId < current.length) {
+            Stream stream = current[streamId];
+            if(stream != null) {
+                dispatch(stream, uid, item);
+            }
+        }
+    }
+
+    private void dispatch(Stream stream, long uid, Object item) {
+        WeakReference<Subscriber>[] subscribers = stream.subscribers;
+        for(WeakReference<Subscriber> wref : subscribers) {
+            /*
+            Note that the sref (if it exists) CANNOT be garbage collected while
+            the (hard) reference is held here. It's best to do it this way, so that
+            we don't check for wref.get() != null, then it gets gced before it gets
+            used.
+             */
+            Subscriber sref = wref.get();
+            if(sref == null) {
+                stream.stale = true;
+                anyStale = true;
+                continue;
+            }
+            if(uid != UIDGenerator.NULL_ID && uid != sref.uid) {
+                continue;
+            }
+            if(sref.filter != null && item != null && !sref.filter.test(item)) {
+                continue;
+            }
+            if(sref.subscriber.test(item)) {
+                break;
             }
         }
     }
 
     public void pushLater(int updates, Object... descriptors) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_DESCRIPTORS, NO_STREAM, descriptors, UIDGenerator.NULL_ID, null, Math.max(updates, 1));
+            return;
+        }
         synchronized (queuedItems) {
-            queuedItems.add(new Quad<>(updates, descriptors, null, UIDGenerator.NULL_ID));
+            queuedItems.schedule(updates, UIDGenerator.NULL_ID, null, descriptors);
         }
     }
 
     public void pushLater(Object item, int updates, Object... descriptors) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_DESCRIPTORS, NO_STREAM, descriptors, UIDGenerator.NULL_ID, item, Math.max(updates, 1));
+            return;
+        }
         synchronized (queuedItems) {
-            queuedItems.add(new Quad<>(updates, descriptors, item, UIDGenerator.NULL_ID));
+            queuedItems.schedule(updates, UIDGenerator.NULL_ID, item, descriptors);
         }
     }
 
     public void pushLaterTo(int updates, long uid, Object... descriptors) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_DESCRIPTORS, NO_STREAM, descriptors, uid, null, Math.max(updates, 1));
+            return;
+        }
         synchronized (queuedItems) {
-            queuedItems.add(new Quad<>(updates, descriptors, null, uid));
+            queuedItems.schedule(updates, uid, null, descriptors);
         }
     }
 
     public void pushLaterTo(Object item, int updates, long uid, Object... descriptors) {
+        if(isForeignThread()) {
+            localLane.get().offer(ProducerLane.KIND_DESCRIPTORS, NO_STREAM, descriptors, uid, item, Math.max(updates, 1));
+            return;
+        }
         synchronized (queuedItems) {
-            queuedItems.add(new Quad<>(updates, descriptors, item, uid));
+            queuedItems.schedule(updates, uid, item, descriptors);
         }
     }
 }
@@ -0,0 +1,26 @@
+package structure.event;
+
+import stuff.UIDGenerator;
+
+import java.util.function.Predicate;
+
+/**
+ * Typed stream of events. Listeners get the event as-is, so there's no casting from Object on their end.
+ */
+public class EventStream<T> extends TypedStream<Predicate<T>> {
+    public void push(T event) {
+        pushTo(UIDGenerator.NULL_ID, event);
+    }
+
+    @SuppressWarnings("unchecked")
+    public void pushTo(long uid, T event) {
+        Subscriptions subs = subscriptions;
+        long[] uids = subs.uids;
+        Object[] listeners = subs.listeners;
+        for(int i = 0; i < listeners.length; i++) {
+            if(isTarget(uid, uids[i]) && ((Predicate<T>)listeners[i]).test(event)) {
+                break;
+            }
+        }
+    }
+}
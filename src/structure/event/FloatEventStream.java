@@ -0,0 +1,24 @@
+package structure.event;
+
+import function.FloatPredicate;
+import stuff.UIDGenerator;
+
+/**
+ * Stream of plain float events, so nothing gets boxed on the way to the listeners.
+ */
+public class FloatEventStream extends TypedStream<FloatPredicate> {
+    public void push(float value) {
+        pushTo(UIDGenerator.NULL_ID, value);
+    }
+
+    public void pushTo(long uid, float value) {
+        Subscriptions subs = subscriptions;
+        long[] uids = subs.uids;
+        Object[] listeners = subs.listeners;
+        for(int i = 0; i < listeners.length; i++) {
+            if(isTarget(uid, uids[i]) && ((FloatPredicate)listeners[i]).test(value)) {
+                break;
+            }
+        }
+    }
+}
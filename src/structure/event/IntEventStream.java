@@ -0,0 +1,25 @@
+package structure.event;
+
+import stuff.UIDGenerator;
+
+import java.util.function.IntPredicate;
+
+/**
+ * Stream of plain int events, so nothing gets boxed on the way to the listeners.
+ */
+public class IntEventStream extends TypedStream<IntPredicate> {
+    public void push(int value) {
+        pushTo(UIDGenerator.NULL_ID, value);
+    }
+
+    public void pushTo(long uid, int value) {
+        Subscriptions subs = subscriptions;
+        long[] uids = subs.uids;
+        Object[] listeners = subs.listeners;
+        for(int i = 0; i < listeners.length; i++) {
+            if(isTarget(uid, uids[i]) && ((IntPredicate)listeners[i]).test(value)) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package structure.event;
+
+import function.IntBinaryPredicate;
+import stuff.UIDGenerator;
+
+/**
+ * Stream of events made of two ints (window sizes, tile coordinates, etc), without having to allocate a Pair per event.
+ */
+public class IntPairEventStream extends TypedStream<IntBinaryPredicate> {
+    public void push(int left, int right) {
+        pushTo(UIDGenerator.NULL_ID, left, right);
+    }
+
+    public void pushTo(long uid, int left, int right) {
+        Subscriptions subs = subscriptions;
+        long[] uids = subs.uids;
+        Object[] listeners = subs.listeners;
+        for(int i = 0; i < listeners.length; i++) {
+            if(isTarget(uid, uids[i]) && ((IntBinaryPredicate)listeners[i]).test(left, right)) {
+                break;
+            }
+        }
+    }
+}
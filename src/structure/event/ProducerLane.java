@@ -0,0 +1,101 @@
+package structure.event;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single-producer, single-consumer ring buffer that holds events pushed from one background thread until
+ * the thread that owns the EventQueue gets around to draining it in update(). Each producing thread gets its
+ * own lane, so producers never contend with each other or with the main loop.
+ */
+class ProducerLane {
+    static final byte KIND_STREAM = 0;
+    static final byte KIND_DESCRIPTOR = 1;
+    static final byte KIND_DESCRIPTORS = 2;
+
+    final Thread producer;
+
+    private final int mask;
+    private final byte[] kinds;
+    private final int[] streamIds;
+    private final int[] delays;
+    private final long[] uids;
+    private final Object[] items;
+    private final Object[] targets;
+
+    /*
+    head is only ever written by the consumer and tail only by the producer. Each side publishes with
+    lazySet, which is all the ordering the other side needs to see the slot contents.
+     */
+    private final AtomicLong head = new AtomicLong(0);
+    private final AtomicLong tail = new AtomicLong(0);
+    // Producer-local cache of head, so a producer that isn't close to full never touches the consumer's line.
+    private long cachedHead = 0;
+
+    ProducerLane(Thread producer, int capacity) {
+        if(capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+            throw new IllegalArgumentException("Lane capacity must be a positive power of two, got: " + capacity);
+        }
+        this.producer = producer;
+        this.mask = capacity - 1;
+        this.kinds = new byte[capacity];
+        this.streamIds = new int[capacity];
+        this.delays = new int[capacity];
+        this.uids = new long[capacity];
+        this.items = new Object[capacity];
+        this.targets = new Object[capacity];
+    }
+
+    void offer(byte kind, int streamId, Object target, long uid, Object item, int delay) {
+        long t = tail.get();
+        if(t - cachedHead > mask) {
+            cachedHead = head.get();
+            /*
+            The main loop hasn't caught up with us. Nothing sane to do but wait for it, dropping events
+            would be much harder to track down than a background thread that stalls for a frame.
+             */
+            while(t - cachedHead > mask) {
+                Thread.yield();
+                cachedHead = head.get();
+            }
+        }
+        int slot = (int)(t & mask);
+        kinds[slot] = kind;
+        streamIds[slot] = streamId;
+        targets[slot] = target;
+        uids[slot] = uid;
+        items[slot] = item;
+        delays[slot] = delay;
+        tail.lazySet(t + 1);
+    }
+
+    /**
+     * Delivers everything that was in the lane when draining started. Anything the producer adds while
+     * we're going waits for the next update, so a chatty producer can't hold up the frame.
+     */
+    void drain(EventQueue q) {
+        long h = head.get();
+        long end = tail.get();
+        while(h < end) {
+            int slot = (int)(h & mask);
+            byte kind = kinds[slot];
+            int streamId = streamIds[slot];
+            Object target = targets[slot];
+            long uid = uids[slot];
+            Object item = items[slot];
+            int delay = delays[slot];
+            targets[slot] = null;
+            items[slot] = null;
+            h++;
+            head.lazySet(h);
+            q.deliverFromLane(kind, streamId, target, uid, item, delay);
+        }
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    boolean isAbandoned() {
+        return !producer.isAlive() && isEmpty();
+    }
+}
@@ -22,6 +22,17 @@ public class SubscriptionToken {
         this.unsubscriber = unsubscriber;
     }
 
+    public SubscriptionToken(Object stream, Consumer<Object> unsubscriber) {
+        this(new Object[] {stream}, null, unsubscriber);
+    }
+
+    /**
+     * Wraps several tokens up so that they can all be unsubscribed at once.
+     */
+    public static SubscriptionToken combine(SubscriptionToken... tokens) {
+        return new SubscriptionToken(tokens, null, (token) -> ((SubscriptionToken)token).unsubscribe());
+    }
+
     public void unsubscribe() {
         for(Object stream : streams) {
             unsubscriber.accept(stream);
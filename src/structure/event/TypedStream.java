@@ -0,0 +1,80 @@
+package structure.event;
+
+import stuff.UIDGenerator;
+
+import java.util.Arrays;
+
+/**
+ * Shared subscription handling for the typed streams (EventStream and its primitive cousins). Unlike the
+ * descriptor streams on EventQueue these hold on to their listeners strongly, so a listener sticks around
+ * until its SubscriptionToken is used to unsubscribe it. Events are dispatched on whatever thread pushes them.
+ */
+public abstract class TypedStream<L> {
+    /*
+    Immutable snapshot of who is subscribed. Subscribing and unsubscribing build a new one and swap it in,
+    so pushing never has to lock, and never sees the uids and listeners out of step with each other.
+     */
+    protected static final class Subscriptions {
+        static final Subscriptions EMPTY = new Subscriptions(new long[0], new Object[0]);
+
+        public final long[] uids;
+        public final Object[] listeners;
+
+        Subscriptions(long[] uids, Object[] listeners) {
+            this.uids = uids;
+            this.listeners = listeners;
+        }
+    }
+
+    private final Object lock = new Object();
+    protected volatile Subscriptions subscriptions = Subscriptions.EMPTY;
+
+    public SubscriptionToken subscribe(L listener) {
+        return subscribe(UIDGenerator.NULL_ID, listener);
+    }
+
+    /**
+     * Subscribes a listener that only gets events pushed to everybody, or pushed specifically to the given uid.
+     * The listener returns true when it consumed the event, which stops it from going to any listeners that
+     * subscribed after it.
+     */
+    public SubscriptionToken subscribe(long uid, L listener) {
+        synchronized (lock) {
+            Subscriptions old = subscriptions;
+            int size = old.listeners.length;
+            long[] uids = Arrays.copyOf(old.uids, size + 1);
+            Object[] listeners = Arrays.copyOf(old.listeners, size + 1);
+            uids[size] = uid;
+            listeners[size] = listener;
+            subscriptions = new Subscriptions(uids, listeners);
+        }
+        return new SubscriptionToken(this, (stream) -> unsubscribe(listener));
+    }
+
+    public void unsubscribe(Object listener) {
+        synchronized (lock) {
+            Subscriptions old = subscriptions;
+            for(int i = 0; i < old.listeners.length; i++) {
+                if(old.listeners[i] == listener) {
+                    int size = old.listeners.length;
+                    long[] uids = new long[size - 1];
+                    Object[] listeners = new Object[size - 1];
+                    System.arraycopy(old.uids, 0, uids, 0, i);
+                    System.arraycopy(old.uids, i + 1, uids, i, size - i - 1);
+                    System.arraycopy(old.listeners, 0, listeners, 0, i);
+                    System.arraycopy(old.listeners, i + 1, listeners, i, size - i - 1);
+                    subscriptions = new Subscriptions(uids, listeners);
+                    return;
+                }
+            }
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.listeners.length;
+    }
+
+    protected static boolean isTarget(long pushedTo, long subscribedAs) {
+        return pushedTo == UIDGenerator.NULL_ID || pushedTo == subscribedAs;
+    }
+}
@@ -2,9 +2,11 @@ package structure.geometries;
 
 import org.lwjgl.opengl.*;
 import scene.Bounds;
+import structure.opengl.GeometryCache;
 import structure.opengl.Mesh;
 import structure.opengl.ShaderProgram;
 import structure.opengl.Vector3;
+import structure.opengl.VertexFormat;
 import stuff.TempVars;
 import texture.Texture;
 
@@ -170,31 +172,57 @@ public class Cube extends SceneNode {
             0.0f, 0.0f, 0.0f,
             0.0f, 1.0f, 0.0f
     };
-    protected static final Mesh CUBE_MESH = new Mesh();
-
-    static {
-        CUBE_MESH.addBuffer(cubeVertices, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
-        CUBE_MESH.addBuffer(cubeColors, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
-        CUBE_MESH.addBuffer(cubeNormals, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
-    }
-
     protected Texture tex = null;
+    protected float[] colors;
+    protected int colorType;
+    protected GeometryCache.Handle geometry;
 
     public Cube(ShaderProgram prog, String uniformName, String normalsName) {
-        super(prog, uniformName, CUBE_MESH);
-        size.set(2, 2, 2);
+        this(prog, uniformName, normalsName, cubeColors, Mesh.VERTEX_3F);
     }
 
+    /*
+    All cubes with the same colors (and texture) share one Mesh through the GeometryCache, so making a lot of
+    them doesn't upload the same vertices over and over.
+     */
     public Cube(ShaderProgram prog, String uniformName, String normalsName, float[] colors, int type) {
-        super(prog, uniformName, new Mesh());
-        mesh.addBuffer(cubeVertices, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
-        mesh.addBuffer(colors, GL15.GL_STATIC_DRAW, type);
-        mesh.addBuffer(cubeNormals, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
-        size.set(2, 2, 2);
+        super(prog, uniformName, null);
+        this.colors = colors;
+        this.colorType = type;
+        this.geometry = GeometryCache.acquire(this, format(false), new float[][] {cubeVertices, colors, cubeNormals});
+        this.mesh = geometry.getMesh();
+        setSize(2, 2, 2);
     }
 
     public void addTexture(Texture tex) {
-        float[] uv = new float[] {
+        GeometryCache.Handle old = geometry;
+        geometry = GeometryCache.acquire(this, format(true),
+                new float[][] {cubeVertices, colors, cubeNormals, textureCoords(tex)});
+        mesh = geometry.getMesh();
+        old.release();
+        this.tex = tex;
+    }
+
+    /*
+    Positions stay full floats, everything else gets squashed down: colors and normals to a byte per
+    component, UVs to half floats.
+     */
+    protected VertexFormat format(boolean textured) {
+        VertexFormat ret = new VertexFormat()
+                .add(3, VertexFormat.FLOAT)
+                .add(colorType + 1, VertexFormat.NORMALIZED_UBYTE)
+                .add(3, VertexFormat.NORMALIZED_BYTE);
+        if(textured) {
+            ret.add(2, VertexFormat.HALF);
+        }
+        return ret;
+    }
+
+    /**
+     * UVs that put the whole texture on each face, in the same vertex order as cubeVertices.
+     */
+    protected static float[] textureCoords(Texture tex) {
+        return new float[] {
                 tex.getTexBottomLeftX(), tex.getTexBottomLeftY(),
                 tex.getTexBottomRightX(), tex.getTexBottomRightY(),
                 tex.getTexTopLeftX(), tex.getTexTopLeftY(),
@@ -237,8 +265,11 @@ public class Cube extends SceneNode {
                 tex.getTexBottomLeftX(), tex.getTexBottomLeftY(),
                 tex.getTexTopLeftX(), tex.getTexTopLeftY(),
         };
-        mesh.addBuffer(uv, GL15.GL_STATIC_DRAW, Mesh.VERTEX_2F);
-        this.tex = tex;
+    }
+
+    @Override
+    public Texture getTexture() {
+        return tex;
     }
 
     public List<Vector3> getNormals() {
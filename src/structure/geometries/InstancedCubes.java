@@ -0,0 +1,88 @@
+package structure.geometries;
+
+import org.lwjgl.opengl.GL15;
+import structure.opengl.InstancedMesh;
+import structure.opengl.Matrix4;
+import structure.opengl.Matrix4Batch;
+import structure.opengl.Mesh;
+import structure.opengl.ShaderProgram;
+import texture.Texture;
+
+/**
+ * Draws any number of cubes that share a shader and texture with a single instanced draw call, instead of one
+ * draw and one model upload per Cube. Cubes (or plain model matrices) are added every frame, and draw() sends
+ * all of their matrices over in one buffer and draws them.
+ *
+ * The shader needs to take the model matrix as a per-instance attribute rather than a uniform, see
+ * vertexcolor_instanced.glsl. Attributes are laid out position, color, normal, UV, then the matrix at
+ * INSTANCE_ATTRIBUTE. The UV attribute is always there (all zeroes without a texture) so that the matrix
+ * is always in the same place.
+ */
+public class InstancedCubes {
+    public static final int INSTANCE_ATTRIBUTE = 4;
+
+    protected final ShaderProgram prog;
+    protected final Texture tex;
+    protected final InstancedMesh mesh;
+    protected Matrix4Batch instances;
+
+    public InstancedCubes(ShaderProgram prog, Texture tex) {
+        this(prog, tex, 1024);
+    }
+
+    public InstancedCubes(ShaderProgram prog, Texture tex, int initialCapacity) {
+        this.prog = prog;
+        this.tex = tex;
+        this.instances = new Matrix4Batch(initialCapacity);
+        this.mesh = new InstancedMesh();
+        mesh.addBuffer(Cube.cubeVertices, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
+        mesh.addBuffer(Cube.cubeColors, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
+        mesh.addBuffer(Cube.cubeNormals, GL15.GL_STATIC_DRAW, Mesh.VERTEX_3F);
+        float[] uv = tex == null ? new float[Cube.cubeVertices.length / 3 * 2] : Cube.textureCoords(tex);
+        mesh.addBuffer(uv, GL15.GL_STATIC_DRAW, Mesh.VERTEX_2F);
+        mesh.addInstanceMatrices();
+    }
+
+    public InstancedCubes add(Cube cube) {
+        return add(cube.mat);
+    }
+
+    public InstancedCubes add(Matrix4 model) {
+        if(instances.size == instances.capacity) {
+            Matrix4Batch grown = new Matrix4Batch(Math.max(1, instances.capacity * 2));
+            System.arraycopy(instances.m, 0, grown.m, 0, instances.size * 16);
+            grown.size = instances.size;
+            instances = grown;
+        }
+        instances.add(model);
+        return this;
+    }
+
+    /**
+     * Draws every cube added since the last draw, then forgets them so the next frame starts empty.
+     */
+    public void draw() {
+        if(instances.size == 0) {
+            return;
+        }
+        mesh.setInstances(instances);
+        prog.use();
+        if(tex != null) {
+            tex.bind(0);
+        }
+        mesh.draw();
+        instances.clear();
+    }
+
+    public int size() {
+        return instances.size;
+    }
+
+    public InstancedMesh getMesh() {
+        return mesh;
+    }
+
+    public void destroy() {
+        mesh.destroy();
+    }
+}
@@ -3,6 +3,8 @@ package structure.geometries;
 import main.GameApplicationDisplay;
 import scene.Bounds;
 import structure.opengl.*;
+import structure.tree.Collidable;
+import texture.Texture;
 
 import java.util.ArrayList;
 
@@ -12,13 +14,17 @@ import java.util.ArrayList;
  * Date: 3/27/13
  * Time: 1:48 PM
  */
-public class SceneNode {
+public class SceneNode implements Collidable<Bounds> {
     protected Mesh mesh;
     protected ArrayList<SceneNode> children;
     protected Vector3 pos = new Vector3(), size = new Vector3(1, 1, 1), scale = new Vector3(1, 1, 1), rotation = new Vector3(0, 0, 0);
     protected Matrix4 mat = new Matrix4();
+    // Kept up to date by refreshMatrix(), so the trees and the player can call get() every tick without any garbage.
+    protected final Bounds bounds = new Bounds(pos, 1.0f, 1.0f, 1.0f);
     protected String uniformName;
-
+    // Handle for uniformName, along with the program it was looked up in.
+    protected ShaderProgram uniformProgram;
+    protected int uniformHandle;
 
     public SceneNode(ShaderProgram prog, String uniformName, Mesh mesh) {
         this.uniformName = uniformName;
@@ -34,6 +40,26 @@ public class SceneNode {
         GameApplicationDisplay.stopUsingShader();
     }
 
+    /**
+     * Hands this node's draw to the queue instead of drawing it right away.
+     */
+    public void submit(RenderQueue queue) {
+        ShaderProgram prog = GameApplicationDisplay.useShader();
+        if(prog != uniformProgram) {
+            uniformProgram = prog;
+            uniformHandle = prog.getUniform(uniformName);
+        }
+        queue.submit(prog, uniformHandle, mat, getTexture(), mesh);
+        GameApplicationDisplay.stopUsingShader();
+    }
+
+    /**
+     * Texture that needs to be bound when drawing this node, if any.
+     */
+    public Texture getTexture() {
+        return null;
+    }
+
     public SceneNode setPosition(float x, float y, float z) {
         pos.set(x, y, z);
         refreshMatrix();
@@ -94,11 +120,33 @@ public class SceneNode {
         return new Vector3(rotation);
     }
 
+    /**
+     * A new copy of the bounds, free to be changed. get() hands out the node's own one instead.
+     */
     public Bounds getBounds() {
         Vector3 actualSize = getSize();
         return new Bounds(pos, actualSize);
     }
 
+    @Override
+    public boolean collidesWith(Collidable<Bounds> c) {
+        Bounds mine = bounds, theirs = c.get();
+        return Math.min(mine.getLeft(), mine.getRight()) <= Math.max(theirs.getLeft(), theirs.getRight()) &&
+                Math.max(mine.getLeft(), mine.getRight()) >= Math.min(theirs.getLeft(), theirs.getRight()) &&
+                Math.min(mine.getBottom(), mine.getTop()) <= Math.max(theirs.getBottom(), theirs.getTop()) &&
+                Math.max(mine.getBottom(), mine.getTop()) >= Math.min(theirs.getBottom(), theirs.getTop()) &&
+                Math.min(mine.getFront(), mine.getBack()) <= Math.max(theirs.getFront(), theirs.getBack()) &&
+                Math.max(mine.getFront(), mine.getBack()) >= Math.min(theirs.getFront(), theirs.getBack());
+    }
+
+    /**
+     * The node's own bounds, updated whenever it moves or changes size. Don't change it.
+     */
+    @Override
+    public Bounds get() {
+        return bounds;
+    }
+
     public Matrix4 getMatrix() {
         return new Matrix4(mat);
     }
@@ -111,6 +159,7 @@ public class SceneNode {
         mat = Matrix4.rotate(mat, rotation.x, rotation.y, rotation.z, new Matrix4());
         mat.translateLocal(-scaleHalfSize.x, -scaleHalfSize.y, scaleHalfSize.z);
         mat.scaleLocal(scale.x, scale.y, scale.z);
+        bounds.set(pos, size.x * scale.x, size.y * scale.y, size.z * scale.z);
     }
 
     public void addChild(SceneNode child) {
@@ -0,0 +1,164 @@
+package structure.mem;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded object pool. Every thread keeps a small array-backed stack of free objects that only it touches,
+ * and trades objects with one shared stack in batches when its own runs dry or fills up. Anything freed when
+ * both are full is simply dropped for the GC to deal with, so the pool never holds on to more than its
+ * capacities say it will.
+ */
+public class Pool<T> {
+    private final class LocalCache {
+        final Object[] items = new Object[localCapacity];
+        int size = 0;
+    }
+
+    private final Supplier<T> factory;
+    private final int localCapacity, sharedCapacity;
+    private final ThreadLocal<LocalCache> local = ThreadLocal.withInitial(LocalCache::new);
+
+    private final Object sharedLock = new Object();
+    private final Object[] shared;
+    private int sharedSize = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder pooled = new LongAdder();
+
+    /**
+     * @param factory Used to make a new object whenever the pool doesn't have one to hand out.
+     * @param localCapacity Most objects any one thread keeps to itself.
+     * @param sharedCapacity Most objects kept in the shared stack that all threads refill from.
+     */
+    public Pool(Supplier<T> factory, int localCapacity, int sharedCapacity) {
+        if(localCapacity < 2) {
+            throw new IllegalArgumentException("Local capacity needs to be at least 2, got: " + localCapacity);
+        }
+        if(sharedCapacity < 0) {
+            throw new IllegalArgumentException("Shared capacity can't be negative, got: " + sharedCapacity);
+        }
+        this.factory = factory;
+        this.localCapacity = localCapacity;
+        this.sharedCapacity = sharedCapacity;
+        this.shared = new Object[sharedCapacity];
+    }
+
+    /**
+     * Fills the shared stack with up to count new objects, so that the first few frames don't all miss.
+     */
+    public Pool<T> prefill(int count) {
+        synchronized (sharedLock) {
+            while(count-- > 0 && sharedSize < sharedCapacity) {
+                shared[sharedSize++] = factory.get();
+                pooled.increment();
+            }
+        }
+        return this;
+    }
+
+    @SuppressWarnings("unchecked")
+    public T obtain() {
+        LocalCache cache = local.get();
+        if(cache.size == 0) {
+            refill(cache);
+        }
+        if(cache.size > 0) {
+            T ret = (T)cache.items[--cache.size];
+            cache.items[cache.size] = null;
+            hits.increment();
+            pooled.decrement();
+            return ret;
+        }
+        misses.increment();
+        return factory.get();
+    }
+
+    public void free(T obj) {
+        if(obj == null) {
+            return;
+        }
+        LocalCache cache = local.get();
+        if(cache.size == localCapacity) {
+            spill(cache);
+        }
+        cache.items[cache.size++] = obj;
+        pooled.increment();
+    }
+
+    // Grab up to half a local cache worth of objects from the shared stack.
+    private void refill(LocalCache cache) {
+        synchronized (sharedLock) {
+            int toMove = Math.min(localCapacity / 2, sharedSize);
+            for(int i = 0; i < toMove; i++) {
+                cache.items[cache.size++] = shared[--sharedSize];
+                shared[sharedSize] = null;
+            }
+        }
+    }
+
+    // Hand half of a full local cache to the shared stack, dropping whatever doesn't fit.
+    private void spill(LocalCache cache) {
+        int toMove = localCapacity / 2;
+        int moved = 0;
+        synchronized (sharedLock) {
+            while(moved < toMove && sharedSize < sharedCapacity) {
+                shared[sharedSize++] = cache.items[--cache.size];
+                cache.items[cache.size] = null;
+                moved++;
+            }
+        }
+        int toDrop = toMove - moved;
+        for(int i = 0; i < toDrop; i++) {
+            cache.items[--cache.size] = null;
+        }
+        if(toDrop > 0) {
+            dropped.add(toDrop);
+            pooled.add(-toDrop);
+        }
+    }
+
+    /**
+     * Number of times obtain() was able to hand back a pooled object.
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of times obtain() had to make a new object.
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of freed objects that got thrown away because the pool was already full.
+     */
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * Number of objects currently sitting in the pool, across every thread's cache and the shared stack.
+     */
+    public long getSize() {
+        return pooled.sum();
+    }
+
+    public int getLocalCapacity() {
+        return localCapacity;
+    }
+
+    public int getSharedCapacity() {
+        return sharedCapacity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Pool{size: %d, hits: %d, misses: %d, dropped: %d}",
+                getSize(), getHits(), getMisses(), getDropped());
+    }
+}
@@ -0,0 +1,164 @@
+package structure.opengl;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Math over whole batches of vectors, matrices and quaternions at once. Each function gives exactly the same
+ * answer as calling the matching per-object function in Matrix4 or Quaternion in a loop, but walks flat float
+ * arrays front to back instead of chasing a pointer per object, and never touches the Vector3 pool.
+ *
+ * Outputs are allowed to be the same batch as the inputs, except for mult where out can't also be a or b.
+ */
+public class BatchMath {
+    private BatchMath() {
+    }
+
+    /**
+     * Same as Matrix4.mult(mat, v, result) for the first count vectors of in, written to out.
+     */
+    public static Vector3Batch transformPositions(Matrix4 mat, Vector3Batch in, Vector3Batch out, int count) {
+        checkCount(count, in.capacity, out.capacity);
+        final float m00 = mat.m00, m01 = mat.m01, m02 = mat.m02, m03 = mat.m03,
+                m10 = mat.m10, m11 = mat.m11, m12 = mat.m12, m13 = mat.m13,
+                m20 = mat.m20, m21 = mat.m21, m22 = mat.m22, m23 = mat.m23;
+        final float[] ix = in.x, iy = in.y, iz = in.z;
+        final float[] ox = out.x, oy = out.y, oz = out.z;
+        for(int i = 0; i < count; i++) {
+            float x = ix[i], y = iy[i], z = iz[i];
+            ox[i] = m00 * x + m01 * y + m02 * z + m03;
+            oy[i] = m10 * x + m11 * y + m12 * z + m13;
+            oz[i] = m20 * x + m21 * y + m22 * z + m23;
+        }
+        out.size = Math.max(out.size, count);
+        return out;
+    }
+
+    /**
+     * Same as above, but for count positions packed as x, y, z triples, like the position buffer of a Mesh.
+     * Uses absolute gets and puts, so neither buffer's position is moved.
+     */
+    public static FloatBuffer transformPositions(Matrix4 mat, FloatBuffer in, FloatBuffer out, int count) {
+        checkCount(count * 3, in.limit(), out.limit());
+        final float m00 = mat.m00, m01 = mat.m01, m02 = mat.m02, m03 = mat.m03,
+                m10 = mat.m10, m11 = mat.m11, m12 = mat.m12, m13 = mat.m13,
+                m20 = mat.m20, m21 = mat.m21, m22 = mat.m22, m23 = mat.m23;
+        for(int i = 0, end = count * 3; i < end; i += 3) {
+            float x = in.get(i), y = in.get(i + 1), z = in.get(i + 2);
+            out.put(i, m00 * x + m01 * y + m02 * z + m03);
+            out.put(i + 1, m10 * x + m11 * y + m12 * z + m13);
+            out.put(i + 2, m20 * x + m21 * y + m22 * z + m23);
+        }
+        return out;
+    }
+
+    /**
+     * Same as Matrix4.mult(parent, b[i], out[i]) for the first count matrices of b. This is the usual
+     * "put a pile of models under one parent transform" case.
+     */
+    public static Matrix4Batch mult(Matrix4 parent, Matrix4Batch b, Matrix4Batch out, int count) {
+        checkCount(count, b.capacity, out.capacity);
+        if(b == out) {
+            throw new IllegalArgumentException("Output batch can't also be an input");
+        }
+        // Row r of the parent, by column: mRC.
+        final float a00 = parent.m00, a01 = parent.m01, a02 = parent.m02, a03 = parent.m03,
+                a10 = parent.m10, a11 = parent.m11, a12 = parent.m12, a13 = parent.m13,
+                a20 = parent.m20, a21 = parent.m21, a22 = parent.m22, a23 = parent.m23,
+                a30 = parent.m30, a31 = parent.m31, a32 = parent.m32, a33 = parent.m33;
+        final float[] bm = b.m, om = out.m;
+        for(int o = 0, end = count * 16; o < end; o += 16) {
+            // Column c of b[i] lives at o + c * 4 .. o + c * 4 + 3, rows in order.
+            for(int c = o; c < o + 16; c += 4) {
+                float b0 = bm[c], b1 = bm[c + 1], b2 = bm[c + 2], b3 = bm[c + 3];
+                om[c] = a00 * b0 + a01 * b1 + a02 * b2 + a03 * b3;
+                om[c + 1] = a10 * b0 + a11 * b1 + a12 * b2 + a13 * b3;
+                om[c + 2] = a20 * b0 + a21 * b1 + a22 * b2 + a23 * b3;
+                om[c + 3] = a30 * b0 + a31 * b1 + a32 * b2 + a33 * b3;
+            }
+        }
+        out.size = Math.max(out.size, count);
+        return out;
+    }
+
+    /**
+     * Same as Matrix4.mult(a[i], b[i], out[i]) for the first count pairs.
+     */
+    public static Matrix4Batch mult(Matrix4Batch a, Matrix4Batch b, Matrix4Batch out, int count) {
+        checkCount(count, a.capacity, b.capacity);
+        checkCount(count, out.capacity, out.capacity);
+        if(a == out || b == out) {
+            throw new IllegalArgumentException("Output batch can't also be an input");
+        }
+        final float[] am = a.m, bm = b.m, om = out.m;
+        for(int o = 0, end = count * 16; o < end; o += 16) {
+            float a00 = am[o], a10 = am[o + 1], a20 = am[o + 2], a30 = am[o + 3],
+                    a01 = am[o + 4], a11 = am[o + 5], a21 = am[o + 6], a31 = am[o + 7],
+                    a02 = am[o + 8], a12 = am[o + 9], a22 = am[o + 10], a32 = am[o + 11],
+                    a03 = am[o + 12], a13 = am[o + 13], a23 = am[o + 14], a33 = am[o + 15];
+            for(int c = o; c < o + 16; c += 4) {
+                float b0 = bm[c], b1 = bm[c + 1], b2 = bm[c + 2], b3 = bm[c + 3];
+                om[c] = a00 * b0 + a01 * b1 + a02 * b2 + a03 * b3;
+                om[c + 1] = a10 * b0 + a11 * b1 + a12 * b2 + a13 * b3;
+                om[c + 2] = a20 * b0 + a21 * b1 + a22 * b2 + a23 * b3;
+                om[c + 3] = a30 * b0 + a31 * b1 + a32 * b2 + a33 * b3;
+            }
+        }
+        out.size = Math.max(out.size, count);
+        return out;
+    }
+
+    /**
+     * Rotates v[i] by q[i] for the first count pairs. Same as Quaternion.transform(v, q, result); the
+     * quaternions are expected to be unit length.
+     */
+    public static Vector3Batch rotate(QuaternionBatch q, Vector3Batch v, Vector3Batch out, int count) {
+        checkCount(count, q.capacity, v.capacity);
+        checkCount(count, out.capacity, out.capacity);
+        final float[] qw = q.w, qx = q.x, qy = q.y, qz = q.z;
+        final float[] vx = v.x, vy = v.y, vz = v.z;
+        final float[] ox = out.x, oy = out.y, oz = out.z;
+        for(int i = 0; i < count; i++) {
+            float w = qw[i], x = qx[i], y = qy[i], z = qz[i];
+            float px = vx[i], py = vy[i], pz = vz[i];
+            float ww = w * w, xx = x * x, yy = y * y, zz = z * z;
+            float xy = 2 * x * y, xz = 2 * x * z, yz = 2 * y * z;
+            float wx = 2 * w * x, wy = 2 * w * y, wz = 2 * w * z;
+            ox[i] = px * (xx + ww - yy - zz) + py * (xy - wz) + pz * (xz + wy);
+            oy[i] = px * (wz + xy) + py * (ww - xx + yy - zz) + pz * (yz - wx);
+            oz[i] = px * (xz - wy) + py * (wx + yz) + pz * (ww - xx - yy + zz);
+        }
+        out.size = Math.max(out.size, count);
+        return out;
+    }
+
+    /**
+     * Rotates every vector by the same quaternion.
+     */
+    public static Vector3Batch rotate(Quaternion q, Vector3Batch v, Vector3Batch out, int count) {
+        checkCount(count, v.capacity, out.capacity);
+        final float w = q.w, x = q.x, y = q.y, z = q.z;
+        final float ww = w * w, xx = x * x, yy = y * y, zz = z * z;
+        final float xy = 2 * x * y, xz = 2 * x * z, yz = 2 * y * z;
+        final float wx = 2 * w * x, wy = 2 * w * y, wz = 2 * w * z;
+        final float r00 = xx + ww - yy - zz, r01 = xy - wz, r02 = xz + wy,
+                r10 = wz + xy, r11 = ww - xx + yy - zz, r12 = yz - wx,
+                r20 = xz - wy, r21 = wx + yz, r22 = ww - xx - yy + zz;
+        final float[] vx = v.x, vy = v.y, vz = v.z;
+        final float[] ox = out.x, oy = out.y, oz = out.z;
+        for(int i = 0; i < count; i++) {
+            float px = vx[i], py = vy[i], pz = vz[i];
+            ox[i] = r00 * px + r01 * py + r02 * pz;
+            oy[i] = r10 * px + r11 * py + r12 * pz;
+            oz[i] = r20 * px + r21 * py + r22 * pz;
+        }
+        out.size = Math.max(out.size, count);
+        return out;
+    }
+
+    private static void checkCount(int count, int inCapacity, int outCapacity) {
+        if(count < 0 || count > inCapacity || count > outCapacity) {
+            throw new IndexOutOfBoundsException("Batch of " + count + " doesn't fit in capacities " +
+                    inCapacity + " and " + outCapacity);
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package structure.opengl;
+
+import texture.Texture;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * RenderBackend that goes straight to OpenGL. Programs and textures go through their own use()/bind() so
+ * the bookkeeping they do about what's currently bound stays correct for code drawing outside the queue.
+ */
+public class GLRenderBackend implements RenderBackend {
+    public static final GLRenderBackend INSTANCE = new GLRenderBackend();
+
+    @Override
+    public void useProgram(ShaderProgram program) {
+        program.use();
+    }
+
+    @Override
+    public void bindTexture(Texture texture) {
+        texture.bind(0);
+    }
+
+    @Override
+    public void bindVertexArray(int vao) {
+        glBindVertexArray(vao);
+    }
+
+    @Override
+    public void setUniform(ShaderProgram program, int handle, Matrix4 m) {
+        program.setUniform(handle, m);
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        glDrawArrays(mode, first, count);
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        glDrawArraysInstanced(mode, first, count, instances);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long offset) {
+        glDrawElements(mode, count, type, offset);
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long offset, int instances) {
+        glDrawElementsInstanced(mode, count, type, offset, instances);
+    }
+}
@@ -0,0 +1,183 @@
+package structure.opengl;
+
+import structure.mem.CleanupManager;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.lwjgl.opengl.GL15.GL_STATIC_DRAW;
+
+/**
+ * Makes sure identical geometry only gets uploaded once. Geometry is looked up by its actual vertex data
+ * (plus how it's laid out), so two things that build the same arrays separately still end up sharing one
+ * Mesh, which is to say one VAO and one set of VBOs.
+ *
+ * Every acquire hands back a Handle and bumps the Mesh's reference count. The count goes back down when the
+ * handle is released, or when the owner passed to acquire gets garbage collected (through CleanupManager),
+ * and the Mesh is destroyed once nothing refers to it any more. Should only be used from the GL thread.
+ */
+public class GeometryCache {
+    /*
+    Copies of the vertex data, so that changing an array after handing it over can't quietly make the key
+    lie about what's in the VBOs. The hash is worked out once, up front.
+     */
+    private static final class Key {
+        final float[][] buffers;
+        final VertexFormat format;
+        final int usage;
+        final int hash;
+
+        Key(float[][] buffers, VertexFormat format, int usage) {
+            this.buffers = new float[buffers.length][];
+            for(int i = 0; i < buffers.length; i++) {
+                this.buffers[i] = buffers[i].clone();
+            }
+            this.format = format;
+            this.usage = usage;
+            int h = usage;
+            h = h * 31 + format.hashCode();
+            for(float[] buffer : buffers) {
+                h = h * 31 + Arrays.hashCode(buffer);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if(this == o) {
+                return true;
+            }
+            if(!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key)o;
+            return hash == other.hash && usage == other.usage && format.equals(other.format) &&
+                    Arrays.deepEquals(buffers, other.buffers);
+        }
+    }
+
+    private static final class Entry {
+        final Key key;
+        final Mesh mesh;
+        int refs = 0;
+
+        Entry(Key key, Mesh mesh) {
+            this.key = key;
+            this.mesh = mesh;
+        }
+    }
+
+    /**
+     * One reference to a cached Mesh. Releasing it more than once only counts once.
+     */
+    public static final class Handle {
+        private Entry entry;
+
+        private Handle(Entry entry) {
+            this.entry = entry;
+        }
+
+        public Mesh getMesh() {
+            return entry.mesh;
+        }
+
+        public void release() {
+            if(entry != null) {
+                GeometryCache.release(entry);
+                entry = null;
+            }
+        }
+
+        public boolean isReleased() {
+            return entry == null;
+        }
+    }
+
+    private static final Map<Key, Entry> cache = new HashMap<>();
+    private static long hits = 0, uploads = 0, evictions = 0;
+
+    public static Handle acquire(Object owner, float[][] buffers, int... dataTypes) {
+        return acquire(owner, GL_STATIC_DRAW, VertexFormat.floats(dataTypes), buffers);
+    }
+
+    public static Handle acquire(Object owner, VertexFormat format, float[][] buffers) {
+        return acquire(owner, GL_STATIC_DRAW, format, buffers);
+    }
+
+    /**
+     * Gets a Mesh with the given buffers, one per attribute in the format, in order. Uploads it (deduplicated,
+     * indexed and interleaved, see Mesh.addIndexedBuffers) if nothing identical is cached already. The
+     * format is part of what has to match, so the same data packed differently is a different Mesh.
+     *
+     * @param owner When this gets garbage collected the reference is released, if it wasn't already. Can be
+     *              null to only ever release by hand.
+     */
+    public static synchronized Handle acquire(Object owner, int usage, VertexFormat format, float[][] buffers) {
+        if(buffers.length != format.getAttributeCount()) {
+            throw new IllegalArgumentException("Need one buffer per attribute, got " + buffers.length +
+                    " buffers for " + format.getAttributeCount() + " attributes");
+        }
+        Key key = new Key(buffers, format, usage);
+        Entry entry = cache.get(key);
+        if(entry == null) {
+            Mesh mesh = new Mesh();
+            mesh.addIndexedBuffers(buffers, usage, format);
+            entry = new Entry(key, mesh);
+            cache.put(key, entry);
+            uploads++;
+        }
+        else {
+            hits++;
+        }
+        entry.refs++;
+        Handle handle = new Handle(entry);
+        if(owner != null) {
+            // Only the handle goes into the closure, never the owner, or the owner could never be collected.
+            CleanupManager.runOnGc(owner, handle::release);
+        }
+        return handle;
+    }
+
+    private static synchronized void release(Entry entry) {
+        entry.refs--;
+        if(entry.refs == 0) {
+            cache.remove(entry.key);
+            entry.mesh.destroy();
+            evictions++;
+        }
+    }
+
+    /**
+     * Number of distinct meshes currently cached.
+     */
+    public static synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Number of acquires that found their geometry already uploaded.
+     */
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of acquires that had to upload new geometry.
+     */
+    public static synchronized long getUploads() {
+        return uploads;
+    }
+
+    /**
+     * Number of meshes destroyed because nothing referred to them any more.
+     */
+    public static synchronized long getEvictions() {
+        return evictions;
+    }
+}
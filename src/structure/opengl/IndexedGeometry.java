@@ -0,0 +1,329 @@
+package structure.opengl;
+
+import java.util.Arrays;
+
+/**
+ * Turns plain per-vertex buffers (the kind passed to Mesh.addBuffer, where every triangle lists its own
+ * vertices) into deduplicated buffers plus an index list, and reorders things so the GPU's post-transform
+ * vertex cache gets as many hits as possible. None of this touches GL.
+ */
+public class IndexedGeometry {
+    // Tuning values from Tom Forsyth's "Linear-Speed Vertex Cache Optimisation".
+    private static final int CACHE_SIZE = 32;
+    private static final float CACHE_DECAY_POWER = 1.5f;
+    private static final float LAST_TRI_SCORE = 0.75f;
+    private static final float VALENCE_BOOST_SCALE = 2.0f;
+    private static final float VALENCE_BOOST_POWER = 0.5f;
+
+    public final float[][] buffers;
+    public final int[] components;
+    public final int[] indices;
+    public final int vertexCount;
+
+    public IndexedGeometry(float[][] buffers, int[] components, int[] indices, int vertexCount) {
+        this.buffers = buffers;
+        this.components = components;
+        this.indices = indices;
+        this.vertexCount = vertexCount;
+    }
+
+    /**
+     * Merges vertices that are identical in every buffer. A vertex is row i of all the buffers together, so
+     * two corners at the same position with different normals stay separate.
+     *
+     * @param components Number of floats per vertex in each buffer.
+     */
+    public static IndexedGeometry deduplicate(float[][] buffers, int[] components) {
+        if(buffers.length == 0 || buffers.length != components.length) {
+            throw new IllegalArgumentException("Need at least one buffer, and one component count per buffer");
+        }
+        int rows = buffers[0].length / components[0];
+        for(int b = 1; b < buffers.length; b++) {
+            if(buffers[b].length / components[b] != rows) {
+                throw new IllegalStateException("Number of rows in buffers don't match: " + rows + " vs " +
+                        (buffers[b].length / components[b]));
+            }
+        }
+
+        float[][] unique = new float[buffers.length][];
+        for(int b = 0; b < buffers.length; b++) {
+            unique[b] = new float[buffers[b].length];
+        }
+        int[] indices = new int[rows];
+        // Open addressing table of (unique vertex + 1), 0 meaning empty.
+        int tableSize = Integer.highestOneBit(Math.max(rows, 1) * 2 - 1) << 1;
+        int mask = tableSize - 1;
+        int[] table = new int[tableSize];
+        int uniqueCount = 0;
+
+        for(int row = 0; row < rows; row++) {
+            int slot = hashRow(buffers, components, row) & mask;
+            int found = -1;
+            while(table[slot] != 0) {
+                int candidate = table[slot] - 1;
+                if(rowsEqual(buffers, components, row, unique, candidate)) {
+                    found = candidate;
+                    break;
+                }
+                slot = (slot + 1) & mask;
+            }
+            if(found == -1) {
+                found = uniqueCount++;
+                for(int b = 0; b < buffers.length; b++) {
+                    int c = components[b];
+                    System.arraycopy(buffers[b], row * c, unique[b], found * c, c);
+                }
+                table[slot] = found + 1;
+            }
+            indices[row] = found;
+        }
+
+        for(int b = 0; b < unique.length; b++) {
+            unique[b] = Arrays.copyOf(unique[b], uniqueCount * components[b]);
+        }
+        return new IndexedGeometry(unique, components.clone(), indices, uniqueCount);
+    }
+
+    private static int hashRow(float[][] buffers, int[] components, int row) {
+        int h = 1;
+        for(int b = 0; b < buffers.length; b++) {
+            int c = components[b];
+            for(int i = row * c, end = i + c; i < end; i++) {
+                h = h * 31 + Float.floatToIntBits(buffers[b][i]);
+            }
+        }
+        // Spread the bits out a bit, since the table is indexed by the low ones.
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean rowsEqual(float[][] a, int[] components, int rowA, float[][] b, int rowB) {
+        for(int buf = 0; buf < a.length; buf++) {
+            int c = components[buf];
+            for(int i = 0; i < c; i++) {
+                if(Float.floatToIntBits(a[buf][rowA * c + i]) != Float.floatToIntBits(b[buf][rowB * c + i])) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * All the buffers in one array, one row per vertex with each buffer's components back to back, ready for
+     * Mesh.addInterleavedBuffer.
+     */
+    public float[] interleave() {
+        int rowSize = 0;
+        for(int c : components) {
+            rowSize += c;
+        }
+        float[] ret = new float[vertexCount * rowSize];
+        int out = 0;
+        for(int v = 0; v < vertexCount; v++) {
+            for(int b = 0; b < buffers.length; b++) {
+                int c = components[b];
+                System.arraycopy(buffers[b], v * c, ret, out, c);
+                out += c;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Reorders the triangles for the vertex cache, then renumbers the vertices in the order they're first
+     * used so they're read front to back too. Only makes sense for GL_TRIANGLES.
+     */
+    public IndexedGeometry optimize() {
+        int[] ordered = optimizeVertexCache(indices, vertexCount);
+
+        int[] remap = new int[vertexCount];
+        Arrays.fill(remap, -1);
+        int next = 0;
+        for(int i = 0; i < ordered.length; i++) {
+            int v = ordered[i];
+            if(remap[v] == -1) {
+                remap[v] = next++;
+            }
+            ordered[i] = remap[v];
+        }
+        float[][] reordered = new float[buffers.length][];
+        for(int b = 0; b < buffers.length; b++) {
+            int c = components[b];
+            // Vertices no triangle uses get dropped.
+            reordered[b] = new float[next * c];
+            for(int v = 0; v < vertexCount; v++) {
+                if(remap[v] != -1) {
+                    System.arraycopy(buffers[b], v * c, reordered[b], remap[v] * c, c);
+                }
+            }
+        }
+        return new IndexedGeometry(reordered, components, ordered, next);
+    }
+
+    /**
+     * Forsyth's greedy triangle ordering: repeatedly emits the triangle whose vertices score highest, where
+     * vertices score higher the more recently they were used (so are likely still in the cache) and the fewer
+     * triangles they have left (so they can be finished off and leave the cache).
+     */
+    public static int[] optimizeVertexCache(int[] indices, int vertexCount) {
+        if(indices.length % 3 != 0) {
+            throw new IllegalArgumentException("Index count has to be a multiple of 3, got: " + indices.length);
+        }
+        int triCount = indices.length / 3;
+
+        // Triangles using each vertex, packed back to back.
+        int[] activeTris = new int[vertexCount];
+        for(int index : indices) {
+            activeTris[index]++;
+        }
+        int[] triListStart = new int[vertexCount + 1];
+        for(int v = 0; v < vertexCount; v++) {
+            triListStart[v + 1] = triListStart[v] + activeTris[v];
+        }
+        int[] triList = new int[indices.length];
+        int[] fill = Arrays.copyOf(triListStart, vertexCount);
+        for(int i = 0; i < indices.length; i++) {
+            triList[fill[indices[i]]++] = i / 3;
+        }
+
+        int[] cachePos = new int[vertexCount];
+        Arrays.fill(cachePos, -1);
+        float[] vertexScore = new float[vertexCount];
+        for(int v = 0; v < vertexCount; v++) {
+            vertexScore[v] = scoreVertex(-1, activeTris[v]);
+        }
+        float[] triScore = new float[triCount];
+        boolean[] emitted = new boolean[triCount];
+        for(int t = 0; t < triCount; t++) {
+            triScore[t] = vertexScore[indices[t * 3]] + vertexScore[indices[t * 3 + 1]] + vertexScore[indices[t * 3 + 2]];
+        }
+
+        int[] cache = new int[CACHE_SIZE + 3];
+        int[] newCache = new int[CACHE_SIZE + 3];
+        int cacheCount = 0;
+        int[] out = new int[indices.length];
+        int outPos = 0;
+        int scanFrom = 0;
+        int best = bestTriangle(triScore, emitted, 0);
+
+        while(best != -1) {
+            emitted[best] = true;
+            int newCount = 0;
+            for(int k = 0; k < 3; k++) {
+                int v = indices[best * 3 + k];
+                out[outPos++] = v;
+                newCache[newCount++] = v;
+                // Take the triangle off the vertex's list of ones still to go.
+                int start = triListStart[v], end = start + activeTris[v];
+                for(int i = start; i < end; i++) {
+                    if(triList[i] == best) {
+                        triList[i] = triList[end - 1];
+                        break;
+                    }
+                }
+                activeTris[v]--;
+            }
+            // The new triangle's vertices go to the front, everything else shifts back.
+            for(int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if(v != newCache[0] && v != newCache[1] && v != newCache[2]) {
+                    newCache[newCount++] = v;
+                }
+            }
+            int[] swap = cache;
+            cache = newCache;
+            newCache = swap;
+            cacheCount = newCount;
+
+            best = -1;
+            float bestScore = -1;
+            for(int i = 0; i < cacheCount; i++) {
+                int v = cache[i];
+                if(i < CACHE_SIZE) {
+                    cachePos[v] = i;
+                }
+                else {
+                    cachePos[v] = -1;
+                }
+                float old = vertexScore[v];
+                vertexScore[v] = scoreVertex(cachePos[v], activeTris[v]);
+                float delta = vertexScore[v] - old;
+                for(int j = triListStart[v], end = j + activeTris[v]; j < end; j++) {
+                    int t = triList[j];
+                    triScore[t] += delta;
+                    if(triScore[t] > bestScore) {
+                        bestScore = triScore[t];
+                        best = t;
+                    }
+                }
+            }
+            if(cacheCount > CACHE_SIZE) {
+                cacheCount = CACHE_SIZE;
+            }
+            if(best == -1) {
+                // Nothing in the cache has triangles left, so start somewhere new.
+                while(scanFrom < triCount && emitted[scanFrom]) {
+                    scanFrom++;
+                }
+                best = bestTriangle(triScore, emitted, scanFrom);
+            }
+        }
+        return out;
+    }
+
+    private static int bestTriangle(float[] triScore, boolean[] emitted, int from) {
+        int best = -1;
+        float bestScore = -1;
+        for(int t = from; t < triScore.length; t++) {
+            if(!emitted[t] && triScore[t] > bestScore) {
+                bestScore = triScore[t];
+                best = t;
+            }
+        }
+        return best;
+    }
+
+    private static float scoreVertex(int cachePosition, int remainingTris) {
+        if(remainingTris == 0) {
+            return -1;
+        }
+        float score = 0;
+        if(cachePosition >= 0) {
+            if(cachePosition < 3) {
+                // In the triangle that was just drawn, so deliberately not the best choice right away.
+                score = LAST_TRI_SCORE;
+            }
+            else {
+                float scaler = 1.0f / (CACHE_SIZE - 3);
+                score = (float)Math.pow(1.0f - (cachePosition - 3) * scaler, CACHE_DECAY_POWER);
+            }
+        }
+        score += VALENCE_BOOST_SCALE * (float)Math.pow(remainingTris, -VALENCE_BOOST_POWER);
+        return score;
+    }
+
+    /**
+     * Average number of vertices that have to be transformed per triangle with a FIFO cache of the given
+     * size. 3 is as bad as it gets, 0.5 is about as good.
+     */
+    public static float averageCacheMissRatio(int[] indices, int cacheSize) {
+        int[] fifo = new int[cacheSize];
+        Arrays.fill(fifo, -1);
+        int head = 0, misses = 0;
+        for(int index : indices) {
+            boolean hit = false;
+            for(int cached : fifo) {
+                if(cached == index) {
+                    hit = true;
+                    break;
+                }
+            }
+            if(!hit) {
+                misses++;
+                fifo[head] = index;
+                head = (head + 1) % cacheSize;
+            }
+        }
+        return indices.length == 0 ? 0 : misses / (indices.length / 3.0f);
+    }
+}
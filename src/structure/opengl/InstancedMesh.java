@@ -0,0 +1,159 @@
+package structure.opengl;
+
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBInstancedArrays;
+import org.lwjgl.opengl.ContextCapabilities;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLContext;
+
+import java.nio.FloatBuffer;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL15.*;
+import static org.lwjgl.opengl.GL20.*;
+import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL31.*;
+
+/**
+ * Mesh that gets drawn many times in one call, with a model matrix per instance. The matrices come from one
+ * extra buffer that's re-streamed whenever setInstances is called, and show up in the vertex shader as a
+ * mat4 attribute (which takes up 4 attribute locations in a row, one per column).
+ *
+ * Add all the per-vertex buffers first, then call addInstanceMatrices so the matrix attribute lands after them.
+ *
+ * Instanced draws are core in 3.1, but the per-instance divisor only became core in 3.3. On a 3.2 context it
+ * comes from ARB_instanced_arrays instead, and without either this can't be set up at all.
+ */
+public class InstancedMesh extends Mesh {
+    protected static final int FLOATS_PER_INSTANCE = 16;
+
+    protected int instanceVbo = 0, instanceAttribute = -1, instanceCount = 0;
+    // Size of the instance VBO's storage on the GL side, in floats.
+    protected int instanceVboCapacity = 0;
+    protected FloatBuffer instanceStaging = BufferUtils.createFloatBuffer(FLOATS_PER_INSTANCE * 64);
+
+    public InstancedMesh() {
+        super();
+    }
+
+    protected InstancedMesh(int vao) {
+        super(vao);
+    }
+
+    /**
+     * Sets up the per-instance matrix attribute and returns the first of the 4 locations it uses, which is
+     * what the vertex shader's mat4 needs to be laid out at.
+     */
+    public int addInstanceMatrices() {
+        if(instanceAttribute != -1) {
+            throw new IllegalStateException("Instance matrices were already added at location " + instanceAttribute);
+        }
+        if(numAttributes + 4 > MAX_VBO) {
+            throw new IllegalStateException("Can only have up to 16 attributes, requested: " + (numAttributes + 4));
+        }
+        ContextCapabilities caps = GLContext.getCapabilities();
+        boolean core = caps.OpenGL33;
+        if(!core && !caps.GL_ARB_instanced_arrays) {
+            throw new IllegalStateException("Instanced matrices need OpenGL 3.3 or ARB_instanced_arrays");
+        }
+        glBindVertexArray(vao);
+        instanceVbo = glGenBuffers();
+        vbos[numBuffers++] = instanceVbo;
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVbo);
+        instanceAttribute = numAttributes;
+        for(int column = 0; column < 4; column++) {
+            int attribute = instanceAttribute + column;
+            glEnableVertexAttribArray(attribute);
+            glVertexAttribPointer(attribute, 4, GL_FLOAT, false, FLOATS_PER_INSTANCE * 4, column * 4 * 4);
+            if(core) {
+                GL33.glVertexAttribDivisor(attribute, 1);
+            }
+            else {
+                ARBInstancedArrays.glVertexAttribDivisorARB(attribute, 1);
+            }
+        }
+        numAttributes += 4;
+        glBindVertexArray(0);
+        return instanceAttribute;
+    }
+
+    /**
+     * Packs the batch's matrices into the staging buffer in the layout the instance attribute expects, and
+     * returns it ready to upload. Doesn't touch GL, so it's safe to call anywhere.
+     */
+    public FloatBuffer packInstances(Matrix4Batch instances) {
+        int floats = instances.size * FLOATS_PER_INSTANCE;
+        if(instanceStaging.capacity() < floats) {
+            int capacity = instanceStaging.capacity();
+            while(capacity < floats) {
+                capacity *= 2;
+            }
+            instanceStaging = BufferUtils.createFloatBuffer(capacity);
+        }
+        instanceStaging.clear();
+        instances.store(instanceStaging);
+        instanceStaging.flip();
+        return instanceStaging;
+    }
+
+    /**
+     * Streams the batch's matrices to the instance buffer. The next draw draws one instance per matrix.
+     */
+    public void setInstances(Matrix4Batch instances) {
+        if(instanceAttribute == -1) {
+            throw new IllegalStateException("addInstanceMatrices has to be called before setting instances");
+        }
+        FloatBuffer packed = packInstances(instances);
+        glBindBuffer(GL_ARRAY_BUFFER, instanceVbo);
+        if(packed.remaining() > instanceVboCapacity) {
+            instanceVboCapacity = packed.capacity();
+        }
+        // Orphan the old storage first, so we don't have to wait on a draw that's still reading it.
+        glBufferData(GL_ARRAY_BUFFER, (long)instanceVboCapacity * 4, GL_STREAM_DRAW);
+        glBufferSubData(GL_ARRAY_BUFFER, 0, packed);
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        instanceCount = instances.size;
+    }
+
+    public int getInstanceCount() {
+        return instanceCount;
+    }
+
+    public int getInstanceAttribute() {
+        return instanceAttribute;
+    }
+
+    @Override
+    public void draw() {
+        if(instanceCount == 0) {
+            return;
+        }
+        synchronized (Mesh.VAO_LOCK) {
+            if(currentVao != vao) {
+                currentVao = vao;
+                glBindVertexArray(vao);
+            }
+            if(usesIndices) {
+                glDrawElementsInstanced(mode, numIndicies, indexType, 0, instanceCount);
+            }
+            else {
+                glDrawArraysInstanced(mode, 0, numVertices, instanceCount);
+            }
+            currentVao = 0;
+            glBindVertexArray(0);
+        }
+    }
+
+    @Override
+    public void draw(RenderBackend backend) {
+        if(instanceCount == 0) {
+            return;
+        }
+        if(usesIndices) {
+            backend.drawElementsInstanced(mode, numIndicies, indexType, 0, instanceCount);
+        }
+        else {
+            backend.drawArraysInstanced(mode, 0, numVertices, instanceCount);
+        }
+    }
+}
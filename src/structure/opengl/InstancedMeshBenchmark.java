@@ -0,0 +1,143 @@
+package structure.opengl;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+
+/**
+ * Packs batches of model matrices the way InstancedMesh streams them to its instance buffer, and checks every
+ * packed buffer against the Matrix4Batch it came from and against Matrix4 itself: 16 floats per instance, and
+ * each group of 4 (one attribute location of the mat4) holding one column. Batch sizes go up and down so the
+ * staging buffer gets grown and then reused. Also checks what a draw through a RecordingRenderBackend turns
+ * into. Then times packing tens of thousands of cubes' matrices against storing them one Matrix4 at a time.
+ *
+ * Lives in structure.opengl rather than bench because it needs InstancedMesh's VAO-wrapping constructor.
+ */
+public class InstancedMeshBenchmark {
+    private static final int CHECK_ROUNDS = 500;
+    private static final int[] COUNTS = {1000, 10000, 50000};
+    private static final int WARMUP = 50;
+    private static final int ROUNDS = 200;
+
+    private static float sink = 0;
+
+    private static final class FakeInstancedMesh extends InstancedMesh {
+        FakeInstancedMesh(int vao) {
+            super(vao);
+        }
+    }
+
+    public static void main(String[] args) {
+        check();
+        for(int count : COUNTS) {
+            run(count);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static Matrix4 randomMatrix(Random random) {
+        return Matrix4.rotate(new Matrix4(), random.nextFloat() * 360, random.nextFloat() * 360,
+                random.nextFloat() * 360, new Matrix4()).translate(random.nextFloat() * 100,
+                random.nextFloat() * 100, random.nextFloat() * 100).scale(1, 2, 3);
+    }
+
+    private static void check() {
+        Random random = new Random(425);
+        InstancedMesh mesh = new FakeInstancedMesh(1);
+        int instances = 0;
+        for(int round = 0; round < CHECK_ROUNDS; round++) {
+            int count = round % 50 == 0 ? 0 : random.nextInt(round % 3 == 0 ? 2000 : 100);
+            Matrix4[] matrices = new Matrix4[count];
+            Matrix4Batch batch = new Matrix4Batch(count);
+            for(int i = 0; i < count; i++) {
+                matrices[i] = randomMatrix(random);
+                batch.add(matrices[i]);
+            }
+
+            FloatBuffer packed = mesh.packInstances(batch);
+            if(packed.position() != 0 || packed.remaining() != count * InstancedMesh.FLOATS_PER_INSTANCE) {
+                fail(round, "packed " + packed.remaining() + " floats from " + packed.position() + " for " + count +
+                        " instances");
+            }
+            for(int i = 0; i < count * InstancedMesh.FLOATS_PER_INSTANCE; i++) {
+                if(packed.get(i) != batch.m[i]) {
+                    fail(round, "float " + i + " was " + packed.get(i) + " but the batch has " + batch.m[i]);
+                }
+            }
+            for(int i = 0; i < count; i++) {
+                Matrix4 m = matrices[i];
+                float[][] columns = {
+                        {m.m00, m.m10, m.m20, m.m30},
+                        {m.m01, m.m11, m.m21, m.m31},
+                        {m.m02, m.m12, m.m22, m.m32},
+                        {m.m03, m.m13, m.m23, m.m33}
+                };
+                for(int column = 0; column < 4; column++) {
+                    for(int row = 0; row < 4; row++) {
+                        int at = i * InstancedMesh.FLOATS_PER_INSTANCE + column * 4 + row;
+                        if(packed.get(at) != columns[column][row]) {
+                            fail(round, "instance " + i + " column " + column + " row " + row + " was " +
+                                    packed.get(at) + " but should be " + columns[column][row]);
+                        }
+                    }
+                }
+            }
+
+            // setInstances() needs GL, so only the count it would have left behind is set here.
+            mesh.instanceCount = count;
+            mesh.numVertices = 36;
+            RecordingRenderBackend backend = new RecordingRenderBackend();
+            mesh.draw(backend);
+            String want = count == 0 ? null : "drawArraysInstanced " + GL_TRIANGLES + " 0 36 " + count;
+            String got = backend.getCalls().isEmpty() ? null : backend.getCalls().get(0);
+            if(backend.getCalls().size() > 1 || (want == null ? got != null : !want.equals(got))) {
+                fail(round, "drawing recorded " + backend.getCalls() + " but should be " + want);
+            }
+            instances += count;
+        }
+        System.out.println(String.format("%,d instances packed the same as Matrix4Batch and Matrix4", instances));
+    }
+
+    private static void fail(int round, String what) {
+        throw new IllegalStateException("Round " + round + ": " + what);
+    }
+
+    private static void run(int count) {
+        Random random = new Random(count);
+        InstancedMesh mesh = new FakeInstancedMesh(1);
+        Matrix4[] matrices = new Matrix4[count];
+        Matrix4Batch batch = new Matrix4Batch(count);
+        for(int i = 0; i < count; i++) {
+            matrices[i] = randomMatrix(random);
+        }
+        FloatBuffer oneAtATime = BufferUtils.createFloatBuffer(count * InstancedMesh.FLOATS_PER_INSTANCE);
+
+        long packNanos = 0, storeNanos = 0;
+        for(int r = 0; r < WARMUP + ROUNDS; r++) {
+            long start = System.nanoTime();
+            batch.clear();
+            for(Matrix4 m : matrices) {
+                batch.add(m);
+            }
+            FloatBuffer packed = mesh.packInstances(batch);
+            sink += packed.get(r % packed.remaining());
+            long packedAt = System.nanoTime();
+            oneAtATime.clear();
+            for(Matrix4 m : matrices) {
+                m.store(oneAtATime);
+            }
+            oneAtATime.flip();
+            sink += oneAtATime.get(r % oneAtATime.remaining());
+            long storedAt = System.nanoTime();
+            if(r >= WARMUP) {
+                packNanos += packedAt - start;
+                storeNanos += storedAt - packedAt;
+            }
+        }
+        System.out.println(String.format("%,6d cubes  batch + pack: %8.4f ms | Matrix4.store each: %8.4f ms (%.1fx)",
+                count, packNanos / 1e6 / ROUNDS, storeNanos / 1e6 / ROUNDS, (double)storeNanos / packNanos));
+    }
+}
@@ -1,7 +1,5 @@
 package structure.opengl;
 
-import org.lwjgl.BufferUtils;
-
 import java.nio.FloatBuffer;
 
 /**
@@ -12,8 +10,6 @@ import java.nio.FloatBuffer;
  */
 public class Matrix4 {
     public static final float GLMAT_EPSILON = 0.000001f;
-    private static final FloatBuffer matrixOpBuff = BufferUtils.createFloatBuffer(16);
-    private static final float[] matrixOpArr = new float[16];
     private static final Matrix4 tempMat = new Matrix4();
     private static final Vector3 tempVec = new Vector3();
 
@@ -147,6 +143,82 @@ public class Matrix4 {
         buf.put(m33);
     }
 
+    /**
+     * Same as store(FloatBuffer), but with absolute puts starting at index, so the buffer's position is left
+     * alone and there's nothing to flip afterwards.
+     */
+    public void store(FloatBuffer buf, int index) {
+        buf.put(index, m00);
+        buf.put(index + 1, m10);
+        buf.put(index + 2, m20);
+        buf.put(index + 3, m30);
+
+        buf.put(index + 4, m01);
+        buf.put(index + 5, m11);
+        buf.put(index + 6, m21);
+        buf.put(index + 7, m31);
+
+        buf.put(index + 8, m02);
+        buf.put(index + 9, m12);
+        buf.put(index + 10, m22);
+        buf.put(index + 11, m32);
+
+        buf.put(index + 12, m03);
+        buf.put(index + 13, m13);
+        buf.put(index + 14, m23);
+        buf.put(index + 15, m33);
+    }
+
+    /**
+     * Writes the matrix into 16 floats of arr starting at offset, in the same column-major order as
+     * store(FloatBuffer), so the array can be bulk-put into a buffer later.
+     */
+    public float[] store(float[] arr, int offset) {
+        arr[offset] = m00;
+        arr[offset + 1] = m10;
+        arr[offset + 2] = m20;
+        arr[offset + 3] = m30;
+
+        arr[offset + 4] = m01;
+        arr[offset + 5] = m11;
+        arr[offset + 6] = m21;
+        arr[offset + 7] = m31;
+
+        arr[offset + 8] = m02;
+        arr[offset + 9] = m12;
+        arr[offset + 10] = m22;
+        arr[offset + 11] = m32;
+
+        arr[offset + 12] = m03;
+        arr[offset + 13] = m13;
+        arr[offset + 14] = m23;
+        arr[offset + 15] = m33;
+        return arr;
+    }
+
+    public Matrix4 load(float[] arr, int offset) {
+        m00 = arr[offset];
+        m10 = arr[offset + 1];
+        m20 = arr[offset + 2];
+        m30 = arr[offset + 3];
+
+        m01 = arr[offset + 4];
+        m11 = arr[offset + 5];
+        m21 = arr[offset + 6];
+        m31 = arr[offset + 7];
+
+        m02 = arr[offset + 8];
+        m12 = arr[offset + 9];
+        m22 = arr[offset + 10];
+        m32 = arr[offset + 11];
+
+        m03 = arr[offset + 12];
+        m13 = arr[offset + 13];
+        m23 = arr[offset + 14];
+        m33 = arr[offset + 15];
+        return this;
+    }
+
     @Override
     public String toString() {
         return String.format("[\n%-8.2f %-8.2f %-8.2f %-8.2f\n" +
@@ -339,29 +411,22 @@ public class Matrix4 {
             y2 *= len;
         }
 
-        /*
-        TODO: Refactor to just use mat directly.
-         */
-        matrixOpArr[0] = (float)x0;
-        matrixOpArr[1] = (float)y0;
-        matrixOpArr[2] = (float)z0;
-        matrixOpArr[3] = 0;
-        matrixOpArr[4] = (float)x1;
-        matrixOpArr[5] = (float)y1;
-        matrixOpArr[6] = (float)z1;
-        matrixOpArr[7] = 0;
-        matrixOpArr[8] = (float)x2;
-        matrixOpArr[9] = (float)y2;
-        matrixOpArr[10] = (float)z2;
-        matrixOpArr[11] = 0;
-        matrixOpArr[12] = (float)-(x0 * eyex + x1 * eyey + x2 * eyez);
-        matrixOpArr[13] = (float)-(y0 * eyex + y1 * eyey + y2 * eyez);
-        matrixOpArr[14] = (float)-(z0 * eyex + z1 * eyey + z2 * eyez);
-        matrixOpArr[15] = 1;
-        matrixOpBuff.put(matrixOpArr);
-        matrixOpBuff.flip();
-        mat.load(matrixOpBuff);
-        matrixOpBuff.flip();
+        mat.m00 = (float)x0;
+        mat.m10 = (float)y0;
+        mat.m20 = (float)z0;
+        mat.m30 = 0;
+        mat.m01 = (float)x1;
+        mat.m11 = (float)y1;
+        mat.m21 = (float)z1;
+        mat.m31 = 0;
+        mat.m02 = (float)x2;
+        mat.m12 = (float)y2;
+        mat.m22 = (float)z2;
+        mat.m32 = 0;
+        mat.m03 = (float)-(x0 * eyex + x1 * eyey + x2 * eyez);
+        mat.m13 = (float)-(y0 * eyex + y1 * eyey + y2 * eyez);
+        mat.m23 = (float)-(z0 * eyex + z1 * eyey + z2 * eyez);
+        mat.m33 = 1;
 
         return mat;
     }
@@ -0,0 +1,44 @@
+package structure.opengl;
+
+import java.nio.FloatBuffer;
+
+/**
+ * A bunch of matrices packed back to back into one float array, 16 floats each, in the same column-major
+ * order Matrix4.store uses. That means the whole thing can go to a FloatBuffer in one put.
+ */
+public class Matrix4Batch {
+    public final float[] m;
+    public final int capacity;
+    public int size = 0;
+
+    public Matrix4Batch(int capacity) {
+        this.capacity = capacity;
+        this.m = new float[capacity * 16];
+    }
+
+    public Matrix4Batch add(Matrix4 mat) {
+        set(size++, mat);
+        return this;
+    }
+
+    public Matrix4Batch set(int i, Matrix4 mat) {
+        mat.store(m, i * 16);
+        return this;
+    }
+
+    public Matrix4 get(int i, Matrix4 result) {
+        return result.load(m, i * 16);
+    }
+
+    /**
+     * Bulk puts every matrix in the batch into the buffer. Doesn't flip it.
+     */
+    public void store(FloatBuffer buf) {
+        buf.put(m, 0, size * 16);
+    }
+
+    public Matrix4Batch clear() {
+        size = 0;
+        return this;
+    }
+}
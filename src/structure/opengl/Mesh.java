@@ -1,9 +1,14 @@
 package structure.opengl;
 
 import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GLContext;
+import org.lwjgl.opengl.GLSync;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 import java.util.Arrays;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -11,6 +16,7 @@ import static org.lwjgl.opengl.GL11.*;
 import static org.lwjgl.opengl.GL15.*;
 import static org.lwjgl.opengl.GL20.*;
 import static org.lwjgl.opengl.GL30.*;
+import static org.lwjgl.opengl.GL32.*;
 
 /**
  * Created with IntelliJ IDEA.
@@ -25,22 +31,87 @@ public class Mesh {
     public static final int VERTEX_3F = 2;
     public static final int VERTEX_4F = 3;
 
+    /*
+    Streaming buffers either orphan their storage on every update (works everywhere), or, when GL 3.2 fences
+    are around, write into the next section of a buffer three times the size, so the GPU can still be reading
+    the previous two frames' data while the CPU fills the next one.
+     */
+    public static final int STREAM_ORPHAN = 0;
+    public static final int STREAM_RING = 1;
+    protected static final int RING_SECTIONS = 3;
+    // How long to wait on a fence each time around before trying again, in nanoseconds.
+    protected static final long FENCE_TIMEOUT = 1000000;
+
     public static final Object VAO_LOCK = new Object();
 
     protected static int currentVao = -1;
 
+    /*
+    Every upload goes through this one direct buffer, grown whenever something bigger comes along, instead of
+    allocating a new one each time. Uploads only ever happen on the GL thread, so it doesn't need a lock.
+     */
+    protected static FloatBuffer staging = BufferUtils.createFloatBuffer(1024);
+
+    protected static FloatBuffer stage(float[] data, int offset, int length) {
+        if(staging.capacity() < length) {
+            int capacity = staging.capacity();
+            while(capacity < length) {
+                capacity *= 2;
+            }
+            staging = BufferUtils.createFloatBuffer(capacity);
+        }
+        staging.clear();
+        staging.put(data, offset, length);
+        staging.flip();
+        return staging;
+    }
+
+    // Same idea as staging, for formats that need packing into something other than floats.
+    protected static ByteBuffer packedStaging = BufferUtils.createByteBuffer(4096);
+
+    protected static ByteBuffer stagePacked(float[] data, int vertexCount, VertexFormat format) {
+        int length = vertexCount * format.getStride();
+        if(packedStaging.capacity() < length) {
+            int capacity = packedStaging.capacity();
+            while(capacity < length) {
+                capacity *= 2;
+            }
+            packedStaging = BufferUtils.createByteBuffer(capacity);
+        }
+        packedStaging.clear();
+        format.pack(data, vertexCount, packedStaging);
+        packedStaging.flip();
+        return packedStaging;
+    }
+
+    protected static class StreamBuffer {
+        int vbo, attribute, components, capacity, mode;
+        int section = 0;
+        GLSync[] fences;
+    }
+
     protected int vao;
     protected int mode = GL_TRIANGLES;
     protected int[] vbos = new int[MAX_VBO];
     protected boolean usesIndices = false;
     protected int indicesRef = 0, numIndicies = 0, numVertices = 0, numRows = 0;
+    protected int indexType = GL_UNSIGNED_INT;
     protected short numBuffers = 0, numAttributes = 0;
     protected boolean destroyed = false;
+    protected StreamBuffer[] streams = new StreamBuffer[0];
+    protected boolean hasRingStreams = false;
 
     public Mesh() {
         this.vao = glGenVertexArrays();
     }
 
+    /**
+     * Wraps a VAO that was made somewhere else, instead of generating a new one.
+     */
+    protected Mesh(int vao) {
+        this.vao = vao;
+    }
+
     protected int getDataTypeSize(int dataType) {
         if(dataType == VERTEX_1F) {
             return 1;
@@ -56,20 +127,6 @@ public class Mesh {
         }
     }
 
-    protected float[] convertColumnsToOffset(float[] data, float[] to, int rowSize, int... dataTypes) {
-        int startPos = 0, toPos = 0;
-        for(int i = 0; i < dataTypes.length; i++) {
-            int size = getDataTypeSize(dataTypes[i]);
-            for(int j = startPos; j < data.length; j += rowSize, toPos += size) {
-//                System.out.println(Arrays.toString(Arrays.copyOfRange(data, j, j + size)));
-                System.arraycopy(data, j, to, toPos, size);
-            }
-            startPos += size;
-        }
-//        System.out.println(Arrays.toString(to));
-        return to;
-    }
-
     public void addBuffer(float[] data, int usage, int dataType) {
         int dataTypeSize = getDataTypeSize(dataType);
         checkForErrors(data, dataTypeSize, dataType);
@@ -77,15 +134,47 @@ public class Mesh {
         uploadData(data, usage, numRows, dataType);
     }
 
+    /**
+     * Data is interleaved, one row per vertex with each attribute's values back to back. Goes up as-is into a
+     * single VBO.
+     */
     public void addBufferColumns(float[] data, int usage, int... dataTypes) {
-        int rowSize = 0;
-        for(int type : dataTypes) {
-            rowSize += getDataTypeSize(type);
-        }
-        checkForErrors(data, rowSize, dataTypes);
+        addInterleavedBuffer(data, usage, VertexFormat.floats(dataTypes));
+    }
+
+    /**
+     * Uploads interleaved rows into one VBO laid out as the format says, with one attribute per entry in the
+     * format. When the format is all floats the data is uploaded exactly as it is; otherwise it's packed down
+     * (half floats, normalized bytes) on the way.
+     */
+    public void addInterleavedBuffer(float[] data, int usage, VertexFormat format) {
+        int[] attributes = new int[format.getAttributeCount()];
+        checkForErrors(data, format.getFloatsPerVertex(), attributes);
+        int vertexCount = data.length / format.getFloatsPerVertex();
 
-        float[] converted = new float[data.length];
-        uploadData(convertColumnsToOffset(data, converted, rowSize, dataTypes), usage, numRows, dataTypes);
+        synchronized (VAO_LOCK) {
+            glBindVertexArray(vao);
+            int vbo = glGenBuffers();
+            vbos[numBuffers++] = vbo;
+            glBindBuffer(GL_ARRAY_BUFFER, vbo);
+            if(format.isAllFloat()) {
+                glBufferData(GL_ARRAY_BUFFER, stage(data, 0, vertexCount * format.getFloatsPerVertex()), usage);
+            }
+            else {
+                glBufferData(GL_ARRAY_BUFFER, stagePacked(data, vertexCount, format), usage);
+            }
+            for(int i = 0; i < attributes.length; i++) {
+                glEnableVertexAttribArray(numAttributes + i);
+                glVertexAttribPointer(numAttributes + i, format.getComponents(i), format.getGLType(i),
+                        format.isNormalized(i), format.getStride(), format.getOffset(i));
+            }
+            if(usesIndices) {
+                glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesRef);
+            }
+            numAttributes += attributes.length;
+            glBindVertexArray(0);
+            currentVao = 0;
+        }
     }
 
     public void addBufferOffset(float[] data, int usage, int... dataTypes) {
@@ -132,9 +221,7 @@ public class Mesh {
     private void uploadData(float[] data, int usage, int numRows, int... dataTypes) {
         glBindVertexArray(vao);
 
-        FloatBuffer buf = BufferUtils.createFloatBuffer(data.length);
-        buf.put(data);
-        buf.flip();
+        FloatBuffer buf = stage(data, 0, data.length);
         int vbo = glGenBuffers();
         vbos[numBuffers++] = vbo;
         glBindBuffer(GL_ARRAY_BUFFER, vbo);
@@ -155,17 +242,193 @@ public class Mesh {
         glBindVertexArray(0);
     }
 
-    public void setIndices(int[] indices) {
-        usesIndices = true;
-        IntBuffer buf = BufferUtils.createIntBuffer(indices.length);
-        buf.put(indices);
-        buf.flip();
+    /**
+     * Adds a buffer for a single attribute whose contents are expected to change often, like particle
+     * positions. It starts out empty; fill it with updateStreamingBuffer. Asking for STREAM_RING without GL 3.2
+     * falls back to STREAM_ORPHAN.
+     *
+     * @param maxVertices Most vertices any one update will ever have.
+     * @return Which stream this is, for passing to updateStreamingBuffer.
+     */
+    public int addStreamingBuffer(int maxVertices, int dataType, int mode) {
+        if(numAttributes + 1 >= MAX_VBO) {
+            throw new IllegalStateException("Can only have up to 16 attributes, requested: " + (numAttributes + 1));
+        }
+        if(mode == STREAM_RING && !GLContext.getCapabilities().OpenGL32) {
+            mode = STREAM_ORPHAN;
+        }
+        StreamBuffer stream = new StreamBuffer();
+        stream.components = getDataTypeSize(dataType);
+        stream.capacity = maxVertices;
+        stream.mode = mode;
+        stream.attribute = numAttributes++;
+        stream.vbo = glGenBuffers();
+        vbos[numBuffers++] = stream.vbo;
+        long sectionBytes = (long)maxVertices * stream.components * 4;
+        if(mode == STREAM_RING) {
+            stream.fences = new GLSync[RING_SECTIONS];
+            hasRingStreams = true;
+        }
 
         glBindVertexArray(vao);
-        indicesRef = glGenBuffers();
-        glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesRef);
-        glBufferData(indicesRef, buf, GL_STATIC_DRAW);
+        glBindBuffer(GL_ARRAY_BUFFER, stream.vbo);
+        glBufferData(GL_ARRAY_BUFFER, mode == STREAM_RING ? sectionBytes * RING_SECTIONS : sectionBytes, GL_STREAM_DRAW);
+        glEnableVertexAttribArray(stream.attribute);
+        glVertexAttribPointer(stream.attribute, stream.components, GL_FLOAT, false, 0, 0);
         glBindVertexArray(0);
+
+        streams = Arrays.copyOf(streams, streams.length + 1);
+        streams[streams.length - 1] = stream;
+        return streams.length - 1;
+    }
+
+    /**
+     * Replaces the contents of a streaming buffer with count vertices from data, and makes count the number
+     * of vertices the next draw uses. Doesn't allocate anything on either side.
+     */
+    public void updateStreamingBuffer(int streamIndex, float[] data, int count) {
+        StreamBuffer stream = streams[streamIndex];
+        if(count > stream.capacity) {
+            throw new IllegalArgumentException("Stream " + streamIndex + " holds at most " + stream.capacity +
+                    " vertices, got " + count);
+        }
+        int floats = count * stream.components;
+        long sectionBytes = (long)stream.capacity * stream.components * 4;
+        glBindBuffer(GL_ARRAY_BUFFER, stream.vbo);
+        if(stream.mode == STREAM_RING) {
+            stream.section = (stream.section + 1) % RING_SECTIONS;
+            waitForSection(stream);
+            long offset = sectionBytes * stream.section;
+            ByteBuffer mapped = glMapBufferRange(GL_ARRAY_BUFFER, offset, Math.max(floats, 1) * 4,
+                    GL_MAP_WRITE_BIT | GL_MAP_UNSYNCHRONIZED_BIT | GL_MAP_INVALIDATE_RANGE_BIT, null);
+            mapped.order(ByteOrder.nativeOrder()).asFloatBuffer().put(data, 0, floats);
+            glUnmapBuffer(GL_ARRAY_BUFFER);
+            synchronized (VAO_LOCK) {
+                glBindVertexArray(vao);
+                glVertexAttribPointer(stream.attribute, stream.components, GL_FLOAT, false, 0, offset);
+                glBindVertexArray(0);
+                currentVao = 0;
+            }
+        }
+        else {
+            // Orphan the old storage, so the driver hands us fresh memory instead of waiting for the GPU.
+            glBufferData(GL_ARRAY_BUFFER, sectionBytes, GL_STREAM_DRAW);
+            glBufferSubData(GL_ARRAY_BUFFER, 0, stage(data, 0, floats));
+        }
+        glBindBuffer(GL_ARRAY_BUFFER, 0);
+        numVertices = count;
+        numRows = count;
+    }
+
+    // Blocks until the GPU is done with whatever was last drawn from the stream's current section.
+    private void waitForSection(StreamBuffer stream) {
+        GLSync fence = stream.fences[stream.section];
+        if(fence == null) {
+            return;
+        }
+        int result;
+        do {
+            result = glClientWaitSync(fence, GL_SYNC_FLUSH_COMMANDS_BIT, FENCE_TIMEOUT);
+        } while(result == GL_TIMEOUT_EXPIRED);
+        glDeleteSync(fence);
+        stream.fences[stream.section] = null;
+    }
+
+    // Marks the point after which ring sections used by the draw that just happened can be written again.
+    protected void fenceStreams() {
+        for(StreamBuffer stream : streams) {
+            if(stream.mode == STREAM_RING) {
+                GLSync old = stream.fences[stream.section];
+                if(old != null) {
+                    glDeleteSync(old);
+                }
+                stream.fences[stream.section] = glFenceSync(GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+            }
+        }
+    }
+
+    /**
+     * Makes the mesh draw with the given indices into its buffers. Stored as shorts whenever every index fits
+     * in one, which halves the size of the index buffer for anything under 65536 vertices.
+     */
+    public void setIndices(int[] indices) {
+        int maxIndex = 0;
+        for(int index : indices) {
+            if(index < 0) {
+                throw new IllegalArgumentException("Negative index: " + index);
+            }
+            maxIndex = Math.max(maxIndex, index);
+        }
+
+        synchronized (VAO_LOCK) {
+            glBindVertexArray(vao);
+            if(indicesRef == 0) {
+                indicesRef = glGenBuffers();
+            }
+            glBindBuffer(GL_ELEMENT_ARRAY_BUFFER, indicesRef);
+            if(maxIndex <= 0xFFFF) {
+                ShortBuffer buf = BufferUtils.createShortBuffer(indices.length);
+                for(int index : indices) {
+                    buf.put((short)index);
+                }
+                buf.flip();
+                glBufferData(GL_ELEMENT_ARRAY_BUFFER, buf, GL_STATIC_DRAW);
+                indexType = GL_UNSIGNED_SHORT;
+            }
+            else {
+                IntBuffer buf = BufferUtils.createIntBuffer(indices.length);
+                buf.put(indices);
+                buf.flip();
+                glBufferData(GL_ELEMENT_ARRAY_BUFFER, buf, GL_STATIC_DRAW);
+                indexType = GL_UNSIGNED_INT;
+            }
+            glBindVertexArray(0);
+            currentVao = 0;
+        }
+        usesIndices = true;
+        numIndicies = indices.length;
+    }
+
+    public void addIndexedBuffers(float[][] buffers, int usage, int... dataTypes) {
+        addIndexedBuffers(buffers, usage, VertexFormat.floats(dataTypes));
+    }
+
+    /**
+     * Takes one buffer per attribute in the format, the way addBuffer would, but merges identical vertices,
+     * interleaves everything into a single VBO and draws from an index buffer instead. For GL_TRIANGLES the
+     * triangle order is also optimized for the vertex cache. A cube with per-face normals goes from 36
+     * vertices to 24, for example.
+     */
+    public void addIndexedBuffers(float[][] buffers, int usage, VertexFormat format) {
+        if(usesIndices || numBuffers > 0) {
+            throw new IllegalStateException("Indexed buffers have to be the only buffers in a mesh");
+        }
+        if(buffers.length != format.getAttributeCount()) {
+            throw new IllegalArgumentException("Format has " + format.getAttributeCount() + " attributes, got " +
+                    buffers.length + " buffers");
+        }
+        int[] components = new int[buffers.length];
+        for(int i = 0; i < buffers.length; i++) {
+            components[i] = format.getComponents(i);
+        }
+        IndexedGeometry geometry = IndexedGeometry.deduplicate(buffers, components);
+        if(mode == GL_TRIANGLES) {
+            geometry = geometry.optimize();
+        }
+        addInterleavedBuffer(geometry.interleave(), usage, format);
+        setIndices(geometry.indices);
+    }
+
+    public int getIndexType() {
+        return indexType;
+    }
+
+    public int getIndexCount() {
+        return numIndicies;
+    }
+
+    public int getVertexCount() {
+        return numVertices;
     }
 
     public void setMode(int mode) {
@@ -179,11 +442,14 @@ public class Mesh {
                 glBindVertexArray(vao);
             }
             if(usesIndices) {
-                glDrawElements(0, (IntBuffer)null);
+                glDrawElements(mode, numIndicies, indexType, 0);
             }
             else {
                 glDrawArrays(mode, 0, numVertices);
             }
+            if(hasRingStreams) {
+                fenceStreams();
+            }
             // For now, we immediately unbind the vao when done drawing. This might change later,
             // but is deliberately done here to prevent code outside of the Mesh class (or another Mesh?)
             // from modifying the vao's state.
@@ -192,13 +458,46 @@ public class Mesh {
         }
     }
 
+    /**
+     * Issues the draw call through the backend, assuming this mesh's VAO is already bound. Used by RenderQueue,
+     * which takes care of binding.
+     */
+    public void draw(RenderBackend backend) {
+        if(usesIndices) {
+            backend.drawElements(mode, numIndicies, indexType, 0);
+        }
+        else {
+            backend.drawArrays(mode, 0, numVertices);
+        }
+        if(hasRingStreams) {
+            fenceStreams();
+        }
+    }
+
+    public int getVao() {
+        return vao;
+    }
+
     public void destroy() {
         if(!destroyed) {
             destroyed = true;
+            for(StreamBuffer stream : streams) {
+                if(stream.fences != null) {
+                    for(GLSync fence : stream.fences) {
+                        if(fence != null) {
+                            glDeleteSync(fence);
+                        }
+                    }
+                }
+            }
             glDeleteVertexArrays(vao);
             for(int vao : vbos) {
                 glDeleteBuffers(vao);
             }
+            if(indicesRef != 0) {
+                glDeleteBuffers(indicesRef);
+                indicesRef = 0;
+            }
         }
     }
 
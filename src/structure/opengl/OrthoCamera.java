@@ -22,6 +22,7 @@ public class OrthoCamera {
         this.x = x;
         this.y = y;
         this.width = width;
+        this.height = height;
         this.uniformName = uniformName;
         this.mat = Matrix4.orthographic(
                 new Matrix4(),
@@ -43,6 +44,22 @@ public class OrthoCamera {
 //        update();
     }
 
+    public float getX() {
+        return x;
+    }
+
+    public float getY() {
+        return y;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
     protected void update() {
         ShaderProgram shader = GameApplicationDisplay.useShader();
         shader.use();
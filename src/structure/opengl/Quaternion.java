@@ -218,7 +218,7 @@ public class Quaternion {
                 v.z * (2 * q.x * q.z + 2 * q.w * q.y);
         result.y = v.x * (2 * q.w * q.z + 2 * q.x * q.y) +
                 v.y * (q.w * q.w - q.x * q.x + q.y * q.y - q.z * q.z) +
-                q.z * (-2 * q.w * q.x + 2 * q.y * q.z);
+                v.z * (-2 * q.w * q.x + 2 * q.y * q.z);
         result.z = v.x * (-2 * q.w * q.y + 2 * q.x * q.z) +
                 v.y * (2 * q.w * q.x + 2 * q.y * q.z) +
                 v.z * (q.w * q.w - q.x * q.x - q.y * q.y + q.z * q.z);
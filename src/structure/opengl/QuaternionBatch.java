@@ -0,0 +1,44 @@
+package structure.opengl;
+
+/**
+ * A bunch of quaternions stored as one float array per component, for use with BatchMath.
+ */
+public class QuaternionBatch {
+    public final float[] w, x, y, z;
+    public final int capacity;
+    public int size = 0;
+
+    public QuaternionBatch(int capacity) {
+        this.capacity = capacity;
+        this.w = new float[capacity];
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.z = new float[capacity];
+    }
+
+    public QuaternionBatch add(Quaternion q) {
+        set(size++, q);
+        return this;
+    }
+
+    public QuaternionBatch set(int i, Quaternion q) {
+        w[i] = q.w;
+        x[i] = q.x;
+        y[i] = q.y;
+        z[i] = q.z;
+        return this;
+    }
+
+    public Quaternion get(int i, Quaternion result) {
+        result.w = w[i];
+        result.x = x[i];
+        result.y = y[i];
+        result.z = z[i];
+        return result;
+    }
+
+    public QuaternionBatch clear() {
+        size = 0;
+        return this;
+    }
+}
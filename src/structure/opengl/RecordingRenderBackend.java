@@ -0,0 +1,76 @@
+package structure.opengl;
+
+import texture.Texture;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RenderBackend that doesn't draw anything, it just keeps a list of every call made to it, one line per
+ * call. Handy for checking what a RenderQueue does without a GL context, or for dumping a frame's calls
+ * when something looks off.
+ */
+public class RecordingRenderBackend implements RenderBackend {
+    protected final List<String> calls = new ArrayList<>();
+
+    @Override
+    public void useProgram(ShaderProgram program) {
+        calls.add("useProgram " + program.getProgram());
+    }
+
+    @Override
+    public void bindTexture(Texture texture) {
+        calls.add("bindTexture " + texture.getName());
+    }
+
+    @Override
+    public void bindVertexArray(int vao) {
+        calls.add("bindVertexArray " + vao);
+    }
+
+    @Override
+    public void setUniform(ShaderProgram program, int handle, Matrix4 m) {
+        calls.add("setUniform " + program.getProgram() + " " + handle);
+    }
+
+    @Override
+    public void drawArrays(int mode, int first, int count) {
+        calls.add("drawArrays " + mode + " " + first + " " + count);
+    }
+
+    @Override
+    public void drawArraysInstanced(int mode, int first, int count, int instances) {
+        calls.add("drawArraysInstanced " + mode + " " + first + " " + count + " " + instances);
+    }
+
+    @Override
+    public void drawElements(int mode, int count, int type, long offset) {
+        calls.add("drawElements " + mode + " " + count + " " + type + " " + offset);
+    }
+
+    @Override
+    public void drawElementsInstanced(int mode, int count, int type, long offset, int instances) {
+        calls.add("drawElementsInstanced " + mode + " " + count + " " + type + " " + offset + " " + instances);
+    }
+
+    public List<String> getCalls() {
+        return calls;
+    }
+
+    /**
+     * Number of recorded calls that start with the given name, like "bindVertexArray".
+     */
+    public int count(String call) {
+        int ret = 0;
+        for(String recorded : calls) {
+            if(recorded.startsWith(call)) {
+                ret++;
+            }
+        }
+        return ret;
+    }
+
+    public void clear() {
+        calls.clear();
+    }
+}
@@ -0,0 +1,18 @@
+package structure.opengl;
+
+import texture.Texture;
+
+/**
+ * The handful of GL calls a RenderQueue needs to get a frame drawn. GLRenderBackend sends them to the real
+ * thing; RecordingRenderBackend just writes them down, so the queue can be checked without a display.
+ */
+public interface RenderBackend {
+    public void useProgram(ShaderProgram program);
+    public void bindTexture(Texture texture);
+    public void bindVertexArray(int vao);
+    public void setUniform(ShaderProgram program, int handle, Matrix4 m);
+    public void drawArrays(int mode, int first, int count);
+    public void drawArraysInstanced(int mode, int first, int count, int instances);
+    public void drawElements(int mode, int count, int type, long offset);
+    public void drawElementsInstanced(int mode, int count, int type, long offset, int instances);
+}
@@ -0,0 +1,201 @@
+package structure.opengl;
+
+import texture.Texture;
+
+import java.util.Arrays;
+
+/**
+ * Collects a frame's draws instead of doing them right away, then sorts them by shader, texture and VAO and
+ * runs them all in one pass, only switching whatever state actually differs from the previous draw.
+ *
+ * Commands keep a reference to the model matrix they were submitted with, so it shouldn't be changed until
+ * after execute(). Submitting and executing should happen on the GL thread.
+ */
+public class RenderQueue {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size = 0;
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] order = new int[INITIAL_CAPACITY];
+    private int[] scratch = new int[INITIAL_CAPACITY];
+    private ShaderProgram[] programs = new ShaderProgram[INITIAL_CAPACITY];
+    private int[] modelUniforms = new int[INITIAL_CAPACITY];
+    private Matrix4[] models = new Matrix4[INITIAL_CAPACITY];
+    private Texture[] textures = new Texture[INITIAL_CAPACITY];
+    private Mesh[] meshes = new Mesh[INITIAL_CAPACITY];
+
+    private int programChanges = 0, textureChanges = 0, vaoChanges = 0, draws = 0;
+
+    /**
+     * Queues up drawing mesh with the given program, after uploading model to the uniform with the given
+     * handle. texture can be null if the mesh doesn't need one bound.
+     */
+    public void submit(ShaderProgram program, int modelUniform, Matrix4 model, Texture texture, Mesh mesh) {
+        if(size == keys.length) {
+            grow();
+        }
+        int i = size++;
+        programs[i] = program;
+        modelUniforms[i] = modelUniform;
+        models[i] = model;
+        textures[i] = texture;
+        meshes[i] = mesh;
+        keys[i] = makeKey(program.getProgram(), texture == null ? 0 : texture.getName(), mesh.getVao());
+        order[i] = i;
+    }
+
+    /*
+    Most expensive switch in the highest bits. GL names are small in practice, but if one ever doesn't fit in
+    its field it just wraps, which can only make the sort less useful, not the drawing wrong, since execute
+    compares the real state.
+     */
+    private static long makeKey(int program, int texture, int vao) {
+        return ((long)(program & 0xFFFF) << 48) | ((long)(texture & 0xFFFFFF) << 24) | (vao & 0xFFFFFF);
+    }
+
+    private void grow() {
+        int capacity = keys.length * 2;
+        keys = Arrays.copyOf(keys, capacity);
+        order = Arrays.copyOf(order, capacity);
+        scratch = new int[capacity];
+        programs = Arrays.copyOf(programs, capacity);
+        modelUniforms = Arrays.copyOf(modelUniforms, capacity);
+        models = Arrays.copyOf(models, capacity);
+        textures = Arrays.copyOf(textures, capacity);
+        meshes = Arrays.copyOf(meshes, capacity);
+    }
+
+    /**
+     * Sorts, draws everything that was submitted, and empties the queue. The VAO is left unbound afterwards,
+     * same as after Mesh.draw().
+     */
+    public void execute(RenderBackend backend) {
+        sort();
+        programChanges = 0;
+        textureChanges = 0;
+        vaoChanges = 0;
+        draws = 0;
+
+        synchronized (Mesh.VAO_LOCK) {
+            ShaderProgram currentProgram = null;
+            Texture currentTexture = null;
+            int currentVao = 0;
+            for(int n = 0; n < size; n++) {
+                int i = order[n];
+                ShaderProgram program = programs[i];
+                if(program != currentProgram) {
+                    backend.useProgram(program);
+                    currentProgram = program;
+                    programChanges++;
+                }
+                Texture texture = textures[i];
+                if(texture != null && texture != currentTexture) {
+                    backend.bindTexture(texture);
+                    currentTexture = texture;
+                    textureChanges++;
+                }
+                Mesh mesh = meshes[i];
+                if(mesh.getVao() != currentVao) {
+                    backend.bindVertexArray(mesh.getVao());
+                    currentVao = mesh.getVao();
+                    vaoChanges++;
+                }
+                backend.setUniform(program, modelUniforms[i], models[i]);
+                mesh.draw(backend);
+                draws++;
+            }
+            if(currentVao != 0) {
+                backend.bindVertexArray(0);
+            }
+            Mesh.currentVao = 0;
+        }
+        clear();
+    }
+
+    /**
+     * Puts the submitted commands in state order. Stable, so draws sharing all their state stay in the order
+     * they were submitted in. execute() does this itself.
+     */
+    public void sort() {
+        // Nothing carries over between frames, this only checks whether this frame's draws were submitted in
+        // order already (a scene that submits grouped by state, or a single mesh type), which costs one pass.
+        boolean sorted = true;
+        for(int n = 1; n < size && sorted; n++) {
+            sorted = keys[order[n - 1]] <= keys[order[n]];
+        }
+        if(!sorted) {
+            mergeSort(0, size);
+        }
+    }
+
+    private void mergeSort(int from, int to) {
+        if(to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(from, mid);
+        mergeSort(mid, to);
+        if(keys[order[mid - 1]] <= keys[order[mid]]) {
+            return;
+        }
+        System.arraycopy(order, from, scratch, from, to - from);
+        int left = from, right = mid, out = from;
+        while(left < mid && right < to) {
+            if(keys[scratch[right]] < keys[scratch[left]]) {
+                order[out++] = scratch[right++];
+            }
+            else {
+                order[out++] = scratch[left++];
+            }
+        }
+        while(left < mid) {
+            order[out++] = scratch[left++];
+        }
+        while(right < to) {
+            order[out++] = scratch[right++];
+        }
+    }
+
+    /**
+     * Drops everything submitted without drawing it.
+     */
+    public void clear() {
+        Arrays.fill(programs, 0, size, null);
+        Arrays.fill(models, 0, size, null);
+        Arrays.fill(textures, 0, size, null);
+        Arrays.fill(meshes, 0, size, null);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * How many times the last execute() switched programs.
+     */
+    public int getProgramChanges() {
+        return programChanges;
+    }
+
+    /**
+     * How many times the last execute() bound a texture.
+     */
+    public int getTextureChanges() {
+        return textureChanges;
+    }
+
+    /**
+     * How many times the last execute() bound a VAO, not counting unbinding at the end.
+     */
+    public int getVaoChanges() {
+        return vaoChanges;
+    }
+
+    /**
+     * How many draws the last execute() issued.
+     */
+    public int getDraws() {
+        return draws;
+    }
+}
@@ -0,0 +1,258 @@
+package structure.opengl;
+
+import texture.SimpleTexture;
+import texture.Texture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.lwjgl.opengl.GL11.GL_TRIANGLES;
+
+/**
+ * Drives a RenderQueue with made-up programs, textures and VAOs, so it runs without a display. First a long run
+ * of random frames goes through a RecordingRenderBackend, and every frame's calls are checked against what a
+ * stable sort of the same draws says they should be, along with the change counters. Then bigger frames are
+ * timed against a backend that only counts, next to how many switches drawing them in submission order would
+ * have cost.
+ *
+ * Lives in structure.opengl rather than bench because it needs Mesh's VAO-wrapping constructor.
+ */
+public class RenderQueueBenchmark {
+    private static final int CHECK_FRAMES = 2000;
+    private static final int[] COUNTS = {100, 1000, 10000};
+    private static final int FRAMES = 200;
+    private static final int WARMUP = 50;
+    private static final int PROGRAMS = 4, TEXTURES = 8, MESHES = 16;
+
+    private static long sink = 0;
+
+    /*
+    Programs and meshes only need a GL name for the queue to sort on, and textures already have a constructor
+    that doesn't touch GL.
+     */
+    private static final class FakeProgram extends ShaderProgram {
+        FakeProgram(int name) {
+            program = name;
+        }
+    }
+
+    private static final class FakeMesh extends Mesh {
+        FakeMesh(int vao) {
+            super(vao);
+        }
+    }
+
+    private static final class CountingBackend implements RenderBackend {
+        long calls = 0;
+
+        @Override
+        public void useProgram(ShaderProgram program) {
+            calls++;
+        }
+
+        @Override
+        public void bindTexture(Texture texture) {
+            calls++;
+        }
+
+        @Override
+        public void bindVertexArray(int vao) {
+            calls++;
+        }
+
+        @Override
+        public void setUniform(ShaderProgram program, int handle, Matrix4 m) {
+            calls++;
+        }
+
+        @Override
+        public void drawArrays(int mode, int first, int count) {
+            calls++;
+        }
+
+        @Override
+        public void drawArraysInstanced(int mode, int first, int count, int instances) {
+            calls++;
+        }
+
+        @Override
+        public void drawElements(int mode, int count, int type, long offset) {
+            calls++;
+        }
+
+        @Override
+        public void drawElementsInstanced(int mode, int count, int type, long offset, int instances) {
+            calls++;
+        }
+    }
+
+    private static ShaderProgram[] programs;
+    private static Texture[] textures;
+    private static Mesh[] meshes;
+
+    public static void main(String[] args) {
+        programs = new ShaderProgram[PROGRAMS];
+        for(int i = 0; i < PROGRAMS; i++) {
+            programs[i] = new FakeProgram(i + 1);
+        }
+        textures = new Texture[TEXTURES];
+        for(int i = 0; i < TEXTURES; i++) {
+            textures[i] = new SimpleTexture(0x0DE1, i + 1, "fake" + i);
+        }
+        meshes = new Mesh[MESHES];
+        for(int i = 0; i < MESHES; i++) {
+            meshes[i] = new FakeMesh(i + 1);
+        }
+
+        check();
+        for(int count : COUNTS) {
+            run(count);
+        }
+        System.out.println("(sink: " + sink + ")");
+    }
+
+    private static void check() {
+        Random random = new Random(425);
+        RenderQueue queue = new RenderQueue();
+        RecordingRenderBackend backend = new RecordingRenderBackend();
+        Matrix4 model = new Matrix4();
+        int calls = 0;
+        for(int frame = 0; frame < CHECK_FRAMES; frame++) {
+            int count = random.nextInt(200);
+            // Some frames come in already grouped by state, to go through the path that skips sorting.
+            boolean presorted = frame % 4 == 0;
+            List<int[]> draws = new ArrayList<>();
+            for(int i = 0; i < count; i++) {
+                // Texture -1 is no texture at all.
+                draws.add(new int[] {random.nextInt(PROGRAMS), random.nextInt(TEXTURES + 1) - 1,
+                        random.nextInt(MESHES), i});
+            }
+            List<int[]> expected = new ArrayList<>(draws);
+            // List.sort() is stable, so draws sharing all their state keep their submission order.
+            expected.sort((a, b) -> {
+                if(a[0] != b[0]) {
+                    return Integer.compare(a[0], b[0]);
+                }
+                if(a[1] != b[1]) {
+                    return Integer.compare(a[1], b[1]);
+                }
+                return Integer.compare(a[2], b[2]);
+            });
+            if(presorted) {
+                draws = expected;
+            }
+            for(int[] draw : draws) {
+                // The uniform handle is the submission index, so the recorded setUniform calls show the order.
+                queue.submit(programs[draw[0]], draw[3], model, draw[1] < 0 ? null : textures[draw[1]],
+                        meshes[draw[2]]);
+            }
+
+            List<String> want = new ArrayList<>();
+            int program = -1, texture = -1, vao = 0;
+            int programChanges = 0, textureChanges = 0, vaoChanges = 0;
+            boolean[] used = new boolean[PROGRAMS];
+            int distinctPrograms = 0;
+            for(int[] draw : expected) {
+                if(draw[0] != program) {
+                    program = draw[0];
+                    want.add("useProgram " + (program + 1));
+                    programChanges++;
+                }
+                if(draw[1] >= 0 && draw[1] != texture) {
+                    texture = draw[1];
+                    want.add("bindTexture " + (texture + 1));
+                    textureChanges++;
+                }
+                if(draw[2] + 1 != vao) {
+                    vao = draw[2] + 1;
+                    want.add("bindVertexArray " + vao);
+                    vaoChanges++;
+                }
+                want.add("setUniform " + (program + 1) + " " + draw[3]);
+                want.add("drawArrays " + GL_TRIANGLES + " 0 0");
+                if(!used[draw[0]]) {
+                    used[draw[0]] = true;
+                    distinctPrograms++;
+                }
+            }
+            if(vao != 0) {
+                want.add("bindVertexArray 0");
+            }
+
+            backend.clear();
+            queue.execute(backend);
+            List<String> got = backend.getCalls();
+            if(!got.equals(want)) {
+                int at = 0;
+                while(at < got.size() && at < want.size() && got.get(at).equals(want.get(at))) {
+                    at++;
+                }
+                fail(frame, "call " + at + " was " + (at < got.size() ? got.get(at) : "missing") +
+                        " but should be " + (at < want.size() ? want.get(at) : "nothing"));
+            }
+            if(queue.getProgramChanges() != programChanges || queue.getTextureChanges() != textureChanges ||
+                    queue.getVaoChanges() != vaoChanges || queue.getDraws() != count) {
+                fail(frame, "counted " + queue.getProgramChanges() + "/" + queue.getTextureChanges() + "/" +
+                        queue.getVaoChanges() + "/" + queue.getDraws() + " program/texture/VAO changes/draws" +
+                        " but should be " + programChanges + "/" + textureChanges + "/" + vaoChanges + "/" + count);
+            }
+            // Every draw for a program is together, so each one is switched to exactly once.
+            if(queue.getProgramChanges() != distinctPrograms) {
+                fail(frame, "switched programs " + queue.getProgramChanges() + " times for " + distinctPrograms +
+                        " programs");
+            }
+            if(queue.size() != 0) {
+                fail(frame, "still had " + queue.size() + " draws after execute()");
+            }
+            calls += got.size();
+        }
+        System.out.println(String.format("%,d frames matched a stable sort (%,d calls)", CHECK_FRAMES, calls));
+    }
+
+    private static void fail(int frame, String what) {
+        throw new IllegalStateException("Frame " + frame + ": " + what);
+    }
+
+    private static void run(int count) {
+        Random random = new Random(count);
+        RenderQueue queue = new RenderQueue();
+        CountingBackend backend = new CountingBackend();
+        Matrix4 model = new Matrix4();
+        int[] draws = new int[count * 3];
+        for(int i = 0; i < draws.length; i += 3) {
+            draws[i] = random.nextInt(PROGRAMS);
+            draws[i + 1] = random.nextInt(TEXTURES);
+            draws[i + 2] = random.nextInt(MESHES);
+        }
+
+        // What drawing them straight off in submission order would switch.
+        int naive = 0;
+        for(int i = 0; i < draws.length; i += 3) {
+            for(int s = 0; s < 3; s++) {
+                if(i == 0 || draws[i + s] != draws[i - 3 + s]) {
+                    naive++;
+                }
+            }
+        }
+
+        long total = 0;
+        int switches = 0;
+        for(int frame = 0; frame < WARMUP + FRAMES; frame++) {
+            long start = System.nanoTime();
+            for(int i = 0; i < draws.length; i += 3) {
+                queue.submit(programs[draws[i]], i, model, textures[draws[i + 1]], meshes[draws[i + 2]]);
+            }
+            queue.execute(backend);
+            long done = System.nanoTime();
+            if(frame >= WARMUP) {
+                total += done - start;
+            }
+            switches = queue.getProgramChanges() + queue.getTextureChanges() + queue.getVaoChanges();
+        }
+        sink += backend.calls;
+
+        System.out.println(String.format("%,6d draws  submit + execute: %8.3f ms | state switches sorted %,6d," +
+                " in submission order %,6d", count, total / 1e6 / FRAMES, switches, naive));
+    }
+}
@@ -7,6 +7,7 @@ import stuff.Two;
 import stuff.Utils;
 
 import java.nio.FloatBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 
@@ -28,7 +29,21 @@ public class ShaderProgram {
     protected boolean destroyed = false, linked = false;
     protected LinkedList<Integer> allShaders = new LinkedList<>();
     protected FloatBuffer matrixBuffer = BufferUtils.createFloatBuffer(4 * 4);
-    protected HashMap<String, Integer> uniformNameToLoc = new HashMap<>();
+    protected HashMap<String, Integer> uniformNameToHandle = new HashMap<>();
+
+    /*
+    Uniform handles are just indices into these arrays. They get filled in from the program's active uniforms
+    when it's linked, so the hot path never touches the map or asks GL for a location. Each handle also gets
+    16 floats of shadow copy holding the last value uploaded through it, so setting a uniform to the value it
+    already has doesn't cost a GL call.
+     */
+    private static final int SHADOW_STRIDE = 16;
+    protected int uniformCount = 0;
+    protected String[] uniformNames = new String[8];
+    protected int[] uniformLocs = new int[8];
+    protected float[] uniformShadow = new float[8 * SHADOW_STRIDE];
+    protected boolean[] uniformShadowValid = new boolean[8];
+    protected long issuedUploads = 0, skippedUploads = 0;
 
     public void link() {
         program = createProgram();
@@ -38,6 +53,7 @@ public class ShaderProgram {
         allShaders.clear();
         allShaders = null;
         linked = true;
+        resolveUniforms();
 
         final int closureProg = program;
         CleanupManager.runOnGc(this, () -> {
@@ -84,38 +100,172 @@ public class ShaderProgram {
         }
     }
 
-    protected int getUniformLoc(String name) {
-        int ret = 0;
-        if(uniformNameToLoc.containsKey(name)) {
-            ret = uniformNameToLoc.get(name);
+    // Makes a handle for every uniform GL says is active, so they're all ready before the first frame.
+    protected void resolveUniforms() {
+        int active = glGetProgrami(program, GL_ACTIVE_UNIFORMS);
+        int maxLength = glGetProgrami(program, GL_ACTIVE_UNIFORM_MAX_LENGTH);
+        for(int i = 0; i < active; i++) {
+            String name = glGetActiveUniform(program, i, maxLength + 1);
+            // Arrays show up as "name[0]", but get looked up without the subscript.
+            int bracket = name.indexOf('[');
+            if(bracket >= 0) {
+                name = name.substring(0, bracket);
+            }
+            getUniform(name);
         }
-        else {
-            ret = glGetUniformLocation(program, name);
-            uniformNameToLoc.put(name, ret);
+    }
+
+    /**
+     * Gets the handle for a uniform, which can be kept around and passed to the setUniform functions instead
+     * of the name to skip the lookup. Names GL doesn't know about (misspelled, or optimized out of the shader)
+     * still get a handle, setting them just doesn't do anything.
+     */
+    public int getUniform(String name) {
+        Integer handle = uniformNameToHandle.get(name);
+        if(handle != null) {
+            return handle;
         }
+        if(uniformCount == uniformLocs.length) {
+            int grown = uniformCount * 2;
+            uniformNames = Arrays.copyOf(uniformNames, grown);
+            uniformLocs = Arrays.copyOf(uniformLocs, grown);
+            uniformShadow = Arrays.copyOf(uniformShadow, grown * SHADOW_STRIDE);
+            uniformShadowValid = Arrays.copyOf(uniformShadowValid, grown);
+        }
+        int ret = uniformCount++;
+        uniformNames[ret] = name;
+        uniformLocs[ret] = glGetUniformLocation(program, name);
+        uniformShadowValid[ret] = false;
+        uniformNameToHandle.put(name, ret);
         return ret;
     }
 
+    protected int getUniformLoc(String name) {
+        return uniformLocs[getUniform(name)];
+    }
+
+    public String getUniformName(int handle) {
+        return uniformNames[handle];
+    }
+
+    /*
+    Checks the shadow copy for the handle against the new value, updating it if they differ. Returns true when
+    the upload actually needs to happen, and keeps the counts of what was issued and what was skipped.
+     */
+    private boolean changed(int handle, float v0, float v1, float v2) {
+        int base = handle * SHADOW_STRIDE;
+        float[] shadow = uniformShadow;
+        if(uniformShadowValid[handle] && shadow[base] == v0 && shadow[base + 1] == v1 && shadow[base + 2] == v2) {
+            skippedUploads++;
+            return false;
+        }
+        shadow[base] = v0;
+        shadow[base + 1] = v1;
+        shadow[base + 2] = v2;
+        uniformShadowValid[handle] = true;
+        issuedUploads++;
+        return true;
+    }
+
+    private boolean changed(int handle, Matrix4 m) {
+        int base = handle * SHADOW_STRIDE;
+        float[] shadow = uniformShadow;
+        if(uniformShadowValid[handle] &&
+                shadow[base] == m.m00 && shadow[base + 1] == m.m10 && shadow[base + 2] == m.m20 && shadow[base + 3] == m.m30 &&
+                shadow[base + 4] == m.m01 && shadow[base + 5] == m.m11 && shadow[base + 6] == m.m21 && shadow[base + 7] == m.m31 &&
+                shadow[base + 8] == m.m02 && shadow[base + 9] == m.m12 && shadow[base + 10] == m.m22 && shadow[base + 11] == m.m32 &&
+                shadow[base + 12] == m.m03 && shadow[base + 13] == m.m13 && shadow[base + 14] == m.m23 && shadow[base + 15] == m.m33) {
+            skippedUploads++;
+            return false;
+        }
+        m.store(shadow, base);
+        uniformShadowValid[handle] = true;
+        issuedUploads++;
+        return true;
+    }
+
+    // For uploads that don't go through the shadow copy, so the next one that does can't wrongly get skipped.
+    private void invalidate(int handle) {
+        uniformShadowValid[handle] = false;
+        issuedUploads++;
+    }
+
+    public void setUniform(int handle, float val) {
+        if(changed(handle, val, 0, 0)) {
+            glUniform1f(uniformLocs[handle], val);
+        }
+    }
+
+    public void setUniform(int handle, float x, float y, float z) {
+        if(changed(handle, x, y, z)) {
+            glUniform3f(uniformLocs[handle], x, y, z);
+        }
+    }
+
+    public void setUniform(int handle, Vector3 v) {
+        setUniform(handle, v.x, v.y, v.z);
+    }
+
+    public void setUniform(int handle, Matrix4 m) {
+        if(changed(handle, m)) {
+            m.store(matrixBuffer, 0);
+            glUniformMatrix4(uniformLocs[handle], false, matrixBuffer);
+        }
+    }
+
     public void setUniform(String name, float val) {
-        int loc = getUniformLoc(name);
-        glUniform1f(loc, val);
+        setUniform(getUniform(name), val);
     }
 
     public void setUniform(String name, Vector3 v) {
-        int loc = getUniformLoc(name);
-        glUniform3f(loc, v.x, v.y, v.z);
+        setUniform(getUniform(name), v.x, v.y, v.z);
     }
 
     public void setUniform3(String name, FloatBuffer buf) {
-        int loc = getUniformLoc(name);
-        glUniform3(loc, buf);
+        int handle = getUniform(name);
+        invalidate(handle);
+        glUniform3(uniformLocs[handle], buf);
     }
 
     public void setUniform(String name, Matrix4 m) {
-        m.store(matrixBuffer);
-        matrixBuffer.flip();
-        int loc = getUniformLoc(name);
-        glUniformMatrix4(loc, false, matrixBuffer);
+        setUniform(getUniform(name), m);
+    }
+
+    /**
+     * Uploads a matrix that was already staged into a UniformMatrixBlock, without copying it again.
+     */
+    public void setUniform(String name, UniformMatrixBlock block, int slot) {
+        int handle = getUniform(name);
+        invalidate(handle);
+        glUniformMatrix4(uniformLocs[handle], false, block.getSlot(slot));
+    }
+
+    /**
+     * Uploads however many matrices are left in buf (16 floats each) to a mat4 or mat4 array uniform.
+     */
+    public void setUniformMatrices(String name, FloatBuffer buf) {
+        int handle = getUniform(name);
+        invalidate(handle);
+        glUniformMatrix4(uniformLocs[handle], false, buf);
+    }
+
+    /**
+     * Number of uniform uploads that actually went to GL.
+     */
+    public long getIssuedUploads() {
+        return issuedUploads;
+    }
+
+    /**
+     * Number of uniform uploads that were skipped because the uniform already had that value.
+     */
+    public long getSkippedUploads() {
+        return skippedUploads;
+    }
+
+    public void resetUploadCounts() {
+        issuedUploads = 0;
+        skippedUploads = 0;
     }
 
     public void destroy() {
@@ -130,8 +280,9 @@ public class ShaderProgram {
             if(linked) {
                 glDeleteProgram(program);
             }
-            uniformNameToLoc.clear();
-            uniformNameToLoc = null;
+            uniformNameToHandle.clear();
+            uniformNameToHandle = null;
+            uniformCount = 0;
             program = 0;
             destroyed = true;
         }
@@ -0,0 +1,123 @@
+package structure.opengl;
+
+import org.lwjgl.BufferUtils;
+
+import java.nio.FloatBuffer;
+
+/**
+ * One contiguous off-heap block that a frame's worth of matrices gets staged into before being handed to
+ * glUniformMatrix4. Matrices are written into a plain float array as they're staged, and the whole lot goes
+ * into the direct buffer with a single bulk put in flush(), instead of one put per float per matrix.
+ *
+ * Each slot has its own 16 float view into the block made up front, so uploading a slot never copies or
+ * allocates anything. Not thread-safe; stage and upload from the GL thread, or hand the block off as a whole.
+ */
+public class UniformMatrixBlock {
+    private final int capacity;
+    private final float[] staging;
+    private final FloatBuffer block;
+    private final FloatBuffer[] slots;
+    private int size = 0, flushed = 0;
+
+    public UniformMatrixBlock(int capacity) {
+        if(capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive, got: " + capacity);
+        }
+        this.capacity = capacity;
+        this.staging = new float[capacity * 16];
+        this.block = BufferUtils.createFloatBuffer(capacity * 16);
+        this.slots = new FloatBuffer[capacity];
+        for(int i = 0; i < capacity; i++) {
+            FloatBuffer view = block.duplicate();
+            view.position(i * 16);
+            view.limit(i * 16 + 16);
+            slots[i] = view.slice();
+        }
+    }
+
+    /**
+     * Stages a matrix and returns the slot it went into.
+     */
+    public int stage(Matrix4 m) {
+        if(size == capacity) {
+            throw new IllegalStateException("Uniform block is full (" + capacity + " matrices)");
+        }
+        m.store(staging, size * 16);
+        return size++;
+    }
+
+    /**
+     * Stages every matrix in the batch back to back and returns the slot the first one went into.
+     */
+    public int stage(Matrix4Batch batch) {
+        if(size + batch.size > capacity) {
+            throw new IllegalStateException("Uniform block can't fit " + batch.size + " more matrices, " +
+                    (capacity - size) + " slots left");
+        }
+        int first = size;
+        System.arraycopy(batch.m, 0, staging, first * 16, batch.size * 16);
+        size += batch.size;
+        return first;
+    }
+
+    /**
+     * Copies everything staged since the last flush into the off-heap block in one go.
+     */
+    public void flush() {
+        if(flushed == size) {
+            return;
+        }
+        FloatBuffer view = block.duplicate();
+        view.limit(view.capacity());
+        view.position(flushed * 16);
+        view.put(staging, flushed * 16, (size - flushed) * 16);
+        flushed = size;
+    }
+
+    /**
+     * View of just the given slot, ready to pass straight to glUniformMatrix4. Flushes first if needed.
+     */
+    public FloatBuffer getSlot(int slot) {
+        if(slot < 0 || slot >= size) {
+            throw new IndexOutOfBoundsException("Slot " + slot + " hasn't been staged, size is " + size);
+        }
+        if(slot >= flushed) {
+            flush();
+        }
+        return slots[slot];
+    }
+
+    /**
+     * View of count slots starting at first, for uploading to a mat4 array uniform. Flushes first if needed.
+     * The returned buffer is a fresh view of the block, so moving its position or limit doesn't affect the
+     * block or any other view.
+     */
+    public FloatBuffer getRange(int first, int count) {
+        if(first < 0 || count < 0 || first + count > size) {
+            throw new IndexOutOfBoundsException("Slots " + first + " to " + (first + count) + " haven't all been staged, size is " + size);
+        }
+        if(first + count > flushed) {
+            flush();
+        }
+        FloatBuffer view = block.duplicate();
+        view.limit((first + count) * 16);
+        view.position(first * 16);
+        return view;
+    }
+
+    /**
+     * Empties the block so it can be staged into again, normally at the start of a frame.
+     */
+    public void reset() {
+        size = 0;
+        flushed = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
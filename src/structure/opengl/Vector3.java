@@ -1,8 +1,6 @@
 package structure.opengl;
 
-import stuff.Utils;
-
-import java.util.LinkedList;
+import structure.mem.Pool;
 
 /**
  * Created with IntelliJ IDEA.
@@ -19,14 +17,9 @@ public class Vector3 {
     public static final Vector3 FORWARD = Vector3.forward();
     public static final Vector3 BACKWARD = Vector3.backward();
 
+    protected static final int LOCAL_VECTORS = 64;
     protected static final int INITIAL_VECTORS = 1000;
-    protected static final LinkedList<Vector3> recycled = new LinkedList<Vector3>();
-
-//    static {
-//        for(int i = 0; i < INITIAL_VECTORS; i++) {
-//            recycled.push(new Vector3());
-//        }
-//    }
+    public static final Pool<Vector3> POOL = new Pool<>(Vector3::new, LOCAL_VECTORS, INITIAL_VECTORS);
 
     public static Vector3 get() {
         return get(0.0f, 0.0f, 0.0f);
@@ -41,26 +34,11 @@ public class Vector3 {
     }
 
     public static Vector3 get(float x, float y, float z) {
-        if(recycled.size() > 0) {
-            Vector3 ret = recycled.pop();
-            ret.x = x;
-            ret.y = y;
-            ret.z = z;
-            return ret;
-        }
-        return new Vector3(x, y, z);
+        return POOL.obtain().set(x, y, z);
     }
 
     public static void recycle(Vector3 vec) {
-        if(recycled.size() > INITIAL_VECTORS) {
-            double result = Math.abs(Utils.random.nextGaussian());
-            if(result < 0.1) {
-                recycled.push(vec);
-            }
-        }
-        else {
-            recycled.push(vec);
-        }
+        POOL.free(vec);
     }
 
     /* ====== END STATIC METHODS ====== */
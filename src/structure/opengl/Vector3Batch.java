@@ -0,0 +1,42 @@
+package structure.opengl;
+
+/**
+ * A bunch of vectors stored as one float array per component, for use with BatchMath.
+ */
+public class Vector3Batch {
+    public final float[] x, y, z;
+    public final int capacity;
+    public int size = 0;
+
+    public Vector3Batch(int capacity) {
+        this.capacity = capacity;
+        this.x = new float[capacity];
+        this.y = new float[capacity];
+        this.z = new float[capacity];
+    }
+
+    public Vector3Batch add(float x, float y, float z) {
+        set(size++, x, y, z);
+        return this;
+    }
+
+    public Vector3Batch add(Vector3 v) {
+        return add(v.x, v.y, v.z);
+    }
+
+    public Vector3Batch set(int i, float x, float y, float z) {
+        this.x[i] = x;
+        this.y[i] = y;
+        this.z[i] = z;
+        return this;
+    }
+
+    public Vector3 get(int i, Vector3 result) {
+        return result.set(x[i], y[i], z[i]);
+    }
+
+    public Vector3Batch clear() {
+        size = 0;
+        return this;
+    }
+}
@@ -0,0 +1,222 @@
+package structure.opengl;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL30.GL_HALF_FLOAT;
+
+/**
+ * Describes one interleaved vertex: which attributes it has, in order, how many components each one has, and
+ * how each is stored on the GPU. Input is always floats, one row per vertex with every attribute's components
+ * back to back; anything not stored as FLOAT gets packed down when it's uploaded. Each attribute starts on a
+ * 4 byte boundary, since some drivers get slow (or wrong) otherwise.
+ *
+ * Normals and colors are good candidates for NORMALIZED_BYTE / NORMALIZED_UBYTE, UVs for HALF.
+ */
+public class VertexFormat {
+    public static final int FLOAT = 0;
+    public static final int HALF = 1;
+    // -1 to 1, stored as -127 to 127.
+    public static final int NORMALIZED_BYTE = 2;
+    // 0 to 1, stored as 0 to 255.
+    public static final int NORMALIZED_UBYTE = 3;
+
+    private int[] components = new int[0];
+    private int[] storage = new int[0];
+    private int[] offsets = new int[0];
+    private int stride = 0, floatsPerVertex = 0;
+    private boolean allFloat = true;
+
+    public VertexFormat add(int components, int storage) {
+        if(components < 1 || components > 4) {
+            throw new IllegalArgumentException("Attributes have 1 to 4 components, got: " + components);
+        }
+        if(storage < FLOAT || storage > NORMALIZED_UBYTE) {
+            throw new IllegalArgumentException("Unknown storage type: " + storage);
+        }
+        int n = this.components.length;
+        this.components = Arrays.copyOf(this.components, n + 1);
+        this.storage = Arrays.copyOf(this.storage, n + 1);
+        this.offsets = Arrays.copyOf(this.offsets, n + 1);
+        this.components[n] = components;
+        this.storage[n] = storage;
+        this.offsets[n] = stride;
+        int bytes = components * bytesPerComponent(storage);
+        stride += (bytes + 3) & ~3;
+        floatsPerVertex += components;
+        allFloat &= storage == FLOAT;
+        return this;
+    }
+
+    /**
+     * Same as a string of add(..., FLOAT) for the given Mesh data types, which is what addBufferColumns uses.
+     */
+    public static VertexFormat floats(int... dataTypes) {
+        VertexFormat ret = new VertexFormat();
+        for(int type : dataTypes) {
+            ret.add(type + 1, FLOAT);
+        }
+        return ret;
+    }
+
+    private static int bytesPerComponent(int storage) {
+        switch(storage) {
+            case FLOAT:
+                return 4;
+            case HALF:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    public int getAttributeCount() {
+        return components.length;
+    }
+
+    public int getComponents(int attribute) {
+        return components[attribute];
+    }
+
+    public int getOffset(int attribute) {
+        return offsets[attribute];
+    }
+
+    /**
+     * Bytes per vertex on the GPU side.
+     */
+    public int getStride() {
+        return stride;
+    }
+
+    /**
+     * Floats per vertex on the input side.
+     */
+    public int getFloatsPerVertex() {
+        return floatsPerVertex;
+    }
+
+    /**
+     * True when nothing needs packing, so input rows can be uploaded exactly as they are.
+     */
+    public boolean isAllFloat() {
+        return allFloat;
+    }
+
+    public int getGLType(int attribute) {
+        switch(storage[attribute]) {
+            case FLOAT:
+                return GL_FLOAT;
+            case HALF:
+                return GL_HALF_FLOAT;
+            case NORMALIZED_BYTE:
+                return GL_BYTE;
+            default:
+                return GL_UNSIGNED_BYTE;
+        }
+    }
+
+    public boolean isNormalized(int attribute) {
+        return storage[attribute] == NORMALIZED_BYTE || storage[attribute] == NORMALIZED_UBYTE;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if(this == o) {
+            return true;
+        }
+        if(!(o instanceof VertexFormat)) {
+            return false;
+        }
+        VertexFormat other = (VertexFormat)o;
+        return Arrays.equals(components, other.components) && Arrays.equals(storage, other.storage);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(components) * 31 + Arrays.hashCode(storage);
+    }
+
+    /**
+     * Packs vertexCount rows of interleaved floats into out, starting at out's position, laid out as this
+     * format describes. Advances out's position by vertexCount * getStride().
+     */
+    public void pack(float[] data, int vertexCount, ByteBuffer out) {
+        int in = 0;
+        for(int v = 0; v < vertexCount; v++) {
+            int vertexStart = out.position();
+            for(int a = 0; a < components.length; a++) {
+                out.position(vertexStart + offsets[a]);
+                int c = components[a];
+                switch(storage[a]) {
+                    case FLOAT:
+                        for(int i = 0; i < c; i++) {
+                            out.putFloat(data[in++]);
+                        }
+                        break;
+                    case HALF:
+                        for(int i = 0; i < c; i++) {
+                            out.putShort(toHalf(data[in++]));
+                        }
+                        break;
+                    case NORMALIZED_BYTE:
+                        for(int i = 0; i < c; i++) {
+                            float f = Math.max(-1, Math.min(1, data[in++]));
+                            out.put((byte)Math.round(f * 127));
+                        }
+                        break;
+                    default:
+                        for(int i = 0; i < c; i++) {
+                            float f = Math.max(0, Math.min(1, data[in++]));
+                            out.put((byte)Math.round(f * 255));
+                        }
+                        break;
+                }
+            }
+            out.position(vertexStart + stride);
+        }
+    }
+
+    /**
+     * IEEE 754 half precision, rounded to nearest even. Too big becomes infinity, too small becomes zero
+     * (through the denormals).
+     */
+    public static short toHalf(float f) {
+        int bits = Float.floatToRawIntBits(f);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if(exponent == 0xFF) {
+            // Infinity stays infinity, NaN stays some NaN.
+            return (short)(sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if(halfExponent >= 0x1F) {
+            return (short)(sign | 0x7C00);
+        }
+        if(halfExponent <= 0) {
+            if(halfExponent < -10) {
+                return (short)sign;
+            }
+            // Denormal: put the implicit 1 back and shift it down into place.
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >> shift;
+            int rest = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if(rest > halfway || (rest == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short)(sign | half);
+        }
+        int half = (halfExponent << 10) | (mantissa >> 13);
+        int rest = mantissa & 0x1FFF;
+        if(rest > 0x1000 || (rest == 0x1000 && (half & 1) != 0)) {
+            // Carrying into the exponent is fine, that's just the next power of two (or infinity).
+            half++;
+        }
+        return (short)(sign | half);
+    }
+}
@@ -0,0 +1,119 @@
+package structure.tree;
+
+import scene.Bounds;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The id bookkeeping shared by the array-backed broadphases (QuadTree, SpatialHashGrid, SweepAndPrune): handing
+ * out ids and taking them back through a free list, and remembering which Collidable each id was made for so
+ * their Collidable methods can work on top of plain ids. The per-id data itself stays in the broadphase's own
+ * arrays, grown whenever take() hands out an id past their end.
+ *
+ * Not safe to use from more than one thread at a time.
+ */
+class IdTable {
+    public static final int NONE = -1;
+
+    protected Object[] owners = new Object[64];
+    protected int idCount = 0, size = 0;
+    protected int[] freeIds = new int[16];
+    protected int freeCount = 0;
+    protected final Map<Collidable<Bounds>, Integer> ids = new IdentityHashMap<>();
+
+    /**
+     * @return A free id, reusing one that was given back if there is one.
+     */
+    public int take() {
+        int id;
+        if(freeCount > 0) {
+            id = freeIds[--freeCount];
+        }
+        else {
+            id = idCount++;
+            if(id == owners.length) {
+                owners = Arrays.copyOf(owners, owners.length * 2);
+            }
+        }
+        size++;
+        return id;
+    }
+
+    /**
+     * Gives the id back. Whatever collidable it was made for is forgotten along with it, whether it's being
+     * removed through the collidable or by id directly. Otherwise removing by id would leave the collidable
+     * pointing at the id, and removing the collidable later would free whoever got the id next.
+     */
+    public void free(int id) {
+        if(owners[id] != null) {
+            ids.remove(owners[id]);
+            owners[id] = null;
+        }
+        if(freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeCount * 2);
+        }
+        freeIds[freeCount++] = id;
+        size--;
+    }
+
+    /**
+     * Throws every id away and starts over with ids 0 to count - 1 taken, none of them owned.
+     */
+    public void reset(int count) {
+        Arrays.fill(owners, 0, idCount, null);
+        ids.clear();
+        if(count > owners.length) {
+            owners = new Object[Math.max(count, owners.length * 2)];
+        }
+        idCount = count;
+        size = count;
+        freeCount = 0;
+    }
+
+    /**
+     * How many ids have ever been handed out since the last reset(), so every id is below this.
+     */
+    public int idCount() {
+        return idCount;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void setOwner(int id, Collidable<Bounds> c) {
+        owners[id] = c;
+        ids.put(c, id);
+    }
+
+    /**
+     * The collidable an id was made for, or null if it was added as a plain box.
+     */
+    @SuppressWarnings("unchecked")
+    public Collidable<Bounds> getOwner(int id) {
+        return (Collidable<Bounds>)owners[id];
+    }
+
+    public int getId(Collidable<Bounds> c) {
+        Integer id = ids.get(c);
+        return id == null ? NONE : id;
+    }
+
+    /**
+     * The owners of the first count ids in found, leaving out plain boxes and skip (which can be null).
+     */
+    public List<Collidable<Bounds>> getOwners(int[] found, int count, Collidable<Bounds> skip) {
+        List<Collidable<Bounds>> ret = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            Collidable<Bounds> owner = getOwner(found[i]);
+            if(owner != null && owner != skip) {
+                ret.add(owner);
+            }
+        }
+        return ret;
+    }
+}
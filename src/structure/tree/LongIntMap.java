@@ -0,0 +1,148 @@
+package structure.tree;
+
+import java.util.Arrays;
+
+/**
+ * Map from long to int over two plain arrays, for the broadphases that key things (cells, pairs) by packed longs
+ * and don't want a Long and an Integer made for every lookup. Open addressing with linear probing, kept at most
+ * half full. Removing shifts the entries after it back instead of leaving tombstones, so lookups stay short no
+ * matter how much churn there is.
+ *
+ * -1 can't be used as a key, it marks empty slots. Not safe to use from more than one thread at a time.
+ */
+public class LongIntMap {
+    public static final int NONE = -1;
+    private static final long EMPTY = -1L;
+
+    protected long[] keys;
+    protected int[] values;
+    protected int mask, shift, size = 0;
+
+    public LongIntMap() {
+        this(16);
+    }
+
+    public LongIntMap(int expected) {
+        allocate(Math.max(16, Integer.highestOneBit(Math.max(expected, 1) * 2 - 1) * 2));
+    }
+
+    private int slot(long key) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> shift);
+    }
+
+    /**
+     * @return The value for the key, or NONE if it isn't in the map.
+     */
+    public int get(long key) {
+        int s = slot(key);
+        long k;
+        while((k = keys[s]) != EMPTY) {
+            if(k == key) {
+                return values[s];
+            }
+            s = (s + 1) & mask;
+        }
+        return NONE;
+    }
+
+    public boolean containsKey(long key) {
+        return get(key) != NONE;
+    }
+
+    /**
+     * @return The value the key had before, or NONE if it's new.
+     */
+    public int put(long key, int value) {
+        int s = slot(key);
+        long k;
+        while((k = keys[s]) != EMPTY) {
+            if(k == key) {
+                int old = values[s];
+                values[s] = value;
+                return old;
+            }
+            s = (s + 1) & mask;
+        }
+        keys[s] = key;
+        values[s] = value;
+        if(++size * 2 > keys.length) {
+            grow();
+        }
+        return NONE;
+    }
+
+    /**
+     * @return The value the key had, or NONE if it wasn't in the map.
+     */
+    public int remove(long key) {
+        int s = slot(key);
+        long k;
+        while((k = keys[s]) != key) {
+            if(k == EMPTY) {
+                return NONE;
+            }
+            s = (s + 1) & mask;
+        }
+        int old = values[s];
+        deleteSlot(s);
+        size--;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /*
+    Anything after the hole that would have liked to be at or before it gets moved into it.
+     */
+    private void deleteSlot(int hole) {
+        int s = hole;
+        while(true) {
+            s = (s + 1) & mask;
+            long key = keys[s];
+            if(key == EMPTY) {
+                break;
+            }
+            int home = slot(key);
+            boolean between = hole <= s ? (home > hole && home <= s) : (home > hole || home <= s);
+            if(!between) {
+                keys[hole] = key;
+                values[hole] = values[s];
+                hole = s;
+            }
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new int[capacity];
+        mask = capacity - 1;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for(int i = 0; i < oldKeys.length; i++) {
+            long key = oldKeys[i];
+            if(key == EMPTY) {
+                continue;
+            }
+            int s = slot(key);
+            while(keys[s] != EMPTY) {
+                s = (s + 1) & mask;
+            }
+            keys[s] = key;
+            values[s] = oldValues[i];
+        }
+    }
+}
@@ -1,6 +1,7 @@
 package structure.tree;
 
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -16,31 +17,42 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
     protected final LinkedList<GrayNode> cachedGrayNodes = new LinkedList<GrayNode>();
     protected final LinkedList<Collidable<T>> cachedCollidables = new LinkedList<Collidable<T>>();
 
-    protected Node getBlackNode(Collidable<T> c) {
-        if(!cachedBlackNodes.isEmpty()) {
-            Node ret = cachedBlackNodes.pop();
-            ret.collidable = c;
-            return ret;
-        }
-        return new BlackNode(c);
+    // Things that straddle a split live in more than one leaf, this keeps them from being reported twice.
+    protected final IdentityHashMap<Collidable<T>, Boolean> seen = new IdentityHashMap<Collidable<T>, Boolean>();
+    // Set by a leaf when remove() actually finds the item, so size only counts real removals.
+    protected boolean removed;
+
+    /*
+    Every node that comes out of a cache gets reset, so nothing from whatever it was last used for (old
+    children, old items) leaks into its new spot.
+     */
+    protected Node getBlackNode(Collidable<T> c, int depth) {
+        Node ret = cachedBlackNodes.isEmpty() ? new BlackNode(c) : cachedBlackNodes.pop();
+        ret.depth = depth;
+        ret.reset(c);
+        return ret;
     }
 
-    protected Node getWhiteNode(Collidable<T> c) {
-        if(!cachedWhiteNodes.isEmpty()) {
-            Node ret = cachedWhiteNodes.pop();
-            ret.collidable = c;
-            return ret;
-        }
-        return new WhiteNode(c);
+    protected Node getWhiteNode(Collidable<T> c, int depth) {
+        Node ret = cachedWhiteNodes.isEmpty() ? new WhiteNode(c) : cachedWhiteNodes.pop();
+        ret.depth = depth;
+        ret.reset(c);
+        return ret;
     }
 
-    protected Node getGrayNode(Collidable<T> c) {
-        if(!cachedGrayNodes.isEmpty()) {
-            Node ret = cachedGrayNodes.pop();
-            ret.collidable = c;
-            return ret;
+    protected Node getGrayNode(Collidable<T> c, int depth) {
+        Node ret;
+        if(cachedGrayNodes.isEmpty()) {
+            // The constructor sets its children up itself, which needs to know how deep they are.
+            GrayNode gray = new GrayNode(c, depth);
+            ret = gray;
         }
-        return new GrayNode(c);
+        else {
+            ret = cachedGrayNodes.pop();
+            ret.depth = depth;
+            ret.reset(c);
+        }
+        return ret;
     }
 
     protected Collidable<T> getCollidable() {
@@ -52,10 +64,13 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
     protected abstract class Node {
         protected Collidable<T> collidable;
+        protected int depth;
         public abstract Node add(Collidable<T> t);
         public abstract Node remove(Collidable<T> t);
         public abstract void findIntersecting(Collidable<T> c, List<Collidable<T>> cs);
         public abstract void reset(Collidable<T> c);
+        // Hands the node (and everything under it) back to the caches.
+        public abstract void recycle();
     }
     protected class BlackNode extends Node {
         protected ArrayList<Collidable<T>> ts;
@@ -67,14 +82,15 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
         @Override
         public Node add(Collidable<T> t) {
-            if(ts.size() == blackNodeLimit) {
-                Node ret = new GrayNode(collidable);
+            // Past the depth limit a leaf just keeps growing, otherwise a pile of things all on top of each other
+            // would get split forever.
+            if(ts.size() == blackNodeLimit && depth < maxDepth) {
+                Node ret = getGrayNode(collidable, depth);
                 for(Collidable<T> t1 : ts) {
                     ret = ret.add(t1);
                 }
                 ret = ret.add(t);
-                // Make sure the node is in a clean state for when it gets removed from the cache
-                cachedBlackNodes.push(this);
+                recycle();
                 return ret;
             }
             ts.add(t);
@@ -83,18 +99,26 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
         @Override
         public Node remove(Collidable<T> t) {
-            ts.remove(t);
+            for(int i = 0; i < ts.size(); i++) {
+                if(ts.get(i) == t) {
+                    ts.remove(i);
+                    removed = true;
+                    break;
+                }
+            }
             if(ts.isEmpty()) {
-                cachedBlackNodes.push(this);
-                return new WhiteNode(collidable);
+                Node ret = getWhiteNode(collidable, depth);
+                recycle();
+                return ret;
             }
             return this;
         }
 
         @Override
         public void findIntersecting(Collidable<T> c, List<Collidable<T>> cs) {
-            for(Collidable<T> myc : ts) {
-                if(c.collidesWith(myc)) {
+            for(int i = 0; i < ts.size(); i++) {
+                Collidable<T> myc = ts.get(i);
+                if(c.collidesWith(myc) && seen.put(myc, Boolean.TRUE) == null) {
                     cs.add(myc);
                 }
             }
@@ -105,6 +129,13 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
             collidable = c;
             ts.clear();
         }
+
+        @Override
+        public void recycle() {
+            ts.clear();
+            collidable = null;
+            cachedBlackNodes.push(this);
+        }
     }
     protected class WhiteNode extends Node {
         public WhiteNode(Collidable<T> collidable) {
@@ -113,9 +144,8 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
         @Override
         public Node add(Collidable<T> t) {
-            System.out.println("Retuning black node from white node");
-            Node ret = new BlackNode(collidable);
-            cachedWhiteNodes.push(this);
+            Node ret = getBlackNode(collidable, depth);
+            recycle();
             return ret.add(t);
         }
 
@@ -130,26 +160,29 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
         @Override
         public void reset(Collidable<T> c) {
+            collidable = c;
+        }
+
+        @Override
+        public void recycle() {
+            collidable = null;
+            cachedWhiteNodes.push(this);
         }
     }
     protected class GrayNode extends Node {
         protected ArrayList<Node> children;
 
         public GrayNode(Collidable<T> collidable) {
-            this.collidable = collidable;
-            ArrayList<Collidable<T>> cs = new ArrayList<Collidable<T>>(branches);
-            for(int i = 0; i < branches; i++) {
-                Collidable<T> c = getCollidable();
-                if(c == null) {
-                    break;
-                }
-                cs.add(c);
-            }
-            divisor.divide(collidable, cs);
+            this(collidable, 0);
+        }
+
+        public GrayNode(Collidable<T> collidable, int depth) {
+            this.depth = depth;
             children = new ArrayList<Node>(branches);
             for(int i = 0; i < branches; i++) {
-                children.add(getWhiteNode(cs.get(i)));
+                children.add(null);
             }
+            reset(collidable);
         }
 
         @Override
@@ -164,42 +197,43 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
         @Override
         public Node remove(Collidable<T> t) {
-            // TODO: Merge black nodes when total children items is < blackNodeLimit
-            int blackNodeCount = 0, whiteNodeCount = 0;
+            // Only the children t overlaps can be holding it, same as add().
             for(int i = 0; i < branches; i++) {
-                children.set(i, children.get(i).remove(t));
-                if(children.get(i) instanceof NTree<?>.BlackNode) {
-                    blackNodeCount++;
-                }
-                else if(children.get(i) instanceof NTree<?>.WhiteNode) {
-                    whiteNodeCount++;
+                Node child = children.get(i);
+                if(t.collidesWith(child.collidable)) {
+                    children.set(i, child.remove(t));
                 }
             }
-            if(whiteNodeCount == branches) {
-                for(int i = 0; i < branches; i++) {
-                    Node node = children.get(i);
-                    cachedCollidables.push(node.collidable);
-                    cachedWhiteNodes.push((WhiteNode)node);
+            for(int i = 0; i < branches; i++) {
+                if(children.get(i) instanceof NTree<?>.GrayNode) {
+                    return this;
                 }
-                cachedGrayNodes.push(this);
-                return getWhiteNode(collidable);
             }
-            else if(blackNodeCount == 1) {
-                Node ret = null;
-                for(int i = 0; i < branches; i++) {
-                    if(children.get(i) instanceof NTree<?>.BlackNode) {
-                        ret = children.get(i);
-                    }
-                    else {
-                        cachedWhiteNodes.push((WhiteNode)children.get(i));
-                        cachedCollidables.push(children.get(i).collidable);
+
+            // Everything left is in leaves. If it all fits in one, fold the children back into it.
+            seen.clear();
+            int total = 0;
+            for(int i = 0; i < branches && total <= blackNodeLimit; i++) {
+                Node child = children.get(i);
+                if(child instanceof NTree<?>.BlackNode) {
+                    for(Collidable<T> item : ((BlackNode)child).ts) {
+                        if(seen.put(item, Boolean.TRUE) == null) {
+                            total++;
+                        }
                     }
                 }
-                cachedGrayNodes.push(this);
-                ret.collidable = collidable;
-                return ret;
             }
-            return this;
+            if(total > blackNodeLimit) {
+                seen.clear();
+                return this;
+            }
+            Node ret = total == 0 ? getWhiteNode(collidable, depth) : getBlackNode(collidable, depth);
+            if(total > 0) {
+                ((BlackNode)ret).ts.addAll(seen.keySet());
+            }
+            seen.clear();
+            recycle();
+            return ret;
         }
 
         @Override
@@ -225,25 +259,44 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
             }
             divisor.divide(collidable, cs);
             for(int i = 0; i < branches; i++) {
-//                children[i] = new WhiteNode(cs.get(i));
-                children.set(i, getWhiteNode(cs.get(i)));
+                children.set(i, getWhiteNode(cs.get(i), depth + 1));
             }
         }
+
+        @Override
+        public void recycle() {
+            for(int i = 0; i < branches; i++) {
+                Node child = children.get(i);
+                // The regions the divisor made for the children can be handed to the next gray node.
+                cachedCollidables.push(child.collidable);
+                child.recycle();
+                children.set(i, null);
+            }
+            collidable = null;
+            cachedGrayNodes.push(this);
+        }
     }
 
     protected static final int DEFAULT_LIMIT = 4;
-    protected int branches, blackNodeLimit;
+    protected static final int DEFAULT_MAX_DEPTH = 8;
+    protected int branches, blackNodeLimit, maxDepth;
     protected Collidable<T> rootCollidable;
     protected CollidableDivisor<T> divisor;
     protected Node rootNode;
+    protected int size = 0;
 
     public NTree(int branches, Collidable<T> root, CollidableDivisor<T> divisor) {
         this(branches, DEFAULT_LIMIT, root, divisor);
     }
 
     public NTree(int branches, int blackNodeLimit, Collidable<T> root, CollidableDivisor<T> divisor) {
+        this(branches, blackNodeLimit, DEFAULT_MAX_DEPTH, root, divisor);
+    }
+
+    public NTree(int branches, int blackNodeLimit, int maxDepth, Collidable<T> root, CollidableDivisor<T> divisor) {
         this.branches = branches;
         this.blackNodeLimit = blackNodeLimit;
+        this.maxDepth = maxDepth;
         this.rootCollidable = root;
         this.divisor = divisor;
         this.rootNode = new WhiteNode(rootCollidable);
@@ -251,18 +304,52 @@ public class NTree<T> implements NTreeBasic<Collidable<T>> {
 
     public void add(Collidable<T> c) {
         rootNode = rootNode.add(c);
-//        System.out.println("Root node is black: " + (rootNode instanceof NTree<?>.BlackNode));
+        size++;
     }
 
+    /**
+     * Takes c out of every leaf it's in, folding nodes back together on the way up once their leaves would all
+     * fit in one. c has to still be where it was when it was added, since that's how the leaves holding it are
+     * found. Removing something that isn't in the tree does nothing.
+     */
     @Override
-    public void remove(Collidable<T> collidable) {
-        //To change body of implemented methods use File | Settings | File Templates.
+    public void remove(Collidable<T> c) {
+        removed = false;
+        rootNode = rootNode.remove(c);
+        if(removed) {
+            size--;
+        }
     }
 
+    /**
+     * Convenience version of getIntersecting(collidable, list) that makes a new list every time.
+     */
     @Override
     public List<Collidable<T>> getIntersecting(Collidable<T> collidable) {
-        LinkedList<Collidable<T>> ret = new LinkedList<Collidable<T>>();
-        rootNode.findIntersecting(collidable, ret);
+        List<Collidable<T>> ret = new ArrayList<Collidable<T>>();
+        getIntersecting(collidable, ret);
         return ret;
     }
+
+    /**
+     * Adds everything that collides with collidable to out, each thing once.
+     *
+     * @return How many were added.
+     */
+    public int getIntersecting(Collidable<T> collidable, List<Collidable<T>> out) {
+        int before = out.size();
+        rootNode.findIntersecting(collidable, out);
+        seen.clear();
+        return out.size() - before;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        rootNode.recycle();
+        rootNode = getWhiteNode(rootCollidable, 0);
+        size = 0;
+    }
 }
@@ -1,10 +1,526 @@
 package structure.tree;
 
+import scene.Bounds;
+import structure.mem.Pool;
+import structure.opengl.Matrix4;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 /**
  * Created with IntelliJ IDEA.
  * User: freezerburn
  * Date: 2/21/13
  * Time: 10:01 AM
+ *
+ * Loose octree over anything with Bounds. Each node's box is twice the size of the cell it covers, so an
+ * object only has to have its center inside a cell, and be no bigger than that cell, to be stored there. That
+ * means the node for an object comes straight from its size and position, with no testing against
+ * neighbours, and an object sitting on a cell border never gets pushed up to the root.
+ *
+ * The box of every object is copied in when it's added (or moved), so queries never call Collidable.get().
+ * If an object moves, call move() so the tree picks up the new box. Nodes are made on demand and go back to
+ * a pool as soon as they're empty. Anything outside the world box is kept in the root, which queries always
+ * look at.
+ *
+ * Queries fill a list the caller passes in instead of making one, and aren't safe to run while another
+ * thread changes the tree.
  */
-public class OcTree {
+public class OcTree implements NTreeBasic<Collidable<Bounds>> {
+    public static final int DEFAULT_MAX_DEPTH = 8;
+
+    protected static final class Entry {
+        Collidable<Bounds> collidable;
+        float minX, minY, minZ, maxX, maxY, maxZ;
+        Node node;
+        int index;
+    }
+
+    protected static final class Node {
+        float cx, cy, cz, half;
+        int depth;
+        Node parent;
+        int octant;
+        final Node[] children = new Node[8];
+        int childCount;
+        Entry[] entries = new Entry[4];
+        int size;
+
+        Node set(Node parent, int octant, float cx, float cy, float cz, float half, int depth) {
+            this.parent = parent;
+            this.octant = octant;
+            this.cx = cx;
+            this.cy = cy;
+            this.cz = cz;
+            this.half = half;
+            this.depth = depth;
+            return this;
+        }
+
+        void add(Entry e) {
+            if(size == entries.length) {
+                Entry[] grown = new Entry[size * 2];
+                System.arraycopy(entries, 0, grown, 0, size);
+                entries = grown;
+            }
+            e.node = this;
+            e.index = size;
+            entries[size++] = e;
+        }
+
+        void remove(Entry e) {
+            int last = --size;
+            if(e.index != last) {
+                Entry moved = entries[last];
+                entries[e.index] = moved;
+                moved.index = e.index;
+            }
+            entries[last] = null;
+            e.node = null;
+        }
+    }
+
+    private static final Pool<Node> NODE_POOL = new Pool<>(Node::new, 64, 4096);
+    private static final Pool<Entry> ENTRY_POOL = new Pool<>(Entry::new, 64, 4096);
+
+    protected final Node root;
+    protected final int maxDepth;
+    protected final Map<Collidable<Bounds>, Entry> entries = new IdentityHashMap<>();
+    protected int nodeCount = 1;
+
+    public OcTree(float centerX, float centerY, float centerZ, float halfSize) {
+        this(centerX, centerY, centerZ, halfSize, DEFAULT_MAX_DEPTH);
+    }
+
+    /**
+     * @param halfSize Half the width of the cube that the tree covers. Things outside of it still work, they
+     *                 just all end up in the root.
+     * @param maxDepth How many times the world cube gets split, at most.
+     */
+    public OcTree(float centerX, float centerY, float centerZ, float halfSize, int maxDepth) {
+        if(halfSize <= 0) {
+            throw new IllegalArgumentException("OcTree needs a positive size, got: " + halfSize);
+        }
+        this.root = new Node().set(null, 0, centerX, centerY, centerZ, halfSize, 0);
+        this.maxDepth = maxDepth;
+    }
+
+    /**
+     * Adds the collidable, or moves it if it's already in the tree.
+     */
+    @Override
+    public void add(Collidable<Bounds> c) {
+        Entry e = entries.get(c);
+        if(e != null) {
+            move(c);
+            return;
+        }
+        e = ENTRY_POOL.obtain();
+        e.collidable = c;
+        readBounds(e, c.get());
+        entries.put(c, e);
+        place(e);
+    }
+
+    @Override
+    public void remove(Collidable<Bounds> c) {
+        Entry e = entries.remove(c);
+        if(e == null) {
+            return;
+        }
+        Node node = e.node;
+        node.remove(e);
+        prune(node);
+        e.collidable = null;
+        ENTRY_POOL.free(e);
+    }
+
+    /**
+     * Picks up the collidable's new bounds. Only touches the tree's structure if it no longer belongs in the
+     * node it's in.
+     */
+    public void move(Collidable<Bounds> c) {
+        move(c, c.get());
+    }
+
+    public void move(Collidable<Bounds> c, Bounds bounds) {
+        Entry e = entries.get(c);
+        if(e == null) {
+            add(c);
+            return;
+        }
+        readBounds(e, bounds);
+        Node old = e.node;
+        if(belongsIn(e, old)) {
+            return;
+        }
+        old.remove(e);
+        place(e);
+        prune(old);
+    }
+
+    public boolean contains(Collidable<Bounds> c) {
+        return entries.containsKey(c);
+    }
+
+    /**
+     * Everything overlapping the bounds, added to out.
+     *
+     * @return How many were added.
+     */
+    public int query(Bounds bounds, List<Collidable<Bounds>> out) {
+        return query(Math.min(bounds.getLeft(), bounds.getRight()),
+                Math.min(bounds.getBottom(), bounds.getTop()),
+                Math.min(bounds.getFront(), bounds.getBack()),
+                Math.max(bounds.getLeft(), bounds.getRight()),
+                Math.max(bounds.getBottom(), bounds.getTop()),
+                Math.max(bounds.getFront(), bounds.getBack()), out);
+    }
+
+    public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                     List<Collidable<Bounds>> out) {
+        int before = out.size();
+        queryBox(root, minX, minY, minZ, maxX, maxY, maxZ, out);
+        return out.size() - before;
+    }
+
+    private void queryBox(Node node, float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                          List<Collidable<Bounds>> out) {
+        for(int i = 0; i < node.size; i++) {
+            Entry e = node.entries[i];
+            if(e.minX <= maxX && e.maxX >= minX && e.minY <= maxY && e.maxY >= minY &&
+                    e.minZ <= maxZ && e.maxZ >= minZ) {
+                out.add(e.collidable);
+            }
+        }
+        if(node.childCount == 0) {
+            return;
+        }
+        for(Node child : node.children) {
+            if(child == null) {
+                continue;
+            }
+            float loose = child.half * 2.0f;
+            if(child.cx - loose <= maxX && child.cx + loose >= minX &&
+                    child.cy - loose <= maxY && child.cy + loose >= minY &&
+                    child.cz - loose <= maxZ && child.cz + loose >= minZ) {
+                queryBox(child, minX, minY, minZ, maxX, maxY, maxZ, out);
+            }
+        }
+    }
+
+    /**
+     * Everything at least partly inside the frustum, added to out.
+     *
+     * @param planes Six planes, four floats each (a, b, c, d), with a * x + b * y + c * z + d >= 0 on the inside.
+     *               frustumPlanes() can pull these out of a matrix.
+     * @return How many were added.
+     */
+    public int queryFrustum(float[] planes, List<Collidable<Bounds>> out) {
+        int before = out.size();
+        queryFrustum(root, planes, out);
+        return out.size() - before;
+    }
+
+    private void queryFrustum(Node node, float[] planes, List<Collidable<Bounds>> out) {
+        for(int i = 0; i < node.size; i++) {
+            Entry e = node.entries[i];
+            if(boxInFrustum(planes, e.minX, e.minY, e.minZ, e.maxX, e.maxY, e.maxZ)) {
+                out.add(e.collidable);
+            }
+        }
+        if(node.childCount == 0) {
+            return;
+        }
+        for(Node child : node.children) {
+            if(child == null) {
+                continue;
+            }
+            float loose = child.half * 2.0f;
+            if(boxInFrustum(planes, child.cx - loose, child.cy - loose, child.cz - loose,
+                    child.cx + loose, child.cy + loose, child.cz + loose)) {
+                queryFrustum(child, planes, out);
+            }
+        }
+    }
+
+    /*
+    Only the corner furthest along each plane's normal needs checking: if that one is behind the plane, the
+    whole box is.
+     */
+    private static boolean boxInFrustum(float[] planes, float minX, float minY, float minZ,
+                                        float maxX, float maxY, float maxZ) {
+        for(int p = 0; p < 24; p += 4) {
+            float a = planes[p], b = planes[p + 1], c = planes[p + 2], d = planes[p + 3];
+            float x = a >= 0 ? maxX : minX;
+            float y = b >= 0 ? maxY : minY;
+            float z = c >= 0 ? maxZ : minZ;
+            if(a * x + b * y + c * z + d < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Fills planes (which needs room for 24 floats) with the frustum of a combined projection and view matrix,
+     * laid out the way Matrix4.mult(Matrix4, Vector3) reads it. The planes aren't normalized, which doesn't
+     * matter for culling.
+     */
+    public static float[] frustumPlanes(Matrix4 m, float[] planes) {
+        setPlane(planes, 0, m.m30 + m.m00, m.m31 + m.m01, m.m32 + m.m02, m.m33 + m.m03); // left
+        setPlane(planes, 4, m.m30 - m.m00, m.m31 - m.m01, m.m32 - m.m02, m.m33 - m.m03); // right
+        setPlane(planes, 8, m.m30 + m.m10, m.m31 + m.m11, m.m32 + m.m12, m.m33 + m.m13); // bottom
+        setPlane(planes, 12, m.m30 - m.m10, m.m31 - m.m11, m.m32 - m.m12, m.m33 - m.m13); // top
+        setPlane(planes, 16, m.m30 + m.m20, m.m31 + m.m21, m.m32 + m.m22, m.m33 + m.m23); // near
+        setPlane(planes, 20, m.m30 - m.m20, m.m31 - m.m21, m.m32 - m.m22, m.m33 - m.m23); // far
+        return planes;
+    }
+
+    private static void setPlane(float[] planes, int offset, float a, float b, float c, float d) {
+        planes[offset] = a;
+        planes[offset + 1] = b;
+        planes[offset + 2] = c;
+        planes[offset + 3] = d;
+    }
+
+    /**
+     * Everything the ray passes through within maxDistance, added to out in no particular order. The direction
+     * doesn't have to be normalized, distances are just measured in multiples of it.
+     *
+     * @return How many were added.
+     */
+    public int queryRay(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance,
+                        List<Collidable<Bounds>> out) {
+        int before = out.size();
+        float ix = 1.0f / dx, iy = 1.0f / dy, iz = 1.0f / dz;
+        queryRay(root, ox, oy, oz, ix, iy, iz, maxDistance, out);
+        return out.size() - before;
+    }
+
+    private void queryRay(Node node, float ox, float oy, float oz, float ix, float iy, float iz, float maxDistance,
+                          List<Collidable<Bounds>> out) {
+        for(int i = 0; i < node.size; i++) {
+            Entry e = node.entries[i];
+            float t = rayHit(ox, oy, oz, ix, iy, iz, e.minX, e.minY, e.minZ, e.maxX, e.maxY, e.maxZ);
+            if(t >= 0 && t <= maxDistance) {
+                out.add(e.collidable);
+            }
+        }
+        if(node.childCount == 0) {
+            return;
+        }
+        for(Node child : node.children) {
+            if(child == null) {
+                continue;
+            }
+            float t = rayHitNode(child, ox, oy, oz, ix, iy, iz);
+            if(t >= 0 && t <= maxDistance) {
+                queryRay(child, ox, oy, oz, ix, iy, iz, maxDistance, out);
+            }
+        }
+    }
+
+    /**
+     * The first thing the ray hits within maxDistance, or null.
+     */
+    public Collidable<Bounds> raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance) {
+        return raycast(ox, oy, oz, dx, dy, dz, maxDistance, new float[1]);
+    }
+
+    /**
+     * Same as the other raycast(), but also puts how far along the ray the hit was into distance[0], or
+     * infinity on a miss. The running best distance lives in distance rather than in the tree, so any number of
+     * threads can cast rays at once as long as nothing changes the tree.
+     */
+    public Collidable<Bounds> raycast(float ox, float oy, float oz, float dx, float dy, float dz, float maxDistance,
+                                      float[] distance) {
+        distance[0] = maxDistance;
+        Entry hit = raycast(root, ox, oy, oz, 1.0f / dx, 1.0f / dy, 1.0f / dz, null, distance);
+        if(hit == null) {
+            distance[0] = Float.POSITIVE_INFINITY;
+            return null;
+        }
+        return hit.collidable;
+    }
+
+    private Entry raycast(Node node, float ox, float oy, float oz, float ix, float iy, float iz, Entry best,
+                          float[] distance) {
+        for(int i = 0; i < node.size; i++) {
+            Entry e = node.entries[i];
+            float t = rayHit(ox, oy, oz, ix, iy, iz, e.minX, e.minY, e.minZ, e.maxX, e.maxY, e.maxZ);
+            if(t >= 0 && t <= distance[0]) {
+                distance[0] = t;
+                best = e;
+            }
+        }
+        if(node.childCount == 0) {
+            return best;
+        }
+        for(Node child : node.children) {
+            if(child == null) {
+                continue;
+            }
+            // Anything further away than the best hit so far can't beat it.
+            float t = rayHitNode(child, ox, oy, oz, ix, iy, iz);
+            if(t >= 0 && t <= distance[0]) {
+                best = raycast(child, ox, oy, oz, ix, iy, iz, best, distance);
+            }
+        }
+        return best;
+    }
+
+    private static float rayHitNode(Node node, float ox, float oy, float oz, float ix, float iy, float iz) {
+        float loose = node.half * 2.0f;
+        return rayHit(ox, oy, oz, ix, iy, iz, node.cx - loose, node.cy - loose, node.cz - loose,
+                node.cx + loose, node.cy + loose, node.cz + loose);
+    }
+
+    /*
+    Slab test. Returns how far along the ray it enters the box (0 if it starts inside), or -1 on a miss.
+     */
+    private static float rayHit(float ox, float oy, float oz, float ix, float iy, float iz,
+                                float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        float t1 = (minX - ox) * ix, t2 = (maxX - ox) * ix;
+        float near = Math.min(t1, t2), far = Math.max(t1, t2);
+        t1 = (minY - oy) * iy;
+        t2 = (maxY - oy) * iy;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        t1 = (minZ - oz) * iz;
+        t2 = (maxZ - oz) * iz;
+        near = Math.max(near, Math.min(t1, t2));
+        far = Math.min(far, Math.max(t1, t2));
+        if(far < Math.max(near, 0.0f)) {
+            return -1.0f;
+        }
+        return Math.max(near, 0.0f);
+    }
+
+    @Override
+    public List<Collidable<Bounds>> getIntersecting(Collidable<Bounds> c) {
+        List<Collidable<Bounds>> ret = new ArrayList<>();
+        query(c.get(), ret);
+        return ret;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public void clear() {
+        for(Entry e : entries.values()) {
+            e.node.remove(e);
+            e.collidable = null;
+            ENTRY_POOL.free(e);
+        }
+        entries.clear();
+        freeChildren(root);
+    }
+
+    private void freeChildren(Node node) {
+        for(int i = 0; i < 8; i++) {
+            Node child = node.children[i];
+            if(child != null) {
+                freeChildren(child);
+                node.children[i] = null;
+                child.parent = null;
+                NODE_POOL.free(child);
+                nodeCount--;
+            }
+        }
+        node.childCount = 0;
+    }
+
+    private static void readBounds(Entry e, Bounds b) {
+        e.minX = Math.min(b.getLeft(), b.getRight());
+        e.maxX = Math.max(b.getLeft(), b.getRight());
+        e.minY = Math.min(b.getBottom(), b.getTop());
+        e.maxY = Math.max(b.getBottom(), b.getTop());
+        e.minZ = Math.min(b.getFront(), b.getBack());
+        e.maxZ = Math.max(b.getFront(), b.getBack());
+    }
+
+    private static float extent(Entry e) {
+        return Math.max(e.maxX - e.minX, Math.max(e.maxY - e.minY, e.maxZ - e.minZ)) * 0.5f;
+    }
+
+    private boolean insideRoot(float x, float y, float z) {
+        return Math.abs(x - root.cx) <= root.half && Math.abs(y - root.cy) <= root.half &&
+                Math.abs(z - root.cz) <= root.half;
+    }
+
+    /*
+    Walks down from the root for as long as the object is no bigger than the next level's cells.
+     */
+    private void place(Entry e) {
+        float x = (e.minX + e.maxX) * 0.5f, y = (e.minY + e.maxY) * 0.5f, z = (e.minZ + e.maxZ) * 0.5f;
+        Node node = root;
+        if(insideRoot(x, y, z)) {
+            float extent = extent(e);
+            while(node.depth < maxDepth) {
+                float childHalf = node.half * 0.5f;
+                if(extent > childHalf) {
+                    break;
+                }
+                int octant = (x >= node.cx ? 1 : 0) | (y >= node.cy ? 2 : 0) | (z >= node.cz ? 4 : 0);
+                Node child = node.children[octant];
+                if(child == null) {
+                    child = NODE_POOL.obtain().set(node, octant,
+                            node.cx + ((octant & 1) != 0 ? childHalf : -childHalf),
+                            node.cy + ((octant & 2) != 0 ? childHalf : -childHalf),
+                            node.cz + ((octant & 4) != 0 ? childHalf : -childHalf),
+                            childHalf, node.depth + 1);
+                    node.children[octant] = child;
+                    node.childCount++;
+                    nodeCount++;
+                }
+                node = child;
+            }
+        }
+        node.add(e);
+    }
+
+    /*
+    Whether place() would pick node for the entry's current box.
+     */
+    private boolean belongsIn(Entry e, Node node) {
+        float x = (e.minX + e.maxX) * 0.5f, y = (e.minY + e.maxY) * 0.5f, z = (e.minZ + e.maxZ) * 0.5f;
+        if(node == root) {
+            // Only right if there's nowhere further down it could go.
+            return !insideRoot(x, y, z) || maxDepth == 0 || extent(e) > root.half * 0.5f;
+        }
+        if(!insideRoot(x, y, z)) {
+            return false;
+        }
+        float extent = extent(e);
+        if(extent > node.half || (node.depth < maxDepth && extent <= node.half * 0.5f)) {
+            return false;
+        }
+        // Anywhere in the cell is fine, the loose box still covers it even if place() would have picked a
+        // neighbour for a center sitting exactly on the edge.
+        return Math.abs(x - node.cx) <= node.half && Math.abs(y - node.cy) <= node.half &&
+                Math.abs(z - node.cz) <= node.half;
+    }
+
+    /*
+    Hands empty leaves back to the pool, working up until a node still has something in it.
+     */
+    private void prune(Node node) {
+        while(node != root && node.size == 0 && node.childCount == 0) {
+            Node parent = node.parent;
+            parent.children[node.octant] = null;
+            parent.childCount--;
+            node.parent = null;
+            NODE_POOL.free(node);
+            nodeCount--;
+            node = parent;
+        }
+    }
 }
@@ -0,0 +1,36 @@
+package structure.tree;
+
+import function.IntBinaryConsumer;
+
+/**
+ * Writes the pairs it's handed into an int array two ids at a time, for the broadphases' findPairs(). If there
+ * are more than fit, only the first out.length / 2 are written but all of them are counted, so the caller can
+ * grow the array and ask again.
+ */
+final class PairWriter implements IntBinaryConsumer {
+    private int[] out;
+    private int count;
+
+    public void start(int[] out) {
+        this.out = out;
+        this.count = 0;
+    }
+
+    /**
+     * @return How many pairs there were since start().
+     */
+    public int finish() {
+        out = null;
+        return count;
+    }
+
+    @Override
+    public void applyAsInt(int left, int right) {
+        int at = count * 2;
+        if(at + 1 < out.length) {
+            out[at] = left;
+            out[at + 1] = right;
+        }
+        count++;
+    }
+}
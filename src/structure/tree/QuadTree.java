@@ -1,8 +1,9 @@
 package structure.tree;
 
 import scene.Bounds;
-import structure.opengl.Vector3;
+import structure.opengl.OrthoCamera;
 
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -10,92 +11,647 @@ import java.util.List;
  * User: freezerburn
  * Date: 2/21/13
  * Time: 10:01 AM
+ *
+ * 2D index for sprite and tile scenes, meant to sit next to an OrthoCamera. Everything is an int id with a box
+ * kept in a plain float array (minX, minY, maxX, maxY), so nothing in here is a Bounds or any other object per
+ * sprite.
+ *
+ * Nothing is ever moved around inside the tree. After ids come or go it gets built again from scratch, in one
+ * go, the first time it's asked something. The build is a radix sort of the ids by the Morton code of their
+ * centers, which puts every quadrant at every level in one contiguous run, so the nodes are just ranges of the
+ * sorted ids. Each node keeps the box around everything under it. When things have only moved, the same tree
+ * is kept and just those boxes are redone (see refit()), with a full build every so often to tighten them back
+ * up. A query that swallows a node whole copies its run out without looking at the boxes in it.
+ *
+ * The Collidable methods are there so it can stand in wherever an NTreeBasic is expected, they just hand out ids
+ * behind the scenes. Not safe to use from more than one thread at a time.
  */
-public class QuadTree implements  NTreeBasic<Collidable<Bounds>> {
-    protected NTree<Bounds> tree;
+public class QuadTree implements NTreeBasic<Collidable<Bounds>> {
+    public static final int NONE = -1;
+    public static final int DEFAULT_LEAF_SIZE = 8;
+    public static final int DEFAULT_MAX_DEPTH = 16;
+    // Sixteen bits of each coordinate go into the codes the build sorts by, so that's as deep as it can go.
+    public static final int MAX_DEPTH = 16;
+    public static final int DEFAULT_REBUILD_EVERY = 16;
+    private static final int RADIX_BITS = 11, RADIX_MASK = (1 << RADIX_BITS) - 1;
 
-    @Override
-    public void add(Collidable<Bounds> bounds) {
-        tree.add(new QuadTreeCollidable(bounds.get()));
+    protected final int leafSize, maxDepth;
+
+    // Per id. A removed id has NaN for its minX until it gets handed out again.
+    protected float[] boxes = new float[64 * 4];
+    protected float[] layers = new float[64];
+    protected final IdTable idTable = new IdTable();
+
+    // What the last build made. order holds ids grouped by node, sorted holds their boxes in that same order.
+    protected int[] order = new int[64];
+    protected float[] sorted = new float[64 * 4];
+    protected long[] keys = new long[64], keysTemp = new long[64];
+    protected final int[] radixCounts = new int[1 << RADIX_BITS];
+    protected float[] nodeBoxes = new float[16 * 4];
+    protected int[] nodeStart = new int[16], nodeCount = new int[16];
+    protected int[] nodeFirstChild = new int[16], nodeChildren = new int[16];
+    protected int nodes = 0;
+    protected int built = 0;
+    // dirty means ids came or went and it needs building again, moved means boxes changed but the same tree
+    // still works once its node boxes are refit.
+    protected boolean dirty = true, moved = false;
+    protected int builds = 0, refits = 0, refitsSinceBuild = 0;
+    protected int rebuildEvery = DEFAULT_REBUILD_EVERY;
+
+    protected int[] stack;
+    protected int[] scratch = new int[64];
+
+    public QuadTree() {
+        this(DEFAULT_LEAF_SIZE, DEFAULT_MAX_DEPTH);
     }
 
-    @Override
-    public void remove(Collidable<Bounds> bounds) {
-        tree.remove(new QuadTreeCollidable(bounds.get()));
+    /**
+     * @param leafSize How many ids a node can hold before it gets split.
+     * @param maxDepth How many times it can split, at most. Stops a pile of sprites all on the same spot from
+     *                 splitting forever.
+     */
+    public QuadTree(int leafSize, int maxDepth) {
+        if(leafSize < 1) {
+            throw new IllegalArgumentException("QuadTree needs a leaf size of at least 1, got: " + leafSize);
+        }
+        this.leafSize = leafSize;
+        this.maxDepth = Math.min(maxDepth, MAX_DEPTH);
+        // Depth first, so at most three siblings are waiting per level.
+        this.stack = new int[3 * (this.maxDepth + 2) + 1];
     }
 
-    @Override
-    public List<Collidable<Bounds>> getIntersecting(Collidable<Bounds> bounds) {
-        return tree.getIntersecting(new QuadTreeCollidable(bounds.get()));
+    /* ====== IDS ====== */
+
+    /**
+     * @return The id for the box, good until it's removed.
+     */
+    public int add(float minX, float minY, float maxX, float maxY) {
+        int id = idTable.take();
+        if(id == layers.length) {
+            int grown = layers.length * 2;
+            boxes = Arrays.copyOf(boxes, grown * 4);
+            layers = Arrays.copyOf(layers, grown);
+        }
+        int b = id * 4;
+        boxes[b] = minX;
+        boxes[b + 1] = minY;
+        boxes[b + 2] = maxX;
+        boxes[b + 3] = maxY;
+        layers[id] = 0.0f;
+        dirty = true;
+        return id;
+    }
+
+    public void set(int id, float minX, float minY, float maxX, float maxY) {
+        if(!isLive(id)) {
+            return;
+        }
+        int b = id * 4;
+        boxes[b] = minX;
+        boxes[b + 1] = minY;
+        boxes[b + 2] = maxX;
+        boxes[b + 3] = maxY;
+        moved = true;
+    }
+
+    public void translate(int id, float dx, float dy) {
+        if(!isLive(id)) {
+            return;
+        }
+        int b = id * 4;
+        boxes[b] += dx;
+        boxes[b + 1] += dy;
+        boxes[b + 2] += dx;
+        boxes[b + 3] += dy;
+        moved = true;
+    }
+
+    public void remove(int id) {
+        if(!isLive(id)) {
+            return;
+        }
+        boxes[id * 4] = Float.NaN;
+        idTable.free(id);
+        dirty = true;
+    }
+
+    public boolean isLive(int id) {
+        return id >= 0 && id < idTable.idCount() && !Float.isNaN(boxes[id * 4]);
+    }
+
+    /**
+     * pick() goes for whatever has the highest layer when more than one thing is under the point. Everything
+     * starts on 0.
+     */
+    public void setLayer(int id, float layer) {
+        layers[id] = layer;
+    }
+
+    public float getLayer(int id) {
+        return layers[id];
+    }
+
+    public float getMinX(int id) {
+        return boxes[id * 4];
+    }
+
+    public float getMinY(int id) {
+        return boxes[id * 4 + 1];
+    }
+
+    public float getMaxX(int id) {
+        return boxes[id * 4 + 2];
     }
 
-    protected class QuadTreeCollidable implements Collidable<Bounds> {
-        protected Bounds bounds;
+    public float getMaxY(int id) {
+        return boxes[id * 4 + 3];
+    }
 
-        public QuadTreeCollidable(float width, float height) {
-            bounds = Bounds.get(Vector3.get(width / 2.0f, height / 2.0f, 0.0f), width, height);
+    /**
+     * Throws out everything and takes count boxes from the array (four floats each, minX, minY, maxX, maxY) as
+     * ids 0 to count - 1, then builds. Meant for scenes that keep their own arrays of sprite positions and just
+     * want the whole thing redone each frame.
+     */
+    public void load(float[] from, int count) {
+        if(count > layers.length) {
+            int grown = Math.max(count, layers.length * 2);
+            boxes = new float[grown * 4];
+            layers = new float[grown];
         }
+        System.arraycopy(from, 0, boxes, 0, count * 4);
+        Arrays.fill(layers, 0, count, 0.0f);
+        idTable.reset(count);
+        rebuild();
+    }
+
+    public int size() {
+        return idTable.size();
+    }
 
-        public QuadTreeCollidable(Bounds bounds) {
-            this.bounds = bounds;
+    public void clear() {
+        idTable.reset(0);
+        dirty = true;
+    }
+
+    /* ====== BUILDING ====== */
+
+    /**
+     * Builds now instead of waiting for the next query, so the cost lands somewhere predictable.
+     */
+    public void rebuild() {
+        int idCount = idTable.idCount(), size = idTable.size();
+        if(keys.length < size) {
+            int grown = Math.max(size, keys.length * 2);
+            keys = new long[grown];
+            keysTemp = new long[grown];
+            order = new int[grown];
+            sorted = new float[grown * 4];
+        }
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for(int id = 0; id < idCount; id++) {
+            int b = id * 4;
+            if(Float.isNaN(boxes[b])) {
+                continue;
+            }
+            float cx = boxes[b] + boxes[b + 2], cy = boxes[b + 1] + boxes[b + 3];
+            minX = Math.min(minX, cx);
+            minY = Math.min(minY, cy);
+            maxX = Math.max(maxX, cx);
+            maxY = Math.max(maxY, cy);
         }
 
-        @Override
-        public boolean collidesWith(Collidable<Bounds> c) {
-            return bounds.intersects(c.get());
+        // Centers (doubled, there's no need to halve them) get squashed onto a 65536 square grid, and the two
+        // coordinates' bits interleaved, so sorting by the result lays the quadrants out one after the other
+        // at every level at once.
+        float scaleX = maxX > minX ? 65535.0f / (maxX - minX) : 0.0f;
+        float scaleY = maxY > minY ? 65535.0f / (maxY - minY) : 0.0f;
+        int n = 0;
+        for(int id = 0; id < idCount; id++) {
+            int b = id * 4;
+            if(Float.isNaN(boxes[b])) {
+                continue;
+            }
+            int qx = (int)((boxes[b] + boxes[b + 2] - minX) * scaleX);
+            int qy = (int)((boxes[b + 1] + boxes[b + 3] - minY) * scaleY);
+            long code = spread(Math.min(qx, 65535)) | (spread(Math.min(qy, 65535)) << 1);
+            keys[n++] = (code << 32) | id;
+        }
+        radixSort(n);
+        for(int i = 0; i < n; i++) {
+            int id = (int)keys[i];
+            int b = id * 4, s = i * 4;
+            order[i] = id;
+            sorted[s] = boxes[b];
+            sorted[s + 1] = boxes[b + 1];
+            sorted[s + 2] = boxes[b + 2];
+            sorted[s + 3] = boxes[b + 3];
         }
 
-        @Override
-        public Bounds get() {
-            return bounds;
+        nodes = 0;
+        int root = allocNodes(1);
+        if(n == 0) {
+            nodeStart[root] = 0;
+            nodeCount[root] = 0;
+            nodeFirstChild[root] = NONE;
+            nodeChildren[root] = 0;
+            setNodeBox(root, Float.POSITIVE_INFINITY, Float.POSITIVE_INFINITY,
+                    Float.NEGATIVE_INFINITY, Float.NEGATIVE_INFINITY);
+        }
+        else {
+            build(root, 0, n, 0);
         }
+        built = n;
+        dirty = false;
+        moved = false;
+        refitsSinceBuild = 0;
+        builds++;
+    }
 
-        @Override
-        public boolean equals(Object o) {
-            if(o == this) {
-                return true;
+    /**
+     * Same tree, new boxes: every node's box is worked out again from what's under it, bottom up. Nodes always
+     * come after their parent, so going backwards through them means children are done first. Nothing moves
+     * between nodes, so things that have wandered make the boxes looser and queries look at more, but they're
+     * never wrong.
+     */
+    public void refit() {
+        if(dirty) {
+            rebuild();
+            return;
+        }
+        for(int i = 0; i < built; i++) {
+            int b = order[i] * 4, s = i * 4;
+            sorted[s] = boxes[b];
+            sorted[s + 1] = boxes[b + 1];
+            sorted[s + 2] = boxes[b + 2];
+            sorted[s + 3] = boxes[b + 3];
+        }
+        for(int node = nodes - 1; node >= 0; node--) {
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            int first = nodeFirstChild[node];
+            if(first == NONE) {
+                int start = nodeStart[node] * 4, end = start + nodeCount[node] * 4;
+                for(int i = start; i < end; i += 4) {
+                    minX = Math.min(minX, sorted[i]);
+                    minY = Math.min(minY, sorted[i + 1]);
+                    maxX = Math.max(maxX, sorted[i + 2]);
+                    maxY = Math.max(maxY, sorted[i + 3]);
+                }
             }
-            else if(o instanceof QuadTreeCollidable) {
-                QuadTreeCollidable qtc = (QuadTreeCollidable)o;
-                return qtc.bounds.equals(bounds);
+            else {
+                for(int c = first * 4, end = (first + nodeChildren[node]) * 4; c < end; c += 4) {
+                    minX = Math.min(minX, nodeBoxes[c]);
+                    minY = Math.min(minY, nodeBoxes[c + 1]);
+                    maxX = Math.max(maxX, nodeBoxes[c + 2]);
+                    maxY = Math.max(maxY, nodeBoxes[c + 3]);
+                }
             }
-            return false;
+            setNodeBox(node, minX, minY, maxX, maxY);
         }
+        moved = false;
+        refitsSinceBuild++;
+        refits++;
+    }
 
-        @Override
-        public String toString() {
-            return get().toString();
+    /**
+     * After things have moved, queries refit this many times in a row before doing a full build again to tighten
+     * the boxes back up. 0 means build every time.
+     */
+    public void setRebuildEvery(int refits) {
+        this.rebuildEvery = refits;
+    }
+
+    protected void ensureBuilt() {
+        if(dirty || (moved && refitsSinceBuild >= rebuildEvery)) {
+            rebuild();
         }
+        else if(moved) {
+            refit();
+        }
+    }
+
+    /*
+    Spreads the low 16 bits of v out to every other bit.
+     */
+    private static long spread(int v) {
+        long x = v & 0xFFFF;
+        x = (x | (x << 8)) & 0x00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0FL;
+        x = (x | (x << 2)) & 0x33333333L;
+        x = (x | (x << 1)) & 0x55555555L;
+        return x;
     }
 
-    public QuadTree(final float width, final float height) {
-        tree = new NTree<Bounds>(4, 4, new QuadTreeCollidable(width, height),
-                new CollidableDivisor<Bounds>() {
-                    @Override
-                    public void divide(Collidable<Bounds> start, List<Collidable<Bounds>> l) {
-                        int diff = 4 - l.size();
-                        for(int i = 0; i < diff; i++) {
-                            l.add(new QuadTreeCollidable(0.0f, 0.0f));
-                        }
-                        Bounds boundsTL = l.get(0).get();
-                        Bounds boundsTR = l.get(1).get();
-                        Bounds boundsBL = l.get(2).get();
-                        Bounds boundsBR = l.get(3).get();
-                        Bounds startBounds = start.get();
-                        Vector3 startCenter = startBounds.getCenter();
-                        float halfWidth = startBounds.getWidth() / 2.0f;
-                        float halfHeight = startBounds.getHeight() / 2.0f;
-                        Vector3 temp = Vector3.get(startCenter.x - halfWidth / 2.0f, startCenter.y + halfHeight / 2.0f);
-                        boundsTL.setCenterLocal(temp);
-                        temp.x = startCenter.x + halfWidth;
-                        boundsTR.setCenterLocal(temp);
-                        temp.y -= halfHeight;
-                        boundsBR.setCenterLocal(temp);
-                        temp.x -= halfWidth;
-                        boundsBL.setCenterLocal(temp);
-                        Vector3.recycle(startCenter);
-                        Vector3.recycle(temp);
+    /*
+    LSD radix sort on the code half of each key, 11 bits at a time. The ids in the low half come along for the
+    ride and keep their relative order.
+     */
+    private void radixSort(int n) {
+        long[] from = keys, to = keysTemp;
+        int[] counts = radixCounts;
+        for(int shift = 32; shift < 64; shift += RADIX_BITS) {
+            Arrays.fill(counts, 0);
+            for(int i = 0; i < n; i++) {
+                counts[(int)(from[i] >>> shift) & RADIX_MASK]++;
+            }
+            int total = 0;
+            for(int i = 0; i < counts.length; i++) {
+                int c = counts[i];
+                counts[i] = total;
+                total += c;
+            }
+            for(int i = 0; i < n; i++) {
+                long k = from[i];
+                to[counts[(int)(k >>> shift) & RADIX_MASK]++] = k;
+            }
+            long[] temp = from;
+            from = to;
+            to = temp;
+        }
+        keys = from;
+        keysTemp = to;
+    }
+
+    /*
+    Everything in [start, end) shares the top 2 * depth bits of its code, so the next two bits say which quadrant
+    each one is in, and they're already grouped by them.
+     */
+    private void build(int node, int start, int end, int depth) {
+        nodeStart[node] = start;
+        nodeCount[node] = end - start;
+        while(end - start > leafSize && depth < maxDepth) {
+            int shift = 32 + 30 - depth * 2;
+            int q1 = lowerBound(start, end, shift, 1);
+            int q2 = lowerBound(q1, end, shift, 2);
+            int q3 = lowerBound(q2, end, shift, 3);
+            int quadrants = (q1 > start ? 1 : 0) + (q2 > q1 ? 1 : 0) + (q3 > q2 ? 1 : 0) + (end > q3 ? 1 : 0);
+            if(quadrants == 1) {
+                // Everything went the same way. Go down a level rather than making a node with only one child.
+                depth++;
+                continue;
+            }
+
+            int first = allocNodes(quadrants);
+            nodeFirstChild[node] = first;
+            nodeChildren[node] = quadrants;
+            int child = first;
+            if(q1 > start) {
+                build(child++, start, q1, depth + 1);
+            }
+            if(q2 > q1) {
+                build(child++, q1, q2, depth + 1);
+            }
+            if(q3 > q2) {
+                build(child++, q2, q3, depth + 1);
+            }
+            if(end > q3) {
+                build(child, q3, end, depth + 1);
+            }
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for(int c = first; c < first + quadrants; c++) {
+                int b = c * 4;
+                minX = Math.min(minX, nodeBoxes[b]);
+                minY = Math.min(minY, nodeBoxes[b + 1]);
+                maxX = Math.max(maxX, nodeBoxes[b + 2]);
+                maxY = Math.max(maxY, nodeBoxes[b + 3]);
+            }
+            setNodeBox(node, minX, minY, maxX, maxY);
+            return;
+        }
+
+        nodeFirstChild[node] = NONE;
+        nodeChildren[node] = 0;
+        float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+        float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+        for(int i = start * 4; i < end * 4; i += 4) {
+            minX = Math.min(minX, sorted[i]);
+            minY = Math.min(minY, sorted[i + 1]);
+            maxX = Math.max(maxX, sorted[i + 2]);
+            maxY = Math.max(maxY, sorted[i + 3]);
+        }
+        setNodeBox(node, minX, minY, maxX, maxY);
+    }
+
+    /*
+    First index in [start, end) whose quadrant at shift is at least quadrant.
+     */
+    private int lowerBound(int start, int end, int shift, int quadrant) {
+        while(start < end) {
+            int mid = (start + end) >>> 1;
+            if(((int)(keys[mid] >>> shift) & 3) < quadrant) {
+                start = mid + 1;
+            }
+            else {
+                end = mid;
+            }
+        }
+        return start;
+    }
+
+    private int allocNodes(int count) {
+        int first = nodes;
+        nodes += count;
+        if(nodes > nodeStart.length) {
+            int grown = Math.max(nodes, nodeStart.length * 2);
+            nodeBoxes = Arrays.copyOf(nodeBoxes, grown * 4);
+            nodeStart = Arrays.copyOf(nodeStart, grown);
+            nodeCount = Arrays.copyOf(nodeCount, grown);
+            nodeFirstChild = Arrays.copyOf(nodeFirstChild, grown);
+            nodeChildren = Arrays.copyOf(nodeChildren, grown);
+        }
+        return first;
+    }
+
+    private void setNodeBox(int node, float minX, float minY, float maxX, float maxY) {
+        int b = node * 4;
+        nodeBoxes[b] = minX;
+        nodeBoxes[b + 1] = minY;
+        nodeBoxes[b + 2] = maxX;
+        nodeBoxes[b + 3] = maxY;
+    }
+
+    /* ====== QUERIES ====== */
+
+    /**
+     * Every id whose box overlaps the given one, written into out. If there are more than fit, only the first
+     * out.length are written but the full count is still returned, so the caller can grow out and ask again.
+     *
+     * @return How many there were.
+     */
+    public int query(float minX, float minY, float maxX, float maxY, int[] out) {
+        ensureBuilt();
+        int found = 0;
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0) {
+            int node = stack[--top];
+            int b = node * 4;
+            if(nodeBoxes[b] > maxX || nodeBoxes[b + 2] < minX || nodeBoxes[b + 1] > maxY || nodeBoxes[b + 3] < minY) {
+                continue;
+            }
+            int start = nodeStart[node], end = start + nodeCount[node];
+            if(nodeBoxes[b] >= minX && nodeBoxes[b + 2] <= maxX && nodeBoxes[b + 1] >= minY && nodeBoxes[b + 3] <= maxY) {
+                // Entirely inside, so everything under it counts.
+                int copy = Math.min(end - start, out.length - found);
+                if(copy > 0) {
+                    System.arraycopy(order, start, out, found, copy);
+                }
+                found += end - start;
+                continue;
+            }
+            if(nodeFirstChild[node] != NONE) {
+                int first = nodeFirstChild[node];
+                for(int c = first + nodeChildren[node] - 1; c >= first; c--) {
+                    stack[top++] = c;
+                }
+                continue;
+            }
+            for(int i = start; i < end; i++) {
+                int s = i * 4;
+                if(sorted[s] <= maxX && sorted[s + 2] >= minX && sorted[s + 1] <= maxY && sorted[s + 3] >= minY) {
+                    if(found < out.length) {
+                        out[found] = order[i];
                     }
-                });
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Everything the camera can see, same rules for out as query().
+     */
+    public int queryViewport(OrthoCamera camera, int[] out) {
+        return query(camera.getX(), camera.getY(), camera.getX() + camera.getWidth(),
+                camera.getY() + camera.getHeight(), out);
+    }
+
+    /**
+     * Every id whose box has the point in it, same rules for out as query().
+     */
+    public int queryPoint(float x, float y, int[] out) {
+        return query(x, y, x, y, out);
+    }
+
+    /**
+     * What's on top at the point: the highest layer among everything under it, the highest id if that's a tie.
+     *
+     * @return The id, or NONE if nothing is there.
+     */
+    public int pick(float x, float y) {
+        ensureBuilt();
+        int best = NONE;
+        float bestLayer = Float.NEGATIVE_INFINITY;
+        int top = 0;
+        stack[top++] = 0;
+        while(top > 0) {
+            int node = stack[--top];
+            int b = node * 4;
+            if(nodeBoxes[b] > x || nodeBoxes[b + 2] < x || nodeBoxes[b + 1] > y || nodeBoxes[b + 3] < y) {
+                continue;
+            }
+            if(nodeFirstChild[node] != NONE) {
+                int first = nodeFirstChild[node];
+                for(int c = first + nodeChildren[node] - 1; c >= first; c--) {
+                    stack[top++] = c;
+                }
+                continue;
+            }
+            int start = nodeStart[node], end = start + nodeCount[node];
+            for(int i = start; i < end; i++) {
+                int s = i * 4;
+                if(sorted[s] <= x && sorted[s + 2] >= x && sorted[s + 1] <= y && sorted[s + 3] >= y) {
+                    int id = order[i];
+                    float layer = layers[id];
+                    if(layer > bestLayer || (layer == bestLayer && id > best)) {
+                        best = id;
+                        bestLayer = layer;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    public int getNodeCount() {
+        ensureBuilt();
+        return nodes;
+    }
+
+    /**
+     * How many times the tree has been built, handy for making sure a frame only does it once.
+     */
+    public int getBuildCount() {
+        return builds;
+    }
+
+    public int getRefitCount() {
+        return refits;
+    }
+
+    /* ====== COLLIDABLES ====== */
+
+    /**
+     * Adds the collidable using the x and y of its bounds, or picks up its new bounds if it's already in.
+     */
+    @Override
+    public void add(Collidable<Bounds> c) {
+        if(idTable.getId(c) != NONE) {
+            move(c);
+            return;
+        }
+        Bounds b = c.get();
+        int newId = add(Math.min(b.getLeft(), b.getRight()), Math.min(b.getBottom(), b.getTop()),
+                Math.max(b.getLeft(), b.getRight()), Math.max(b.getBottom(), b.getTop()));
+        idTable.setOwner(newId, c);
+    }
+
+    @Override
+    public void remove(Collidable<Bounds> c) {
+        int id = idTable.getId(c);
+        if(id != NONE) {
+            remove(id);
+        }
+    }
+
+    public void move(Collidable<Bounds> c) {
+        int id = idTable.getId(c);
+        if(id == NONE) {
+            add(c);
+            return;
+        }
+        Bounds b = c.get();
+        set(id, Math.min(b.getLeft(), b.getRight()), Math.min(b.getBottom(), b.getTop()),
+                Math.max(b.getLeft(), b.getRight()), Math.max(b.getBottom(), b.getTop()));
+    }
+
+    /**
+     * The collidable an id was made for, or null if it was added as a plain box.
+     */
+    public Collidable<Bounds> getOwner(int id) {
+        return idTable.getOwner(id);
+    }
+
+    public int getId(Collidable<Bounds> c) {
+        return idTable.getId(c);
+    }
+
+    /**
+     * Collidables overlapping c's bounds. Plain boxes that were added by id don't show up here.
+     */
+    @Override
+    public List<Collidable<Bounds>> getIntersecting(Collidable<Bounds> c) {
+        Bounds b = c.get();
+        float minX = Math.min(b.getLeft(), b.getRight()), minY = Math.min(b.getBottom(), b.getTop());
+        float maxX = Math.max(b.getLeft(), b.getRight()), maxY = Math.max(b.getBottom(), b.getTop());
+        int found = query(minX, minY, maxX, maxY, scratch);
+        if(found > scratch.length) {
+            scratch = new int[Math.max(found, scratch.length * 2)];
+            found = query(minX, minY, maxX, maxY, scratch);
+        }
+        return idTable.getOwners(scratch, found, null);
     }
 }
@@ -0,0 +1,521 @@
+package structure.tree;
+
+import function.IntBinaryConsumer;
+import scene.Bounds;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Broadphase for lots of things that move every tick, like a crowd of NPCs. Space is cut into equal cubes and
+ * every entity is listed in each cube its box touches. There's no tree to keep balanced: moving something only
+ * does any work when it crosses into a different set of cells, and then only the cells it left or entered get
+ * touched.
+ *
+ * Cells live in a hash map keyed by their three integer coordinates packed into a long (21 bits each, so about
+ * a million cells either way from the origin before keys start wrapping around). The map is a LongIntMap, so
+ * looking one up doesn't box anything or make garbage. Cells that empty out are taken back out of the map
+ * straight away, so the map only ever holds the cells something is standing in.
+ *
+ * The cell size wants to be a bit bigger than most of the things in it. Anything that would cover more than
+ * MAX_CELLS_PER_ENTITY cells (the ground, a huge boss) isn't put in cells at all, it gets checked against
+ * everything directly instead.
+ *
+ * Entities are int ids with their box copied into a float array. The Collidable methods hand ids out behind the
+ * scenes so this can go anywhere an NTreeBasic does. Not safe to use from more than one thread at a time.
+ */
+public class SpatialHashGrid implements NTreeBasic<Collidable<Bounds>> {
+    public static final int NONE = -1;
+    public static final int MAX_CELLS_PER_ENTITY = 64;
+
+    private static final int FREE = 0, IN_CELLS = 1, BIG = 2;
+
+    protected final float cellSize, inverseCellSize;
+
+    // Per id.
+    protected float[] boxes = new float[64 * 6];
+    protected int[] ranges = new int[64 * 6];
+    protected byte[] states = new byte[64];
+    protected int[] marks = new int[64];
+    protected int[] bigIndex = new int[64];
+    protected final IdTable idTable = new IdTable();
+    protected int[] big = new int[8];
+    protected int bigCount = 0;
+
+    // Cells. A cell that isn't in use has a size of 0 and its index waiting in freeCells.
+    protected int[][] cellItems = new int[64][];
+    protected int[] cellSizes = new int[64];
+    protected int[] cellCoords = new int[64 * 3];
+    protected int cellHigh = 0, cellCount = 0;
+    protected int[] freeCells = new int[16];
+    protected int freeCellCount = 0;
+
+    // Key -> cell index. Keys never have the top bit set, so they can't clash with the map's empty marker.
+    protected final LongIntMap cellMap = new LongIntMap(128);
+
+    protected int stamp = 0;
+    protected long rebins = 0;
+    protected int[] scratch = new int[64];
+    private final PairWriter pairWriter = new PairWriter();
+
+    public SpatialHashGrid(float cellSize) {
+        if(cellSize <= 0) {
+            throw new IllegalArgumentException("SpatialHashGrid needs a positive cell size, got: " + cellSize);
+        }
+        this.cellSize = cellSize;
+        this.inverseCellSize = 1.0f / cellSize;
+    }
+
+    /* ====== IDS ====== */
+
+    /**
+     * @return The id for the box, good until it's removed.
+     */
+    public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int id = idTable.take();
+        if(id == states.length) {
+            int grown = states.length * 2;
+            boxes = Arrays.copyOf(boxes, grown * 6);
+            ranges = Arrays.copyOf(ranges, grown * 6);
+            states = Arrays.copyOf(states, grown);
+            marks = Arrays.copyOf(marks, grown);
+            bigIndex = Arrays.copyOf(bigIndex, grown);
+        }
+        setBox(id, minX, minY, minZ, maxX, maxY, maxZ);
+        insert(id);
+        return id;
+    }
+
+    /**
+     * Gives the id a new box. If it still touches exactly the same cells that's all that happens, otherwise it's
+     * taken out of the cells it left and put in the ones it entered.
+     */
+    public void update(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if(!isLive(id)) {
+            return;
+        }
+        int r = id * 6;
+        int x0 = cell(minX), y0 = cell(minY), z0 = cell(minZ), x1 = cell(maxX), y1 = cell(maxY), z1 = cell(maxZ);
+        setBox(id, minX, minY, minZ, maxX, maxY, maxZ);
+        if(states[id] == IN_CELLS && ranges[r] == x0 && ranges[r + 1] == y0 && ranges[r + 2] == z0 &&
+                ranges[r + 3] == x1 && ranges[r + 4] == y1 && ranges[r + 5] == z1) {
+            return;
+        }
+        boolean nowBig = isBig(x0, y0, z0, x1, y1, z1);
+        if(states[id] == BIG && nowBig) {
+            setRange(id, x0, y0, z0, x1, y1, z1);
+            return;
+        }
+        rebins++;
+        if(states[id] == BIG || nowBig) {
+            // Going between the cells and the big list, no overlap to save any work on.
+            extract(id);
+            insert(id);
+            return;
+        }
+
+        int ox0 = ranges[r], oy0 = ranges[r + 1], oz0 = ranges[r + 2];
+        int ox1 = ranges[r + 3], oy1 = ranges[r + 4], oz1 = ranges[r + 5];
+        for(int x = ox0; x <= ox1; x++) {
+            for(int y = oy0; y <= oy1; y++) {
+                for(int z = oz0; z <= oz1; z++) {
+                    if(x < x0 || x > x1 || y < y0 || y > y1 || z < z0 || z > z1) {
+                        removeFromCell(id, x, y, z);
+                    }
+                }
+            }
+        }
+        for(int x = x0; x <= x1; x++) {
+            for(int y = y0; y <= y1; y++) {
+                for(int z = z0; z <= z1; z++) {
+                    if(x < ox0 || x > ox1 || y < oy0 || y > oy1 || z < oz0 || z > oz1) {
+                        addToCell(id, x, y, z);
+                    }
+                }
+            }
+        }
+        setRange(id, x0, y0, z0, x1, y1, z1);
+    }
+
+    public void update(int id, Bounds b) {
+        update(id, Math.min(b.getLeft(), b.getRight()), Math.min(b.getBottom(), b.getTop()),
+                Math.min(b.getFront(), b.getBack()), Math.max(b.getLeft(), b.getRight()),
+                Math.max(b.getBottom(), b.getTop()), Math.max(b.getFront(), b.getBack()));
+    }
+
+    public void remove(int id) {
+        if(!isLive(id)) {
+            return;
+        }
+        extract(id);
+        states[id] = FREE;
+        idTable.free(id);
+    }
+
+    public boolean isLive(int id) {
+        return id >= 0 && id < idTable.idCount() && states[id] != FREE;
+    }
+
+    public int size() {
+        return idTable.size();
+    }
+
+    public void clear() {
+        for(int id = 0, n = idTable.idCount(); id < n; id++) {
+            if(states[id] != FREE) {
+                remove(id);
+            }
+        }
+    }
+
+    private void setBox(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = id * 6;
+        boxes[b] = minX;
+        boxes[b + 1] = minY;
+        boxes[b + 2] = minZ;
+        boxes[b + 3] = maxX;
+        boxes[b + 4] = maxY;
+        boxes[b + 5] = maxZ;
+    }
+
+    private void setRange(int id, int x0, int y0, int z0, int x1, int y1, int z1) {
+        int r = id * 6;
+        ranges[r] = x0;
+        ranges[r + 1] = y0;
+        ranges[r + 2] = z0;
+        ranges[r + 3] = x1;
+        ranges[r + 4] = y1;
+        ranges[r + 5] = z1;
+    }
+
+    private int cell(float v) {
+        return (int)Math.floor(v * inverseCellSize);
+    }
+
+    private static boolean isBig(int x0, int y0, int z0, int x1, int y1, int z1) {
+        return (long)(x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1) > MAX_CELLS_PER_ENTITY;
+    }
+
+    /*
+    Puts the id into the cells its box touches (or the big list), working the range out from the box.
+     */
+    private void insert(int id) {
+        int b = id * 6;
+        int x0 = cell(boxes[b]), y0 = cell(boxes[b + 1]), z0 = cell(boxes[b + 2]);
+        int x1 = cell(boxes[b + 3]), y1 = cell(boxes[b + 4]), z1 = cell(boxes[b + 5]);
+        setRange(id, x0, y0, z0, x1, y1, z1);
+        if(isBig(x0, y0, z0, x1, y1, z1)) {
+            if(bigCount == big.length) {
+                big = Arrays.copyOf(big, bigCount * 2);
+            }
+            bigIndex[id] = bigCount;
+            big[bigCount++] = id;
+            states[id] = BIG;
+            return;
+        }
+        for(int x = x0; x <= x1; x++) {
+            for(int y = y0; y <= y1; y++) {
+                for(int z = z0; z <= z1; z++) {
+                    addToCell(id, x, y, z);
+                }
+            }
+        }
+        states[id] = IN_CELLS;
+    }
+
+    /*
+    Takes the id out of wherever its current range says it is.
+     */
+    private void extract(int id) {
+        if(states[id] == BIG) {
+            int at = bigIndex[id];
+            int last = big[--bigCount];
+            big[at] = last;
+            bigIndex[last] = at;
+            return;
+        }
+        int r = id * 6;
+        for(int x = ranges[r]; x <= ranges[r + 3]; x++) {
+            for(int y = ranges[r + 1]; y <= ranges[r + 4]; y++) {
+                for(int z = ranges[r + 2]; z <= ranges[r + 5]; z++) {
+                    removeFromCell(id, x, y, z);
+                }
+            }
+        }
+    }
+
+    /* ====== CELLS ====== */
+
+    private static long key(int x, int y, int z) {
+        return ((long)(x & 0x1FFFFF) << 42) | ((long)(y & 0x1FFFFF) << 21) | (z & 0x1FFFFF);
+    }
+
+    private void addToCell(int id, int x, int y, int z) {
+        long key = key(x, y, z);
+        int cell = cellMap.get(key);
+        if(cell == NONE) {
+            cell = newCell(x, y, z);
+            cellItems[cell][0] = id;
+            cellSizes[cell] = 1;
+            cellMap.put(key, cell);
+            cellCount++;
+            return;
+        }
+        int n = cellSizes[cell];
+        int[] items = cellItems[cell];
+        if(n == items.length) {
+            items = cellItems[cell] = Arrays.copyOf(items, n * 2);
+        }
+        items[n] = id;
+        cellSizes[cell] = n + 1;
+    }
+
+    private void removeFromCell(int id, int x, int y, int z) {
+        long key = key(x, y, z);
+        int cell = cellMap.get(key);
+        if(cell == NONE) {
+            return;
+        }
+        int[] items = cellItems[cell];
+        int n = cellSizes[cell];
+        for(int i = 0; i < n; i++) {
+            if(items[i] == id) {
+                items[i] = items[--n];
+                break;
+            }
+        }
+        cellSizes[cell] = n;
+        if(n == 0) {
+            cellMap.remove(key);
+            if(freeCellCount == freeCells.length) {
+                freeCells = Arrays.copyOf(freeCells, freeCellCount * 2);
+            }
+            freeCells[freeCellCount++] = cell;
+            cellCount--;
+        }
+    }
+
+    private int newCell(int x, int y, int z) {
+        int cell;
+        if(freeCellCount > 0) {
+            cell = freeCells[--freeCellCount];
+        }
+        else {
+            cell = cellHigh++;
+            if(cell == cellSizes.length) {
+                int grown = cellSizes.length * 2;
+                cellItems = Arrays.copyOf(cellItems, grown);
+                cellSizes = Arrays.copyOf(cellSizes, grown);
+                cellCoords = Arrays.copyOf(cellCoords, grown * 3);
+            }
+            cellItems[cell] = new int[4];
+        }
+        cellCoords[cell * 3] = x;
+        cellCoords[cell * 3 + 1] = y;
+        cellCoords[cell * 3 + 2] = z;
+        return cell;
+    }
+
+    private int findCell(int x, int y, int z) {
+        return cellMap.get(key(x, y, z));
+    }
+
+    /* ====== QUERIES ====== */
+
+    private static boolean overlaps(float[] boxes, int a, int b) {
+        return boxes[a] <= boxes[b + 3] && boxes[a + 3] >= boxes[b] &&
+                boxes[a + 1] <= boxes[b + 4] && boxes[a + 4] >= boxes[b + 1] &&
+                boxes[a + 2] <= boxes[b + 5] && boxes[a + 5] >= boxes[b + 2];
+    }
+
+    /**
+     * Every pair of ids whose boxes overlap, each pair once, in one walk over the cells. A pair sharing more than
+     * one cell is only reported by the cell at the low corner of where their cell ranges overlap, which needs no
+     * memory of what's already been seen.
+     */
+    public void forEachPair(IntBinaryConsumer consumer) {
+        for(int cell = 0; cell < cellHigh; cell++) {
+            int n = cellSizes[cell];
+            if(n < 2) {
+                continue;
+            }
+            int[] items = cellItems[cell];
+            int cx = cellCoords[cell * 3], cy = cellCoords[cell * 3 + 1], cz = cellCoords[cell * 3 + 2];
+            for(int i = 0; i < n - 1; i++) {
+                int a = items[i];
+                int ar = a * 6;
+                for(int j = i + 1; j < n; j++) {
+                    int b = items[j];
+                    int br = b * 6;
+                    if(Math.max(ranges[ar], ranges[br]) != cx || Math.max(ranges[ar + 1], ranges[br + 1]) != cy ||
+                            Math.max(ranges[ar + 2], ranges[br + 2]) != cz) {
+                        continue;
+                    }
+                    if(overlaps(boxes, ar, br)) {
+                        consumer.applyAsInt(a, b);
+                    }
+                }
+            }
+        }
+        for(int i = 0; i < bigCount; i++) {
+            int a = big[i];
+            for(int b = 0, n = idTable.idCount(); b < n; b++) {
+                // Big against big only once, from whichever comes first in the list.
+                if(b == a || states[b] == FREE || (states[b] == BIG && bigIndex[b] < i)) {
+                    continue;
+                }
+                if(overlaps(boxes, a * 6, b * 6)) {
+                    consumer.applyAsInt(a, b);
+                }
+            }
+        }
+    }
+
+    /**
+     * Same as forEachPair() but written into out two ids at a time. If there are more than fit, only the first
+     * out.length / 2 are written but the full count is still returned, so the caller can grow out and ask again.
+     *
+     * @return How many pairs there were.
+     */
+    public int findPairs(int[] out) {
+        pairWriter.start(out);
+        forEachPair(pairWriter);
+        return pairWriter.finish();
+    }
+
+    /**
+     * Every id whose box overlaps the given one, written into out. Same rules for out as findPairs().
+     *
+     * @return How many there were.
+     */
+    public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] out) {
+        if(++stamp == 0) {
+            Arrays.fill(marks, 0);
+            stamp = 1;
+        }
+        int found = 0;
+        int x0 = cell(minX), y0 = cell(minY), z0 = cell(minZ), x1 = cell(maxX), y1 = cell(maxY), z1 = cell(maxZ);
+        if((long)(x1 - x0 + 1) * (y1 - y0 + 1) * (z1 - z0 + 1) > cellCount) {
+            // Cheaper to look at every cell there is than to go through all the empty ones in the range.
+            for(int cell = 0; cell < cellHigh; cell++) {
+                found = queryCell(cell, minX, minY, minZ, maxX, maxY, maxZ, out, found);
+            }
+        }
+        else {
+            for(int x = x0; x <= x1; x++) {
+                for(int y = y0; y <= y1; y++) {
+                    for(int z = z0; z <= z1; z++) {
+                        int cell = findCell(x, y, z);
+                        if(cell != NONE) {
+                            found = queryCell(cell, minX, minY, minZ, maxX, maxY, maxZ, out, found);
+                        }
+                    }
+                }
+            }
+        }
+        for(int i = 0; i < bigCount; i++) {
+            found = test(big[i], minX, minY, minZ, maxX, maxY, maxZ, out, found);
+        }
+        return found;
+    }
+
+    private int queryCell(int cell, float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                          int[] out, int found) {
+        int[] items = cellItems[cell];
+        for(int i = 0, n = cellSizes[cell]; i < n; i++) {
+            found = test(items[i], minX, minY, minZ, maxX, maxY, maxZ, out, found);
+        }
+        return found;
+    }
+
+    private int test(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ,
+                     int[] out, int found) {
+        if(marks[id] == stamp) {
+            return found;
+        }
+        marks[id] = stamp;
+        int b = id * 6;
+        if(boxes[b] <= maxX && boxes[b + 3] >= minX && boxes[b + 1] <= maxY && boxes[b + 4] >= minY &&
+                boxes[b + 2] <= maxZ && boxes[b + 5] >= minZ) {
+            if(found < out.length) {
+                out[found] = id;
+            }
+            found++;
+        }
+        return found;
+    }
+
+    public int getCellCount() {
+        return cellCount;
+    }
+
+    /**
+     * How many updates actually had to change which cells something was in.
+     */
+    public long getRebinCount() {
+        return rebins;
+    }
+
+    public float getCellSize() {
+        return cellSize;
+    }
+
+    /* ====== COLLIDABLES ====== */
+
+    /**
+     * Adds the collidable, or picks up its new bounds if it's already in.
+     */
+    @Override
+    public void add(Collidable<Bounds> c) {
+        int id = idTable.getId(c);
+        if(id != NONE) {
+            update(id, c.get());
+            return;
+        }
+        Bounds b = c.get();
+        int newId = add(Math.min(b.getLeft(), b.getRight()), Math.min(b.getBottom(), b.getTop()),
+                Math.min(b.getFront(), b.getBack()), Math.max(b.getLeft(), b.getRight()),
+                Math.max(b.getBottom(), b.getTop()), Math.max(b.getFront(), b.getBack()));
+        idTable.setOwner(newId, c);
+    }
+
+    @Override
+    public void remove(Collidable<Bounds> c) {
+        int id = idTable.getId(c);
+        if(id != NONE) {
+            remove(id);
+        }
+    }
+
+    public void move(Collidable<Bounds> c) {
+        add(c);
+    }
+
+    /**
+     * The collidable an id was made for, or null if it was added as a plain box.
+     */
+    public Collidable<Bounds> getOwner(int id) {
+        return idTable.getOwner(id);
+    }
+
+    public int getId(Collidable<Bounds> c) {
+        return idTable.getId(c);
+    }
+
+    /**
+     * Collidables overlapping c's bounds, not counting c itself. Plain boxes added by id don't show up here.
+     */
+    @Override
+    public List<Collidable<Bounds>> getIntersecting(Collidable<Bounds> c) {
+        Bounds b = c.get();
+        float minX = Math.min(b.getLeft(), b.getRight()), minY = Math.min(b.getBottom(), b.getTop());
+        float minZ = Math.min(b.getFront(), b.getBack()), maxX = Math.max(b.getLeft(), b.getRight());
+        float maxY = Math.max(b.getBottom(), b.getTop()), maxZ = Math.max(b.getFront(), b.getBack());
+        int found = query(minX, minY, minZ, maxX, maxY, maxZ, scratch);
+        if(found > scratch.length) {
+            scratch = new int[Math.max(found, scratch.length * 2)];
+            found = query(minX, minY, minZ, maxX, maxY, maxZ, scratch);
+        }
+        return idTable.getOwners(scratch, found, c);
+    }
+}
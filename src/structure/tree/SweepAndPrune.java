@@ -0,0 +1,707 @@
+package structure.tree;
+
+import function.IntBinaryConsumer;
+import scene.Bounds;
+import structure.event.EventQueue;
+import structure.opengl.Vector3;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Sort and sweep broadphase that remembers which pairs overlap from one tick to the next. Both ends of every box
+ * are kept sorted along each of the three axes. When something moves, each of its ends is slid along its axis
+ * with insertion sort until it's back in order, and the only pairs whose overlap can have changed are the ones
+ * whose ends got swapped on the way. Things barely move between ticks, so there are barely any swaps, and a
+ * tick where nothing moved costs nothing at all.
+ *
+ * The overlapping pairs are kept in a set between ticks. Whenever update() finds a pair that just started or
+ * just stopped overlapping, it pushes a Contact to BEGIN_CONTACT or END_CONTACT on the EventQueue it was given
+ * (if any). The Contact object is reused for every event, so listeners shouldn't hang on to it, and update()
+ * should be called on the thread that owns the queue, so the events are dispatched right away rather than
+ * queued up. Removing something sends END_CONTACT for everything it was touching straight away.
+ *
+ * Entities are int ids with their box copied into a float array. Moves only take effect at the next update().
+ * Adding a lot at once (a quarter of what's in there or more) sorts everything from scratch instead of sliding
+ * the new ends in one at a time. The Collidable methods hand ids out behind the scenes so this can go anywhere
+ * an NTreeBasic does. Not safe to use from more than one thread at a time.
+ */
+public class SweepAndPrune implements NTreeBasic<Collidable<Bounds>> {
+    public static final int NONE = -1;
+    public static final String BEGIN_CONTACT = "beginContact";
+    public static final String END_CONTACT = "endContact";
+
+    /**
+     * What gets pushed for BEGIN_CONTACT and END_CONTACT. The same one is filled in again for every event.
+     */
+    public static final class Contact {
+        protected SweepAndPrune source;
+        protected int a, b;
+
+        public SweepAndPrune getSource() {
+            return source;
+        }
+
+        public int getA() {
+            return a;
+        }
+
+        public int getB() {
+            return b;
+        }
+
+        /**
+         * The collidable the first id was made for, or null if it was added as a plain box.
+         */
+        public Collidable<Bounds> getOwnerA() {
+            return source.getOwner(a);
+        }
+
+        public Collidable<Bounds> getOwnerB() {
+            return source.getOwner(b);
+        }
+
+        @Override
+        public String toString() {
+            return "Contact{" + a + ", " + b + "}";
+        }
+    }
+
+    // Per id. target is what it was last told, current is what the sorted ends and the pair set agree with.
+    protected float[] target = new float[64 * 6];
+    protected float[] current = new float[64 * 6];
+    protected int[] positions = new int[64 * 6]; // Where each end is, axis * 2 + (0 for min, 1 for max).
+    protected boolean[] live = new boolean[64];
+    protected boolean[] queued = new boolean[64];
+    protected final IdTable idTable = new IdTable();
+    protected int[] moved = new int[64];
+    protected int movedCount = 0, pendingAdds = 0;
+    protected boolean sweepVelocity = false;
+
+    // Per axis, sorted. A tag is id * 2, plus 1 for a max.
+    protected float[][] values = {new float[128], new float[128], new float[128]};
+    protected int[][] tags = {new int[128], new int[128], new int[128]};
+    protected int ends = 0;
+
+    // Pair key -> index into pairs.
+    protected final LongIntMap pairIndex = new LongIntMap();
+    protected long[] pairs = new long[64];
+    protected int pairCount = 0;
+    // Pairs that had their ends swapped since the last update().
+    protected long[] touched = new long[64];
+    protected int touchedCount = 0;
+
+    protected final EventQueue queue;
+    protected final int beginStream, endStream;
+    protected final Contact contact = new Contact();
+    protected long swaps = 0;
+    protected int[] scratch = new int[64];
+    private final PairWriter pairWriter = new PairWriter();
+
+    public SweepAndPrune() {
+        this(null);
+    }
+
+    /**
+     * @param queue Where the contact events go, or null to not send any. The streams are made if the queue
+     *              doesn't have them yet, so any number of these can share one queue.
+     */
+    public SweepAndPrune(EventQueue queue) {
+        this.queue = queue;
+        if(queue != null) {
+            if(queue.getStreamId(BEGIN_CONTACT) == EventQueue.NO_STREAM) {
+                queue.createStream(BEGIN_CONTACT);
+            }
+            if(queue.getStreamId(END_CONTACT) == EventQueue.NO_STREAM) {
+                queue.createStream(END_CONTACT);
+            }
+            beginStream = queue.getStreamId(BEGIN_CONTACT);
+            endStream = queue.getStreamId(END_CONTACT);
+        }
+        else {
+            beginStream = EventQueue.NO_STREAM;
+            endStream = EventQueue.NO_STREAM;
+        }
+        contact.source = this;
+    }
+
+    /* ====== IDS ====== */
+
+    /**
+     * @return The id for the box, good until it's removed. It takes part from the next update() on.
+     */
+    public int add(float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int id = idTable.take();
+        if(id == live.length) {
+            int grown = live.length * 2;
+            target = Arrays.copyOf(target, grown * 6);
+            current = Arrays.copyOf(current, grown * 6);
+            positions = Arrays.copyOf(positions, grown * 6);
+            live = Arrays.copyOf(live, grown);
+            queued = Arrays.copyOf(queued, grown);
+        }
+        live[id] = true;
+        setTarget(id, minX, minY, minZ, maxX, maxY, maxZ);
+
+        // The new ends go on the far end of every axis, sitting at infinity (where they can't overlap anything)
+        // until update() slides them down to where they belong.
+        if(ends + 2 > values[0].length) {
+            for(int axis = 0; axis < 3; axis++) {
+                values[axis] = Arrays.copyOf(values[axis], values[axis].length * 2);
+                tags[axis] = Arrays.copyOf(tags[axis], tags[axis].length * 2);
+            }
+        }
+        for(int axis = 0; axis < 3; axis++) {
+            values[axis][ends] = Float.POSITIVE_INFINITY;
+            values[axis][ends + 1] = Float.POSITIVE_INFINITY;
+            tags[axis][ends] = id * 2;
+            tags[axis][ends + 1] = id * 2 + 1;
+            positions[id * 6 + axis * 2] = ends;
+            positions[id * 6 + axis * 2 + 1] = ends + 1;
+            current[id * 6 + axis] = Float.POSITIVE_INFINITY;
+            current[id * 6 + 3 + axis] = Float.POSITIVE_INFINITY;
+        }
+        ends += 2;
+        queue(id);
+        pendingAdds++;
+        return id;
+    }
+
+    /**
+     * Gives the id a new box, which gets sorted in at the next update().
+     */
+    public void update(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        if(!isLive(id)) {
+            return;
+        }
+        setTarget(id, minX, minY, minZ, maxX, maxY, maxZ);
+        queue(id);
+    }
+
+    public void update(int id, Bounds b) {
+        update(id, Math.min(b.getLeft(), b.getRight()), Math.min(b.getBottom(), b.getTop()),
+                Math.min(b.getFront(), b.getBack()), Math.max(b.getLeft(), b.getRight()),
+                Math.max(b.getBottom(), b.getTop()), Math.max(b.getFront(), b.getBack()));
+    }
+
+    /**
+     * Takes the id out right away, sending END_CONTACT for every pair it was in.
+     */
+    public void remove(int id) {
+        if(!isLive(id)) {
+            return;
+        }
+        for(int axis = 0; axis < 3; axis++) {
+            // The max comes first for a box that's inside out.
+            int min = positions[id * 6 + axis * 2], max = positions[id * 6 + axis * 2 + 1];
+            removeEnds(axis, Math.min(min, max), Math.max(min, max));
+        }
+        ends -= 2;
+        for(int i = pairCount - 1; i >= 0; i--) {
+            long key = pairs[i];
+            int a = (int)(key >>> 32), b = (int)key;
+            if(a == id || b == id) {
+                removePair(key);
+                fire(endStream, a, b);
+            }
+        }
+        live[id] = false;
+        idTable.free(id);
+    }
+
+    public boolean isLive(int id) {
+        return id >= 0 && id < idTable.idCount() && live[id];
+    }
+
+    public int size() {
+        return idTable.size();
+    }
+
+    public void clear() {
+        for(int id = 0, n = idTable.idCount(); id < n; id++) {
+            if(live[id]) {
+                remove(id);
+            }
+        }
+    }
+
+    /*
+    NaN can't be ordered against anything, so an end holding one would stop every other end that tries to get
+    past it. Any NaN becomes an infinity pointing the wrong way instead, which turns the box inside out so it
+    overlaps nothing and sorts like any other value.
+     */
+    private void setTarget(int id, float minX, float minY, float minZ, float maxX, float maxY, float maxZ) {
+        int b = id * 6;
+        target[b] = minX != minX ? Float.POSITIVE_INFINITY : minX;
+        target[b + 1] = minY != minY ? Float.POSITIVE_INFINITY : minY;
+        target[b + 2] = minZ != minZ ? Float.POSITIVE_INFINITY : minZ;
+        target[b + 3] = maxX != maxX ? Float.NEGATIVE_INFINITY : maxX;
+        target[b + 4] = maxY != maxY ? Float.NEGATIVE_INFINITY : maxY;
+        target[b + 5] = maxZ != maxZ ? Float.NEGATIVE_INFINITY : maxZ;
+    }
+
+    private void queue(int id) {
+        if(queued[id]) {
+            return;
+        }
+        queued[id] = true;
+        if(movedCount == moved.length) {
+            moved = Arrays.copyOf(moved, movedCount * 2);
+        }
+        moved[movedCount++] = id;
+    }
+
+    /*
+    Shuffles everything between and after the two ends down over them.
+     */
+    private void removeEnds(int axis, int first, int second) {
+        float[] v = values[axis];
+        int[] t = tags[axis];
+        for(int i = first + 1; i < ends; i++) {
+            if(i == second) {
+                continue;
+            }
+            int to = i < second ? i - 1 : i - 2;
+            v[to] = v[i];
+            t[to] = t[i];
+            positions[(t[to] >>> 1) * 6 + axis * 2 + (t[to] & 1)] = to;
+        }
+    }
+
+    /* ====== UPDATING ====== */
+
+    /**
+     * Sorts in everything that moved or was added since last time, then sends BEGIN_CONTACT and END_CONTACT for
+     * the pairs that changed. Call once per tick.
+     */
+    public void update() {
+        if(pendingAdds > 0 && pendingAdds * 4 >= idTable.size()) {
+            rebuild();
+            return;
+        }
+        for(int i = 0; i < movedCount; i++) {
+            int id = moved[i];
+            queued[id] = false;
+            if(!live[id]) {
+                continue;
+            }
+            for(int axis = 0; axis < 3; axis++) {
+                float min = target[id * 6 + axis], max = target[id * 6 + 3 + axis];
+                // Whichever end grows the box goes first, so min never passes max on the way.
+                if(min < current[id * 6 + axis]) {
+                    moveEnd(id, axis, 0, min);
+                    moveEnd(id, axis, 1, max);
+                }
+                else {
+                    moveEnd(id, axis, 1, max);
+                    moveEnd(id, axis, 0, min);
+                }
+            }
+        }
+        movedCount = 0;
+        pendingAdds = 0;
+
+        // Every pair that could have changed got touched at least once, so checking them against the pair set
+        // is all that's needed. One touched more than once just finds nothing to do the second time.
+        for(int i = 0; i < touchedCount; i++) {
+            long key = touched[i];
+            int a = (int)(key >>> 32), b = (int)key;
+            boolean now = live[a] && live[b] && overlaps(a, b);
+            boolean was = pairIndex.get(key) != LongIntMap.NONE;
+            if(now && !was) {
+                addPair(key);
+                fire(beginStream, a, b);
+            }
+            else if(was && !now) {
+                removePair(key);
+                fire(endStream, a, b);
+            }
+        }
+        touchedCount = 0;
+    }
+
+    private void moveEnd(int id, int axis, int isMax, float value) {
+        int c = id * 6 + isMax * 3 + axis;
+        float old = current[c];
+        if(value == old) {
+            return;
+        }
+        current[c] = value;
+        int at = positions[id * 6 + axis * 2 + isMax];
+        values[axis][at] = value;
+        if(value < old) {
+            sortDown(axis, at);
+        }
+        else {
+            sortUp(axis, at);
+        }
+    }
+
+    /*
+    Ends are ordered by value, with a min going before a max when they're equal, so boxes that only just touch
+    count as overlapping the same way overlaps() says they do.
+     */
+    private void sortDown(int axis, int at) {
+        float[] v = values[axis];
+        int[] t = tags[axis];
+        float value = v[at];
+        int tag = t[at];
+        int id = tag >>> 1;
+        boolean isMax = (tag & 1) != 0;
+        while(at > 0) {
+            float prev = v[at - 1];
+            int prevTag = t[at - 1];
+            boolean prevMax = (prevTag & 1) != 0;
+            if(!(value < prev || (value == prev && !isMax && prevMax))) {
+                break;
+            }
+            int other = prevTag >>> 1;
+            if(other != id && isMax != prevMax) {
+                touch(id, other);
+            }
+            v[at] = prev;
+            t[at] = prevTag;
+            positions[other * 6 + axis * 2 + (prevTag & 1)] = at;
+            at--;
+            swaps++;
+        }
+        v[at] = value;
+        t[at] = tag;
+        positions[id * 6 + axis * 2 + (tag & 1)] = at;
+    }
+
+    private void sortUp(int axis, int at) {
+        float[] v = values[axis];
+        int[] t = tags[axis];
+        float value = v[at];
+        int tag = t[at];
+        int id = tag >>> 1;
+        boolean isMax = (tag & 1) != 0;
+        while(at < ends - 1) {
+            float next = v[at + 1];
+            int nextTag = t[at + 1];
+            boolean nextMax = (nextTag & 1) != 0;
+            if(!(next < value || (next == value && !nextMax && isMax))) {
+                break;
+            }
+            int other = nextTag >>> 1;
+            if(other != id && isMax != nextMax) {
+                touch(id, other);
+            }
+            v[at] = next;
+            t[at] = nextTag;
+            positions[other * 6 + axis * 2 + (nextTag & 1)] = at;
+            at++;
+            swaps++;
+        }
+        v[at] = value;
+        t[at] = tag;
+        positions[id * 6 + axis * 2 + (tag & 1)] = at;
+    }
+
+    private void touch(int a, int b) {
+        if(touchedCount == touched.length) {
+            touched = Arrays.copyOf(touched, touchedCount * 2);
+        }
+        touched[touchedCount++] = pairKey(a, b);
+    }
+
+    /**
+     * Sorts every axis from scratch and finds the pairs with one sweep along x, sending events for whatever's
+     * different from the pair set. update() does this by itself when a lot has been added since the last tick.
+     */
+    public void rebuild() {
+        int idCount = idTable.idCount();
+        long[] sorting = new long[ends];
+        for(int axis = 0; axis < 3; axis++) {
+            int n = 0;
+            for(int id = 0; id < idCount; id++) {
+                if(!live[id]) {
+                    continue;
+                }
+                float min = target[id * 6 + axis], max = target[id * 6 + 3 + axis];
+                current[id * 6 + axis] = min;
+                current[id * 6 + 3 + axis] = max;
+                sorting[n++] = sortKey(min, id * 2);
+                sorting[n++] = sortKey(max, id * 2 + 1);
+            }
+            Arrays.sort(sorting, 0, n);
+            float[] v = values[axis];
+            int[] t = tags[axis];
+            for(int i = 0; i < n; i++) {
+                int tag = (int)sorting[i] & 0x7FFFFFFF;
+                t[i] = tag;
+                v[i] = current[(tag >>> 1) * 6 + (tag & 1) * 3 + axis];
+                positions[(tag >>> 1) * 6 + axis * 2 + (tag & 1)] = i;
+            }
+        }
+        for(int i = 0; i < movedCount; i++) {
+            queued[moved[i]] = false;
+        }
+        movedCount = 0;
+        pendingAdds = 0;
+        touchedCount = 0;
+
+        // Sweep along x: everything still open when a box starts overlaps it on x, the other two axes get
+        // checked directly. A box that's inside out on x (min past max, which is also what a NaN turns into)
+        // has its max come first, so it never opens, but it still gets checked against whatever's open.
+        int[] open = new int[16];
+        int openCount = 0;
+        int[] openAt = new int[idCount];
+        Arrays.fill(openAt, -1);
+        long[] found = new long[Math.max(16, pairCount)];
+        int foundCount = 0;
+        int[] t = tags[0];
+        for(int i = 0; i < ends; i++) {
+            int tag = t[i];
+            int id = tag >>> 1;
+            if((tag & 1) != 0) {
+                int at = openAt[id];
+                if(at >= 0) {
+                    int last = open[--openCount];
+                    open[at] = last;
+                    openAt[last] = at;
+                    openAt[id] = -1;
+                }
+                continue;
+            }
+            for(int j = 0; j < openCount; j++) {
+                int other = open[j];
+                if(overlaps(id, other)) {
+                    if(foundCount == found.length) {
+                        found = Arrays.copyOf(found, foundCount * 2);
+                    }
+                    found[foundCount++] = pairKey(id, other);
+                }
+            }
+            if(positions[id * 6 + 1] < i) {
+                continue;
+            }
+            if(openCount == open.length) {
+                open = Arrays.copyOf(open, openCount * 2);
+            }
+            openAt[id] = openCount;
+            open[openCount++] = id;
+        }
+
+        // Whatever was in the set and wasn't found again has ended.
+        LongIntMap still = new LongIntMap(foundCount);
+        for(int i = 0; i < foundCount; i++) {
+            still.put(found[i], i);
+        }
+        for(int i = pairCount - 1; i >= 0; i--) {
+            long key = pairs[i];
+            if(!still.containsKey(key)) {
+                removePair(key);
+                fire(endStream, (int)(key >>> 32), (int)key);
+            }
+        }
+        for(int i = 0; i < foundCount; i++) {
+            long key = found[i];
+            if(pairIndex.get(key) == LongIntMap.NONE) {
+                addPair(key);
+                fire(beginStream, (int)(key >>> 32), (int)key);
+            }
+        }
+    }
+
+    /*
+    Orders by value first (flipping the bits of negative floats so they sort as ints), then mins before maxes.
+    This has to agree exactly with the comparisons in sortDown() and sortUp(), or a later move can miss a swap.
+    Those count -0 and 0 as equal, so adding 0 turns -0 into 0 first. NaN never gets here, setTarget() sees
+    to that.
+     */
+    private static long sortKey(float value, int tag) {
+        int bits = Float.floatToIntBits(value + 0.0f);
+        bits ^= (bits >> 31) & 0x7FFFFFFF;
+        return ((long)bits << 32) | ((long)(tag & 1) << 31) | tag;
+    }
+
+    /* ====== PAIRS ====== */
+
+    private static long pairKey(int a, int b) {
+        return a < b ? ((long)a << 32) | b : ((long)b << 32) | a;
+    }
+
+    private boolean overlaps(int a, int b) {
+        int i = a * 6, j = b * 6;
+        return current[i] <= current[j + 3] && current[i + 3] >= current[j] &&
+                current[i + 1] <= current[j + 4] && current[i + 4] >= current[j + 1] &&
+                current[i + 2] <= current[j + 5] && current[i + 5] >= current[j + 2];
+    }
+
+    private void addPair(long key) {
+        if(pairCount == pairs.length) {
+            pairs = Arrays.copyOf(pairs, pairCount * 2);
+        }
+        pairIndex.put(key, pairCount);
+        pairs[pairCount++] = key;
+    }
+
+    private void removePair(long key) {
+        int at = pairIndex.remove(key);
+        long last = pairs[--pairCount];
+        if(at != pairCount) {
+            pairs[at] = last;
+            pairIndex.put(last, at);
+        }
+    }
+
+    private void fire(int stream, int a, int b) {
+        if(queue == null) {
+            return;
+        }
+        contact.a = a;
+        contact.b = b;
+        queue.pushImmediateStream(stream, contact);
+    }
+
+    /**
+     * Whether the two ids overlapped as of the last update().
+     */
+    public boolean isOverlapping(int a, int b) {
+        return a != b && pairIndex.containsKey(pairKey(a, b));
+    }
+
+    public int getPairCount() {
+        return pairCount;
+    }
+
+    /**
+     * Every pair overlapping as of the last update(), lower id first.
+     */
+    public void forEachPair(IntBinaryConsumer consumer) {
+        for(int i = 0; i < pairCount; i++) {
+            long key = pairs[i];
+            consumer.applyAsInt((int)(key >>> 32), (int)key);
+        }
+    }
+
+    /**
+     * Same as forEachPair() but written into out two ids at a time. If there are more than fit, only the first
+     * out.length / 2 are written but the full count is still returned, so the caller can grow out and ask again.
+     *
+     * @return How many pairs there were.
+     */
+    public int findPairs(int[] out) {
+        pairWriter.start(out);
+        forEachPair(pairWriter);
+        return pairWriter.finish();
+    }
+
+    /**
+     * How many times an end has been swapped past another, over the whole life of this. A still scene should
+     * see it stop going up.
+     */
+    public long getSwapCount() {
+        return swaps;
+    }
+
+    /**
+     * Every id whose box (as of the last update()) overlaps the given one, written into out. Same rules for out
+     * as findPairs(). Walks the x axis up to maxX, so it isn't meant for doing a lot of.
+     *
+     * @return How many there were.
+     */
+    public int query(float minX, float minY, float minZ, float maxX, float maxY, float maxZ, int[] out) {
+        int found = 0;
+        float[] v = values[0];
+        int[] t = tags[0];
+        for(int i = 0; i < ends && v[i] <= maxX; i++) {
+            int tag = t[i];
+            if((tag & 1) != 0) {
+                continue;
+            }
+            int b = (tag >>> 1) * 6;
+            if(current[b + 3] >= minX && current[b + 1] <= maxY && current[b + 4] >= minY &&
+                    current[b + 2] <= maxZ && current[b + 5] >= minZ) {
+                if(found < out.length) {
+                    out[found] = tag >>> 1;
+                }
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /* ====== COLLIDABLES ====== */
+
+    /**
+     * When set, collidables are given a box that also covers where they were before their last move (Bounds
+     * keeps that as its velocity), so something fast still gets a contact with whatever it went through.
+     */
+    public void setSweepVelocity(boolean sweepVelocity) {
+        this.sweepVelocity = sweepVelocity;
+    }
+
+    /**
+     * Adds the collidable, or picks up its new bounds if it's already in.
+     */
+    @Override
+    public void add(Collidable<Bounds> c) {
+        int id = idTable.getId(c);
+        if(id == NONE) {
+            id = add(0, 0, 0, 0, 0, 0);
+            idTable.setOwner(id, c);
+        }
+        move(id, c.get());
+    }
+
+    @Override
+    public void remove(Collidable<Bounds> c) {
+        int id = idTable.getId(c);
+        if(id != NONE) {
+            remove(id);
+        }
+    }
+
+    public void move(Collidable<Bounds> c) {
+        add(c);
+    }
+
+    private void move(int id, Bounds b) {
+        float minX = Math.min(b.getLeft(), b.getRight()), minY = Math.min(b.getBottom(), b.getTop());
+        float minZ = Math.min(b.getFront(), b.getBack()), maxX = Math.max(b.getLeft(), b.getRight());
+        float maxY = Math.max(b.getBottom(), b.getTop()), maxZ = Math.max(b.getFront(), b.getBack());
+        if(sweepVelocity) {
+            Vector3 vel = b.getVelocity(Vector3.get());
+            minX = Math.min(minX, minX - vel.x);
+            maxX = Math.max(maxX, maxX - vel.x);
+            minY = Math.min(minY, minY - vel.y);
+            maxY = Math.max(maxY, maxY - vel.y);
+            minZ = Math.min(minZ, minZ - vel.z);
+            maxZ = Math.max(maxZ, maxZ - vel.z);
+            Vector3.recycle(vel);
+        }
+        update(id, minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    /**
+     * The collidable an id was made for, or null if it was added as a plain box.
+     */
+    public Collidable<Bounds> getOwner(int id) {
+        return idTable.getOwner(id);
+    }
+
+    public int getId(Collidable<Bounds> c) {
+        return idTable.getId(c);
+    }
+
+    /**
+     * Collidables overlapping c's bounds as of the last update(), not counting c itself. Plain boxes added by id
+     * don't show up here.
+     */
+    @Override
+    public List<Collidable<Bounds>> getIntersecting(Collidable<Bounds> c) {
+        Bounds b = c.get();
+        float minX = Math.min(b.getLeft(), b.getRight()), minY = Math.min(b.getBottom(), b.getTop());
+        float minZ = Math.min(b.getFront(), b.getBack()), maxX = Math.max(b.getLeft(), b.getRight());
+        float maxY = Math.max(b.getBottom(), b.getTop()), maxZ = Math.max(b.getFront(), b.getBack());
+        int found = query(minX, minY, minZ, maxX, maxY, maxZ, scratch);
+        if(found > scratch.length) {
+            scratch = new int[Math.max(found, scratch.length * 2)];
+            found = query(minX, minY, minZ, maxX, maxY, maxZ, scratch);
+        }
+        return idTable.getOwners(scratch, found, c);
+    }
+}
@@ -1,40 +1,128 @@
-package stuff;
-
-import structure.opengl.Quaternion;
-import structure.opengl.Vector3;
-
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-/**
- * Created with IntelliJ IDEA.
- * User: vince_000
- * Date: 3/24/13
- * Time: 10:15 AM
- * To change this template use File | Settings | File Templates.
- */
-public class TempVars {
-    private static TempVars ourInstance = new TempVars();
-    private static final Lock theLock = new ReentrantLock();
-
-    public Vector3 vect1 = new Vector3(),
-            vect2 = new Vector3(),
-            vect3 = new Vector3(),
-            vect4 = new Vector3(),
-            vect5 = new Vector3();
-    public Quaternion quat1 = new Quaternion(),
-            quat2 = new Quaternion(),
-            quat3 = new Quaternion();
-
-    public void release() {
-        theLock.unlock();
-    }
-
-    public static TempVars get() {
-        theLock.lock();
-        return ourInstance;
-    }
-
-    private TempVars() {
-    }
-}
+package stuff;
+
+import structure.opengl.Quaternion;
+import structure.opengl.Vector3;
+
+/**
+ * Created with IntelliJ IDEA.
+ * User: vince_000
+ * Date: 3/24/13
+ * Time: 10:15 AM
+ * To change this template use File | Settings | File Templates.
+ */
+public class TempVars {
+    public static final String CMDLINE_DEBUG = "cmsc425.debug.tempvars";
+    /*
+    When this is off, none of the bookkeeping below happens at all, so get/release are just a ThreadLocal
+    lookup and an index bump.
+     */
+    public static final boolean DEBUG = System.getProperties().containsKey(CMDLINE_DEBUG);
+
+    private static final int INITIAL_STACK_SIZE = 5;
+
+    /*
+    Every thread gets its own little stack of TempVars, so worker threads never wait on each other (or the
+    main loop), and nested calls (get -> call something that also does get -> release -> release) each get
+    their own instance instead of stomping on the caller's vectors.
+     */
+    private static final class Stack {
+        TempVars[] vars = new TempVars[INITIAL_STACK_SIZE];
+        int depth = 0;
+    }
+
+    private static final ThreadLocal<Stack> stacks = ThreadLocal.withInitial(Stack::new);
+
+    public Vector3 vect1 = new Vector3(),
+            vect2 = new Vector3(),
+            vect3 = new Vector3(),
+            vect4 = new Vector3(),
+            vect5 = new Vector3();
+    public Quaternion quat1 = new Quaternion(),
+            quat2 = new Quaternion(),
+            quat3 = new Quaternion();
+
+    private final Stack owner;
+    private final int index;
+    private boolean inUse = false;
+    private Throwable acquiredAt = null;
+
+    public void release() {
+        if(DEBUG) {
+            if(!inUse) {
+                throw new IllegalStateException("TempVars released twice");
+            }
+            if(stacks.get() != owner) {
+                throw new IllegalStateException("TempVars released from a different thread than the one that got them");
+            }
+            if(owner.depth - 1 != index) {
+                throw new IllegalStateException("TempVars released out of order. Expected depth " +
+                        (owner.depth - 1) + " but these are at depth " + index);
+            }
+            acquiredAt = null;
+        }
+        // Even without the checks, a second release can't be allowed to pull the depth below zero, or the next
+        // get() blows up somewhere that has nothing to do with the real mistake.
+        if(inUse) {
+            inUse = false;
+            owner.depth--;
+        }
+    }
+
+    public static TempVars get() {
+        Stack stack = stacks.get();
+        if(stack.depth == stack.vars.length) {
+            TempVars[] grown = new TempVars[stack.vars.length * 2];
+            System.arraycopy(stack.vars, 0, grown, 0, stack.vars.length);
+            stack.vars = grown;
+        }
+        TempVars ret = stack.vars[stack.depth];
+        if(ret == null) {
+            ret = new TempVars(stack, stack.depth);
+            stack.vars[stack.depth] = ret;
+        }
+        stack.depth++;
+        ret.inUse = true;
+        if(DEBUG) {
+            ret.acquiredAt = new Throwable("TempVars acquired here");
+        }
+        return ret;
+    }
+
+    /**
+     * Number of TempVars the calling thread currently has out.
+     */
+    public static int getDepth() {
+        return stacks.get().depth;
+    }
+
+    /**
+     * Only does anything in debug mode. Should be called at a point where the calling thread isn't supposed to
+     * have any TempVars out (the end of a frame, or the end of a job on a worker thread), and complains about
+     * every one that never got released, with where it was grabbed from. The leaked ones get reclaimed so the
+     * same leak doesn't get reported every frame from then on.
+     */
+    public static void checkLeaks() {
+        if(!DEBUG) {
+            return;
+        }
+        Stack stack = stacks.get();
+        if(stack.depth == 0) {
+            return;
+        }
+        System.err.println("[ERROR] " + stack.depth + " TempVars never released on thread " + Thread.currentThread().getName());
+        for(int i = 0; i < stack.depth; i++) {
+            TempVars leaked = stack.vars[i];
+            if(leaked.acquiredAt != null) {
+                leaked.acquiredAt.printStackTrace();
+            }
+            leaked.acquiredAt = null;
+            leaked.inUse = false;
+        }
+        stack.depth = 0;
+    }
+
+    private TempVars(Stack owner, int index) {
+        this.owner = owner;
+        this.index = index;
+    }
+}
@@ -1,6 +1,5 @@
 package stuff;
 
-import org.lwjgl.BufferUtils;
 import org.lwjgl.util.vector.Matrix4f;
 import org.lwjgl.util.vector.Quaternion;
 import org.lwjgl.util.vector.Vector3f;
@@ -15,7 +14,6 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.nio.FloatBuffer;
 import java.util.Random;
 
 /**
@@ -27,7 +25,6 @@ import java.util.Random;
 public class Utils {
     protected static final float fastNorm_a = (float)((1 + Math.sqrt(4 - 2 * Math.sqrt(2))) / 2.0);
     protected static final float fastNorm_b = (float)Math.sqrt(0.5);
-    private static final FloatBuffer matrixOpBuff = BufferUtils.createFloatBuffer(16);
     public static final Random random = new Random(System.nanoTime());
     public static final float GLMAT_EPSILON = 0.000001f;
 
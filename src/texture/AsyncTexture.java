@@ -0,0 +1,246 @@
+package texture;
+
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+
+/**
+ * Texture handed out by the async loading path. Until the real texture has been decoded and uploaded it acts
+ * exactly like TextureManager.DUMMY, and afterwards it acts exactly like the real one, so whoever got it can
+ * start drawing with it right away and never needs to swap anything out.
+ */
+public class AsyncTexture extends Texture {
+    private final String managerHandle, file;
+    private final TextureCache cache;
+    private volatile Texture current;
+    private volatile boolean ready = false, failed = false;
+    private int refCount = 1;
+    // Written on the GL thread, read by the decoder threads.
+    private volatile boolean destroyed = false;
+    // Size set before the real texture showed up, NaN if it wasn't. The placeholder is shared, so it can't go there.
+    private volatile float width = Float.NaN, height = Float.NaN;
+    private final Release release = new Release();
+
+    /*
+    What CleanupManager runs once a non-retained AsyncTexture has been collected. It can't refer back to the
+    AsyncTexture (that would keep it alive forever), so it keeps whatever it resolved to instead.
+     */
+    static final class Release implements Runnable {
+        volatile Texture real = null;
+
+        @Override
+        public void run() {
+            Texture toRelease = real;
+            real = null;
+            if(toRelease instanceof CachedTexture) {
+                CachedTexture cached = (CachedTexture)toRelease;
+                cached.cache.remove(cached);
+            }
+            else if(toRelease != null) {
+                int name = toRelease.getName();
+                if(Texture.lastBound == name) {
+                    Texture.lastBound = -1;
+                }
+                // Not destroy(), that would pull whatever now has its name out of TextureManager.
+                glDeleteTextures(name);
+            }
+        }
+    }
+
+    public AsyncTexture(String managerHandle, Texture placeholder) {
+        this(managerHandle, placeholder, null, null);
+    }
+
+    /**
+     * @param cache If not null, the uploaded texture is handed to this cache (as coming from file) instead of
+     *              being owned outright.
+     */
+    public AsyncTexture(String managerHandle, Texture placeholder, String file, TextureCache cache) {
+        this.managerHandle = managerHandle;
+        this.current = placeholder;
+        this.file = file;
+        this.cache = cache;
+    }
+
+    /*
+    Called on the GL thread once the upload is done. Returns false if nobody wants the texture any more, in
+    which case the caller should get rid of it.
+     */
+    synchronized boolean resolve(Texture real) {
+        if(destroyed) {
+            return false;
+        }
+        if(!Float.isNaN(width)) {
+            real.setWidth(width);
+        }
+        if(!Float.isNaN(height)) {
+            real.setHeight(height);
+        }
+        current = real;
+        release.real = real;
+        ready = true;
+        return true;
+    }
+
+    void fail() {
+        failed = true;
+    }
+
+    /**
+     * True once the real texture is the one being drawn.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * True if decoding or uploading went wrong, in which case this stays the placeholder for good.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    /*
+    The texture the uploaded pixels should end up as: owned by the cache if there is one, otherwise as is.
+     */
+    Texture adopt(SimpleTexture uploaded) {
+        return cache == null ? uploaded : cache.adopt(file, managerHandle, uploaded);
+    }
+
+    boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /*
+    Gives back the real texture, if there is one by then. TextureManager has CleanupManager run this when a
+    non-retained AsyncTexture is collected without ever being destroyed.
+     */
+    Runnable getRelease() {
+        return release;
+    }
+
+    @Override
+    public void alloc() {
+        refCount++;
+    }
+
+    @Override
+    public void destroy() {
+        refCount--;
+        if(refCount == 0) {
+            destroyed = true;
+            TextureManager.removeTexture(managerHandle);
+            if(ready) {
+                release.real = null;
+                current.destroy();
+            }
+        }
+    }
+
+    public float getTexBottomRightX() {
+        return current.getTexBottomRightX();
+    }
+
+    public float getTexTopRightX() {
+        return current.getTexTopRightX();
+    }
+
+    public float getTexTopLeftX() {
+        return current.getTexTopLeftX();
+    }
+
+    public float getTexBottomLeftX() {
+        return current.getTexBottomLeftX();
+    }
+
+    public float getTexBottomRightY() {
+        return current.getTexBottomRightY();
+    }
+
+    public float getTexTopRightY() {
+        return current.getTexTopRightY();
+    }
+
+    public float getTexTopLeftY() {
+        return current.getTexTopLeftY();
+    }
+
+    public float getTexBottomLeftY() {
+        return current.getTexBottomLeftY();
+    }
+
+    public float getWidth() {
+        return ready || Float.isNaN(width) ? current.getWidth() : width;
+    }
+
+    public float getHeight() {
+        return ready || Float.isNaN(height) ? current.getHeight() : height;
+    }
+
+    public int getName() {
+        return current.getName();
+    }
+
+    public int getTarget() {
+        return current.getTarget();
+    }
+
+    @Override
+    public String getManagerHandle() {
+        return managerHandle;
+    }
+
+    public synchronized void setWidth(double width) {
+        if(ready) {
+            current.setWidth(width);
+        }
+        else {
+            this.width = (float)width;
+        }
+    }
+
+    public synchronized void setHeight(double height) {
+        if(ready) {
+            current.setHeight(height);
+        }
+        else {
+            this.height = (float)height;
+        }
+    }
+
+    public void bind(float dt) {
+        current.bind(dt);
+    }
+
+    public boolean isValidTexture() {
+        return current.isValidTexture();
+    }
+
+    @Override
+    public void restart() {
+        current.restart();
+    }
+
+    @Override
+    public void pause() {
+        current.pause();
+    }
+
+    @Override
+    public void resume() {
+        current.resume();
+    }
+
+    @Override
+    public void stopAt(int frame) {
+        current.stopAt(frame);
+    }
+
+    @Override
+    public void stopAfterFullCycle() {
+        current.stopAfterFullCycle();
+    }
+
+    @Override
+    public int numFrames() {
+        return current.numFrames();
+    }
+}
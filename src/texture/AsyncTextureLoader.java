@@ -0,0 +1,144 @@
+package texture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.lwjgl.opengl.GL11.GL_TEXTURE_2D;
+
+/**
+ * Loads textures without holding up the frame. Reading the file, decoding it and swizzling it into RGBA (or
+ * just mapping the DiskTextureCache copy) all happen on a pool of worker threads. The finished pixels wait in a
+ * queue until the GL thread calls uploadPending(), which uploads as many as it can within its time budget and
+ * leaves the rest for the next frame. Meanwhile, whoever asked for the texture has an AsyncTexture that draws as the placeholder.
+ */
+public class AsyncTextureLoader {
+    public static final long DEFAULT_UPLOAD_BUDGET = 2000000;
+
+    private static final class Decoded {
+        final AsyncTexture target;
+        final ByteBuffer pixels;
+        final int width, height;
+
+        Decoded(AsyncTexture target, ByteBuffer pixels, int width, int height) {
+            this.target = target;
+            this.pixels = pixels;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    private final ExecutorService workers;
+    private final ConcurrentLinkedQueue<Decoded> decoded = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger inFlight = new AtomicInteger(0);
+    private volatile long uploadBudget = DEFAULT_UPLOAD_BUDGET;
+
+    public AsyncTextureLoader() {
+        this(Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+    }
+
+    public AsyncTextureLoader(int threads) {
+        final AtomicInteger count = new AtomicInteger(0);
+        this.workers = Executors.newFixedThreadPool(threads, (r) -> {
+            Thread t = new Thread(r, "texture-decoder-" + count.incrementAndGet());
+            // Don't keep the game alive just because a texture is still decoding.
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Starts loading the file in the background and returns a texture that shows placeholder until it's done.
+     */
+    public AsyncTexture load(String file, String name, Texture placeholder) {
+        return load(file, name, placeholder, null);
+    }
+
+    /**
+     * Same as above, but once it's uploaded the texture belongs to cache, which can evict it and reload it from
+     * file like anything else it holds.
+     */
+    public AsyncTexture load(String file, String name, Texture placeholder, TextureCache cache) {
+        final AsyncTexture ret = new AsyncTexture(name, placeholder, file, cache);
+        inFlight.incrementAndGet();
+        workers.execute(() -> decode(file, ret));
+        return ret;
+    }
+
+    private void decode(String file, AsyncTexture target) {
+        try {
+            if(target.isDestroyed()) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            DiskTextureCache.Pixels pixels = DiskTextureCache.read(file, false);
+            decoded.add(new Decoded(target, pixels.levels[0], pixels.width, pixels.height));
+        }
+        catch(IOException | RuntimeException e) {
+            System.err.println("[ERROR] Couldn't load texture '" + file + "', keeping the placeholder");
+            e.printStackTrace();
+            target.fail();
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * Uploads decoded textures until the budget for this frame runs out. Always does at least one if any are
+     * waiting, so a single huge texture can't get stuck forever. Has to be called on the GL thread.
+     *
+     * @return How many textures were uploaded.
+     */
+    public int uploadPending() {
+        long start = System.nanoTime();
+        int uploaded = 0;
+        Decoded next;
+        while((next = decoded.poll()) != null) {
+            inFlight.decrementAndGet();
+            if(!next.target.isDestroyed()) {
+                int name = BasicTextureLoader.upload(next.pixels, next.width, next.height);
+                if(name == -1) {
+                    next.target.fail();
+                }
+                else {
+                    SimpleTexture real = new SimpleTexture(GL_TEXTURE_2D, name, next.target.getManagerHandle());
+                    real.setWidth(next.width);
+                    real.setHeight(next.height);
+                    Texture resolved = next.target.adopt(real);
+                    if(!next.target.resolve(resolved)) {
+                        resolved.destroy();
+                    }
+                }
+                uploaded++;
+            }
+            if(System.nanoTime() - start >= uploadBudget) {
+                break;
+            }
+        }
+        return uploaded;
+    }
+
+    /**
+     * Most time uploadPending() spends per call, in nanoseconds, before leaving the rest for later.
+     */
+    public void setUploadBudget(long nanos) {
+        this.uploadBudget = nanos;
+    }
+
+    public long getUploadBudget() {
+        return uploadBudget;
+    }
+
+    /**
+     * Number of textures still being decoded or waiting for upload.
+     */
+    public int getPending() {
+        return inFlight.get();
+    }
+
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+}
@@ -35,33 +35,43 @@ public class BasicTextureLoader implements Runnable, TextureLoader {
     }
 
     protected ByteBuffer imageToTexture(BufferedImage image) {
-        int[] pixels = new int[image.getWidth() * image.getHeight()];
-        image.getRGB(0, 0, image.getWidth(), image.getHeight(), pixels, 0, image.getWidth());
-
-        ByteBuffer buffer = BufferUtils.createByteBuffer(image.getWidth() * image.getHeight() * 4); //4 for RGBA, 3 for RGB
-
-        for(int y = 0; y < image.getHeight(); y++){
-            for(int x = 0; x < image.getWidth(); x++){
-                int pixel = pixels[y * image.getWidth() + x];
-                buffer.put((byte) ((pixel >> 16) & 0xFF));     // Red component
-                buffer.put((byte) ((pixel >> 8) & 0xFF));      // Green component
-                buffer.put((byte) (pixel & 0xFF));               // Blue component
-                buffer.put((byte) ((pixel >> 24) & 0xFF));    // Alpha component. Only for RGBA
-            }
+        return toRGBA(image);
+    }
+
+    /**
+     * Pulls the pixels out of the image as tightly packed RGBA bytes, ready for glTexImage2D. Doesn't touch GL,
+     * so it can run on any thread.
+     */
+    public static ByteBuffer toRGBA(BufferedImage image) {
+        int width = image.getWidth(), height = image.getHeight();
+        int[] pixels = new int[width * height];
+        image.getRGB(0, 0, width, height, pixels, 0, width);
+
+        // Swizzle into a plain array first, then hand the whole thing to the direct buffer in one put.
+        byte[] rgba = new byte[pixels.length * 4];
+        for(int i = 0, j = 0; i < pixels.length; i++, j += 4) {
+            int pixel = pixels[i];
+            rgba[j] = (byte)(pixel >> 16);      // Red component
+            rgba[j + 1] = (byte)(pixel >> 8);   // Green component
+            rgba[j + 2] = (byte)pixel;          // Blue component
+            rgba[j + 3] = (byte)(pixel >> 24);  // Alpha component. Only for RGBA
         }
 
+        ByteBuffer buffer = BufferUtils.createByteBuffer(rgba.length); //4 for RGBA, 3 for RGB
+        buffer.put(rgba);
         buffer.flip(); //FOR THE LOVE OF GOD DO NOT FORGET THIS
         return buffer;
     }
 
-    protected int genTextureFromBufferedImage(BufferedImage image) {
+    /**
+     * Makes a new GL texture out of RGBA bytes. Has to be called on the GL thread. Returns -1 if it didn't work.
+     */
+    public static int upload(ByteBuffer rgba, int width, int height) {
         int tex = -1;
         try {
-            width = image.getWidth();
-            height = image.getHeight();
-            ByteBuffer imageBuffer = imageToTexture(image);
             tex = glGenTextures();
             glBindTexture(GL_TEXTURE_2D, tex);
+            Texture.lastBound = tex;
 
             // These parameters make the image actually look nice and look like the image with no artifacts.
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
@@ -70,7 +80,7 @@ public class BasicTextureLoader implements Runnable, TextureLoader {
             glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
 
             glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height,
-                    0, GL_RGBA, GL_UNSIGNED_BYTE, imageBuffer);
+                    0, GL_RGBA, GL_UNSIGNED_BYTE, rgba);
         } catch (IndexOutOfBoundsException e) {
             e.printStackTrace();
             glDeleteTextures(tex);
@@ -83,6 +93,12 @@ public class BasicTextureLoader implements Runnable, TextureLoader {
         return tex;
     }
 
+    protected int genTextureFromBufferedImage(BufferedImage image) {
+        width = image.getWidth();
+        height = image.getHeight();
+        return upload(imageToTexture(image), width, height);
+    }
+
     @Override
     public void run() {
         if(texture != null) {
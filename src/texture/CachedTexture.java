@@ -0,0 +1,172 @@
+package texture;
+
+import org.lwjgl.opengl.GL11;
+
+/**
+ * Texture whose GL side belongs to a TextureCache. The cache is free to throw the pixels away whenever it's over
+ * budget; the next time this is bound (or anything asks for its name) it gets loaded back in from its file, so
+ * whoever holds on to it never has to know it was gone.
+ */
+public class CachedTexture extends Texture {
+    protected final TextureCache cache;
+    protected final String file, managerHandle;
+    protected final boolean removeBackground;
+
+    // Null whenever the cache has evicted us.
+    SimpleTexture resident;
+    long bytes;
+    // Links in the cache's least recently used list, most recent at the head.
+    CachedTexture prev, next;
+
+    private float width, height;
+    private int refCount = 1;
+
+    CachedTexture(TextureCache cache, String file, String managerHandle, boolean removeBackground) {
+        this.cache = cache;
+        this.file = file;
+        this.managerHandle = managerHandle;
+        this.removeBackground = removeBackground;
+    }
+
+    void setResident(SimpleTexture resident) {
+        this.resident = resident;
+        if(resident != null) {
+            // Keep whatever size somebody set on us before the eviction.
+            if(width == 0.0f && height == 0.0f) {
+                width = resident.getWidth();
+                height = resident.getHeight();
+            }
+            resident.setWidth(width);
+            resident.setHeight(height);
+        }
+    }
+
+    /**
+     * True if the texture is on the GPU right now.
+     */
+    public boolean isResident() {
+        return resident != null;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    protected SimpleTexture use() {
+        return cache.use(this);
+    }
+
+    @Override
+    public void alloc() {
+        refCount++;
+    }
+
+    @Override
+    public void destroy() {
+        refCount--;
+        if(refCount == 0) {
+            TextureManager.removeTexture(managerHandle);
+            cache.remove(this);
+        }
+    }
+
+    public float getTexBottomRightX() {
+        return 1.0f;
+    }
+
+    public float getTexTopRightX() {
+        return 1.0f;
+    }
+
+    public float getTexTopLeftX() {
+        return 0.0f;
+    }
+
+    public float getTexBottomLeftX() {
+        return 0.0f;
+    }
+
+    public float getTexBottomRightY() {
+        return 0.0f;
+    }
+
+    public float getTexTopRightY() {
+        return 1.0f;
+    }
+
+    public float getTexTopLeftY() {
+        return 1.0f;
+    }
+
+    public float getTexBottomLeftY() {
+        return 0.0f;
+    }
+
+    public float getWidth() {
+        return width;
+    }
+
+    public float getHeight() {
+        return height;
+    }
+
+    public int getName() {
+        return use().getName();
+    }
+
+    public int getTarget() {
+        return GL11.GL_TEXTURE_2D;
+    }
+
+    @Override
+    public String getManagerHandle() {
+        return managerHandle;
+    }
+
+    public void setWidth(double width) {
+        this.width = (float)width;
+        if(resident != null) {
+            resident.setWidth(width);
+        }
+    }
+
+    public void setHeight(double height) {
+        this.height = (float)height;
+        if(resident != null) {
+            resident.setHeight(height);
+        }
+    }
+
+    public void bind(float dt) {
+        use().bind(dt);
+    }
+
+    public boolean isValidTexture() {
+        return resident != null && resident.isValidTexture();
+    }
+
+    @Override
+    public void restart() {
+    }
+
+    @Override
+    public void pause() {
+    }
+
+    @Override
+    public void resume() {
+    }
+
+    @Override
+    public void stopAt(int frame) {
+    }
+
+    @Override
+    public void stopAfterFullCycle() {
+    }
+
+    @Override
+    public int numFrames() {
+        return 1;
+    }
+}
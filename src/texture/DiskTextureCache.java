@@ -0,0 +1,282 @@
+package texture;
+
+import org.lwjgl.BufferUtils;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+import static org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL;
+
+/**
+ * Saves textures already decoded and swizzled, so the next run doesn't have to go through ImageIO again. The first
+ * time an image is loaded, its RGBA pixels (and optionally a full chain of mipmaps) go into a file next to it
+ * named image + CACHE_EXTENSION. Later loads memory-map that file and hand the mapping straight to glTexImage2D.
+ *
+ * The cache file remembers the length and CRC32 of the image it came from. If either one no longer matches,
+ * the image gets decoded again and the cache rewritten, so editing an image is all it takes to refresh it.
+ * Failing to write the cache (read-only directory and so on) only costs the speedup, never the texture.
+ *
+ * Layout, all big endian:
+ *   int magic, int version, long sourceLength, long sourceCrc, int levels,
+ *   then per level: int width, int height, width * height * 4 bytes of RGBA.
+ */
+public class DiskTextureCache {
+    public static final String CMDLINE_DISABLE = "cmsc425.texturecache.disable";
+    public static final String CACHE_EXTENSION = ".texcache";
+
+    private static final int MAGIC = 0x54584331; // "TXC1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final int LEVEL_HEADER_BYTES = 4 + 4;
+
+    private static volatile boolean enabled = !System.getProperties().containsKey(CMDLINE_DISABLE);
+
+    /**
+     * Decoded pixels of every mip level, smallest last. The buffers may be views of a mapped file, so they're
+     * only good until the next load of the same image.
+     */
+    public static final class Pixels {
+        public final int width, height;
+        public final ByteBuffer[] levels;
+        public final int[] levelWidths, levelHeights;
+        // Whether these came out of the cache file instead of being decoded.
+        public final boolean fromCache;
+
+        Pixels(ByteBuffer[] levels, int[] levelWidths, int[] levelHeights, boolean fromCache) {
+            this.levels = levels;
+            this.levelWidths = levelWidths;
+            this.levelHeights = levelHeights;
+            this.width = levelWidths[0];
+            this.height = levelHeights[0];
+            this.fromCache = fromCache;
+        }
+    }
+
+    public static void setEnabled(boolean enabled) {
+        DiskTextureCache.enabled = enabled;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static File cacheFileFor(File source) {
+        return new File(source.getPath() + CACHE_EXTENSION);
+    }
+
+    /**
+     * Pixels for the image, out of its cache file if that's still good, or decoded (and cached) if not. Doesn't
+     * touch GL, so it's fine to call from worker threads.
+     *
+     * @param mipmaps Whether a full mip chain is wanted. A cache file without one gets rebuilt.
+     */
+    public static Pixels read(String file, boolean mipmaps) throws IOException {
+        File source = new File(file);
+        byte[] sourceBytes = Files.readAllBytes(source.toPath());
+        CRC32 crc = new CRC32();
+        crc.update(sourceBytes, 0, sourceBytes.length);
+
+        File cacheFile = cacheFileFor(source);
+        if(enabled && cacheFile.isFile()) {
+            Pixels cached = map(cacheFile, sourceBytes.length, crc.getValue(), mipmaps);
+            if(cached != null) {
+                return cached;
+            }
+        }
+
+        BufferedImage image = ImageIO.read(new ByteArrayInputStream(sourceBytes));
+        if(image == null) {
+            throw new IOException("No reader could decode " + file);
+        }
+        Pixels decoded = decode(image, mipmaps);
+        if(enabled) {
+            try {
+                write(cacheFile, sourceBytes.length, crc.getValue(), decoded);
+            }
+            catch(IOException e) {
+                System.err.println("[WARNING] Couldn't write texture cache " + cacheFile + ": " + e.getMessage());
+            }
+        }
+        return decoded;
+    }
+
+    /**
+     * Loads the image into a new GL texture, going through the cache file when possible. GL thread only.
+     */
+    public static SimpleTexture load(String file, String managerHandle, boolean mipmaps) throws IOException {
+        Pixels pixels = read(file, mipmaps);
+        SimpleTexture ret = new SimpleTexture(GL_TEXTURE_2D, upload(pixels), managerHandle);
+        ret.setWidth(pixels.width);
+        ret.setHeight(pixels.height);
+        return ret;
+    }
+
+    /**
+     * Makes a GL texture out of every level in pixels. GL thread only.
+     */
+    public static int upload(Pixels pixels) {
+        int tex = glGenTextures();
+        glBindTexture(GL_TEXTURE_2D, tex);
+        Texture.lastBound = tex;
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER,
+                pixels.levels.length > 1 ? GL_LINEAR_MIPMAP_LINEAR : GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, pixels.levels.length - 1);
+        for(int level = 0; level < pixels.levels.length; level++) {
+            glTexImage2D(GL_TEXTURE_2D, level, GL_RGBA, pixels.levelWidths[level], pixels.levelHeights[level],
+                    0, GL_RGBA, GL_UNSIGNED_BYTE, pixels.levels[level]);
+        }
+        return tex;
+    }
+
+    /**
+     * Swizzles the image and, if asked, box filters it down to 1x1.
+     */
+    public static Pixels decode(BufferedImage image, boolean mipmaps) {
+        int levelCount = mipmaps ? levelsFor(image.getWidth(), image.getHeight()) : 1;
+        ByteBuffer[] levels = new ByteBuffer[levelCount];
+        int[] widths = new int[levelCount], heights = new int[levelCount];
+        levels[0] = BasicTextureLoader.toRGBA(image);
+        widths[0] = image.getWidth();
+        heights[0] = image.getHeight();
+        for(int i = 1; i < levelCount; i++) {
+            widths[i] = Math.max(1, widths[i - 1] / 2);
+            heights[i] = Math.max(1, heights[i - 1] / 2);
+            levels[i] = downsample(levels[i - 1], widths[i - 1], heights[i - 1], widths[i], heights[i]);
+        }
+        return new Pixels(levels, widths, heights, false);
+    }
+
+    private static int levelsFor(int width, int height) {
+        int levels = 1;
+        while(width > 1 || height > 1) {
+            width = Math.max(1, width / 2);
+            height = Math.max(1, height / 2);
+            levels++;
+        }
+        return levels;
+    }
+
+    /*
+    Averages each 2x2 block of the level above into one pixel. Odd edges just reuse the last row or column.
+     */
+    private static ByteBuffer downsample(ByteBuffer src, int srcWidth, int srcHeight, int width, int height) {
+        byte[] in = new byte[srcWidth * srcHeight * 4];
+        src.get(in).rewind();
+        byte[] out = new byte[width * height * 4];
+        for(int y = 0; y < height; y++) {
+            int y0 = Math.min(y * 2, srcHeight - 1), y1 = Math.min(y * 2 + 1, srcHeight - 1);
+            for(int x = 0; x < width; x++) {
+                int x0 = Math.min(x * 2, srcWidth - 1), x1 = Math.min(x * 2 + 1, srcWidth - 1);
+                int a = (y0 * srcWidth + x0) * 4, b = (y0 * srcWidth + x1) * 4;
+                int c = (y1 * srcWidth + x0) * 4, d = (y1 * srcWidth + x1) * 4;
+                int o = (y * width + x) * 4;
+                for(int ch = 0; ch < 4; ch++) {
+                    int sum = (in[a + ch] & 0xff) + (in[b + ch] & 0xff) + (in[c + ch] & 0xff) + (in[d + ch] & 0xff);
+                    out[o + ch] = (byte)((sum + 2) >> 2);
+                }
+            }
+        }
+        ByteBuffer ret = BufferUtils.createByteBuffer(out.length);
+        ret.put(out).flip();
+        return ret;
+    }
+
+    /*
+    Maps the cache file and slices it into levels, or returns null if it's stale, broken or missing mipmaps.
+     */
+    private static Pixels map(File cacheFile, long sourceLength, long sourceCrc, boolean mipmaps) {
+        try(RandomAccessFile raf = new RandomAccessFile(cacheFile, "r");
+            FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if(size < HEADER_BYTES) {
+                return null;
+            }
+            // The mapping stays valid after the channel is closed.
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.BIG_ENDIAN);
+            if(mapped.getInt() != MAGIC || mapped.getInt() != VERSION ||
+                    mapped.getLong() != sourceLength || mapped.getLong() != sourceCrc) {
+                return null;
+            }
+            int levelCount = mapped.getInt();
+            if(levelCount < 1 || (mipmaps && levelCount == 1)) {
+                return null;
+            }
+            // Files with mipmaps still work for someone who doesn't want them, they just skip the extra levels.
+            int wanted = mipmaps ? levelCount : 1;
+            ByteBuffer[] levels = new ByteBuffer[wanted];
+            int[] widths = new int[wanted], heights = new int[wanted];
+            for(int i = 0; i < wanted; i++) {
+                if(mapped.remaining() < LEVEL_HEADER_BYTES) {
+                    return null;
+                }
+                widths[i] = mapped.getInt();
+                heights[i] = mapped.getInt();
+                int bytes = widths[i] * heights[i] * 4;
+                if(widths[i] <= 0 || heights[i] <= 0 || mapped.remaining() < bytes) {
+                    return null;
+                }
+                ByteBuffer level = mapped.slice();
+                level.limit(bytes);
+                levels[i] = level;
+                mapped.position(mapped.position() + bytes);
+            }
+            return new Pixels(levels, widths, heights, true);
+        }
+        catch(IOException e) {
+            return null;
+        }
+    }
+
+    /*
+    Writes to a temporary file first and moves it into place, so a crash halfway through never leaves a cache
+    file that looks valid.
+     */
+    private static void write(File cacheFile, long sourceLength, long sourceCrc, Pixels pixels) throws IOException {
+        File temp = new File(cacheFile.getPath() + ".tmp");
+        try(RandomAccessFile raf = new RandomAccessFile(temp, "rw");
+            FileChannel channel = raf.getChannel()) {
+            raf.setLength(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putLong(sourceLength).putLong(sourceCrc).putInt(pixels.levels.length);
+            header.flip();
+            writeFully(channel, header);
+            ByteBuffer levelHeader = ByteBuffer.allocate(LEVEL_HEADER_BYTES).order(ByteOrder.BIG_ENDIAN);
+            for(int i = 0; i < pixels.levels.length; i++) {
+                levelHeader.clear();
+                levelHeader.putInt(pixels.levelWidths[i]).putInt(pixels.levelHeights[i]).flip();
+                writeFully(channel, levelHeader);
+                writeFully(channel, pixels.levels[i].duplicate());
+            }
+        }
+        try {
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch(IOException e) {
+            Files.move(temp.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while(buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
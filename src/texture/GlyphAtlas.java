@@ -0,0 +1,94 @@
+package texture;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Every glyph of one font size, packed into a TextureAtlas. Printable ASCII is rasterised up front so that
+ * ordinary strings all land on the first page and go up in a single upload. Anything else is added the first
+ * time somebody asks for it. TextureManager keeps one of these per point size.
+ */
+public class GlyphAtlas {
+    public static final char FIRST_PRELOADED = ' ', LAST_PRELOADED = '~';
+    public static final int PAGE_SIZE = 512;
+
+    protected final int pointSize;
+    protected final Font font;
+    protected final TextureAtlas atlas = new TextureAtlas(PAGE_SIZE, PAGE_SIZE);
+    protected final TextureAtlas.Region[] ascii = new TextureAtlas.Region[LAST_PRELOADED - FIRST_PRELOADED + 1];
+    protected final Map<Character, TextureAtlas.Region> others = new HashMap<>();
+
+    public GlyphAtlas(int pointSize) {
+        this.pointSize = pointSize;
+        this.font = new Font(Font.SANS_SERIF, Font.PLAIN, pointSize);
+        for(char c = FIRST_PRELOADED; c <= LAST_PRELOADED; c++) {
+            ascii[c - FIRST_PRELOADED] = atlas.add(rasterize(c, font), name(c));
+        }
+    }
+
+    public synchronized TextureAtlas.Region get(char c) {
+        if(c >= FIRST_PRELOADED && c <= LAST_PRELOADED) {
+            return ascii[c - FIRST_PRELOADED];
+        }
+        TextureAtlas.Region ret = others.get(c);
+        if(ret == null) {
+            ret = atlas.add(rasterize(c, font), name(c));
+            others.put(c, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Regions for every character of the string, in order. Writes into out if it's big enough, so a string
+     * that's redrawn every frame doesn't need a new array each time.
+     */
+    public TextureAtlas.Region[] get(String text, TextureAtlas.Region[] out) {
+        if(out == null || out.length < text.length()) {
+            out = new TextureAtlas.Region[text.length()];
+        }
+        for(int i = 0; i < text.length(); i++) {
+            out[i] = get(text.charAt(i));
+        }
+        return out;
+    }
+
+    public int getPointSize() {
+        return pointSize;
+    }
+
+    public TextureAtlas getAtlas() {
+        return atlas;
+    }
+
+    public void destroy() {
+        atlas.destroy();
+    }
+
+    protected String name(char c) {
+        return String.valueOf(c) + "_" + pointSize;
+    }
+
+    /**
+     * Draws a single character in white on a transparent image just big enough for it.
+     */
+    public static BufferedImage rasterize(char theChar, Font font) {
+        char[] charData = new char[]{theChar};
+        BufferedImage temp = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = temp.createGraphics();
+        Rectangle2D r = font.getStringBounds(charData, 0, 1, g.getFontRenderContext());
+        g.dispose();
+
+        temp = new BufferedImage(Math.max((int)Math.ceil(r.getWidth()), 1),
+                Math.max((int)Math.round(r.getHeight() * 1.25), 1),
+                BufferedImage.TYPE_INT_ARGB);
+        g = temp.createGraphics();
+        g.setColor(Color.WHITE);
+        g.setFont(font);
+        g.drawChars(charData, 0, 1, 0, (int)Math.floor(r.getHeight()));
+        g.dispose();
+        return temp;
+    }
+}
@@ -0,0 +1,404 @@
+package texture;
+
+import org.lwjgl.BufferUtils;
+
+import java.awt.image.BufferedImage;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.lwjgl.opengl.GL11.*;
+import static org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE;
+
+/**
+ * Packs lots of small images into a few big textures, so things that are drawn together (the glyphs of a string,
+ * the tiles of a layer) all live behind one bind. Images are placed on shelves: each page is cut into horizontal
+ * strips as tall as the first thing put on them, and later images go on the first strip they fit on.
+ *
+ * Pixels are kept on the CPU side as RGBA bytes. Adding an image only touches that copy; the rows that changed
+ * get sent to GL the next time the page is bound, so packing a whole string costs one upload instead of one per
+ * glyph. Individual regions are never freed, the whole atlas goes at once in destroy().
+ */
+public class TextureAtlas {
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    // Empty pixels kept around every image, so linear filtering doesn't pull in its neighbours.
+    public static final int PADDING = 1;
+
+    protected final class Page {
+        final int width, height;
+        final byte[] pixels;
+        final List<int[]> shelves = new ArrayList<>(); // {y, height, nextX}
+        int nextShelfY = 0;
+        int name = -1;
+        int dirtyMinY = Integer.MAX_VALUE, dirtyMaxY = -1;
+        ByteBuffer uploadBuffer;
+        long usedArea = 0;
+
+        Page(int width, int height) {
+            this.width = width;
+            this.height = height;
+            this.pixels = new byte[width * height * 4];
+        }
+
+        /*
+        Finds room for a w * h rectangle (padding already included), returning {x, y}, or null if the page
+        doesn't have any.
+         */
+        int[] place(int w, int h) {
+            if(w > width || h > height) {
+                return null;
+            }
+            for(int[] shelf : shelves) {
+                if(h <= shelf[1] && shelf[2] + w <= width) {
+                    int[] ret = new int[] {shelf[2], shelf[0]};
+                    shelf[2] += w;
+                    return ret;
+                }
+            }
+            if(nextShelfY + h > height) {
+                return null;
+            }
+            int[] shelf = new int[] {nextShelfY, h, w};
+            shelves.add(shelf);
+            nextShelfY += h;
+            return new int[] {0, shelf[0]};
+        }
+
+        void blit(BufferedImage image, int x, int y) {
+            int w = image.getWidth(), h = image.getHeight();
+            int[] argb = image.getRGB(0, 0, w, h, null, 0, w);
+            for(int row = 0; row < h; row++) {
+                int j = ((y + row) * width + x) * 4;
+                for(int col = 0, i = row * w; col < w; col++, i++, j += 4) {
+                    int pixel = argb[i];
+                    pixels[j] = (byte)(pixel >> 16);
+                    pixels[j + 1] = (byte)(pixel >> 8);
+                    pixels[j + 2] = (byte)pixel;
+                    pixels[j + 3] = (byte)(pixel >> 24);
+                }
+            }
+            // The padding rows above and below have to go up too. The texture starts out undefined, and
+            // nothing else would ever send them.
+            dirtyMinY = Math.min(dirtyMinY, Math.max(0, y - PADDING));
+            dirtyMaxY = Math.max(dirtyMaxY, Math.min(height - 1, y + h - 1 + PADDING));
+            usedArea += (long)w * h;
+        }
+
+        /*
+        Makes sure GL has everything that's been packed so far. Only the band of rows that changed gets sent,
+        as one glTexSubImage2D. Leaves the page bound.
+         */
+        void flush() {
+            if(name == -1) {
+                name = glGenTextures();
+                glBindTexture(GL_TEXTURE_2D, name);
+                Texture.lastBound = name;
+                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE);
+                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE);
+                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
+                glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+                glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer)null);
+                uploadBuffer = BufferUtils.createByteBuffer(pixels.length);
+            }
+            if(dirtyMaxY < 0) {
+                return;
+            }
+            if(Texture.lastBound != name) {
+                glBindTexture(GL_TEXTURE_2D, name);
+                Texture.lastBound = name;
+            }
+            int rows = dirtyMaxY - dirtyMinY + 1;
+            int start = dirtyMinY * width * 4, length = rows * width * 4;
+            uploadBuffer.clear();
+            uploadBuffer.put(pixels, start, length);
+            uploadBuffer.flip();
+            glTexSubImage2D(GL_TEXTURE_2D, 0, 0, dirtyMinY, width, rows, GL_RGBA, GL_UNSIGNED_BYTE, uploadBuffer);
+            dirtyMinY = Integer.MAX_VALUE;
+            dirtyMaxY = -1;
+            uploads++;
+        }
+
+        void bind() {
+            synchronized (TextureAtlas.this) {
+                if(name == -1 || dirtyMaxY >= 0) {
+                    flush();
+                }
+            }
+            if(Texture.lastBound != name) {
+                glBindTexture(GL_TEXTURE_2D, name);
+                Texture.lastBound = name;
+            }
+        }
+
+        int getName() {
+            synchronized (TextureAtlas.this) {
+                if(name == -1 || dirtyMaxY >= 0) {
+                    flush();
+                }
+                return name;
+            }
+        }
+    }
+
+    /**
+     * A piece of one of the atlas's pages. Acts like any other texture, only its coordinates don't span the
+     * whole thing, so it can be used anywhere a texture from TextureManager can.
+     */
+    public static class Region extends Texture {
+        protected final Page page;
+        protected final int x, y;
+        protected float width, height;
+        protected final float u1, u2, v1, v2;
+        protected final String managerHandle;
+        private int refCount = 1;
+
+        protected Region(Page page, int x, int y, int width, int height, String managerHandle) {
+            this.page = page;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.u1 = (float)x / page.width;
+            this.u2 = (float)(x + width) / page.width;
+            this.v1 = (float)y / page.height;
+            this.v2 = (float)(y + height) / page.height;
+            this.managerHandle = managerHandle;
+        }
+
+        /**
+         * Where this region starts on its page, in pixels.
+         */
+        public int getX() {
+            return x;
+        }
+
+        public int getY() {
+            return y;
+        }
+
+        /**
+         * Regions on the same page can be drawn without rebinding in between.
+         */
+        public boolean isOnSamePage(Region other) {
+            return other != null && other.page == page;
+        }
+
+        @Override
+        public void alloc() {
+            refCount++;
+        }
+
+        @Override
+        public void destroy() {
+            refCount--;
+            if(refCount == 0 && managerHandle != null) {
+                TextureManager.removeTexture(managerHandle);
+            }
+        }
+
+        public float getTexBottomRightX() {
+            return u2;
+        }
+
+        public float getTexTopRightX() {
+            return u2;
+        }
+
+        public float getTexTopLeftX() {
+            return u1;
+        }
+
+        public float getTexBottomLeftX() {
+            return u1;
+        }
+
+        public float getTexBottomRightY() {
+            return v1;
+        }
+
+        public float getTexTopRightY() {
+            return v2;
+        }
+
+        public float getTexTopLeftY() {
+            return v2;
+        }
+
+        public float getTexBottomLeftY() {
+            return v1;
+        }
+
+        public float getWidth() {
+            return width;
+        }
+
+        public float getHeight() {
+            return height;
+        }
+
+        public int getName() {
+            return page.getName();
+        }
+
+        public int getTarget() {
+            return GL_TEXTURE_2D;
+        }
+
+        @Override
+        public String getManagerHandle() {
+            return managerHandle;
+        }
+
+        public void setWidth(double width) {
+            this.width = (float)width;
+        }
+
+        public void setHeight(double height) {
+            this.height = (float)height;
+        }
+
+        public void bind(float dt) {
+            page.bind();
+        }
+
+        public boolean isValidTexture() {
+            return page.name != -1 && glIsTexture(page.name);
+        }
+
+        @Override
+        public void restart() {
+        }
+
+        @Override
+        public void pause() {
+        }
+
+        @Override
+        public void resume() {
+        }
+
+        @Override
+        public void stopAt(int frame) {
+        }
+
+        @Override
+        public void stopAfterFullCycle() {
+        }
+
+        @Override
+        public int numFrames() {
+            return 1;
+        }
+    }
+
+    protected final int pageWidth, pageHeight;
+    protected final List<Page> pages = new ArrayList<>();
+    protected int regions = 0;
+    protected long uploads = 0;
+
+    public TextureAtlas() {
+        this(DEFAULT_PAGE_SIZE, DEFAULT_PAGE_SIZE);
+    }
+
+    public TextureAtlas(int pageWidth, int pageHeight) {
+        if(pageWidth <= 2 * PADDING || pageHeight <= 2 * PADDING) {
+            throw new IllegalArgumentException("Atlas pages need to be bigger than their padding, got: " +
+                    pageWidth + "x" + pageHeight);
+        }
+        this.pageWidth = pageWidth;
+        this.pageHeight = pageHeight;
+    }
+
+    /**
+     * Packs the image onto the first page with room for it, starting a new page if none has any. Images too big
+     * for a normal page get a page of their own. Doesn't need GL.
+     */
+    public synchronized Region add(BufferedImage image, String managerHandle) {
+        int w = image.getWidth() + 2 * PADDING, h = image.getHeight() + 2 * PADDING;
+        Page page = null;
+        int[] spot = null;
+        for(int i = 0; i < pages.size() && spot == null; i++) {
+            page = pages.get(i);
+            spot = page.place(w, h);
+        }
+        if(spot == null) {
+            page = new Page(Math.max(pageWidth, w), Math.max(pageHeight, h));
+            pages.add(page);
+            spot = page.place(w, h);
+        }
+        int x = spot[0] + PADDING, y = spot[1] + PADDING;
+        page.blit(image, x, y);
+        regions++;
+        return new Region(page, x, y, image.getWidth(), image.getHeight(), managerHandle);
+    }
+
+    /**
+     * Packs a whole sheet of tiles as one block and hands back a region per tile, row by row, the same way
+     * BasicTileMapLoader lays them out. Neighbouring tiles stay neighbours, just like they were on the sheet.
+     */
+    public synchronized Region[] addTileMap(BufferedImage sheet, String managerHandle, int tileWidth, int tileHeight) {
+        int tilesWide = sheet.getWidth() / tileWidth;
+        int tilesHigh = sheet.getHeight() / tileHeight;
+        Region whole = add(sheet, null);
+        regions--;
+        Region[] ret = new Region[tilesWide * tilesHigh];
+        for(int ty = 0; ty < tilesHigh; ty++) {
+            for(int tx = 0; tx < tilesWide; tx++) {
+                ret[ty * tilesWide + tx] = new Region(whole.page, whole.x + tx * tileWidth, whole.y + ty * tileHeight,
+                        tileWidth, tileHeight, managerHandle + "_" + tx + "," + ty);
+            }
+        }
+        regions += ret.length;
+        return ret;
+    }
+
+    /**
+     * Sends everything packed so far to GL, instead of waiting for the first bind to do it.
+     */
+    public synchronized void flush() {
+        for(Page page : pages) {
+            page.flush();
+        }
+    }
+
+    public synchronized void destroy() {
+        for(Page page : pages) {
+            if(page.name != -1) {
+                if(Texture.lastBound == page.name) {
+                    Texture.lastBound = -1;
+                }
+                glDeleteTextures(page.name);
+                page.name = -1;
+            }
+        }
+        pages.clear();
+        regions = 0;
+    }
+
+    public synchronized int getPageCount() {
+        return pages.size();
+    }
+
+    public synchronized int getRegionCount() {
+        return regions;
+    }
+
+    /**
+     * Number of glTexSubImage2D calls made to get the pages onto the GPU.
+     */
+    public synchronized long getUploads() {
+        return uploads;
+    }
+
+    /**
+     * How much of the pages' area is covered by packed images, from 0 to 1.
+     */
+    public synchronized float getFillRatio() {
+        long used = 0, total = 0;
+        for(Page page : pages) {
+            used += page.usedArea;
+            total += (long)page.width * page.height;
+        }
+        return total == 0 ? 0.0f : (float)used / total;
+    }
+}
@@ -0,0 +1,229 @@
+package texture;
+
+import stuff.Utils;
+
+import java.io.IOException;
+
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+
+/**
+ * Keeps the textures loaded through it under a fixed amount of GPU memory. Every use moves a texture to the front
+ * of a least recently used list, and whenever loading one pushes the total over the budget, textures are
+ * evicted from the back until it fits again. An evicted texture reloads itself from its file the next time it's
+ * used. Whatever was used last is never evicted to make room for itself, so a single texture bigger than the
+ * whole budget still works, it just has everything else thrown out around it.
+ *
+ * Everything here touches GL, so it's only meant to be used from the GL thread.
+ */
+public class TextureCache {
+    public static final long DEFAULT_BUDGET = 256L * 1024 * 1024;
+
+    protected long budget;
+    protected long residentBytes = 0;
+    protected int residentCount = 0;
+    protected CachedTexture head = null, tail = null;
+
+    protected long hits = 0, misses = 0, evictions = 0, reloads = 0;
+    protected long reloadNanos = 0;
+
+    public TextureCache() {
+        this(DEFAULT_BUDGET);
+    }
+
+    public TextureCache(long budget) {
+        setBudget(budget);
+    }
+
+    /**
+     * Loads the file and hands back a texture that the cache is allowed to evict.
+     */
+    public CachedTexture load(String file, String managerHandle, boolean removeBackground) {
+        CachedTexture ret = new CachedTexture(this, file, managerHandle, removeBackground);
+        upload(ret);
+        return ret;
+    }
+
+    /**
+     * Takes over a texture that's already been uploaded somewhere else (the async loader does this), so it counts
+     * against the budget like anything loaded here, and reloads from file after it's been evicted.
+     */
+    public CachedTexture adopt(String file, String managerHandle, SimpleTexture uploaded) {
+        CachedTexture ret = new CachedTexture(this, file, managerHandle, false);
+        misses++;
+        admit(ret, uploaded);
+        return ret;
+    }
+
+    /*
+    Called every time a cached texture is about to be used. Cheap when the texture is resident, and a reload when
+    it isn't.
+     */
+    SimpleTexture use(CachedTexture texture) {
+        if(texture.resident == null) {
+            long start = System.nanoTime();
+            upload(texture);
+            reloadNanos += System.nanoTime() - start;
+            reloads++;
+            return texture.resident;
+        }
+        hits++;
+        if(head != texture) {
+            unlink(texture);
+            linkAtHead(texture);
+        }
+        return texture.resident;
+    }
+
+    void remove(CachedTexture texture) {
+        if(texture.resident != null) {
+            drop(texture);
+        }
+    }
+
+    private void upload(CachedTexture texture) {
+        misses++;
+        SimpleTexture loaded;
+        try {
+            // Goes through the decoded copy on disk when there is one, which matters a lot for reloads.
+            loaded = DiskTextureCache.load(texture.file, texture.managerHandle, false);
+        }
+        catch(IOException e) {
+            BasicTextureLoader loader = new BasicTextureLoader(Utils.loadImage(texture.file), texture.managerHandle,
+                    texture.removeBackground);
+            loader.run();
+            loaded = loader.texture;
+        }
+        admit(texture, loaded);
+    }
+
+    private void admit(CachedTexture texture, SimpleTexture loaded) {
+        texture.setResident(loaded);
+        texture.bytes = (long)loaded.getWidth() * (long)loaded.getHeight() * 4;
+        residentBytes += texture.bytes;
+        residentCount++;
+        linkAtHead(texture);
+        trim(texture);
+    }
+
+    /*
+    Evicts from the back until we're under budget, never touching keep.
+     */
+    private void trim(CachedTexture keep) {
+        while(residentBytes > budget && tail != null && tail != keep) {
+            drop(tail);
+            evictions++;
+        }
+    }
+
+    private void drop(CachedTexture texture) {
+        int name = texture.resident.getName();
+        if(Texture.lastBound == name) {
+            Texture.lastBound = -1;
+        }
+        // Not resident.destroy(), that would also pull the texture's name out of TextureManager.
+        glDeleteTextures(name);
+        texture.setResident(null);
+        residentBytes -= texture.bytes;
+        residentCount--;
+        unlink(texture);
+    }
+
+    private void linkAtHead(CachedTexture texture) {
+        texture.prev = null;
+        texture.next = head;
+        if(head != null) {
+            head.prev = texture;
+        }
+        head = texture;
+        if(tail == null) {
+            tail = texture;
+        }
+    }
+
+    private void unlink(CachedTexture texture) {
+        if(texture.prev != null) {
+            texture.prev.next = texture.next;
+        }
+        else if(head == texture) {
+            head = texture.next;
+        }
+        if(texture.next != null) {
+            texture.next.prev = texture.prev;
+        }
+        else if(tail == texture) {
+            tail = texture.prev;
+        }
+        texture.prev = null;
+        texture.next = null;
+    }
+
+    /**
+     * Changes how many bytes of texture data may be resident at once, evicting right away if that's now too many.
+     */
+    public void setBudget(long bytes) {
+        if(bytes < 0) {
+            throw new IllegalArgumentException("Texture budget can't be negative, got: " + bytes);
+        }
+        this.budget = bytes;
+        trim(null);
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public long getResidentBytes() {
+        return residentBytes;
+    }
+
+    public int getResidentCount() {
+        return residentCount;
+    }
+
+    /**
+     * Number of uses that found the texture already resident.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Number of times a texture had to be loaded from its file, the first load included.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Number of times an evicted texture had to be brought back.
+     */
+    public long getReloads() {
+        return reloads;
+    }
+
+    /**
+     * Total time spent bringing evicted textures back, in nanoseconds.
+     */
+    public long getReloadNanos() {
+        return reloadNanos;
+    }
+
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+        evictions = 0;
+        reloads = 0;
+        reloadNanos = 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("TextureCache{resident: %d textures / %d of %d bytes, hits: %d, misses: %d, " +
+                "evictions: %d, reloads: %d (%.3f ms)}", residentCount, residentBytes, budget, hits, misses,
+                evictions, reloads, reloadNanos / 1000000.0);
+    }
+}
@@ -1,19 +1,18 @@
 package texture;
 
-import stuff.Two;
+import structure.mem.CleanupManager;
 import stuff.Utils;
 
-import java.awt.*;
-import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.lang.ref.PhantomReference;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import static org.lwjgl.opengl.GL11.glDeleteTextures;
 import static org.lwjgl.opengl.GL11.glGetTexImage;
 
 /**
@@ -22,33 +21,63 @@ import static org.lwjgl.opengl.GL11.glGetTexImage;
  * Time: 5:57 PM
  */
 public class TextureManager {
-    private static final Map<String, Texture> mTextureMap = new HashMap<>();
-    private static final Map<String, Texture[]> mTextureTileMap = new HashMap<>();
+    // Concurrent so that loader threads can look things up (and register things) while the main loop runs.
+    private static final Map<String, Texture> mTextureMap = new ConcurrentHashMap<>();
+    private static final Map<String, Texture[]> mTextureTileMap = new ConcurrentHashMap<>();
 
-    private static final Map<String, Texture> retained = new HashMap<>();
+    private static final Map<String, Texture> retained = new ConcurrentHashMap<>();
     private static final ReferenceQueue<Texture> reaped = new ReferenceQueue<>();
-    private static final Map<String, Reference<Texture>> textures = new HashMap<>();
-    private static final Map<Reference<Texture>, Two<Integer, String>> reapedTextureIds = new HashMap<>();
+    private static final Map<String, Reference<Texture>> textures = new ConcurrentHashMap<>();
     private static final Object texturesLock = new Object();
 
+    /*
+    Tile maps by handle. A handle is an index into tileMaps, so finding a tile is a couple of array reads
+    instead of building a string and hashing it. Registering swaps in a new array under tileMapLock, so
+    readers on any thread never need to lock.
+     */
+    protected static final class TileMap {
+        final Texture[] tiles;
+        final int columns, rows;
+
+        TileMap(Texture[] tiles, int columns, int rows) {
+            this.tiles = tiles;
+            this.columns = columns;
+            this.rows = rows;
+        }
+    }
+
+    private static volatile TileMap[] tileMaps = new TileMap[0];
+    private static final Map<String, Integer> tileMapHandles = new ConcurrentHashMap<>();
+    private static final Object tileMapLock = new Object();
+    public static final int NO_TILE_MAP = -1;
+
     public static final Texture DUMMY = fromBufferedImage(new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB), "DUMMY");
 
+    private static final Map<Integer, GlyphAtlas> glyphAtlases = new HashMap<>();
+    // Tile maps loaded with loadTileMapIntoAtlas all share this, so switching layers doesn't mean switching textures.
+    private static final TextureAtlas tileAtlas = new TextureAtlas();
+
+    private static final TextureCache cache = new TextureCache();
+
+    // Only started the first time something actually loads asynchronously.
+    private static AsyncTextureLoader asyncLoader = null;
+
     public static void doMaintenance() {
+        /*
+        Only textures that own nothing on the GPU can end up here. Every non-retained texture's GL side belongs to
+        the cache: loadTexture's directly, and loadTextureAsync's through the CachedTexture it resolves into,
+        which CleanupManager hands back to the cache once the AsyncTexture is collected. The cache holds on to
+        everything it has resident, so all that's left to do here is forget them.
+         */
         Reference<? extends Texture> ref;
         while((ref = reaped.poll()) != null) {
-            Two<Integer, String> reapedData = reapedTextureIds.get(ref);
-            int textureId = reapedData.one;
-            String textureName = reapedData.two;
-            glDeleteTextures(textureId);
-            reapedTextureIds.remove(ref);
-            textures.remove(textureName);
+            textures.values().remove(ref);
         }
     }
 
     public static void removeTexture(String name) {
-        if(mTextureMap.containsKey(name)) {
-            mTextureMap.remove(name);
-        }
+        mTextureMap.remove(name);
+        textures.remove(name);
     }
 
     public static boolean doesTextureExist(String name) {
@@ -56,9 +85,10 @@ public class TextureManager {
     }
 
     public static void renameTexture(String oldName, String newName) {
-        Texture toRename = mTextureMap.get(oldName);
-        mTextureMap.remove(oldName);
-        mTextureMap.put(newName, toRename);
+        Texture toRename = mTextureMap.remove(oldName);
+        if(toRename != null) {
+            mTextureMap.put(newName, toRename);
+        }
     }
 
     public static Texture getTexture(String name) {
@@ -70,19 +100,103 @@ public class TextureManager {
     }
 
     public static Texture getTileFromMap(String name, int x, int y) {
+        int handle = getTileMapHandle(name);
+        if(handle != NO_TILE_MAP) {
+            return getTile(handle, x, y);
+        }
         return mTextureMap.get(name + "_" + x + "," + y);
     }
 
+    /**
+     * Handle for the tile map loaded under name, or NO_TILE_MAP if there isn't one. Look this up once and hang
+     * on to it, then use getTile(handle, x, y) wherever tiles get drawn.
+     */
+    public static int getTileMapHandle(String name) {
+        Integer ret = tileMapHandles.get(name);
+        return ret == null ? NO_TILE_MAP : ret;
+    }
+
+    /**
+     * @return The tile, or null if (x, y) is outside the map.
+     */
+    public static Texture getTile(int handle, int x, int y) {
+        TileMap map = tileMaps[handle];
+        if(x < 0 || y < 0 || x >= map.columns || y >= map.rows) {
+            return null;
+        }
+        return map.tiles[y * map.columns + x];
+    }
+
+    /**
+     * Fills out with the tiles from (startx, starty) to (endx, endy) inclusive, row by row. Only makes a new
+     * array if out is null or too small. Anything outside the map comes out as null, same as getTile.
+     */
+    public static Texture[] getTiles(int handle, int startx, int starty, int endx, int endy, Texture[] out) {
+        TileMap map = tileMaps[handle];
+        int width = endx - startx + 1;
+        int count = width * (endy - starty + 1);
+        if(out == null || out.length < count) {
+            out = new Texture[count];
+        }
+        // The part of each row that's actually in the map.
+        int fromX = Math.max(startx, 0), toX = Math.min(endx, map.columns - 1);
+        int i = 0;
+        for(int y = starty; y <= endy; y++) {
+            if(y < 0 || y >= map.rows || fromX > toX) {
+                Arrays.fill(out, i, i + width, null);
+            }
+            else {
+                Arrays.fill(out, i, i + fromX - startx, null);
+                System.arraycopy(map.tiles, y * map.columns + fromX, out, i + fromX - startx, toX - fromX + 1);
+                Arrays.fill(out, i + toX - startx + 1, i + width, null);
+            }
+            i += width;
+        }
+        return out;
+    }
+
+    public static int getTileMapColumns(int handle) {
+        return tileMaps[handle].columns;
+    }
+
+    public static int getTileMapRows(int handle) {
+        return tileMaps[handle].rows;
+    }
+
+    /*
+    Gives the tile map a handle, reusing the old one if something was already loaded under the same name.
+     */
+    private static int registerTileMap(String name, Texture[] tiles, int columns, int rows) {
+        synchronized (tileMapLock) {
+            TileMap map = new TileMap(tiles, columns, rows);
+            Integer existing = tileMapHandles.get(name);
+            TileMap[] grown;
+            int handle;
+            if(existing != null) {
+                handle = existing;
+                grown = tileMaps.clone();
+            }
+            else {
+                handle = tileMaps.length;
+                grown = Arrays.copyOf(tileMaps, handle + 1);
+            }
+            grown[handle] = map;
+            tileMaps = grown;
+            tileMapHandles.put(name, handle);
+            mTextureTileMap.put(name, tiles);
+            return handle;
+        }
+    }
+
     public static Texture fromBufferedImage(BufferedImage image, String name) {
-        if(textures.containsKey(name)) {
-            Reference<Texture> ref = textures.get(name);
+        Reference<Texture> ref = textures.get(name);
+        if(ref != null) {
             Texture ret = ref.get();
-            if(ret == null) {
-                removeTexture(name);
-                return fromBufferedImage(image, name);
+            if(ret != null) {
+                ret.alloc();
+                return ret;
             }
-            ret.alloc();
-            return ret;
+            textures.remove(name, ref);
         }
 
         BasicTextureLoader loader = new BasicTextureLoader(image, name);
@@ -95,45 +209,43 @@ public class TextureManager {
         return fromString(text, text + "_" + pointSize, pointSize);
     }
 
+    /**
+     * Glyphs for every character of the string. They all come out of the same GlyphAtlas, so drawing the whole
+     * string only needs the one bind.
+     */
     public static Texture[] fromString(String text, String name, int pointSize) {
+        GlyphAtlas glyphs = getGlyphAtlas(pointSize);
         Texture[] ret = new Texture[text.length()];
-        char[] chars = text.toCharArray();
-        for(int i = 0; i < chars.length; i++) {
-            ret[i] = fromChar(chars[i], String.valueOf(chars[i]) + "_" + pointSize, pointSize);
+        for(int i = 0; i < ret.length; i++) {
+            ret[i] = glyphs.get(text.charAt(i));
         }
         return ret;
     }
 
     public static Texture fromChar(char theChar, String name, int pointSize) {
-        if(mTextureMap.containsKey(name)) {
-            Texture ret = mTextureMap.get(name);
+        Texture ret = mTextureMap.get(name);
+        if(ret != null) {
             ret.alloc();
             return ret;
         }
 
-        char[] charData = new char[]{theChar};
-        Font font = new Font(Font.SANS_SERIF, Font.PLAIN, pointSize);
-        GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
-        GraphicsDevice gd = ge.getDefaultScreenDevice();
-        GraphicsConfiguration gc = gd.getDefaultConfiguration();
-
-        BufferedImage temp = gc.createCompatibleImage(1, 1, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = temp.createGraphics();
-        Rectangle2D r = font.getStringBounds(charData, 0, 1, g.getFontRenderContext());
-        g.dispose();
-
-        temp = gc.createCompatibleImage(Math.max((int)Math.ceil(r.getWidth()), 1),
-                (int)Math.round(r.getHeight() * 1.25),
-                BufferedImage.TYPE_INT_ARGB);
-        g = temp.createGraphics();
-        g.setColor(Color.WHITE);
-        g.setFont(font);
-        g.drawChars(charData, 0, 1, 0, (int)Math.floor(r.getHeight()));
-        g.dispose();
-        BasicTextureLoader loader = new BasicTextureLoader(temp, name);
-        loader.run();
-        mTextureMap.put(name, loader.texture);
-        return loader.texture;
+        ret = getGlyphAtlas(pointSize).get(theChar);
+        mTextureMap.put(name, ret);
+        return ret;
+    }
+
+    /**
+     * The atlas holding every glyph of the given size, made the first time that size is asked for.
+     */
+    public static GlyphAtlas getGlyphAtlas(int pointSize) {
+        synchronized (glyphAtlases) {
+            GlyphAtlas ret = glyphAtlases.get(pointSize);
+            if(ret == null) {
+                ret = new GlyphAtlas(pointSize);
+                glyphAtlases.put(pointSize, ret);
+            }
+            return ret;
+        }
     }
 
     public static Texture loadTexture(String file) {
@@ -150,27 +262,114 @@ public class TextureManager {
     }
 
     public static Texture loadTexture(String file, String name, boolean removeBackground, boolean retain) {
-        if(textures.containsKey(name)) {
-            Texture ret = textures.get(name).get();
-            if(ret == null) {
-                removeTexture(name);
-                return loadTexture(file, name, removeBackground, retain);
-            }
-            ret.alloc();
-            return ret;
+        Texture existing = findLoaded(name);
+        if(existing != null) {
+            return existing;
         }
 
-        TextureLoader loader = new BasicTextureLoader(Utils.loadImage(file), name, removeBackground);
-        Texture fromLoader = loader.get();
         if(retain) {
+            TextureLoader loader = new BasicTextureLoader(Utils.loadImage(file), name, removeBackground);
+            Texture fromLoader = loader.get();
             retained.put(name, fromLoader);
+            return fromLoader;
         }
-        else {
-            textures.put(name, new PhantomReference<Texture>(fromLoader, reaped));
+        // Anything not retained lives in the budgeted cache, which owns its GL texture from here on.
+        Texture fromCache = cache.load(file, name, removeBackground);
+        textures.put(name, new WeakReference<>(fromCache, reaped));
+        return fromCache;
+    }
+
+    /**
+     * Most bytes of non-retained texture data to keep on the GPU. Past that, the least recently used ones get
+     * evicted, and reload themselves from their files the next time they're used.
+     */
+    public static void setTextureBudget(long bytes) {
+        cache.setBudget(bytes);
+    }
+
+    /**
+     * The cache behind loadTexture, mostly for its stats.
+     */
+    public static TextureCache getTextureCache() {
+        return cache;
+    }
+
+    public static Texture loadTextureAsync(String file) {
+        String name = file.substring(0, file.lastIndexOf("."));
+        return loadTextureAsync(file, name, false);
+    }
+
+    /**
+     * Same as loadTexture, except the file gets read and decoded on a worker thread. The texture handed back
+     * draws as DUMMY until uploadPending() has uploaded the real thing.
+     */
+    public static Texture loadTextureAsync(String file, String name, boolean retain) {
+        Texture existing = findLoaded(name);
+        if(existing != null) {
+            return existing;
+        }
+
+        if(asyncLoader == null) {
+            asyncLoader = new AsyncTextureLoader();
         }
+        if(retain) {
+            AsyncTexture fromLoader = asyncLoader.load(file, name, DUMMY);
+            retained.put(name, fromLoader);
+            return fromLoader;
+        }
+        // Resolves into the budgeted cache, same as loadTexture. Outside the cache only the AsyncTexture holds on
+        // to that CachedTexture, so it gets handed back to the cache when the AsyncTexture is collected.
+        AsyncTexture fromLoader = asyncLoader.load(file, name, DUMMY, cache);
+        textures.put(name, new WeakReference<>(fromLoader, reaped));
+        CleanupManager.runOnGc(fromLoader, fromLoader.getRelease());
         return fromLoader;
     }
 
+    /*
+    Hands out another reference to a texture that's already loaded under name, if there is one.
+     */
+    private static Texture findLoaded(String name) {
+        Texture ret = retained.get(name);
+        if(ret == null) {
+            Reference<Texture> ref = textures.get(name);
+            if(ref != null) {
+                ret = ref.get();
+                if(ret == null) {
+                    textures.remove(name, ref);
+                }
+            }
+        }
+        if(ret != null) {
+            ret.alloc();
+        }
+        return ret;
+    }
+
+    /**
+     * Uploads whatever the async loader has finished decoding, within its per-frame budget. Needs to be called
+     * on the GL thread, once a frame.
+     */
+    public static int uploadPending() {
+        if(asyncLoader == null) {
+            return 0;
+        }
+        return asyncLoader.uploadPending();
+    }
+
+    public static void setAsyncUploadBudget(long nanos) {
+        if(asyncLoader == null) {
+            asyncLoader = new AsyncTextureLoader();
+        }
+        asyncLoader.setUploadBudget(nanos);
+    }
+
+    /**
+     * Number of async loads still being decoded or waiting to be uploaded.
+     */
+    public static int getPendingAsyncLoads() {
+        return asyncLoader == null ? 0 : asyncLoader.getPending();
+    }
+
     public static Texture[] loadTileMap(String file, int width, int height) {
         return loadTileMap(file, width, height, false);
     }
@@ -194,10 +393,29 @@ public class TextureManager {
                 mTextureMap.put(toPut, loader.get(x, y));
             }
         }
-        mTextureTileMap.put(name, loader.textures);
+        registerTileMap(name, loader.textures, loader.tilesWide, loader.tilesHigh);
         return loader.textures;
     }
 
+    /**
+     * Like loadTileMap, except the sheet is packed into an atlas shared with every other sheet loaded this way,
+     * so tiles from different maps can be drawn without rebinding.
+     */
+    public static Texture[] loadTileMapIntoAtlas(String name, String file, int width, int height) {
+        BufferedImage sheet = Utils.loadImage(file);
+        Texture[] tiles = tileAtlas.addTileMap(sheet, name, width, height);
+        int tilesWide = sheet.getWidth() / width;
+        for(int i = 0; i < tiles.length; i++) {
+            mTextureMap.put(name + "_" + (i % tilesWide) + "," + (i / tilesWide), tiles[i]);
+        }
+        registerTileMap(name, tiles, tilesWide, tiles.length / tilesWide);
+        return tiles;
+    }
+
+    public static TextureAtlas getTileAtlas() {
+        return tileAtlas;
+    }
+
     public static Texture[] loadTileMap(String name, TileMapLoader customLoader) {
         preloadTileMap(name, customLoader);
         return customLoader.getAll();
@@ -234,11 +452,14 @@ public class TextureManager {
         mTextureMap.put(name, customLoader.get());
     }
 
-    public static void preloadTileMap(String name, String file, int width, int height) {
-        preloadTileMap(name, file, width, height, false);
+    public static int preloadTileMap(String name, String file, int width, int height) {
+        return preloadTileMap(name, file, width, height, false);
     }
 
-    public static void preloadTileMap(String name, String file, int width, int height, boolean removeBackground) {
+    /**
+     * @return The handle to get tiles out of the map with.
+     */
+    public static int preloadTileMap(String name, String file, int width, int height, boolean removeBackground) {
         BasicTileMapLoader loader = new BasicTileMapLoader(file, name, width, height, removeBackground);
         loader.run();
         for (int y = 0; y < loader.tilesHigh; y++) {
@@ -250,27 +471,38 @@ public class TextureManager {
                 mTextureMap.put(toPut, loader.get(x, y));
             }
         }
-        mTextureTileMap.put(name, loader.textures);
+        return registerTileMap(name, loader.textures, loader.tilesWide, loader.tilesHigh);
     }
 
-    public static void preloadTileMap(String name, TileMapLoader customLoader) {
+    public static int preloadTileMap(String name, TileMapLoader customLoader) {
         customLoader.run();
-        for (int y = 0; y < customLoader.getColumns(); y++) {
-            for (int x = 0; x < customLoader.getRows(); x++) {
+        int columns = customLoader.getRows(), rows = customLoader.getColumns();
+        // Laid out by how the names are built above, since loaders don't promise anything about getAll's order.
+        Texture[] tiles = new Texture[columns * rows];
+        for (int y = 0; y < rows; y++) {
+            for (int x = 0; x < columns; x++) {
                 String toPut = name + "_" + x + "," + y;
-                mTextureMap.put(toPut, customLoader.get(x, y));
+                Texture tile = customLoader.get(x, y);
+                mTextureMap.put(toPut, tile);
+                tiles[y * columns + x] = tile;
             }
         }
+        registerTileMap(name, tiles, columns, rows);
+        // Whoever asks for the map by name still gets the loader's own array, as before.
         mTextureTileMap.put(name, customLoader.getAll());
+        return getTileMapHandle(name);
     }
 
     public static Texture[] getArrayFromTileMap(String name, int startx, int starty,
                                                 int endx, int endy) {
+        int handle = getTileMapHandle(name);
+        if(handle != NO_TILE_MAP) {
+            return getTiles(handle, startx, starty, endx, endy, null);
+        }
         ArrayList<Texture> ret = new ArrayList<>();
         while (starty <= endy) {
-            while (startx <= endx) {
-                ret.add(mTextureMap.get(name + "_" + startx + "," + starty));
-                startx++;
+            for (int x = startx; x <= endx; x++) {
+                ret.add(mTextureMap.get(name + "_" + x + "," + starty));
             }
             starty++;
         }